@@ -12,6 +12,7 @@ import org.commcare.engine.references.JavaFileRoot;
 import org.commcare.interfaces.AppFilePathBuilder;
 import org.commcare.models.database.AndroidDbHelper;
 import org.commcare.models.database.HybridFileBackedSqlHelpers;
+import org.commcare.models.database.SqlQueryCache;
 import org.commcare.models.database.SqlStorage;
 import org.commcare.models.database.UnencryptedHybridFileBackedSqlStorage;
 import org.commcare.models.database.app.DatabaseAppOpenHelper;
@@ -306,6 +307,7 @@ public class CommCareApp implements AppFilePathBuilder {
 
             synchronized (appDbHandleLock) {
                 if (appDatabase != null) {
+                    SqlQueryCache.release(appDatabase);
                     appDatabase.close();
                 }
                 appDatabase = null;
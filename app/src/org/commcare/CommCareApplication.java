@@ -60,12 +60,14 @@ import org.commcare.logging.AndroidLogger;
 import org.commcare.logging.DataChangeLog;
 import org.commcare.logging.DataChangeLogger;
 import org.commcare.logging.PreInitLogger;
+import org.commcare.logging.WriteBehindLogWriter;
 import org.commcare.logging.XPathErrorEntry;
 import org.commcare.logging.XPathErrorLogger;
 import org.commcare.logging.analytics.TimedStatsTracker;
 import org.commcare.mediadownload.MissingMediaDownloadHelper;
 import org.commcare.models.AndroidClassHasher;
 import org.commcare.models.AndroidSessionWrapper;
+import org.commcare.models.FormDefCache;
 import org.commcare.models.database.AndroidDbHelper;
 import org.commcare.models.database.AndroidPrototypeFactorySetup;
 import org.commcare.models.database.HybridFileBackedSqlHelpers;
@@ -92,6 +94,7 @@ import org.commcare.sync.FormSubmissionWorker;
 import org.commcare.tasks.AsyncRestoreHelper;
 import org.commcare.tasks.DataPullTask;
 import org.commcare.tasks.DeleteLogs;
+import org.commcare.tasks.EvictEntityCache;
 import org.commcare.tasks.LogSubmissionTask;
 import org.commcare.tasks.PurgeStaleArchivedFormsTask;
 import org.commcare.tasks.templates.ManagedAsyncTask;
@@ -152,6 +155,7 @@ public class CommCareApplication extends MultiDexApplication {
     public static final int STATE_MIGRATION_QUESTIONABLE = 32;
     private static final String DELETE_LOGS_REQUEST = "delete-logs-request";
     private static final String CLEAN_RAW_MEDIA_REQUEST = "clean-raw-media-request";
+    private static final String EVICT_ENTITY_CACHE_REQUEST = "evict-entity-cache-request";
     private static final long BACKOFF_DELAY_FOR_UPDATE_RETRY = 5 * 60 * 1000L; // 5 mins
     private static final long BACKOFF_DELAY_FOR_FORM_SUBMISSION_RETRY = 5 * 60 * 1000L; // 5 mins
     private static final long PERIODICITY_FOR_FORM_SUBMISSION_IN_HOURS = 1;
@@ -360,6 +364,9 @@ public class CommCareApplication extends MultiDexApplication {
      */
     public void closeUserSession() {
         synchronized (serviceLock) {
+            // Get any queued log entries into the user database while it's still open
+            WriteBehindLogWriter.flushAll();
+
             // Cancel any running tasks before closing down the user database.
             ManagedAsyncTask.cancelTasks();
 
@@ -534,6 +541,7 @@ public class CommCareApplication extends MultiDexApplication {
             if (currentApp.initializeApplication()) {
                 resourceState = STATE_READY;
                 this.sessionWrapper = new AndroidSessionWrapper(this.getCommCarePlatform());
+                FormDefCache.prewarmInBackground(currentApp);
             } else {
                 resourceState = STATE_CORRUPTED;
             }
@@ -783,6 +791,7 @@ public class CommCareApplication extends MultiDexApplication {
                         if (CommCareEntityStorageCache.getEntityCacheWipedPref(user.getUniqueId()) < ReportingUtils.getAppVersion()) {
                             CommCareEntityStorageCache.wipeCacheForCurrentApp();
                         }
+                        evictEntityCache();
 
                         purgeLogs();
                         cleanRawMedia();
@@ -823,6 +832,12 @@ public class CommCareApplication extends MultiDexApplication {
                 .enqueueUniqueWork(CLEAN_RAW_MEDIA_REQUEST, ExistingWorkPolicy.KEEP, cleanRawMediaRequest);
     }
 
+    private void evictEntityCache() {
+        OneTimeWorkRequest evictEntityCacheRequest = new OneTimeWorkRequest.Builder(EvictEntityCache.class).build();
+        WorkManager.getInstance(CommCareApplication.instance())
+                .enqueueUniqueWork(EVICT_ENTITY_CACHE_REQUEST, ExistingWorkPolicy.KEEP, evictEntityCacheRequest);
+    }
+
     private void purgeLogs() {
         if (shouldRunLogDeletion()) {
             OneTimeWorkRequest deleteLogsRequest = new OneTimeWorkRequest.Builder(DeleteLogs.class).build();
@@ -1076,6 +1091,7 @@ public class CommCareApplication extends MultiDexApplication {
     }
 
     private static void setupLoggerStorage(boolean userStorageAvailable) {
+        WriteBehindLogWriter.retireAll();
         boolean loggingEnabled = HiddenPreferences.isLoggingEnabled();
         if (userStorageAvailable) {
             if (loggingEnabled) {
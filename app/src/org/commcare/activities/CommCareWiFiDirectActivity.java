@@ -45,6 +45,7 @@ import org.commcare.interfaces.CommCareActivityUIController;
 import org.commcare.interfaces.WithUIController;
 import org.commcare.models.database.SqlStorage;
 import org.commcare.preferences.AdvancedActionsPreferences;
+import org.commcare.preferences.DeveloperPreferences;
 import org.commcare.preferences.ServerUrls;
 import org.commcare.services.WiFiDirectBroadcastReceiver;
 import org.commcare.tasks.FormRecordToFileTask;
@@ -59,6 +60,7 @@ import org.commcare.util.LogTypes;
 import org.commcare.utils.FileUtil;
 import org.commcare.utils.FormUploadResult;
 import org.commcare.utils.StorageUtils;
+import org.commcare.utils.StreamedFormTransfer;
 import org.commcare.views.dialogs.CustomProgressDialog;
 import org.commcare.views.dialogs.StandardAlertDialog;
 import org.javarosa.core.services.Logger;
@@ -103,6 +105,7 @@ public class CommCareWiFiDirectActivity
     private static String receiveDirectory;
     private static String receiveZipDirectory;
     private static String toBeSubmittedDirectory;
+    private static String streamStagingDirectory;
 
     private TextView myStatusText;
     private TextView formCountText;
@@ -168,6 +171,8 @@ public class CommCareWiFiDirectActivity
         zipFilePath = baseDirectory + "/formRecordZip.zip";
         receiveDirectory = baseDirectory + "/receive";
         receiveZipDirectory = receiveDirectory + "/zipDest";
+        // files from streamed transfers wait here until the rest of their form arrives
+        streamStagingDirectory = baseDirectory + "/streamStaging";
 
         mManager = (WifiP2pManager)getSystemService(Context.WIFI_P2P_SERVICE);
         mChannel = mManager.initialize(this, getMainLooper(), null);
@@ -246,7 +251,8 @@ public class CommCareWiFiDirectActivity
 
         final FileServerFragment fsFragment = (FileServerFragment)getSupportFragmentManager()
                 .findFragmentById(R.id.file_server_fragment);
-        fsFragment.startServer(receiveZipDirectory);
+        fsFragment.startServer(receiveZipDirectory, new StreamedFormTransfer.Receiver(
+                new File(toBeSubmittedDirectory), new File(streamStagingDirectory)));
 
         WiFiDirectManagementFragment fragment = (WiFiDirectManagementFragment)getSupportFragmentManager()
                 .findFragmentById(R.id.wifi_manager_fragment);
@@ -696,7 +702,7 @@ public class CommCareWiFiDirectActivity
     private void onZipSuccesful() {
         myStatusText.setText(localize("wifi.direct.zip.successful"));
         updateStatusText();
-        sendFiles();
+        sendFiles(false);
     }
 
     private void onZipError() {
@@ -720,7 +726,12 @@ public class CommCareWiFiDirectActivity
         }
         updateStatusText();
         moveReceivedFiles();
-        zipFiles();
+        if (DeveloperPreferences.isStreamedWifiDirectTransferEnabled()) {
+            // Zip straight into the connection instead of into an archive first
+            sendFiles(true);
+        } else {
+            zipFiles();
+        }
     }
 
     private void moveFormRecordsToFiles() {
@@ -776,7 +787,7 @@ public class CommCareWiFiDirectActivity
         mZipTask.execute();
     }
 
-    private void sendFiles() {
+    private void sendFiles(boolean streamed) {
         Logger.log(TAG, "Sending Files via Wi-fi Direct");
         TextView statusText = myStatusText;
         statusText.setText(localize("wifi.direct.send.forms"));
@@ -787,7 +798,8 @@ public class CommCareWiFiDirectActivity
 
         String address = fragment.getHostAddress();
 
-        FormTransferTask mTransferTask = new FormTransferTask(address, zipFilePath, 8988) {
+        FormTransferTask mTransferTask = new FormTransferTask(address,
+                streamed ? toBeTransferredDirectory : zipFilePath, 8988, streamed) {
 
             @Override
             protected void deliverResult(CommCareWiFiDirectActivity receiver,
@@ -895,6 +907,13 @@ public class CommCareWiFiDirectActivity
         this.unzipFiles(result);
     }
 
+    @Override
+    public void onFormsReceived(int formFiles) {
+        Logger.log(TAG, "Received " + formFiles + " streamed form files");
+        myStatusText.setText(localize("wifi.direct.receive.successful", String.valueOf(formFiles)));
+        updateStatusText();
+    }
+
     @Override
     public void updatePeers() {
         Logger.log(TAG, "Wi-Fi direct peers updating");
@@ -128,6 +128,15 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
 
     private EntityLoaderTask loader;
 
+    /**
+     * Shows the first page of a large list while the loader builds the rest
+     */
+    private EntityListAdapter firstPageAdapter;
+    /**
+     * Entity tapped while only the first page was showing, selected once the complete list loads
+     */
+    private TreeReference selectionWhileLoading;
+
     private boolean inAwesomeMode = false;
     private FrameLayout rightFrame;
     private TabbedDetailView detailView;
@@ -476,7 +485,8 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
         }
 
         if (loader == null && !EntityLoaderTask.attachToActivity(this)) {
-            EntityLoaderTask entityLoader = new EntityLoaderTask(shortSelect, evalContext());
+            EntityLoaderTask entityLoader = new EntityLoaderTask(shortSelect, evalContext(),
+                    () -> session.getEvaluationContext(new AndroidInstanceInitializer(session)));
             entityLoader.attachListener(this);
             entityLoader.executeParallel(selectDatum.getNodeset());
             return true;
@@ -536,6 +546,17 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
     }
 
     public void onEntitySelected(int itemPosition) {
+        if (adapter == null) {
+            // only the first page is showing; selection, like sorting, waits
+            // for the complete list, so hold on to the tap and show that
+            // the list is still loading
+            if (firstPageAdapter != null
+                    && firstPageAdapter.getItemViewType(itemPosition) == EntityListAdapter.ENTITY_TYPE) {
+                selectionWhileLoading = firstPageAdapter.getItem(itemPosition);
+                findViewById(R.id.entity_select_loading).setVisibility(View.VISIBLE);
+            }
+            return;
+        }
         if (adapter.getItemViewType(itemPosition) == EntityListAdapter.ENTITY_TYPE) {
             TreeReference selection = adapter.getItem(itemPosition);
             if (HiddenPreferences.isEntityDetailLoggingEnabled()) {
@@ -848,22 +869,47 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
     }
 
     @Override
-    public void deliverLoadResult(List<Entity<TreeReference>> entities,
-                                  List<TreeReference> references,
-                                  NodeEntityFactory factory, int focusTargetIndex) {
-        loader = null;
+    public void deliverFirstPage(List<Entity<TreeReference>> entities,
+                                 List<TreeReference> references,
+                                 NodeEntityFactory factory) {
+        if (adapter != null) {
+            // a reload; keep showing the complete previous list until the
+            // new one is ready
+            return;
+        }
 
-        AdapterView visibleView;
+        // Not handed to the container fragment: if the activity is recreated
+        // it has to reattach to the loader to get the complete list
+        firstPageAdapter = new EntityListAdapter(this, shortSelect, references, entities, factory,
+                hideActionsFromEntityList, shortSelect.getCustomActions(evalContext()), inAwesomeMode);
+        getVisibleEntityView().setAdapter(firstPageAdapter);
+        findViewById(R.id.entity_select_loading).setVisibility(View.GONE);
+    }
+
+    private AdapterView getVisibleEntityView() {
         if (shortSelect.shouldBeLaidOutInGrid()) {
-            visibleView = ((GridView)this.findViewById(R.id.screen_entity_select_grid));
+            return this.findViewById(R.id.screen_entity_select_grid);
         } else {
             ListView listView = this.findViewById(R.id.screen_entity_select_list);
             EntitySelectViewSetup.setupDivider(this, listView, shortSelect.usesEntityTileView());
-            visibleView = listView;
+            return listView;
         }
+    }
+
+    @Override
+    public void deliverLoadResult(List<Entity<TreeReference>> entities,
+                                  List<TreeReference> references,
+                                  NodeEntityFactory factory, int focusTargetIndex) {
+        loader = null;
+
+        AdapterView visibleView = getVisibleEntityView();
 
         adapter = new EntityListAdapter(this, shortSelect, references, entities, factory,
                 hideActionsFromEntityList, shortSelect.getCustomActions(evalContext()), inAwesomeMode);
+        if (firstPageAdapter != null) {
+            firstPageAdapter.signalKilled();
+            firstPageAdapter = null;
+        }
         visibleView.setAdapter(adapter);
         adapter.registerDataSetObserver(this.mListStateObserver);
         containerFragment.setData(adapter);
@@ -898,6 +944,15 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
             visibleView.setSelection(focusTargetIndex);
         }
 
+        if (selectionWhileLoading != null) {
+            int position = adapter.getPosition(selectionWhileLoading);
+            selectionWhileLoading = null;
+            // the entity can be missing if a restored search filtered it out
+            if (position != -1) {
+                onEntitySelected(position);
+            }
+        }
+
         refreshTimer.start(this);
 
         if (locationChangedWhileLoading) {
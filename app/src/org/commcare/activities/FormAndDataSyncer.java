@@ -72,7 +72,8 @@ public class FormAndDataSyncer {
                             ((WithUIController)receiver).getUIController().refreshView();
                         }
 
-                        receiver.handleFormUploadResult(result, getLabelForFormsSent(), userTriggered);
+                        receiver.handleFormUploadResult(result, getLabelForFormsSent(),
+                                getActionableFailureMessage(), userTriggered);
 
                         if (result == FormUploadResult.FULL_SUCCESS && syncAfterwards) {
                             syncDataForLoggedInUser(receiver, true, userTriggered);
@@ -230,6 +230,14 @@ public abstract class SyncCapableCommCareActivity<T> extends SessionAwareCommCar
     }
 
     public void handleFormUploadResult(FormUploadResult result, String formLabel, boolean userTriggered) {
+        handleFormUploadResult(result, formLabel, null, userTriggered);
+    }
+
+    /**
+     * @param errorMessage The server's explanation of an actionable failure
+     */
+    public void handleFormUploadResult(FormUploadResult result, String formLabel,
+                                       String errorMessage, boolean userTriggered) {
         switch (result) {
             case FULL_SUCCESS:
                 updateUiForFormUploadResult(formLabel, true);
@@ -242,7 +250,7 @@ public abstract class SyncCapableCommCareActivity<T> extends SessionAwareCommCar
                 updateUiForFormUploadResult(Localization.get(result.getLocaleKeyBase()), false);
                 break;
             case ACTIONABLE_FAILURE:
-                updateUiForFormUploadResult(result.getErrorMessage(), false);
+                updateUiForFormUploadResult(errorMessage, false);
                 break;
             case RATE_LIMITED:
                 showRateLimitError(userTriggered);
@@ -20,7 +20,7 @@ public abstract class EntityFiltererBase {
     protected final List<Entity<TreeReference>> matchList;
     protected final List<Entity<TreeReference>> fullEntityList;
     private Thread thread;
-    private boolean cancelled = false;
+    private volatile boolean cancelled = false;
     private final AppCompatActivity context;
 
     public EntityFiltererBase(AppCompatActivity context,
@@ -21,7 +21,6 @@ import org.commcare.session.SessionInstanceBuilder;
 import org.commcare.suite.model.Action;
 import org.commcare.suite.model.Detail;
 import org.commcare.utils.AndroidUtil;
-import org.commcare.utils.CachingAsyncImageLoader;
 import org.commcare.views.EntityActionViewUtils;
 import org.commcare.views.EntityView;
 import org.commcare.views.EntityViewTile;
@@ -33,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * This adapter class handles displaying the cases for a CommCareODK user.
@@ -72,9 +72,10 @@ public class EntityListAdapter extends AndroidSortableEntityAdapter implements L
     private String searchQuery = "";
 
     private EntityFiltererBase entityFilterer = null;
+    // built on the first search and reused by every search over this load of entities
+    private final EntitySearchIndex searchIndex = new EntitySearchIndex(Locale.getDefault());
 
     // Asyncronous image loader, allows rows with images to scroll smoothly
-    private final CachingAsyncImageLoader mImageLoader;
 
     // false until we determine the Detail has at least one <grid> block
     private boolean usesCaseTiles = false;
@@ -105,7 +106,6 @@ public class EntityListAdapter extends AndroidSortableEntityAdapter implements L
         this.commCareActivity = activity;
         this.observers = new ArrayList<>();
         this.mNodeFactory = factory;
-        mImageLoader = new CachingAsyncImageLoader(commCareActivity);
         this.usesCaseTiles = detail.usesEntityTileView();
         this.mFuzzySearchEnabled = MainConfigurablePreferences.isFuzzySearchEnabled();
 
@@ -235,7 +235,7 @@ public class EntityListAdapter extends AndroidSortableEntityAdapter implements L
         int[] titleColor = AndroidUtil.getThemeColorIDs(commCareActivity, new int[]{R.attr.entity_select_title_text_color});
         if (tile == null) {
             tile = EntityViewTile.createTileForEntitySelectDisplay(commCareActivity, detail, entity,
-                        currentSearchTerms, mImageLoader, mFuzzySearchEnabled, selectActivityInAwesomeMode);
+                        currentSearchTerms, mFuzzySearchEnabled, selectActivityInAwesomeMode);
         } else {
             tile.setSearchTerms(currentSearchTerms);
             tile.addFieldViews(commCareActivity, detail, entity);
@@ -318,7 +318,7 @@ public class EntityListAdapter extends AndroidSortableEntityAdapter implements L
         searchQuery = filterRaw;
         entityFilterer =
                 new EntityStringFilterer(this, searchTerms,
-                        mFuzzySearchEnabled, mNodeFactory, full, commCareActivity);
+                        mFuzzySearchEnabled, mNodeFactory, full, commCareActivity, searchIndex);
         entityFilterer.start();
     }
 
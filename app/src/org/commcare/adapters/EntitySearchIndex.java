@@ -0,0 +1,253 @@
+package org.commcare.adapters;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.CommCareApplication;
+import org.commcare.cases.entity.Entity;
+import org.commcare.cases.util.StringUtils;
+import org.commcare.modern.util.Pair;
+import org.javarosa.core.model.instance.TreeReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Search data for one load of the entity list, built the first time the list is searched.
+ *
+ * Holds each entity's fields already normalized and lower cased, along with a trigram index over
+ * them, so that a search doesn't need to go back to the entities themselves. The result of the
+ * last completed search is kept, so that a search which refines it, typically the next
+ * keystroke, only checks the entities that matched before.
+ *
+ * Only used from one filterer thread at a time.
+ */
+class EntitySearchIndex {
+    private static final int GRAM_LENGTH = 3;
+    // entities read per user db transaction while building
+    private static final int BUILD_BATCH_SIZE = 500;
+
+    private final Locale locale;
+    private final Map<Entity<TreeReference>, Integer> entityIds = new IdentityHashMap<>();
+    private final List<String[]> fields = new ArrayList<>();
+    private final List<String[][]> fieldPieces = new ArrayList<>();
+    private final Map<String, Postings> gramIndex = new HashMap<>();
+
+    private String[] lastSearchTerms;
+    private BitSet lastMatches;
+
+    EntitySearchIndex(Locale locale) {
+        this.locale = locale;
+    }
+
+    /**
+     * Indexes any entities not yet indexed, in short transactions so that other users of the db
+     * aren't held up. Entities indexed by a previous build that was cancelled are skipped; they
+     * are looked up by identity, since the list may have been re-sorted in between.
+     *
+     * @return false if the build was cancelled before it finished
+     */
+    boolean build(List<Entity<TreeReference>> entities, EntityFiltererBase filterer) {
+        SQLiteDatabase db = CommCareApplication.instance().getUserDbHandle();
+        int next = 0;
+        while (next < entities.size()) {
+            int batchEnd = Math.min(entities.size(), next + BUILD_BATCH_SIZE);
+            db.beginTransaction();
+            try {
+                for (; next < batchEnd; next++) {
+                    // cancelSearch() waits for us on the main thread, so stop right away
+                    if (filterer.isCancelled()) {
+                        return false;
+                    }
+                    Entity<TreeReference> entity = entities.get(next);
+                    if (!entityIds.containsKey(entity)) {
+                        add(entity);
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        return true;
+    }
+
+    private void add(Entity<TreeReference> entity) {
+        int id = fields.size();
+        int numFields = entity.getNumFields();
+        String[] entityFields = new String[numFields];
+        String[][] entityPieces = new String[numFields][];
+        for (int i = 0; i < numFields; i++) {
+            String field = entity.getNormalizedField(i);
+            entityFields[i] = field == null ? "" : field.toLowerCase(locale);
+            entityPieces[i] = entity.getSortFieldPieces(i);
+            for (int start = 0; start + GRAM_LENGTH <= entityFields[i].length(); start++) {
+                String gram = entityFields[i].substring(start, start + GRAM_LENGTH);
+                Postings postings = gramIndex.get(gram);
+                if (postings == null) {
+                    postings = new Postings();
+                    gramIndex.put(gram, postings);
+                }
+                postings.add(id);
+            }
+        }
+        entityIds.put(entity, id);
+        fields.add(entityFields);
+        fieldPieces.add(entityPieces);
+    }
+
+    /**
+     * Matches entities the same way {@link org.commcare.util.EntitySortUtil} does: every term has
+     * to be contained in one of an entity's fields, or fuzzy match a word of its sort field.
+     * Fuzzy matches are ordered by their edit distance.
+     *
+     * @param entities the full entity list, in the order matches should be returned. Every
+     *                 entity in it must have been indexed by build().
+     * @return the matching entities, or null if the search was cancelled
+     */
+    List<Entity<TreeReference>> search(List<Entity<TreeReference>> entities, String[] searchTerms,
+                                       boolean isFuzzySearchEnabled, EntityFiltererBase filterer) {
+        BitSet candidates = null;
+        if (!isFuzzySearchEnabled) {
+            // A fuzzy match on a longer term doesn't imply one on a shorter term, so only exact
+            // searches can rule entities out up front
+            candidates = getCandidates(searchTerms);
+        }
+
+        ArrayList<Pair<Entity<TreeReference>, Integer>> matchScores = new ArrayList<>();
+        BitSet matches = new BitSet(fields.size());
+        for (int index = 0; index < entities.size(); index++) {
+            if (filterer.isCancelled()) {
+                return null;
+            }
+            Entity<TreeReference> entity = entities.get(index);
+            int id = entityIds.get(entity);
+            if (candidates != null && !candidates.get(id)) {
+                continue;
+            }
+            int score = getMatchScore(id, searchTerms, isFuzzySearchEnabled);
+            if (score >= 0) {
+                matches.set(id);
+                matchScores.add(Pair.create(entity, score));
+            }
+        }
+        if (isFuzzySearchEnabled) {
+            Collections.sort(matchScores, (lhs, rhs) -> lhs.second - rhs.second);
+        }
+
+        lastSearchTerms = isFuzzySearchEnabled ? null : searchTerms;
+        lastMatches = isFuzzySearchEnabled ? null : matches;
+
+        List<Entity<TreeReference>> matchList = new ArrayList<>(matchScores.size());
+        for (Pair<Entity<TreeReference>, Integer> match : matchScores) {
+            matchList.add(match.first);
+        }
+        return matchList;
+    }
+
+    /**
+     * @return the entities that can possibly contain every term, or null if any entity might
+     */
+    private BitSet getCandidates(String[] searchTerms) {
+        BitSet candidates = null;
+        if (refinesLastSearch(searchTerms)) {
+            candidates = (BitSet)lastMatches.clone();
+        }
+        for (String term : searchTerms) {
+            for (int start = 0; start + GRAM_LENGTH <= term.length(); start++) {
+                Postings postings = gramIndex.get(term.substring(start, start + GRAM_LENGTH));
+                if (postings == null) {
+                    return new BitSet();
+                }
+                if (candidates == null) {
+                    candidates = postings.toBitSet();
+                } else {
+                    candidates.and(postings.toBitSet());
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Every entity that contains all the new terms contained all the previous ones if each
+     * previous term is part of one of the new terms
+     */
+    private boolean refinesLastSearch(String[] searchTerms) {
+        if (lastSearchTerms == null) {
+            return false;
+        }
+        for (String previousTerm : lastSearchTerms) {
+            boolean refined = false;
+            for (String term : searchTerms) {
+                if (term.contains(previousTerm)) {
+                    refined = true;
+                    break;
+                }
+            }
+            if (!refined) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the sum of the fuzzy match distances, or -1 if the entity doesn't match
+     */
+    private int getMatchScore(int id, String[] searchTerms, boolean isFuzzySearchEnabled) {
+        String[] entityFields = fields.get(id);
+        String[][] entityPieces = fieldPieces.get(id);
+        int score = 0;
+        filter:
+        for (String term : searchTerms) {
+            for (int i = 0; i < entityFields.length; i++) {
+                if (!"".equals(entityFields[i]) && entityFields[i].contains(term)) {
+                    continue filter;
+                } else if (isFuzzySearchEnabled) {
+                    for (String fieldChunk : entityPieces[i]) {
+                        Pair<Boolean, Integer> match = StringUtils.fuzzyMatch(term, fieldChunk);
+                        if (match.first) {
+                            score += match.second;
+                            continue filter;
+                        }
+                    }
+                }
+            }
+            return -1;
+        }
+        return score;
+    }
+
+    /**
+     * Ids of the entities a trigram appears in, in ascending order
+     */
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        BitSet toBitSet() {
+            BitSet bits = new BitSet(size == 0 ? 0 : ids[size - 1] + 1);
+            for (int i = 0; i < size; i++) {
+                bits.set(ids[i]);
+            }
+            return bits;
+        }
+    }
+}
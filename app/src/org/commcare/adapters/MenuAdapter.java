@@ -1,7 +1,6 @@
 package org.commcare.adapters;
 
 import android.database.DataSetObserver;
-import android.graphics.Bitmap;
 import android.util.Log;
 import android.util.SparseArray;
 import android.view.LayoutInflater;
@@ -23,11 +22,11 @@ import org.commcare.suite.model.Menu;
 import org.commcare.suite.model.MenuDisplayable;
 import org.commcare.suite.model.MenuLoader;
 import org.commcare.suite.model.SessionDatum;
-import org.commcare.suite.model.Text;
 import org.commcare.util.CommCarePlatform;
 import org.commcare.util.LogTypes;
 import org.commcare.util.LoggerInterface;
-import org.commcare.utils.MediaUtil;
+import org.commcare.utils.BadgeEvaluationService;
+import org.commcare.utils.ImagePipeline;
 import org.commcare.views.UserfacingErrorHandling;
 import org.commcare.views.media.AudioPlaybackButton;
 import org.commcare.views.media.ViewId;
@@ -37,14 +36,12 @@ import org.javarosa.core.services.Logger;
 import org.javarosa.core.services.locale.Localization;
 import org.javarosa.core.services.locale.Localizer;
 import org.javarosa.xpath.XPathException;
-import org.javarosa.xpath.analysis.InstanceNameAccumulatingAnalyzer;
 import org.javarosa.xpath.parser.XPathSyntaxException;
 
 import java.io.File;
-import java.util.Set;
 
+import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.schedulers.Schedulers;
 
 /**
  * Load module menu items
@@ -204,14 +201,17 @@ public class MenuAdapter extends BaseAdapter {
     private void setupImageView(ImageView mIconView, MenuDisplayable menuDisplayable, int boundingDimensionResource) {
         if (mIconView != null) {
             int iconDimension = (int)context.getResources().getDimension(boundingDimensionResource);
-            Bitmap image = MediaUtil.inflateDisplayImage(context, menuDisplayable.getImageURI(),
-                    iconDimension, iconDimension);
-            if (image != null) {
-                mIconView.setImageBitmap(image);
-                mIconView.setAdjustViewBounds(true);
-            } else {
-                setupDefaultIcon(mIconView, getIconState(menuDisplayable));
-            }
+            // cleared so that a recycled row doesn't show its old icon while this one loads
+            mIconView.setImageDrawable(null);
+            ImagePipeline.instance().display(context, menuDisplayable.getImageURI(), mIconView,
+                    iconDimension, iconDimension, false, image -> {
+                        if (image != null) {
+                            mIconView.setImageBitmap(image);
+                            mIconView.setAdjustViewBounds(true);
+                        } else {
+                            setupDefaultIcon(mIconView, getIconState(menuDisplayable));
+                        }
+                    });
         }
     }
 
@@ -222,18 +222,16 @@ public class MenuAdapter extends BaseAdapter {
         if (badgeCache.get(position) != null) {
             updateBadgeView(badgeView, badgeCache.get(position));
         } else {
-            Text badgeTextObject = menuDisplayable.getRawBadgeTextObject();
-            if (badgeTextObject != null) {
-                Set<String> instancesNeededByBadgeCalculation =
-                        (new InstanceNameAccumulatingAnalyzer()).accumulate(badgeTextObject);
+            Single<String> badgeText =
+                    BadgeEvaluationService.instance().getBadgeText(menuDisplayable, asw);
+            if (badgeText != null) {
                 context.attachDisposableToLifeCycle(
-                        menuDisplayable.getTextForBadge(asw.getRestrictedEvaluationContext(menuDisplayable.getCommandID(), instancesNeededByBadgeCalculation))
-                                .subscribeOn(Schedulers.single())
+                        badgeText
                                 .observeOn(AndroidSchedulers.mainThread())
-                                .subscribe(badgeText -> {
+                                .subscribe(text -> {
                                             // Make sure that badgeView corresponds to the right position and update it
                                             if (((int)badgeView.getTag()) == position) {
-                                                updateBadgeView(badgeView, badgeText);
+                                                updateBadgeView(badgeView, text);
                                             }
                                         },
                                         throwable -> new UserfacingErrorHandling<>().createErrorDialog(context, throwable.getLocalizedMessage(), true)
@@ -33,6 +33,10 @@ public class FormDefRecord extends Persisted {
     public static final String META_UI_VERSION = "uiVersion";
     public static final String META_RESOURCE_VERSION = "resourceVersion";
 
+    // MD5 of the form xml, computed when the form is installed so that opening
+    // the form can find its serialized FormDef without rehashing the file
+    public static final String META_FORM_HASH = "formHash";
+
     @Persisting(1)
     @MetaField(META_DISPLAY_NAME)
     private String mDisplayName;
@@ -62,6 +66,9 @@ public class FormDefRecord extends Persisted {
     @MetaField(META_RESOURCE_VERSION)
     private int mResourceVersion = -1;
 
+    @Persisting(value = 8, nullable = true)
+    @MetaField(META_FORM_HASH)
+    private String mFormHash;
 
     //    Serialization Only!
     public FormDefRecord() {
@@ -86,6 +93,17 @@ public class FormDefRecord extends Persisted {
         mUiVersion = oldFormDefRecord.getUiVersion();
     }
 
+    // For migration from FormDefRecordV13
+    public FormDefRecord(FormDefRecordV13 oldFormDefRecord) {
+        mDisplayName = oldFormDefRecord.getDisplayName();
+        mJrFormId = oldFormDefRecord.getJrFormId();
+        mFormFilePath = oldFormDefRecord.getFilePath();
+        mFormMediaPath = oldFormDefRecord.getMediaPath();
+        mModelVersion = oldFormDefRecord.getModelVersion();
+        mUiVersion = oldFormDefRecord.getUiVersion();
+        mResourceVersion = oldFormDefRecord.getResourceVersion();
+    }
+
     public static Vector<Integer> getFormDefIdsByJrFormId(SqlStorage<FormDefRecord> formDefRecordStorage, String jrFormId) {
         return formDefRecordStorage.getIDsForValue(META_JR_FORM_ID, jrFormId);
     }
@@ -148,6 +166,8 @@ public class FormDefRecord extends Persisted {
         // Set new values now
         mFormFilePath = newFilePath;
         mFormMediaPath = getMediaPath(newFilePath);
+        // the file may have been replaced, so its hash is worked out again on next use
+        mFormHash = null;
         formDefRecordStorage.write(this);
     }
 
@@ -199,4 +219,15 @@ public class FormDefRecord extends Persisted {
     public String getJrFormId() {
         return mJrFormId;
     }
+
+    /**
+     * @return MD5 hash of the form's xml file, or null if it hasn't been computed yet
+     */
+    public String getFormHash() {
+        return mFormHash;
+    }
+
+    public void setFormHash(String formHash) {
+        mFormHash = formHash;
+    }
 }
@@ -0,0 +1,84 @@
+package org.commcare.android.database.app.models;
+
+import org.commcare.android.storage.framework.Persisted;
+import org.commcare.models.framework.Persisting;
+import org.commcare.modern.database.Table;
+import org.commcare.modern.models.MetaField;
+
+/**
+ * Represents the version of a FormDefRecord that exists on any devices running a version of
+ * CommCare from before the form hash was added, which was deprecated in app db version 15. This
+ * class is used to read a FormDefRecord that exists in such a database, in order to run a db
+ * upgrade.
+ */
+@Table(FormDefRecord.STORAGE_KEY)
+public class FormDefRecordV13 extends Persisted {
+
+    private static final String META_DISPLAY_NAME = "displayName";
+    private static final String META_JR_FORM_ID = "jrFormId";
+    private static final String META_FORM_FILE_PATH = "formFilePath";
+    private static final String META_FORM_MEDIA_PATH = "formMediaPath";
+    private static final String META_MODEL_VERSION = "modelVersion";
+    private static final String META_UI_VERSION = "uiVersion";
+    private static final String META_RESOURCE_VERSION = "resourceVersion";
+
+    @Persisting(1)
+    @MetaField(META_DISPLAY_NAME)
+    private String mDisplayName;
+
+    @Persisting(2)
+    @MetaField(META_JR_FORM_ID)
+    private String mJrFormId;
+
+    @Persisting(3)
+    @MetaField(META_FORM_FILE_PATH)
+    private String mFormFilePath;
+
+    @Persisting(4)
+    @MetaField(META_FORM_MEDIA_PATH)
+    private String mFormMediaPath;
+
+    @Persisting(value = 5, nullable = true)
+    @MetaField(META_MODEL_VERSION)
+    private int mModelVersion = -1;
+
+    @Persisting(value = 6, nullable = true)
+    @MetaField(META_UI_VERSION)
+    private int mUiVersion = -1;
+
+    @Persisting(value = 7, nullable = true)
+    @MetaField(META_RESOURCE_VERSION)
+    private int mResourceVersion = -1;
+
+    // Serialization Only!
+    public FormDefRecordV13() {
+    }
+
+    public String getFilePath() {
+        return mFormFilePath;
+    }
+
+    public String getMediaPath() {
+        return mFormMediaPath;
+    }
+
+    public String getDisplayName() {
+        return mDisplayName;
+    }
+
+    public int getUiVersion() {
+        return mUiVersion;
+    }
+
+    public String getJrFormId() {
+        return mJrFormId;
+    }
+
+    public int getModelVersion() {
+        return mModelVersion;
+    }
+
+    public int getResourceVersion() {
+        return mResourceVersion;
+    }
+}
@@ -31,6 +31,9 @@ import javax.crypto.spec.SecretKeySpec;
 public class DeviceReportRecord extends Persisted implements EncryptedModel {
     public static final String STORAGE_KEY = "log_records";
 
+    // Marks the records whose file holds a gzip compressed report
+    private static final String COMPRESSED_EXTENSION = ".xml.gz";
+
     @Persisting(1)
     private String fileName;
     @Persisting(2)
@@ -46,11 +49,25 @@ public class DeviceReportRecord extends Persisted implements EncryptedModel {
     }
 
     public static DeviceReportRecord generateNewRecordStub() {
+        return generateNewRecordStub(new Date(), ".xml");
+    }
+
+    /**
+     * Creates a record for one segment of a report that is split across several records, whose
+     * file will hold the report gzip compressed
+     *
+     * @param reportDate the date shared by every segment of the report
+     */
+    public static DeviceReportRecord generateNewSegmentStub(Date reportDate, int segment) {
+        return generateNewRecordStub(reportDate, "_" + segment + COMPRESSED_EXTENSION);
+    }
+
+    private static DeviceReportRecord generateNewRecordStub(Date reportDate, String suffix) {
         DeviceReportRecord slr = new DeviceReportRecord();
         slr.fileName = new File(
                 CommCareApplication.instance().getCurrentApp().fsPath((GlobalConstants.FILE_CC_LOGS))
                         + FileUtil.SanitizeFileName(File.separator
-                        + DateUtils.formatDateTime(new Date(), DateUtils.FORMAT_ISO8601)) + ".xml").getAbsolutePath();
+                        + DateUtils.formatDateTime(reportDate, DateUtils.FORMAT_ISO8601)) + suffix).getAbsolutePath();
         slr.aesKey = CommCareApplication.instance().createNewSymmetricKey().getEncoded();
         return slr;
     }
@@ -74,6 +91,10 @@ public class DeviceReportRecord extends Persisted implements EncryptedModel {
         return fileName;
     }
 
+    public boolean isCompressed() {
+        return fileName.endsWith(COMPRESSED_EXTENSION);
+    }
+
     public final OutputStream openOutputStream() throws FileNotFoundException {
         return EncryptionIO.createFileOutputStream(getFilePath(),
                 new SecretKeySpec(getKey(), "AES"));
@@ -105,6 +105,8 @@ public class XFormAndroidInstaller extends FileSystemInstaller {
         }
 
         FormDefRecord formDefRecord = new FormDefRecord("NAME", formDef.getMainInstance().schema, local.getLocalURI(), GlobalConstants.MEDIA_REF, r.getVersion());
+        // hash the xml now so that opening the form can find its cached FormDef without rehashing
+        formDefRecord.setFormHash(FileUtil.getMd5Hash(new File(local.getLocalURI())));
         formDefId = formDefRecord.save(platform.getFormDefStorage());
 
         return upgrade ? Resource.RESOURCE_STATUS_UPGRADE : Resource.RESOURCE_STATUS_INSTALLED;
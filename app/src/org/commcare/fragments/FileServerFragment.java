@@ -14,8 +14,10 @@ import android.widget.TextView;
 
 import org.commcare.activities.CommCareWiFiDirectActivity;
 import org.commcare.dalvik.R;
+import org.commcare.utils.StreamedFormTransfer;
 import org.javarosa.core.services.Logger;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -30,6 +32,7 @@ import java.net.Socket;
 @SuppressLint("NewApi")
 public class FileServerFragment extends Fragment {
     private static final String TAG = FileServerFragment.class.getSimpleName();
+    private static final int SOCKET_TIMEOUT = 50000;
 
     private static CommCareWiFiDirectActivity mActivity;
 
@@ -37,6 +40,7 @@ public class FileServerFragment extends Fragment {
     private View mView;
 
     private static String receiveZipDirectory;
+    private static StreamedFormTransfer.Receiver streamedReceiver;
 
     private FileServerAsyncTask mFileServer;
 
@@ -65,9 +69,18 @@ public class FileServerFragment extends Fragment {
 
     public interface FileServerListener {
         void onFormsCopied(String result);
+
+        /**
+         * Called after a streamed transfer, whose forms are already unpacked
+         */
+        void onFormsReceived(int formFiles);
     }
 
-    public void startServer(String mReceiveZipDirectory) {
+    /**
+     * @param mStreamedReceiver unpacks transfers from senders that stream their forms, while
+     *                          zip files from other senders are saved to mReceiveZipDirectory
+     */
+    public void startServer(String mReceiveZipDirectory, StreamedFormTransfer.Receiver mStreamedReceiver) {
         Logger.log(TAG, "File Server starting...");
 
         mStatusText.setText("Starting server");
@@ -79,6 +92,7 @@ public class FileServerFragment extends Fragment {
         mFileServer = new FileServerAsyncTask(this);
 
         receiveZipDirectory = mReceiveZipDirectory;
+        streamedReceiver = mStreamedReceiver;
 
         //Execute on a true multithreaded chain. We should probably replace all of our calls with this
         //but this is the big one for now.
@@ -93,6 +107,7 @@ public class FileServerFragment extends Fragment {
 
         private final FileServerFragment mListener;
         private boolean socketOccupied;
+        private int streamedFormFiles = -1;
 
         FileServerAsyncTask(FileServerFragment mListener) {
             this.mListener = mListener;
@@ -115,6 +130,18 @@ public class FileServerFragment extends Fragment {
                     Socket client = serverSocket.accept();
                     Logger.log(TAG, "Ready in wi-fi direct file server receive loop");
 
+                    InputStream inputstream = new BufferedInputStream(client.getInputStream());
+                    if (StreamedFormTransfer.isStreamedTransfer(inputstream)) {
+                        try {
+                            client.setSoTimeout(SOCKET_TIMEOUT);
+                            streamedFormFiles = streamedReceiver.receive(inputstream, client.getOutputStream());
+                        } finally {
+                            client.close();
+                        }
+                        publishProgress("File Server Resetting", null);
+                        return null;
+                    }
+
                     final File f = new File(finalFileName);
 
                     File dirs = new File(f.getParent());
@@ -124,7 +151,6 @@ public class FileServerFragment extends Fragment {
                     f.createNewFile();
 
                     Log.d(TAG, "server: copying files " + f.toString());
-                    InputStream inputstream = client.getInputStream();
                     CommCareWiFiDirectActivity.copyFile(inputstream, new FileOutputStream(f));
                     publishProgress("copied files: " + f.getAbsolutePath(), f.getAbsolutePath());
                     publishProgress("File Server Resetting", null);
@@ -160,11 +186,13 @@ public class FileServerFragment extends Fragment {
                 return;
             }
 
-            if (result != null) {
+            if (streamedFormFiles >= 0) {
+                mActivity.onFormsReceived(streamedFormFiles);
+            } else if (result != null) {
                 mActivity.onFormsCopied(result);
             }
             Logger.log(TAG, "file server post-execute, relaunching server");
-            mListener.startServer(receiveZipDirectory);
+            mListener.startServer(receiveZipDirectory, streamedReceiver);
         }
 
         @Override
@@ -2,12 +2,12 @@ package org.commcare.logging;
 
 import org.commcare.android.javarosa.AndroidLogEntry;
 import org.commcare.models.database.SqlStorage;
-import org.javarosa.core.log.LogEntry;
+import org.commcare.modern.util.Pair;
 import org.javarosa.core.log.StreamLogSerializer;
-import org.javarosa.core.services.storage.EntityFilter;
 import org.javarosa.core.util.SortedIntSet;
 
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Implementation of a log purger shared by all Android log serializers
@@ -24,16 +24,29 @@ public class AndroidLogPurger<T extends AndroidLogEntry> implements StreamLogSer
 
     @Override
     public void purge(final SortedIntSet IDs) {
-        logStorage.removeAll(new EntityFilter<LogEntry>() {
-            @Override
-            public int preFilter(int id, Hashtable<String, Object> metaData) {
-                return IDs.contains(id) ? PREFILTER_INCLUDE : PREFILTER_EXCLUDE;
-            }
+        logStorage.removeIdRanges(getIdRanges(IDs));
+    }
 
-            @Override
-            public boolean matches(LogEntry e) {
-                throw new RuntimeException("can't happen");
+    /**
+     * Serializers emit logs in id order, so the ids they purge collapse into a few contiguous
+     * ranges, usually just one
+     */
+    static List<Pair<Integer, Integer>> getIdRanges(SortedIntSet IDs) {
+        List<Pair<Integer, Integer>> ranges = new ArrayList<>();
+        if (IDs.size() == 0) {
+            return ranges;
+        }
+        int rangeStart = IDs.get(0);
+        int rangeEnd = rangeStart;
+        for (int i = 1; i < IDs.size(); i++) {
+            int id = IDs.get(i);
+            if (id != rangeEnd + 1) {
+                ranges.add(new Pair<>(rangeStart, rangeEnd));
+                rangeStart = id;
             }
-        });
+            rangeEnd = id;
+        }
+        ranges.add(new Pair<>(rangeStart, rangeEnd));
+        return ranges;
     }
 }
@@ -19,6 +19,7 @@ public class AndroidLogSerializer <T extends AndroidLogEntry>
 
     private AndroidLogEntry singleEntry;
     private SqlStorage<T> logStorage;
+    private SegmentCursor segmentCursor;
 
     public AndroidLogSerializer(AndroidLogEntry entry) {
         this.singleEntry = entry;
@@ -29,6 +30,13 @@ public class AndroidLogSerializer <T extends AndroidLogEntry>
         this.setPurger(new AndroidLogPurger<>(logStorage));
     }
 
+    /**
+     * Only serialize the entries that fit in the cursor's current segment
+     */
+    public void setSegmentCursor(SegmentCursor segmentCursor) {
+        this.segmentCursor = segmentCursor;
+    }
+
     @Override
     protected void serializeLog(LogEntry entry) throws IOException {
         String dateString = DateUtils.formatDateTime(entry.getTime(), DateUtils.FORMAT_ISO8601);
@@ -66,6 +74,8 @@ public class AndroidLogSerializer <T extends AndroidLogEntry>
         try {
             if (singleEntry != null) {
                 serializeLog(singleEntry.getID(), singleEntry);
+            } else if (segmentCursor != null) {
+                segmentCursor.serializeEntries(logStorage, entry -> serializeLog(entry.getID(), entry));
             }
             else {
                 for (AndroidLogEntry entry : logStorage) {
@@ -2,6 +2,7 @@ package org.commcare.logging;
 
 import org.commcare.android.javarosa.AndroidLogEntry;
 import org.commcare.models.database.SqlStorage;
+import org.commcare.util.LogTypes;
 import org.commcare.utils.CrashUtil;
 import org.javarosa.core.api.ILogger;
 import org.javarosa.core.log.IFullLogSerializer;
@@ -15,6 +16,9 @@ import java.util.Date;
 /**
  * Logging engine for CommCare ODK Environments.
  *
+ * Entries are written to storage in the background. Anything that reads the logs back from this
+ * logger sees the queued entries too, since they are flushed first.
+ *
  * @author ctsims
  */
 public class AndroidLogger implements ILogger {
@@ -23,25 +27,32 @@ public class AndroidLogger implements ILogger {
     //when serializing a limited number of records then clearing
 
     private final SqlStorage<AndroidLogEntry> storage;
+    private final WriteBehindLogWriter<AndroidLogEntry> writer;
 
 
     public AndroidLogger(SqlStorage<AndroidLogEntry> storage) {
         this.storage = storage;
+        this.writer = new WriteBehindLogWriter<>(storage, droppedEntries ->
+                new AndroidLogEntry(LogTypes.TYPE_ERROR_STORAGE,
+                        droppedEntries + " log entries were dropped because logging fell behind",
+                        new Date()));
     }
 
     @Override
     public void log(String type, String message, Date logDate) {
-        storage.write(new AndroidLogEntry(type, message, logDate));
+        writer.write(new AndroidLogEntry(type, message, logDate));
         CrashUtil.log(message);
     }
 
     @Override
     public void clearLogs() {
+        writer.clear();
         storage.removeAll();
     }
 
     @Override
     public <T> T serializeLogs(IFullLogSerializer<T> serializer) {
+        writer.flush();
         ArrayList<LogEntry> logs = new ArrayList<>();
         for (AndroidLogEntry entry : storage) {
             logs.add(entry);
@@ -51,6 +62,7 @@ public class AndroidLogger implements ILogger {
 
     @Override
     public void serializeLogs(StreamLogSerializer serializer) throws IOException {
+        writer.flush();
         for (AndroidLogEntry entry : storage) {
             serializer.serializeLog(entry.getID(), entry);
         }
@@ -58,6 +70,7 @@ public class AndroidLogger implements ILogger {
 
     @Override
     public void serializeLogs(StreamLogSerializer serializer, int limit) throws IOException {
+        writer.flush();
         int count = 0;
         for (AndroidLogEntry entry : storage) {
             serializer.serializeLog(entry.getID(), entry);
@@ -70,16 +83,18 @@ public class AndroidLogger implements ILogger {
 
     @Override
     public void panic() {
-        //Unclear
+        // Entries queued by other loggers, e.g. xpath errors, lead up to the failure too
+        WriteBehindLogWriter.flushAll();
     }
 
     @Override
     public int logSize() {
+        writer.flush();
         return storage.getNumRecords();
     }
 
     @Override
     public void halt() {
-        //Meh.
+        WriteBehindLogWriter.flushAll();
     }
 }
@@ -1,5 +1,7 @@
 package org.commcare.logging;
 
+import com.google.common.io.CountingOutputStream;
+
 import org.commcare.AppUtils;
 import org.commcare.CommCareApplication;
 import org.commcare.android.javarosa.DeviceReportRecord;
@@ -14,6 +16,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nullable;
 
 /**
  * This class generates and serializes a device report to either a byte array
@@ -24,16 +29,28 @@ import java.util.Date;
 public class DeviceReportWriter {
     public static final String XMLNS = "http://code.javarosa.org/devicereport";
 
+    // Uncompressed size after which a segment stops taking log entries. Compresses to a few
+    // dozen KB, small enough to upload in one go over a poor connection
+    private static final long SEGMENT_SIZE_LIMIT = 256 * 1024;
+
     private final XmlSerializer serializer;
     private final OutputStream os;
     private final ArrayList<DeviceReportElement> elements = new ArrayList<>();
+    @Nullable
+    private final CountingOutputStream segmentCounter;
 
     public DeviceReportWriter(DeviceReportRecord record) throws IOException {
         this(record.openOutputStream());
     }
 
     public DeviceReportWriter(OutputStream outputStream) throws IOException {
+        this(outputStream, null);
+    }
+
+    private DeviceReportWriter(OutputStream outputStream,
+                               @Nullable CountingOutputStream segmentCounter) throws IOException {
         os = outputStream;
+        this.segmentCounter = segmentCounter;
 
         serializer = new KXmlSerializer();
         serializer.setOutput(os, "UTF-8");
@@ -42,6 +59,28 @@ public class DeviceReportWriter {
         serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
     }
 
+    /**
+     * Creates a writer for one segment of a report that is split across several records.
+     * The report is gzip compressed on its way into the record's encrypted file, in the same
+     * pass that serializes it.
+     */
+    public static DeviceReportWriter forCompressedSegment(DeviceReportRecord record) throws IOException {
+        CountingOutputStream counter =
+                new CountingOutputStream(new GZIPOutputStream(record.openOutputStream()));
+        return new DeviceReportWriter(counter, counter);
+    }
+
+    /**
+     * @return true once this segment has grown large enough that log elements should leave
+     * their remaining entries for the next one. Always false when the report isn't segmented.
+     */
+    public boolean isSegmentFull() throws IOException {
+        if (segmentCounter == null) {
+            return false;
+        }
+        serializer.flush();
+        return segmentCounter.getCount() >= SEGMENT_SIZE_LIMIT;
+    }
 
     public void addReportElement(DeviceReportElement element) {
         this.elements.add(element);
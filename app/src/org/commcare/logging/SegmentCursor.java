@@ -0,0 +1,60 @@
+package org.commcare.logging;
+
+import org.commcare.models.database.SqlStorage;
+import org.commcare.models.database.SqlStorageIterator;
+import org.javarosa.core.services.storage.Persistable;
+
+import java.io.IOException;
+
+/**
+ * Tracks how far a log serializer got through its storage when a device report is split into
+ * segments, so that each segment picks up after the last entry the previous one took.
+ *
+ * Move the cursor to each segment's writer before that segment is written, and keep writing
+ * segments while {@link #hasMoreEntries()}.
+ */
+public class SegmentCursor {
+    private DeviceReportWriter segmentWriter;
+    private int lastSerializedId = -1;
+    private boolean hasMoreEntries = true;
+
+    interface EntrySerializer<T> {
+        void serialize(T entry) throws IOException;
+    }
+
+    public void moveTo(DeviceReportWriter segmentWriter) {
+        this.segmentWriter = segmentWriter;
+    }
+
+    /**
+     * @return false once every entry has been serialized into a segment, or serializing them
+     * failed part way through
+     */
+    public boolean hasMoreEntries() {
+        return hasMoreEntries;
+    }
+
+    /**
+     * Serializes entries after the last one taken, until the storage is exhausted or the
+     * current segment is full
+     */
+    <T extends Persistable> void serializeEntries(SqlStorage<T> storage,
+                                                  EntrySerializer<T> serializer) throws IOException {
+        // Only set once the segment fills up, so a failing entry can't keep producing segments
+        hasMoreEntries = false;
+        SqlStorageIterator<T> iterator = storage.iterateAfter(lastSerializedId);
+        try {
+            while (iterator.hasMore()) {
+                if (segmentWriter.isSegmentFull()) {
+                    hasMoreEntries = true;
+                    return;
+                }
+                T entry = iterator.nextRecord();
+                serializer.serialize(entry);
+                lastSerializedId = entry.getID();
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+}
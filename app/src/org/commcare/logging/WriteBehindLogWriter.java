@@ -0,0 +1,193 @@
+package org.commcare.logging;
+
+import android.util.Log;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.models.database.SqlStorage;
+import org.javarosa.core.services.storage.Persistable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+
+/**
+ * Queues log entries in memory and writes them to storage in batches from a background thread,
+ * so that logging doesn't cost a database transaction on the calling thread.
+ *
+ * The queue is bounded: once it is full, new entries are dropped and counted rather than making
+ * the caller wait. A single flusher thread services every active writer, committing each batch in
+ * one transaction. Callers that need the logs to be in storage, like log submission, should call
+ * {@link #flushAll()} first.
+ */
+public class WriteBehindLogWriter<T extends Persistable> {
+    private static final String TAG = WriteBehindLogWriter.class.getSimpleName();
+
+    private static final int CAPACITY = 2000;
+    private static final int BATCH_SIZE = 200;
+    private static final long FLUSH_INTERVAL_MS = 2000;
+
+    private static final Set<WriteBehindLogWriter<?>> activeWriters = new CopyOnWriteArraySet<>();
+    private static Thread flusher;
+
+    private final SqlStorage<T> storage;
+    @Nullable
+    private final DropNoticeFactory<T> dropNoticeFactory;
+
+    private final ConcurrentLinkedQueue<T> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger droppedCount = new AtomicInteger();
+    private final AtomicInteger unreportedDropCount = new AtomicInteger();
+    private final Object flushLock = new Object();
+    private volatile boolean retired;
+
+    public interface DropNoticeFactory<T> {
+        /**
+         * @return an entry recording that entries were dropped, written with the next batch
+         */
+        T createDropNotice(int droppedEntries);
+    }
+
+    public WriteBehindLogWriter(SqlStorage<T> storage, @Nullable DropNoticeFactory<T> dropNoticeFactory) {
+        this.storage = storage;
+        this.dropNoticeFactory = dropNoticeFactory;
+        activeWriters.add(this);
+        startFlusher();
+    }
+
+    private static synchronized void startFlusher() {
+        if (flusher != null) {
+            return;
+        }
+        flusher = new Thread(() -> {
+            while (true) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS));
+                for (WriteBehindLogWriter<?> writer : activeWriters) {
+                    writer.flush();
+                }
+            }
+        }, "log-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Queues an entry to be written, or drops it if the queue is full
+     *
+     * @return false if the entry was dropped
+     */
+    public boolean write(T entry) {
+        int queued = pendingCount.incrementAndGet();
+        if (queued > CAPACITY) {
+            pendingCount.decrementAndGet();
+            droppedCount.incrementAndGet();
+            unreportedDropCount.incrementAndGet();
+            return false;
+        }
+        pending.offer(entry);
+        if (retired) {
+            // nothing will flush this writer in the background anymore
+            flush();
+        } else if (queued % BATCH_SIZE == 0) {
+            LockSupport.unpark(flusher);
+        }
+        return true;
+    }
+
+    /**
+     * Writes every queued entry to storage on the calling thread
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            while (writeBatch()) {
+                // keep going until the queue is drained
+            }
+        }
+    }
+
+    /**
+     * Discards every queued entry without writing it
+     */
+    public void clear() {
+        synchronized (flushLock) {
+            while (pending.poll() != null) {
+                pendingCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return how many entries have been dropped because the queue was full or storage failed
+     */
+    public int getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return true if a full batch was written, so that more entries may be waiting
+     */
+    private boolean writeBatch() {
+        List<T> batch = new ArrayList<>();
+        T entry;
+        while (batch.size() < BATCH_SIZE && (entry = pending.poll()) != null) {
+            batch.add(entry);
+            pendingCount.decrementAndGet();
+        }
+        if (batch.isEmpty()) {
+            return false;
+        }
+        int unreportedDrops = unreportedDropCount.getAndSet(0);
+        if (unreportedDrops > 0 && dropNoticeFactory != null) {
+            batch.add(dropNoticeFactory.createDropNotice(unreportedDrops));
+        }
+
+        try {
+            SQLiteDatabase db = storage.getAccessLock();
+            db.beginTransaction();
+            try {
+                for (T toWrite : batch) {
+                    storage.write(toWrite);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            // Storage is gone, e.g. the user db closed on logout. Logging the failure through
+            // Logger would only queue up more entries, so just count them
+            droppedCount.addAndGet(batch.size());
+            Log.w(TAG, "Dropped " + batch.size() + " log entries that couldn't be written", e);
+            return false;
+        }
+        return batch.size() >= BATCH_SIZE;
+    }
+
+    /**
+     * Writes the queued entries of every active writer
+     */
+    public static void flushAll() {
+        for (WriteBehindLogWriter<?> writer : activeWriters) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Writes the queued entries of every active writer and stops servicing them in the
+     * background, for when the storage logs are written to changes. Anything still written to a
+     * retired writer is written straight away.
+     */
+    public static void retireAll() {
+        for (WriteBehindLogWriter<?> writer : activeWriters) {
+            activeWriters.remove(writer);
+            writer.retired = true;
+            writer.flush();
+        }
+    }
+}
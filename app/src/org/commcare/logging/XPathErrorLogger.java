@@ -14,27 +14,27 @@ public enum XPathErrorLogger {
      */
     INSTANCE;
 
-    private static SqlStorage<XPathErrorEntry> logStorage;
+    private static WriteBehindLogWriter<XPathErrorEntry> logWriter;
 
     public static void registerStorage(SqlStorage<XPathErrorEntry> storage) {
-        logStorage = storage;
+        logWriter = new WriteBehindLogWriter<>(storage, null);
     }
 
     public void logErrorToCurrentApp(String source, String message) {
-        if (logStorage != null) {
-            logStorage.write(new XPathErrorEntry(source, message));
+        if (logWriter != null) {
+            logWriter.write(new XPathErrorEntry(source, message));
         }
     }
 
     public void logErrorToCurrentApp(String message) {
-        if (logStorage != null) {
-            logStorage.write(new XPathErrorEntry(null, message));
+        if (logWriter != null) {
+            logWriter.write(new XPathErrorEntry(null, message));
         }
     }
 
     public void logErrorToCurrentApp(XPathException exception) {
-        if (logStorage != null) {
-            logStorage.write(new XPathErrorEntry(exception.getSource(), exception.getMessage()));
+        if (logWriter != null) {
+            logWriter.write(new XPathErrorEntry(exception.getSource(), exception.getMessage()));
         }
     }
 }
@@ -18,6 +18,7 @@ public class XPathErrorSerializer
         implements DeviceReportElement {
     private final SqlStorage<XPathErrorEntry> errorLogStorage;
     private XmlSerializer serializer;
+    private SegmentCursor segmentCursor;
 
     /**
      * Report format version for ability to dispatch different parser on server
@@ -29,6 +30,13 @@ public class XPathErrorSerializer
         this.setPurger(new AndroidLogPurger<>(errorLogStorage));
     }
 
+    /**
+     * Only serialize the entries that fit in the cursor's current segment
+     */
+    public void setSegmentCursor(SegmentCursor segmentCursor) {
+        this.segmentCursor = segmentCursor;
+    }
+
     @Override
     public void writeToDeviceReport(XmlSerializer serializer) throws IOException {
         this.serializer = serializer;
@@ -37,8 +45,12 @@ public class XPathErrorSerializer
         serializer.attribute(null, "version", ERROR_FORMAT_VERSION + "");
 
         try {
-            for (XPathErrorEntry entry : errorLogStorage) {
-                serializeLog(entry.getID(), entry);
+            if (segmentCursor != null) {
+                segmentCursor.serializeEntries(errorLogStorage, entry -> serializeLog(entry.getID(), entry));
+            } else {
+                for (XPathErrorEntry entry : errorLogStorage) {
+                    serializeLog(entry.getID(), entry);
+                }
             }
         } finally {
             serializer.endTag(DeviceReportWriter.XMLNS, "user_error_subreport");
@@ -0,0 +1,328 @@
+package org.commcare.models;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.util.Log;
+
+import org.commcare.CommCareApp;
+import org.commcare.CommCareApplication;
+import org.commcare.android.database.app.models.FormDefRecord;
+import org.commcare.android.logging.ForceCloseLogger;
+import org.commcare.android.resource.installers.XFormAndroidInstaller;
+import org.commcare.engine.extensions.XFormExtensionUtils;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.preferences.DeveloperPreferences;
+import org.commcare.util.LogTypes;
+import org.commcare.utils.AndroidCommCarePlatform;
+import org.commcare.utils.FileUtil;
+import org.commcare.utils.GlobalConstants;
+import org.javarosa.core.io.StreamsUtil;
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.services.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Binary cache of parsed forms, so that opening a form doesn't have to parse its xml.
+ *
+ * Serialized FormDefs are kept in the app's cache directory under the MD5 of the form xml, which
+ * is computed when the form is installed and stored on its FormDefRecord. Since entries are
+ * content addressed they are written once and never rewritten, and an app update that leaves a
+ * form unchanged keeps using the existing entry.
+ *
+ * After an app is initialized the most opened forms can be serialized in the background, so that
+ * even the first open after an install or update skips the xml parse. A few deserialized FormDefs
+ * can also be kept in memory. Form entry fills in the FormDef it is given, so each of those is
+ * handed out once and replaced in the background.
+ */
+public class FormDefCache {
+    private static final String TAG = FormDefCache.class.getSimpleName();
+
+    private static final String OPEN_COUNT_KEY_PREFIX = "form-def-open-count-";
+    private static final int PREWARM_FORM_COUNT = 10;
+    private static final int MEMORY_CACHE_SIZE = 3;
+
+    private static final ExecutorService backgroundExecutor =
+            Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "form-def-cache");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static final Map<String, FormDef> parsedForms =
+            new LinkedHashMap<String, FormDef>(MEMORY_CACHE_SIZE + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, FormDef> eldest) {
+                    return size() > MEMORY_CACHE_SIZE;
+                }
+            };
+
+    private static boolean formParsersRegistered;
+
+    /**
+     * @return the MD5 hash of the record's form xml, computing and storing it if the record
+     * predates form hashes. Form files aren't rewritten in place, since a changed form is
+     * installed under a new record, so a stored hash is never recomputed.
+     */
+    public static String getFormHash(SqlStorage<FormDefRecord> formDefStorage,
+                                     FormDefRecord formDefRecord) {
+        String hash = formDefRecord.getFormHash();
+        if (hash == null) {
+            hash = FileUtil.getMd5Hash(new File(formDefRecord.getFilePath()));
+            if (hash != null) {
+                formDefRecord.setFormHash(hash);
+                formDefStorage.write(formDefRecord);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Loads a form, from memory or the binary cache if possible and from its xml otherwise. Forms
+     * loaded from xml are added to the binary cache.
+     *
+     * @param formHash hash of the form xml, or null to skip the cache
+     */
+    public static FormDef loadFormDef(Context context, String formHash, File formXml) {
+        if (formHash == null) {
+            return loadFormFromFile(formXml);
+        }
+
+        FormDef fd = takeParsedForm(formHash);
+        if (fd == null) {
+            File formBin = getCachedForm(CommCareApplication.instance().getCurrentApp(), formHash);
+            if (formBin.exists()) {
+                Log.i(TAG, "Attempting to load " + formXml.getName() +
+                        " from cached file: " + formBin.getAbsolutePath());
+                fd = deserializeFormDef(context, formBin);
+                if (fd == null) {
+                    Logger.log(LogTypes.TYPE_RESOURCES,
+                            "Deserialization of " + formXml.getName() + " form failed.");
+                    // Remove the file, and make a new .formdef from xml
+                    formBin.delete();
+                }
+            }
+
+            if (fd == null) {
+                fd = loadFormFromFile(formXml);
+                try {
+                    serializeFormDef(fd, formBin);
+                } catch (Exception e) {
+                    // The cache is a bonus, so if we can't write it, don't crash, but log
+                    // it so we can clean up whatever is preventing the cached version from
+                    // working
+                    Logger.log(LogTypes.TYPE_RESOURCES, "XForm could not be serialized. Error trace:\n" +
+                            ForceCloseLogger.getStackTrace(e));
+                }
+            }
+        }
+
+        refillParsedFormInBackground(CommCareApplication.instance().getCurrentApp(), formHash);
+        return fd;
+    }
+
+    /**
+     * Count an open of the given form, which decides the forms that are prewarmed
+     */
+    public static void recordFormOpened(String jrFormId) {
+        SharedPreferences prefs = CommCareApplication.instance().getCurrentApp().getAppPreferences();
+        String key = OPEN_COUNT_KEY_PREFIX + jrFormId;
+        prefs.edit().putInt(key, prefs.getInt(key, 0) + 1).apply();
+    }
+
+    /**
+     * Serialize the app's most opened forms in the background, if they aren't already cached
+     */
+    public static void prewarmInBackground(final CommCareApp app) {
+        if (!DeveloperPreferences.isFormDefPrewarmEnabled()) {
+            return;
+        }
+        // registered before the prewarm starts, so that its parses never overlap a registration
+        registerFormParsers();
+        backgroundExecutor.execute(() -> {
+            try {
+                prewarm(app);
+            } catch (Exception e) {
+                Logger.log(LogTypes.TYPE_RESOURCES, "Prewarming the form cache failed: " + e.getMessage());
+            }
+        });
+    }
+
+    static void prewarm(CommCareApp app) {
+        AndroidCommCarePlatform platform = app.getCommCarePlatform();
+        SqlStorage<FormDefRecord> formDefStorage = platform.getFormDefStorage();
+        final SharedPreferences prefs = app.getAppPreferences();
+
+        List<String> namespaces = new ArrayList<>(platform.getInstalledForms());
+        Collections.sort(namespaces, (first, second) ->
+                Integer.compare(prefs.getInt(OPEN_COUNT_KEY_PREFIX + second, 0),
+                        prefs.getInt(OPEN_COUNT_KEY_PREFIX + first, 0)));
+
+        int prewarmed = 0;
+        for (String namespace : namespaces.subList(0, Math.min(PREWARM_FORM_COUNT, namespaces.size()))) {
+            int formDefId = platform.getFormDefId(namespace);
+            if (formDefId == -1) {
+                continue;
+            }
+            FormDefRecord formDefRecord = formDefStorage.read(formDefId);
+            String hash = getFormHash(formDefStorage, formDefRecord);
+            if (hash == null) {
+                continue;
+            }
+            File formBin = getCachedForm(app, hash);
+            if (formBin.exists()) {
+                continue;
+            }
+            try {
+                serializeFormDef(loadFormFromFile(new File(formDefRecord.getFilePath())), formBin);
+                prewarmed++;
+            } catch (Exception e) {
+                Logger.log(LogTypes.TYPE_RESOURCES,
+                        "Form " + namespace + " could not be prewarmed: " + e.getMessage());
+            }
+        }
+        Log.i(TAG, "Prewarmed " + prewarmed + " forms");
+    }
+
+    private static synchronized FormDef takeParsedForm(String formHash) {
+        if (!DeveloperPreferences.isFormDefMemoryCacheEnabled()) {
+            parsedForms.clear();
+            return null;
+        }
+        return parsedForms.remove(formHash);
+    }
+
+    private static synchronized boolean hasParsedForm(String formHash) {
+        return parsedForms.containsKey(formHash);
+    }
+
+    private static synchronized void offerParsedForm(String formHash, FormDef fd) {
+        parsedForms.put(formHash, fd);
+    }
+
+    private static void refillParsedFormInBackground(final CommCareApp app, final String formHash) {
+        if (!DeveloperPreferences.isFormDefMemoryCacheEnabled()) {
+            return;
+        }
+        backgroundExecutor.execute(() -> {
+            File formBin = getCachedForm(app, formHash);
+            if (hasParsedForm(formHash) || !formBin.exists()) {
+                return;
+            }
+            FormDef fd = deserializeFormDef(CommCareApplication.instance(), formBin);
+            if (fd != null) {
+                offerParsedForm(formHash, fd);
+            }
+        });
+    }
+
+    private static FormDef loadFormFromFile(File formXmlFile) {
+        FileInputStream fis;
+        // no binary, read from xml
+        Log.i(TAG, "Attempting to load from: " + formXmlFile.getAbsolutePath());
+        try {
+            fis = new FileInputStream(formXmlFile);
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException("Error reading XForm file", e);
+        }
+        registerFormParsers();
+        FormDef fd;
+        try {
+            fd = XFormExtensionUtils.getFormFromInputStream(fis);
+        } finally {
+            StreamsUtil.closeStream(fis);
+        }
+        if (fd == null) {
+            throw new RuntimeException("Error reading XForm file: FormDef is null");
+        }
+        if (DeveloperPreferences.useExpressionCachingInForms()) {
+            fd.enableExpressionCaching();
+        }
+        return fd;
+    }
+
+    /**
+     * Registers the Android form parsers once, rather than on every load, since parses can run on
+     * the background thread at the same time
+     */
+    private static synchronized void registerFormParsers() {
+        if (!formParsersRegistered) {
+            XFormAndroidInstaller.registerAndroidLevelFormParsers();
+            formParsersRegistered = true;
+        }
+    }
+
+    /**
+     * Read serialized {@link FormDef} from file and recreate as object.
+     */
+    private static FormDef deserializeFormDef(Context context, File formDefFile) {
+        FileInputStream fis = null;
+        DataInputStream dis = null;
+        FormDef fd;
+        try {
+            // create new form def
+            fd = new FormDef(DeveloperPreferences.useExpressionCachingInForms());
+            fis = new FileInputStream(formDefFile);
+            dis = new DataInputStream(new BufferedInputStream(fis));
+
+            // read serialized formdef into new formdef
+            fd.readExternal(dis, CommCareApplication.instance().getPrototypeFactory(context));
+        } catch (Throwable e) {
+            e.printStackTrace();
+            fd = null;
+        } finally {
+            StreamsUtil.closeStream(fis);
+            StreamsUtil.closeStream(dis);
+        }
+
+        return fd;
+    }
+
+    /**
+     * Write the FormDef to the file system as a binary blob, unless there already is one at this
+     * hash. The blob is written to a temporary file first so that a partly written entry is never
+     * visible under the hash.
+     */
+    private static void serializeFormDef(FormDef fd, File formDef) throws IOException {
+        if (formDef.exists()) {
+            return;
+        }
+        File tempFile = new File(formDef.getPath() + ".tmp-" + Thread.currentThread().getId());
+        DataOutputStream dos = null;
+        try {
+            dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            fd.writeExternal(dos);
+            dos.close();
+            dos = null;
+            if (!formDef.exists() && !tempFile.renameTo(formDef)) {
+                throw new IOException("Unable to move serialized form to " + formDef.getPath());
+            }
+        } finally {
+            StreamsUtil.closeStream(dos);
+            tempFile.delete();
+        }
+    }
+
+    private static File getCachedForm(CommCareApp app, String hash) {
+        return new File(app.fsPath(GlobalConstants.FILE_CC_CACHE) + "/" + hash + ".formdef");
+    }
+}
@@ -6,8 +6,12 @@ import org.commcare.models.AndroidPrototypeFactory;
 import org.javarosa.core.util.externalizable.Externalizable;
 import org.javarosa.core.util.externalizable.PrototypeFactory;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Enumeration;
@@ -20,6 +24,8 @@ import dalvik.system.DexFile;
  * @author Phillip Mates (pmates@dimagi.com)
  */
 public class AndroidPrototypeFactorySetup {
+    // generated by the build from the compiled classes, see app/build.gradle
+    private static final String PROTOTYPE_REGISTRY_ASSET = "prototype_classes.txt";
     private static final String[] packageNames = new String[]{"org.javarosa", "org.commcare", "org.odk.collect"};
     private static PrototypeFactory factory;
 
@@ -45,10 +51,48 @@ public class AndroidPrototypeFactorySetup {
     }
 
     /**
-     * Scans all classes accessible from the context class loader which belong to the given package and subpackages.
+     * @return names of the Externalizable classes the PrototypeFactory should know about. These
+     * come from the registry generated at build time, falling back to scanning the app's dex file
+     * for builds that don't have one.
      */
     public static List<String> getClasses(Context c)
             throws IOException {
+        List<String> registeredClasses = readPrototypeRegistry(c);
+        if (registeredClasses != null) {
+            return registeredClasses;
+        }
+        return scanDexFileForClasses(c);
+    }
+
+    /**
+     * @return the class names listed in the build's prototype registry asset, or null if the
+     * build doesn't include one
+     */
+    public static List<String> readPrototypeRegistry(Context c) throws IOException {
+        InputStream is;
+        try {
+            is = c.getAssets().open(PROTOTYPE_REGISTRY_ASSET);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        ArrayList<String> classNames = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    classNames.add(line);
+                }
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * Scans all classes accessible from the context class loader which belong to the given package and subpackages.
+     */
+    private static List<String> scanDexFileForClasses(Context c)
+            throws IOException {
         ArrayList<String> classNames = new ArrayList<>();
 
         String zpath = c.getApplicationInfo().sourceDir;
@@ -0,0 +1,128 @@
+package org.commcare.models.database;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts rows into a table through compiled multi-row insert statements, rather than one
+ * insert per row.
+ *
+ * Rows are buffered and written a full statement at a time; the statement for a full batch is
+ * compiled once and reused. Call {@link #flush()} to write any remaining rows, and close the
+ * inserter to release its statement. The caller is responsible for the surrounding transaction.
+ */
+public class BulkInserter implements Closeable {
+    // SQLite's default limit on the number of arguments bound to a single statement
+    private static final int MAX_BOUND_ARGUMENTS = 999;
+    private static final int MAX_ROWS_PER_STATEMENT = 100;
+
+    private final SQLiteDatabase db;
+    private final String table;
+    private final String[] columns;
+    private final int rowsPerStatement;
+    private final List<Object[]> pendingRows = new ArrayList<>();
+    private SQLiteStatement fullBatchInsert;
+    private int rowsWritten;
+
+    public BulkInserter(SQLiteDatabase db, String table, String[] columns) {
+        this.db = db;
+        this.table = table;
+        this.columns = columns;
+        this.rowsPerStatement = Math.min(MAX_ROWS_PER_STATEMENT, MAX_BOUND_ARGUMENTS / columns.length);
+    }
+
+    /**
+     * @param values one value per column. Integers and longs are bound as numbers, anything else
+     *               other than null as its string value
+     */
+    public void addRow(Object... values) {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values for " + table
+                    + " but got " + values.length);
+        }
+        pendingRows.add(values);
+        if (pendingRows.size() == rowsPerStatement) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes any buffered rows
+     */
+    public void flush() {
+        if (pendingRows.isEmpty()) {
+            return;
+        }
+        if (pendingRows.size() == rowsPerStatement) {
+            if (fullBatchInsert == null) {
+                fullBatchInsert = db.compileStatement(getInsertSql(rowsPerStatement));
+            }
+            execute(fullBatchInsert);
+        } else {
+            SQLiteStatement partialBatchInsert = db.compileStatement(getInsertSql(pendingRows.size()));
+            try {
+                execute(partialBatchInsert);
+            } finally {
+                partialBatchInsert.close();
+            }
+        }
+        rowsWritten += pendingRows.size();
+        pendingRows.clear();
+    }
+
+    public int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    private void execute(SQLiteStatement insert) {
+        int argument = 1;
+        for (Object[] row : pendingRows) {
+            for (Object value : row) {
+                if (value == null) {
+                    insert.bindNull(argument);
+                } else if (value instanceof Integer || value instanceof Long) {
+                    insert.bindLong(argument, ((Number)value).longValue());
+                } else {
+                    insert.bindString(argument, value.toString());
+                }
+                argument++;
+            }
+        }
+        insert.execute();
+        insert.clearBindings();
+    }
+
+    private String getInsertSql(int rows) {
+        StringBuilder rowArguments = new StringBuilder("(");
+        for (int i = 0; i < columns.length; i++) {
+            rowArguments.append(i == 0 ? "?" : ", ?");
+        }
+        rowArguments.append(")");
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns[i]);
+        }
+        sql.append(") VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ", ").append(rowArguments);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Releases the compiled statement. Rows that haven't been flushed are dropped.
+     */
+    @Override
+    public void close() {
+        pendingRows.clear();
+        if (fullBatchInsert != null) {
+            fullBatchInsert.close();
+            fullBatchInsert = null;
+        }
+    }
+}
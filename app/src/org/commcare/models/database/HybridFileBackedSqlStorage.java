@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -348,7 +349,7 @@ public class HybridFileBackedSqlStorage<T extends Persistable> extends SqlStorag
     protected DataOutputStream getOutputFileStream(String filename,
                                                    byte[] aesKeyBytes) throws IOException {
         SecretKeySpec aesKey = new SecretKeySpec(aesKeyBytes, "AES");
-        return new DataOutputStream(EncryptionIO.createFileOutputStream(filename, aesKey));
+        return new DataOutputStream(EncryptionIO.createChunkedFileOutputStream(filename, aesKey));
     }
 
     @Override
@@ -488,6 +489,19 @@ public class HybridFileBackedSqlStorage<T extends Persistable> extends SqlStorag
         }
     }
 
+    @Override
+    public void removeIdRanges(List<Pair<Integer, Integer>> idRanges) {
+        // Records may be backed by files, which are found by id
+        SQLiteDatabase db = getDbOrThrow();
+        List<Integer> ids = new ArrayList<>();
+        for (Pair<Integer, Integer> range : idRanges) {
+            Cursor c = db.query(table, new String[]{DatabaseHelper.ID_COL}, ID_RANGE_WHERE_CLAUSE,
+                    getIdRangeArgs(range), null, null, null);
+            ids.addAll(fillIdWindow(c, DatabaseHelper.ID_COL, null));
+        }
+        remove(ids);
+    }
+
     @Override
     public void removeAll() {
         wipeTable(getDbOrThrow(), table);
@@ -566,6 +580,14 @@ public class HybridFileBackedSqlStorage<T extends Persistable> extends SqlStorag
         throw new UnsupportedOperationException("iterate method unsupported");
     }
 
+    @Override
+    public SqlStorageIterator<T> iterateAfter(int lastId) {
+        Cursor c = getDbOrThrow().query(table, dataColumns,
+                DatabaseHelper.ID_COL + " > CAST(? as INT)", new String[]{String.valueOf(lastId)},
+                null, null, DatabaseHelper.ID_COL);
+        return new HybridFileBackedStorageIterator<>(c, this);
+    }
+
     /**
      * For testing only
      */
@@ -0,0 +1,350 @@
+package org.commcare.models.database;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+
+/**
+ * Immutable, sorted set of storage record ids held as primitives.
+ *
+ * Large id result sets (case index lookups, multi-predicate storage queries)
+ * are far cheaper to hold this way than as boxed Vector<Integer> or
+ * LinkedHashSet<Integer> results. Dense sets, where the bitmap over
+ * [0, max] is smaller than the sorted array would be, are stored as a
+ * BitSet instead.
+ *
+ * Set operations return new sets and never modify their inputs.
+ */
+public final class RecordIdSet {
+
+    public static final RecordIdSet EMPTY = new RecordIdSet(new int[0], null, 0);
+
+    /**
+     * Sorted, duplicate free ids. Null when the set is bitmap backed.
+     */
+    private final int[] sortedIds;
+
+    /**
+     * Bit n is set iff id n is in the set. Null when the set is array backed.
+     */
+    private final BitSet bitmap;
+
+    private final int size;
+
+    private RecordIdSet(int[] sortedIds, BitSet bitmap, int size) {
+        this.sortedIds = sortedIds;
+        this.bitmap = bitmap;
+        this.size = size;
+    }
+
+    /**
+     * @param sortedIds ids in strictly ascending order; the first length entries are used
+     */
+    private static RecordIdSet fromSortedArray(int[] sortedIds, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+        int max = sortedIds[length - 1];
+        if (sortedIds[0] >= 0 && shouldUseBitmap(length, max)) {
+            BitSet bits = new BitSet(max + 1);
+            for (int i = 0; i < length; ++i) {
+                bits.set(sortedIds[i]);
+            }
+            return new RecordIdSet(null, bits, length);
+        }
+        if (length != sortedIds.length) {
+            sortedIds = Arrays.copyOf(sortedIds, length);
+        }
+        return new RecordIdSet(sortedIds, null, length);
+    }
+
+    private static RecordIdSet fromBitmap(BitSet bits) {
+        int cardinality = bits.cardinality();
+        if (cardinality == 0) {
+            return EMPTY;
+        }
+        if (shouldUseBitmap(cardinality, bits.length() - 1)) {
+            return new RecordIdSet(null, bits, cardinality);
+        }
+        int[] ids = new int[cardinality];
+        int i = 0;
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            ids[i++] = id;
+        }
+        return new RecordIdSet(ids, null, cardinality);
+    }
+
+    /**
+     * A bitmap over [0, max] costs max / 8 bytes, a sorted array 4 bytes per id.
+     */
+    private static boolean shouldUseBitmap(int count, int max) {
+        return max / 8 < count * 4L;
+    }
+
+    public static RecordIdSet of(int... ids) {
+        Builder builder = new Builder(ids.length);
+        for (int id : ids) {
+            builder.add(id);
+        }
+        return builder.build();
+    }
+
+    public static RecordIdSet copyOf(Iterable<Integer> ids) {
+        Builder builder = new Builder();
+        for (Integer id : ids) {
+            builder.add(id);
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isBitmapBacked() {
+        return bitmap != null;
+    }
+
+    public boolean contains(int id) {
+        if (bitmap != null) {
+            return id >= 0 && bitmap.get(id);
+        }
+        return Arrays.binarySearch(sortedIds, 0, size, id) >= 0;
+    }
+
+    /**
+     * @return The smallest id in the set
+     * @throws NoSuchElementException if the set is empty
+     */
+    public int first() {
+        if (size == 0) {
+            throw new NoSuchElementException("Empty id set");
+        }
+        return bitmap != null ? bitmap.nextSetBit(0) : sortedIds[0];
+    }
+
+    /**
+     * @return the ids in ascending order, in a newly allocated array
+     */
+    public int[] toArray() {
+        if (bitmap == null) {
+            return Arrays.copyOf(sortedIds, size);
+        }
+        int[] ids = new int[size];
+        int i = 0;
+        for (int id = bitmap.nextSetBit(0); id >= 0; id = bitmap.nextSetBit(id + 1)) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+
+    public void forEach(IdVisitor visitor) {
+        if (bitmap == null) {
+            for (int i = 0; i < size; ++i) {
+                visitor.visit(sortedIds[i]);
+            }
+        } else {
+            for (int id = bitmap.nextSetBit(0); id >= 0; id = bitmap.nextSetBit(id + 1)) {
+                visitor.visit(id);
+            }
+        }
+    }
+
+    public RecordIdSet intersect(RecordIdSet other) {
+        if (isEmpty() || other.isEmpty()) {
+            return EMPTY;
+        }
+        if (bitmap != null && other.bitmap != null) {
+            BitSet result = (BitSet)bitmap.clone();
+            result.and(other.bitmap);
+            return fromBitmap(result);
+        }
+        // walk the array backed side and probe the other, which is O(1) for
+        // bitmaps and a linear merge for two arrays
+        if (bitmap != null) {
+            return other.intersect(this);
+        }
+        int[] result = new int[Math.min(size, other.size)];
+        int count = 0;
+        if (other.bitmap != null) {
+            for (int i = 0; i < size; ++i) {
+                if (other.contains(sortedIds[i])) {
+                    result[count++] = sortedIds[i];
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < size && j < other.size) {
+                int a = sortedIds[i];
+                int b = other.sortedIds[j];
+                if (a == b) {
+                    result[count++] = a;
+                    i++;
+                    j++;
+                } else if (a < b) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+        }
+        return fromSortedArray(result, count);
+    }
+
+    public RecordIdSet union(RecordIdSet other) {
+        if (isEmpty()) {
+            return other;
+        } else if (other.isEmpty()) {
+            return this;
+        }
+        if (bitmap != null && other.bitmap != null) {
+            BitSet result = (BitSet)bitmap.clone();
+            result.or(other.bitmap);
+            return fromBitmap(result);
+        }
+        int[] a = toArray();
+        int[] b = other.toArray();
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                result[count++] = a[i++];
+                j++;
+            } else if (a[i] < b[j]) {
+                result[count++] = a[i++];
+            } else {
+                result[count++] = b[j++];
+            }
+        }
+        while (i < a.length) {
+            result[count++] = a[i++];
+        }
+        while (j < b.length) {
+            result[count++] = b[j++];
+        }
+        return fromSortedArray(result, count);
+    }
+
+    /**
+     * @return the ids in this set which are not in the other set
+     */
+    public RecordIdSet difference(RecordIdSet other) {
+        if (isEmpty() || other.isEmpty()) {
+            return this;
+        }
+        if (bitmap != null && other.bitmap != null) {
+            BitSet result = (BitSet)bitmap.clone();
+            result.andNot(other.bitmap);
+            return fromBitmap(result);
+        }
+        int[] ids = toArray();
+        int[] result = new int[ids.length];
+        int count = 0;
+        for (int id : ids) {
+            if (!other.contains(id)) {
+                result[count++] = id;
+            }
+        }
+        return fromSortedArray(result, count);
+    }
+
+    /**
+     * Boxed copy for callers still bound to the IStorageUtilityIndexed return types
+     */
+    public Vector<Integer> toVector() {
+        final Vector<Integer> ids = new Vector<>(size);
+        forEach(ids::add);
+        return ids;
+    }
+
+    /**
+     * Boxed copy for callers still bound to the CaseIndexTable return types
+     */
+    public LinkedHashSet<Integer> toLinkedHashSet() {
+        final LinkedHashSet<Integer> ids = new LinkedHashSet<>(size * 2);
+        forEach(ids::add);
+        return ids;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof RecordIdSet)) {
+            return false;
+        }
+        RecordIdSet other = (RecordIdSet)o;
+        return size == other.size && Arrays.equals(toArray(), other.toArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    public interface IdVisitor {
+        void visit(int id);
+    }
+
+    /**
+     * Accumulates ids in any order, with duplicates, into a growable primitive
+     * buffer. Sorting and de-duplication only happen in build() and are
+     * skipped when ids arrived in ascending order, as they do from rowid
+     * ordered queries.
+     */
+    public static final class Builder {
+        private int[] ids;
+        private int count;
+        private boolean ascending = true;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int expectedSize) {
+            ids = new int[Math.max(expectedSize, 1)];
+        }
+
+        public Builder add(int id) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            if (count > 0 && ids[count - 1] >= id) {
+                ascending = false;
+            }
+            ids[count++] = id;
+            return this;
+        }
+
+        public RecordIdSet build() {
+            if (!ascending) {
+                Arrays.sort(ids, 0, count);
+                int unique = 0;
+                for (int i = 0; i < count; ++i) {
+                    if (unique == 0 || ids[unique - 1] != ids[i]) {
+                        ids[unique++] = ids[i];
+                    }
+                }
+                count = unique;
+            }
+            RecordIdSet set = fromSortedArray(ids, count);
+            // the builder must not alias the array handed to the set
+            ids = new int[1];
+            count = 0;
+            ascending = true;
+            return set;
+        }
+    }
+}
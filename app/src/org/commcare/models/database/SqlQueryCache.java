@@ -0,0 +1,190 @@
+package org.commcare.models.database;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+import org.commcare.modern.database.DatabaseHelper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-table cache of the SQL issued by SqlStorage's fixed-shape queries.
+ *
+ * Query text is built once per (shape, projection, argument list) and
+ * reused, which saves the string building on every call and, because the
+ * text is identical each time, lets SQLCipher's per-connection compiled
+ * statement cache serve the query instead of recompiling it.
+ *
+ * Scalar queries and inserts are additionally held as compiled
+ * SQLiteStatements, per database handle, since the same table name can
+ * exist in several databases (e.g. fixtures in the app and user databases).
+ * The statements reference the handle they were compiled on, so whoever
+ * closes a handle has to call release() for it first.
+ */
+public class SqlQueryCache {
+
+    private static final ConcurrentHashMap<String, SqlQueryCache> tableCaches = new ConcurrentHashMap<>();
+
+    private final String table;
+
+    private final Map<List<String>, String> selectByIdQueries = new HashMap<>();
+    private final Map<String, Map<List<String>, Map<String, String>>> selectInQueries = new HashMap<>();
+    // Each statement holds on to its handle, so entries stay until release()
+    private final Map<SQLiteDatabase, Map<String, SQLiteStatement>> compiledStatements =
+            new HashMap<>();
+
+    private SqlQueryCache(String table) {
+        this.table = table;
+    }
+
+    public static SqlQueryCache forTable(String table) {
+        SqlQueryCache cache = tableCaches.get(table);
+        if (cache == null) {
+            cache = new SqlQueryCache(table);
+            SqlQueryCache existing = tableCaches.putIfAbsent(table, cache);
+            if (existing != null) {
+                cache = existing;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Closes and drops the statements compiled on the given handle. Must be
+     * called before the handle is closed.
+     */
+    public static void release(SQLiteDatabase db) {
+        for (SqlQueryCache cache : tableCaches.values()) {
+            cache.releaseStatements(db);
+        }
+    }
+
+    private void releaseStatements(SQLiteDatabase db) {
+        Map<String, SQLiteStatement> statements;
+        synchronized (this) {
+            statements = compiledStatements.remove(db);
+        }
+        if (statements == null) {
+            return;
+        }
+        for (SQLiteStatement statement : statements.values()) {
+            // waits for any thread part way through running it
+            synchronized (statement) {
+                statement.close();
+            }
+        }
+    }
+
+    /**
+     * @return SELECT [projection] FROM [table] WHERE [id column] = ?
+     */
+    public synchronized String selectById(String[] projection) {
+        List<String> key = Arrays.asList(projection);
+        String sql = selectByIdQueries.get(key);
+        if (sql == null) {
+            sql = selectClause(projection) + " WHERE " + DatabaseHelper.ID_COL + " = ?";
+            selectByIdQueries.put(Arrays.asList(projection.clone()), sql);
+        }
+        return sql;
+    }
+
+    /**
+     * @param column   Column matched against the argument list
+     * @param inClause Argument placeholder list, as produced by TableBuilder.sqlList
+     * @return SELECT [projection] FROM [table] WHERE [column] IN [inClause]
+     */
+    public synchronized String selectWhereIn(String[] projection, String column, String inClause) {
+        Map<List<String>, Map<String, String>> byProjection = selectInQueries.get(column);
+        if (byProjection == null) {
+            byProjection = new HashMap<>();
+            selectInQueries.put(column, byProjection);
+        }
+        List<String> key = Arrays.asList(projection);
+        Map<String, String> byInClause = byProjection.get(key);
+        if (byInClause == null) {
+            byInClause = new HashMap<>();
+            byProjection.put(Arrays.asList(projection.clone()), byInClause);
+        }
+        // sqlList chunks are all the same size apart from the last one, so
+        // this holds very few entries per projection
+        String sql = byInClause.get(inClause);
+        if (sql == null) {
+            sql = selectClause(projection) + " WHERE " + column + " IN " + inClause;
+            byInClause.put(inClause, sql);
+        }
+        return sql;
+    }
+
+    private String selectClause(String[] projection) {
+        StringBuilder sb = new StringBuilder("SELECT ");
+        for (int i = 0; i < projection.length; ++i) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(projection[i]);
+        }
+        return sb.append(" FROM ").append(table).toString();
+    }
+
+    /**
+     * Runs a single value query through a compiled statement that is kept for
+     * the lifetime of the database handle.
+     *
+     * Callers must only use this when compiled statements are available,
+     * i.e. when SqlStorage.STORAGE_OPTIMIZATIONS_ACTIVE is set.
+     */
+    public long simpleQueryForLong(SQLiteDatabase db, String sql, String... args) {
+        SQLiteStatement statement = getCompiledStatement(db, sql);
+        synchronized (statement) {
+            statement.clearBindings();
+            for (int i = 0; i < args.length; ++i) {
+                statement.bindString(i + 1, args[i]);
+            }
+            return statement.simpleQueryForLong();
+        }
+    }
+
+    /**
+     * Runs an insert through a compiled statement that is kept for the
+     * lifetime of the database handle. Arguments are bound by type: longs and
+     * integers as integers, null as null and anything else as text.
+     *
+     * Callers must only use this when compiled statements are available,
+     * i.e. when SqlStorage.STORAGE_OPTIMIZATIONS_ACTIVE is set.
+     */
+    public long executeInsert(SQLiteDatabase db, String sql, Object... args) {
+        SQLiteStatement statement = getCompiledStatement(db, sql);
+        synchronized (statement) {
+            statement.clearBindings();
+            for (int i = 0; i < args.length; ++i) {
+                Object arg = args[i];
+                if (arg == null) {
+                    statement.bindNull(i + 1);
+                } else if (arg instanceof Long || arg instanceof Integer) {
+                    statement.bindLong(i + 1, ((Number)arg).longValue());
+                } else {
+                    statement.bindString(i + 1, arg.toString());
+                }
+            }
+            return statement.executeInsert();
+        }
+    }
+
+    private synchronized SQLiteStatement getCompiledStatement(SQLiteDatabase db, String sql) {
+        Map<String, SQLiteStatement> statements = compiledStatements.get(db);
+        if (statements == null) {
+            statements = new HashMap<>();
+            compiledStatements.put(db, statements);
+        }
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+}
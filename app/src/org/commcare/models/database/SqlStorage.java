@@ -4,7 +4,6 @@ import android.database.Cursor;
 
 import net.sqlcipher.database.SQLiteDatabase;
 import net.sqlcipher.database.SQLiteQueryBuilder;
-import net.sqlcipher.database.SQLiteStatement;
 
 import org.commcare.android.logging.ForceCloseLogger;
 import org.commcare.modern.database.DatabaseHelper;
@@ -32,6 +31,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -49,21 +49,35 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
 
     public static final boolean STORAGE_OUTPUT_DEBUG = false;
 
+    /**
+     * Batch size used when the bulk read APIs are served by the streaming reads
+     */
+    private static final int DEFAULT_STREAM_BATCH_SIZE = 500;
+
+    private static final String[] ID_AND_DATA_COLUMNS = new String[]{DatabaseHelper.ID_COL, DatabaseHelper.DATA_COL};
+
+    //NOTE: The casts are needed since arguments can only be provided as strings
+    protected static final String ID_RANGE_WHERE_CLAUSE =
+            DatabaseHelper.ID_COL + " BETWEEN CAST(? as INT) AND CAST(? as INT)";
+
     String table;
     private final Class<? extends T> ctype;
     protected final EncryptedModel em;
     protected final AndroidDbHelper helper;
+    protected final SqlQueryCache queryCache;
 
     protected SqlStorage() {
         em = null;
         helper = null;
         ctype = null;
+        queryCache = null;
     }
 
     public SqlStorage(String table, Class<? extends T> ctype, AndroidDbHelper helper) {
         this.table = table;
         this.ctype = ctype;
         this.helper = helper;
+        this.queryCache = SqlQueryCache.forTable(table);
 
         T e = null;
         try {
@@ -138,6 +152,41 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
         }
     }
 
+    public RecordIdSet getIdSetForValue(String fieldName, Object value) {
+        return getIdSetForValues(new String[]{fieldName}, new Object[]{value});
+    }
+
+    /**
+     * Primitive counterpart of getIDsForValues, for callers that combine
+     * several lookups or hold on to large result sets.
+     */
+    public RecordIdSet getIdSetForValues(String[] fieldNames, Object[] values) {
+        Pair<String, String[]> whereClause = helper.createWhereAndroid(fieldNames, values, em, null);
+        Cursor c = helper.getHandle().query(table, new String[]{DatabaseHelper.ID_COL},
+                whereClause.first, whereClause.second, null, null, DatabaseHelper.ID_COL);
+        return fillIdSet(c, DatabaseHelper.ID_COL);
+    }
+
+    /**
+     * Reads the integer column out of every row of the cursor into an id set
+     * and closes the cursor
+     */
+    public static RecordIdSet fillIdSet(Cursor c, String columnName) {
+        try {
+            RecordIdSet.Builder ids = new RecordIdSet.Builder(c.getCount());
+            if (c.moveToFirst()) {
+                int index = c.getColumnIndexOrThrow(columnName);
+                while (!c.isAfterLast()) {
+                    ids.add(c.getInt(index));
+                    c.moveToNext();
+                }
+            }
+            return ids.build();
+        } finally {
+            c.close();
+        }
+    }
+
     public Vector<T> getRecordsForValue(String fieldName, Object value) {
         return getRecordsForValues(new String[]{fieldName}, new Object[]{value});
     }
@@ -149,7 +198,7 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
     public Vector<T> getRecordsForValues(String[] fieldNames, Object[] values) {
         Pair<String, String[]> whereClause = helper.createWhereAndroid(fieldNames, values, em, null);
 
-        Cursor c = helper.getHandle().query(table, new String[]{DatabaseHelper.ID_COL, DatabaseHelper.DATA_COL}, whereClause.first, whereClause.second, null, null, null);
+        Cursor c = helper.getHandle().query(table, ID_AND_DATA_COLUMNS, whereClause.first, whereClause.second, null, null, null);
         try {
             if (c.getCount() == 0) {
                 return new Vector<>();
@@ -157,9 +206,10 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
                 c.moveToFirst();
                 Vector<T> indices = new Vector<>();
                 int index = c.getColumnIndexOrThrow(DatabaseHelper.DATA_COL);
+                int idIndex = c.getColumnIndexOrThrow(DatabaseHelper.ID_COL);
                 while (!c.isAfterLast()) {
                     byte[] data = c.getBlob(index);
-                    indices.add(newObject(data, c.getInt(c.getColumnIndexOrThrow(DatabaseHelper.ID_COL))));
+                    indices.add(newObject(data, c.getInt(idIndex)));
                     c.moveToNext();
                 }
                 return indices;
@@ -189,14 +239,13 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
         String rid = String.valueOf(recordId);
         String[] scrubbedNames = scrubMetadataNames(metaDataNames);
         String[] projection = getProjectedFieldsWithId(false, scrubbedNames);
-        Cursor c = helper.getHandle().query(table, projection, DatabaseHelper.ID_COL + "=?", new String[]{rid}, null, null, null);
+        Cursor c = helper.getHandle().rawQuery(queryCache.selectById(projection), new String[]{rid});
         try {
-            if (c.getCount() == 0) {
+            if (!c.moveToFirst()) {
                 throw new NoSuchElementException("No record in table " + table + " for ID " + recordId);
             }
-            c.moveToFirst();
 
-            return readMetaDataFromCursor(c, scrubbedNames);
+            return readMetaDataFromCursor(c, resolveColumnIndices(c, scrubbedNames));
         } finally {
             c.close();
         }
@@ -301,6 +350,15 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
 
     @Override
     public boolean exists(int id) {
+        if (STORAGE_OPTIMIZATIONS_ACTIVE) {
+            long queryCount = queryCache.simpleQueryForLong(helper.getHandle(),
+                    "SELECT COUNT(*) FROM " + table + " WHERE " + DatabaseHelper.ID_COL + " = ?",
+                    String.valueOf(id));
+            if (queryCount > 1) {
+                throw new InvalidIndexException("Invalid ID column. Multiple records found with value " + id, "ID");
+            }
+            return queryCount == 1;
+        }
         Cursor c = helper.getHandle().query(table, new String[]{DatabaseHelper.ID_COL}, DatabaseHelper.ID_COL + "= ? ", new String[]{String.valueOf(id)}, null, null, null);
 
         try {
@@ -323,6 +381,10 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
 
     @Override
     public int getNumRecords() {
+        if (STORAGE_OPTIMIZATIONS_ACTIVE) {
+            return (int)queryCache.simpleQueryForLong(helper.getHandle(),
+                    "SELECT COUNT(*) FROM " + table);
+        }
         Cursor c = helper.getHandle().query(table, new String[]{DatabaseHelper.ID_COL}, null, null, null, null, null);
         try {
             int records = c.getCount();
@@ -369,19 +431,9 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
         //do.
         if (!includeData && STORAGE_OPTIMIZATIONS_ACTIVE) {
 
-            SQLiteStatement min = db.compileStatement("SELECT MIN(" + DatabaseHelper.ID_COL + ") from " + table);
-
-            SQLiteStatement max = db.compileStatement("SELECT MAX(" + DatabaseHelper.ID_COL + ") from " + table);
-
-            SQLiteStatement count = db.compileStatement("SELECT COUNT(" + DatabaseHelper.ID_COL + ") from " + table);
-
-            int minValue = (int)min.simpleQueryForLong();
-            int maxValue = (int)max.simpleQueryForLong() + 1;
-            int countValue = (int)count.simpleQueryForLong();
-
-            min.close();
-            max.close();
-            count.close();
+            int minValue = (int)queryCache.simpleQueryForLong(db, "SELECT MIN(" + DatabaseHelper.ID_COL + ") from " + table);
+            int maxValue = (int)queryCache.simpleQueryForLong(db, "SELECT MAX(" + DatabaseHelper.ID_COL + ") from " + table) + 1;
+            int countValue = (int)queryCache.simpleQueryForLong(db, "SELECT COUNT(" + DatabaseHelper.ID_COL + ") from " + table);
 
             double density = countValue / (maxValue - minValue * 1.0);
 
@@ -425,6 +477,18 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
         return new SqlStorageIterator<>(c, this, metaDataToInclude);
     }
 
+    /**
+     * Iterates in id order over the records with ids greater than lastId, so that a reader
+     * which stopped part way through can pick up where it left off. The iterator should be
+     * closed if it isn't run to the end.
+     */
+    public SqlStorageIterator<T> iterateAfter(int lastId) {
+        Cursor c = helper.getHandle().query(table, ID_AND_DATA_COLUMNS,
+                DatabaseHelper.ID_COL + " > CAST(? as INT)", new String[]{String.valueOf(lastId)},
+                null, null, DatabaseHelper.ID_COL);
+        return new SqlStorageIterator<>(c, this);
+    }
+
     private String[] scrubMetadataNames(String[] metaDataNames) {
         String[] scrubbedNames = new String[metaDataNames.length];
 
@@ -461,7 +525,7 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
 
     @Override
     public byte[] readBytes(int id) {
-        Cursor c = helper.getHandle().query(table, new String[]{DatabaseHelper.ID_COL, DatabaseHelper.DATA_COL}, DatabaseHelper.ID_COL + "=?", new String[]{String.valueOf(id)}, null, null, null);
+        Cursor c = helper.getHandle().rawQuery(queryCache.selectById(ID_AND_DATA_COLUMNS), new String[]{String.valueOf(id)});
 
         try {
             if (!c.moveToFirst()) {
@@ -502,6 +566,32 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
         }
     }
 
+    /**
+     * Removes every record with an id in one of the given inclusive ranges, using one range
+     * delete per range rather than listing the ids
+     *
+     * @param idRanges pairs of the first and last id of each range
+     */
+    public void removeIdRanges(List<Pair<Integer, Integer>> idRanges) {
+        if (idRanges.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = helper.getHandle();
+        db.beginTransaction();
+        try {
+            for (Pair<Integer, Integer> range : idRanges) {
+                db.delete(table, ID_RANGE_WHERE_CLAUSE, getIdRangeArgs(range));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    protected static String[] getIdRangeArgs(Pair<Integer, Integer> range) {
+        return new String[]{String.valueOf(range.first), String.valueOf(range.second)};
+    }
+
     @Override
     public void remove(Persistable p) {
         this.remove(p.getID());
@@ -676,69 +766,163 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
     }
 
     @Override
-    public void bulkRead(LinkedHashSet cuedCases, HashMap recordMap) throws RequestAbandonedException {
-        List<Pair<String, String[]>> whereParamList = TableBuilder.sqlList(cuedCases);
-        for (Pair<String, String[]> querySet : whereParamList) {
-            Cursor c = helper.getHandle().query(table, new String[]{DatabaseHelper.ID_COL, DatabaseHelper.DATA_COL}, DatabaseHelper.ID_COL + " IN " + querySet.first, querySet.second, null, null, null);
-            try {
-                if (c.getCount() == 0) {
-                    return;
-                } else {
-                    c.moveToFirst();
-                    int index = c.getColumnIndexOrThrow(DatabaseHelper.DATA_COL);
-                    while (!c.isAfterLast()) {
-                        if (Thread.interrupted()) {
-                            throw new RequestAbandonedException();
-                        }
-                        byte[] data = c.getBlob(index);
-                        recordMap.put(c.getInt(c.getColumnIndexOrThrow(DatabaseHelper.ID_COL)),
-                                newObject(data, c.getInt(c.getColumnIndexOrThrow(DatabaseHelper.ID_COL))));
-                        c.moveToNext();
-                    }
-                }
-            } finally {
-                c.close();
+    public void bulkRead(LinkedHashSet cuedCases, final HashMap recordMap) throws RequestAbandonedException {
+        streamRead((Collection<Integer>)cuedCases, DEFAULT_STREAM_BATCH_SIZE, new RecordBatchConsumer<T>() {
+            @Override
+            public boolean consume(LinkedHashMap<Integer, T> batch) {
+                recordMap.putAll(batch);
+                return true;
             }
-        }
+        });
     }
 
     @Override
-    public void bulkReadMetadata(LinkedHashSet cuedCases, String[] metaDataIds, HashMap metadataMap) {
-        List<Pair<String, String[]>> whereParamList = TableBuilder.sqlList(cuedCases);
-        String[] scrubbedNames = scrubMetadataNames(metaDataIds);
-        String[] projection = getProjectedFieldsWithId(false, scrubbedNames);
+    public void bulkReadMetadata(LinkedHashSet cuedCases, String[] metaDataIds, final HashMap metadataMap) {
+        streamReadMetadata((Collection<Integer>)cuedCases, metaDataIds, DEFAULT_STREAM_BATCH_SIZE, new RecordBatchConsumer<String[]>() {
+            @Override
+            public boolean consume(LinkedHashMap<Integer, String[]> batch) {
+                metadataMap.putAll(batch);
+                return true;
+            }
+        });
+    }
 
-        for (Pair<String, String[]> querySet : whereParamList) {
-            Cursor c = helper.getHandle().query(table, projection, DatabaseHelper.ID_COL + " IN " + querySet.first, querySet.second, null, null, null);
+    /**
+     * Receives the records read by streamRead and streamReadMetadata in
+     * batches, in the order they come back from the database.
+     */
+    public interface RecordBatchConsumer<R> {
+        /**
+         * @param batch Between 1 and maxBatchSize records keyed by record id.
+         *              The map is handed over to the consumer and not touched
+         *              again by the storage.
+         * @return false to stop reading; no further batches will be delivered
+         */
+        boolean consume(LinkedHashMap<Integer, R> batch);
+    }
+
+    /**
+     * Reads the records with the provided ids and hands them to the consumer
+     * as they are deserialized, holding no more than maxBatchSize records at
+     * a time. Ids which aren't present in this table are skipped.
+     *
+     * @throws RequestAbandonedException if the calling thread is interrupted
+     */
+    public void streamRead(Collection<Integer> ids, int maxBatchSize,
+                           RecordBatchConsumer<T> consumer) throws RequestAbandonedException {
+        streamRows(ids, ID_AND_DATA_COLUMNS, maxBatchSize, consumer, new RowReader<T>() {
+            private int dataIndex;
+
+            @Override
+            void bind(Cursor c) {
+                dataIndex = c.getColumnIndexOrThrow(DatabaseHelper.DATA_COL);
+            }
+
+            @Override
+            T read(Cursor c, int id) {
+                return newObject(c.getBlob(dataIndex), id);
+            }
+        });
+    }
+
+    /**
+     * Metadata equivalent of streamRead; each record is delivered as the
+     * values of the requested metadata fields, in the order requested.
+     *
+     * @throws RequestAbandonedException if the calling thread is interrupted
+     */
+    public void streamReadMetadata(Collection<Integer> ids, String[] metaDataIds, int maxBatchSize,
+                                   RecordBatchConsumer<String[]> consumer) throws RequestAbandonedException {
+        final String[] scrubbedNames = scrubMetadataNames(metaDataIds);
+        streamRows(ids, getProjectedFieldsWithId(false, scrubbedNames), maxBatchSize, consumer,
+                new RowReader<String[]>() {
+                    private int[] columnIndices;
+
+                    @Override
+                    void bind(Cursor c) {
+                        columnIndices = resolveColumnIndices(c, scrubbedNames);
+                    }
+
+                    @Override
+                    String[] read(Cursor c, int id) {
+                        return readMetaDataFromCursor(c, columnIndices);
+                    }
+                });
+    }
+
+    private abstract static class RowReader<R> {
+        /**
+         * Called once for each cursor before any of its rows are read
+         */
+        abstract void bind(Cursor c);
+
+        abstract R read(Cursor c, int id);
+    }
+
+    /**
+     * Walks every sqlList chunk of the id set, flushing decoded rows to the
+     * consumer whenever maxBatchSize of them are pending. An empty chunk
+     * only means none of its ids are in the table, so it never ends the read.
+     */
+    private <R> void streamRows(Collection<Integer> ids, String[] projection, int maxBatchSize,
+                                RecordBatchConsumer<R> consumer, RowReader<R> reader) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, was " + maxBatchSize);
+        }
+        LinkedHashMap<Integer, R> batch = new LinkedHashMap<>();
+        for (Pair<String, String[]> querySet : TableBuilder.sqlList(ids)) {
+            String sql = queryCache.selectWhereIn(projection, DatabaseHelper.ID_COL, querySet.first);
+            Cursor c = helper.getHandle().rawQuery(sql, querySet.second);
             try {
-                if (c.getCount() == 0) {
-                    return;
-                } else {
-                    c.moveToFirst();
-                    int idIndex = c.getColumnIndexOrThrow(DatabaseHelper.ID_COL);
-                    while (!c.isAfterLast()) {
-                        String[] metaRead = readMetaDataFromCursor(c, scrubbedNames);
-                        metadataMap.put(c.getInt(idIndex), metaRead);
-                        c.moveToNext();
+                if (!c.moveToFirst()) {
+                    continue;
+                }
+                int idIndex = c.getColumnIndexOrThrow(DatabaseHelper.ID_COL);
+                reader.bind(c);
+                while (!c.isAfterLast()) {
+                    if (Thread.interrupted()) {
+                        throw new RequestAbandonedException();
+                    }
+                    int id = c.getInt(idIndex);
+                    batch.put(id, reader.read(c, id));
+                    if (batch.size() >= maxBatchSize) {
+                        if (!consumer.consume(batch)) {
+                            return;
+                        }
+                        batch = new LinkedHashMap<>();
                     }
+                    c.moveToNext();
                 }
             } finally {
                 c.close();
             }
         }
+        if (!batch.isEmpty()) {
+            consumer.consume(batch);
+        }
     }
 
     /**
-     * Reads out the metadata columns from the provided cursor.
+     * Looks up the positions of the provided columns once per cursor, so
+     * per-row reads don't repeat the name lookups.
      *
      * NOTE: The column names _must be scrubbed here_ before the method is called
      */
-    private String[] readMetaDataFromCursor(Cursor c, String[] columnNames) {
-        String[] results = new String[columnNames.length];
-        int i = 0;
-        for (String columnName : columnNames) {
-            results[i] = c.getString(c.getColumnIndexOrThrow(columnName));
-            i++;
+    private static int[] resolveColumnIndices(Cursor c, String[] columnNames) {
+        int[] indices = new int[columnNames.length];
+        for (int i = 0; i < columnNames.length; ++i) {
+            indices[i] = c.getColumnIndexOrThrow(columnNames[i]);
+        }
+        return indices;
+    }
+
+    /**
+     * Reads out the metadata columns at the provided positions from the current cursor row.
+     */
+    private static String[] readMetaDataFromCursor(Cursor c, int[] columnIndices) {
+        String[] results = new String[columnIndices.length];
+        for (int i = 0; i < columnIndices.length; ++i) {
+            results[i] = c.getString(columnIndices[i]);
         }
         return results;
     }
@@ -752,18 +936,21 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
         Vector<T> returnSet = new Vector<>();
         String fieldName = TableBuilder.scrubName(indexName);
         List<Pair<String, String[]>> whereParamList = TableBuilder.sqlList(matchingValues, "?");
+        String[] projection = new String[]{DatabaseHelper.ID_COL, DatabaseHelper.DATA_COL, fieldName};
         for (Pair<String, String[]> querySet : whereParamList) {
-            Cursor c = helper.getHandle().query(table, new String[]{DatabaseHelper.ID_COL, DatabaseHelper.DATA_COL, fieldName}, fieldName + " IN " + querySet.first, querySet.second, null, null, null);
+            String sql = queryCache.selectWhereIn(projection, fieldName, querySet.first);
+            Cursor c = helper.getHandle().rawQuery(sql, querySet.second);
             try {
                 if (c.getCount() == 0) {
                     return returnSet;
                 } else {
                     c.moveToFirst();
                     int index = c.getColumnIndexOrThrow(DatabaseHelper.DATA_COL);
+                    int idIndex = c.getColumnIndexOrThrow(DatabaseHelper.ID_COL);
                     while (!c.isAfterLast()) {
                         byte[] data = c.getBlob(index);
 
-                        returnSet.add(newObject(data, c.getInt(c.getColumnIndexOrThrow(DatabaseHelper.ID_COL))));
+                        returnSet.add(newObject(data, c.getInt(idIndex)));
                         c.moveToNext();
                     }
                 }
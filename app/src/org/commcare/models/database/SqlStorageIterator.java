@@ -118,6 +118,16 @@ public class SqlStorageIterator<T extends Persistable> implements IStorageIterat
         //Unsupported for now
     }
 
+    /**
+     * Releases the cursor of an iterator that won't be run to the end
+     */
+    public void close() {
+        if (!c.isClosed()) {
+            c.close();
+        }
+        isClosedByProgress = true;
+    }
+
     @Override
     public int peekID() {
         return c.getInt(c.getColumnIndexOrThrow(DatabaseHelper.ID_COL));
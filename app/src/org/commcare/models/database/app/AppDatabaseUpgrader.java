@@ -10,6 +10,7 @@ import net.sqlcipher.database.SQLiteDatabase;
 import org.apache.commons.lang3.StringUtils;
 import org.commcare.android.database.app.models.FormDefRecord;
 import org.commcare.android.database.app.models.FormDefRecordV12;
+import org.commcare.android.database.app.models.FormDefRecordV13;
 import org.commcare.android.database.app.models.ResourceV13;
 import org.commcare.android.database.app.models.UserKeyRecord;
 import org.commcare.android.database.app.models.UserKeyRecordV1;
@@ -133,6 +134,12 @@ class AppDatabaseUpgrader {
             }
         }
 
+        if (oldVersion == 14) {
+            if (upgradeFourteenFifteen(db)) {
+                oldVersion = 15;
+            }
+        }
+
         //NOTE: If metadata changes are made to the Resource model, they need to be
         //managed by changing the TwoThree updater to maintain that metadata.
     }
@@ -393,6 +400,37 @@ class AppDatabaseUpgrader {
         }
     }
 
+    private boolean upgradeFourteenFifteen(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL(DbUtil.addColumnToTable(
+                    FormDefRecord.STORAGE_KEY,
+                    FormDefRecord.META_FORM_HASH,
+                    "TEXT"));
+
+            SqlStorage<FormDefRecordV13> oldFormDefRecordStorage = new SqlStorage<>(
+                    FormDefRecord.STORAGE_KEY,
+                    FormDefRecordV13.class,
+                    new ConcreteAndroidDbHelper(context, db));
+
+            SqlStorage<FormDefRecord> formDefRecordStorage = new SqlStorage<>(
+                    FormDefRecord.STORAGE_KEY,
+                    FormDefRecord.class,
+                    new ConcreteAndroidDbHelper(context, db));
+
+            // hashes are filled in lazily the next time each form is opened
+            for (FormDefRecordV13 oldFormDefRecord : oldFormDefRecordStorage) {
+                FormDefRecord formDefRecord = new FormDefRecord(oldFormDefRecord);
+                formDefRecordStorage.update(oldFormDefRecord.getID(), formDefRecord);
+            }
+
+            db.setTransactionSuccessful();
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     private void upgradeResourcesV13(SQLiteDatabase db, String tableName) {
         db.beginTransaction();
         try {
@@ -45,8 +45,9 @@ public class DatabaseAppOpenHelper extends SQLiteOpenHelper {
      * V.12 - Add RecoveryMeasure table
      * V.13 - Add resource version for Form Def Record
      * V.14 - Adds a new resource property called 'lazy'
+     * V.15 - Add form hash to Form Def Record
      */
-    private static final int DB_VERSION_APP = 14;
+    private static final int DB_VERSION_APP = 15;
 
     private static final String DB_LOCATOR_PREF_APP = "database_app_";
 
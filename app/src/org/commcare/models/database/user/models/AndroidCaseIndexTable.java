@@ -1,7 +1,5 @@
 package org.commcare.models.database.user.models;
 
-import android.content.ContentValues;
-
 import net.sqlcipher.Cursor;
 import net.sqlcipher.database.SQLiteDatabase;
 
@@ -11,14 +9,17 @@ import org.commcare.cases.model.Case;
 import org.commcare.cases.model.CaseIndex;
 import org.commcare.cases.query.queryset.DualTableSingleMatchModelQuerySet;
 import org.commcare.modern.database.TableBuilder;
+import org.commcare.models.database.BulkInserter;
 import org.commcare.models.database.DbUtil;
 import org.commcare.models.database.SqlStorage;
+import org.commcare.models.database.SqlStorageIterator;
 import org.commcare.modern.database.DatabaseHelper;
 import org.commcare.modern.database.DatabaseIndexingUtils;
 import org.commcare.modern.engine.cases.CaseIndexTable;
 import org.commcare.modern.util.Pair;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -36,6 +37,12 @@ public class AndroidCaseIndexTable implements CaseIndexTable {
     private static final String COL_INDEX_TARGET = "target";
     private static final String COL_INDEX_RELATIONSHIP = "relationship";
 
+    private static final String RECORD_FIRST_INDEX_ID = "RECORD_NAME_ID_TARGET";
+    private static final String TYPE_FIRST_INDEX_ID = "NAME_TARGET_RECORD";
+
+    // Above this many cases, reindexing drops the sql indexes and builds them again afterwards
+    private static final int REBUILD_SQL_INDEXES_THRESHOLD = 5000;
+
     private final SQLiteDatabase db;
 
     //TODO: We should do some synchronization to make it the case that nothing can hold
@@ -61,13 +68,20 @@ public class AndroidCaseIndexTable implements CaseIndexTable {
     }
 
     public static void createIndexes(SQLiteDatabase db) {
-        String recordFirstIndexId = "RECORD_NAME_ID_TARGET";
         String recordFirstIndex = COL_CASE_RECORD_ID + ", " + COL_INDEX_NAME + ", " + COL_INDEX_TARGET;
-        db.execSQL(DatabaseIndexingUtils.indexOnTableCommand(recordFirstIndexId, TABLE_NAME, recordFirstIndex));
+        db.execSQL(DatabaseIndexingUtils.indexOnTableCommand(RECORD_FIRST_INDEX_ID, TABLE_NAME, recordFirstIndex));
 
-        String typeFirstIndexId = "NAME_TARGET_RECORD";
         String typeFirstIndex = COL_INDEX_NAME + ", " + COL_CASE_RECORD_ID + ", " + COL_INDEX_TARGET;
-        db.execSQL(DatabaseIndexingUtils.indexOnTableCommand(typeFirstIndexId, TABLE_NAME, typeFirstIndex));
+        db.execSQL(DatabaseIndexingUtils.indexOnTableCommand(TYPE_FIRST_INDEX_ID, TABLE_NAME, typeFirstIndex));
+    }
+
+    /**
+     * Drops the sql indexes over the table, so that a large bulk load doesn't have to keep them
+     * up to date row by row. Recreate them with {@link #createIndexes(SQLiteDatabase)}.
+     */
+    private static void dropIndexes(SQLiteDatabase db) {
+        db.execSQL("DROP INDEX IF EXISTS " + RECORD_FIRST_INDEX_ID);
+        db.execSQL("DROP INDEX IF EXISTS " + TYPE_FIRST_INDEX_ID);
     }
 
     /**
@@ -75,23 +89,40 @@ public class AndroidCaseIndexTable implements CaseIndexTable {
      * TODO: this doesn't ensure any sort of uniqueness, you should wipe constraints first
      */
     public void indexCase(Case c) {
+        indexCases(Collections.singletonList(c));
+    }
+
+    /**
+     * Creates all indexes for the given cases, written with multi-row inserts in one transaction.
+     * Like {@link #indexCase(Case)} this doesn't wipe any existing indexes for the cases.
+     */
+    public void indexCases(Collection<? extends Case> cases) {
         db.beginTransaction();
+        BulkInserter inserter = newIndexInserter();
         try {
-            for (CaseIndex ci : c.getIndices()) {
-                ContentValues cv = new ContentValues();
-                cv.put(COL_CASE_RECORD_ID, c.getID());
-                cv.put(COL_INDEX_NAME, ci.getName());
-                cv.put(COL_INDEX_TYPE, ci.getTargetType());
-                cv.put(COL_INDEX_TARGET, ci.getTarget());
-                cv.put(COL_INDEX_RELATIONSHIP, ci.getRelationship());
-                db.insert(TABLE_NAME, null, cv);
+            for (Case c : cases) {
+                addIndexRows(inserter, c);
             }
+            inserter.flush();
             db.setTransactionSuccessful();
         } finally {
+            inserter.close();
             db.endTransaction();
         }
     }
 
+    private BulkInserter newIndexInserter() {
+        return new BulkInserter(db, TABLE_NAME, new String[]{COL_CASE_RECORD_ID, COL_INDEX_NAME,
+                COL_INDEX_TYPE, COL_INDEX_TARGET, COL_INDEX_RELATIONSHIP});
+    }
+
+    private static void addIndexRows(BulkInserter inserter, Case c) {
+        for (CaseIndex ci : c.getIndices()) {
+            inserter.addRow(c.getID(), ci.getName(), ci.getTargetType(), ci.getTarget(),
+                    ci.getRelationship());
+        }
+    }
+
     public HashMap<Integer,Vector<Pair<String, String>>> getCaseIndexMap() {
         String[] projection = new String[] {COL_CASE_RECORD_ID, COL_INDEX_TARGET, COL_INDEX_RELATIONSHIP};
         HashMap<Integer,Vector<Pair<String, String>>> caseIndexMap = new HashMap<>();
@@ -337,15 +368,31 @@ public class AndroidCaseIndexTable implements CaseIndexTable {
         return sb.toString();
     }
 
+    /**
+     * Rebuilds the table from every case in storage. Cases are streamed from the case table and
+     * their indices written with multi-row inserts, all in one transaction so that a partially
+     * rebuilt table is never committed.
+     */
     public void reIndexAllCases(SqlStorage<ACase> caseStorage) {
+        boolean rebuildSqlIndexes = caseStorage.getNumRecords() > REBUILD_SQL_INDEXES_THRESHOLD;
         db.beginTransaction();
+        BulkInserter inserter = newIndexInserter();
         try {
             wipeTable();
-            for (ACase c : caseStorage) {
-                indexCase(c);
+            if (rebuildSqlIndexes) {
+                dropIndexes(db);
+            }
+            SqlStorageIterator<ACase> iterator = caseStorage.iterate();
+            while (iterator.hasMore()) {
+                addIndexRows(inserter, iterator.nextRecord());
+            }
+            inserter.flush();
+            if (rebuildSqlIndexes) {
+                createIndexes(db);
             }
             db.setTransactionSuccessful();
         } finally {
+            inserter.close();
             db.endTransaction();
         }
     }
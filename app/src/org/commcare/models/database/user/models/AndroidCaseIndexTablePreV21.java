@@ -1,13 +1,13 @@
 package org.commcare.models.database.user.models;
 
-import android.content.ContentValues;
-
 import net.sqlcipher.database.SQLiteDatabase;
 
 import org.commcare.android.database.user.models.ACase;
 import org.commcare.cases.model.Case;
 import org.commcare.cases.model.CaseIndex;
+import org.commcare.models.database.BulkInserter;
 import org.commcare.models.database.SqlStorage;
+import org.commcare.models.database.SqlStorageIterator;
 import org.commcare.modern.database.DatabaseHelper;
 
 // Case Index table extension for Pre user db model 21 to use in DB migration
@@ -29,21 +29,28 @@ public class AndroidCaseIndexTablePreV21  {
 
     public void indexCase(Case c) {
         db.beginTransaction();
+        BulkInserter inserter = newIndexInserter();
         try {
-            for (CaseIndex ci : c.getIndices()) {
-                ContentValues cv = new ContentValues();
-                cv.put(COL_CASE_RECORD_ID, c.getID());
-                cv.put(COL_INDEX_NAME, ci.getName());
-                cv.put(COL_INDEX_TYPE, ci.getTargetType());
-                cv.put(COL_INDEX_TARGET, ci.getTarget());
-                db.insert(TABLE_NAME, null, cv);
-            }
+            addIndexRows(inserter, c);
+            inserter.flush();
             db.setTransactionSuccessful();
         } finally {
+            inserter.close();
             db.endTransaction();
         }
     }
 
+    private BulkInserter newIndexInserter() {
+        return new BulkInserter(db, TABLE_NAME, new String[]{COL_CASE_RECORD_ID, COL_INDEX_NAME,
+                COL_INDEX_TYPE, COL_INDEX_TARGET});
+    }
+
+    private static void addIndexRows(BulkInserter inserter, Case c) {
+        for (CaseIndex ci : c.getIndices()) {
+            inserter.addRow(c.getID(), ci.getName(), ci.getTargetType(), ci.getTarget());
+        }
+    }
+
     public static String getTableDefinition() {
         return "CREATE TABLE " + TABLE_NAME + "(" +
                 DatabaseHelper.ID_COL + " INTEGER PRIMARY KEY, " +
@@ -56,13 +63,17 @@ public class AndroidCaseIndexTablePreV21  {
 
     public void reIndexAllCases(SqlStorage<ACase> caseStorage) {
         db.beginTransaction();
+        BulkInserter inserter = newIndexInserter();
         try {
             wipeTable();
-            for (ACase c : caseStorage) {
-                indexCase(c);
+            SqlStorageIterator<ACase> iterator = caseStorage.iterate();
+            while (iterator.hasMore()) {
+                addIndexRows(inserter, iterator.nextRecord());
             }
+            inserter.flush();
             db.setTransactionSuccessful();
         } finally {
+            inserter.close();
             db.endTransaction();
         }
     }
@@ -5,12 +5,14 @@ import android.util.Log;
 
 import net.sqlcipher.Cursor;
 import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
 
 import org.commcare.AppUtils;
 import org.commcare.CommCareApplication;
 import org.commcare.cases.entity.AsyncEntity;
 import org.commcare.cases.entity.EntityStorageCache;
 import org.commcare.models.database.DbUtil;
+import org.commcare.models.database.SqlQueryCache;
 import org.commcare.models.database.SqlStorage;
 import org.commcare.modern.database.DatabaseHelper;
 import org.commcare.modern.database.DatabaseIndexingUtils;
@@ -18,13 +20,21 @@ import org.commcare.modern.database.TableBuilder;
 import org.commcare.modern.util.Pair;
 import org.commcare.suite.model.Detail;
 import org.commcare.suite.model.DetailField;
+import org.commcare.util.LogTypes;
 import org.commcare.utils.SessionUnavailableException;
+import org.javarosa.core.services.Logger;
 
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author ctsims
@@ -41,10 +51,39 @@ public class CommCareEntityStorageCache implements EntityStorageCache {
     private static final String COL_TIMESTAMP = "timestamp";
     private static final String ENTITY_CACHE_WIPED_PREF_SUFFIX = "enity_cache_wiped";
 
+    /**
+     * Default eviction policy: values which haven't been rewritten in this
+     * long are dropped, whichever app version wrote them
+     */
+    public static final long MAX_ENTRY_AGE_MS = TimeUnit.DAYS.toMillis(30);
+
+    /**
+     * Default eviction policy: cap on the number of values kept per cache
+     * name, beyond which the oldest are dropped
+     */
+    public static final int MAX_ENTRIES_PER_CACHE = 250000;
+
+    /**
+     * Rows read per query while priming, sized to stay well inside a cursor window
+     */
+    private static final int PRIME_PAGE_SIZE = 2500;
+
+    private static final String INSERT_STATEMENT = "INSERT OR REPLACE INTO " + TABLE_NAME + " (" +
+            COL_CACHE_NAME + ", " + COL_APP_ID + ", " + COL_ENTITY_KEY + ", " +
+            COL_CACHE_KEY + ", " + COL_VALUE + ", " + COL_TIMESTAMP +
+            ") VALUES (?, ?, ?, ?, ?, ?)";
+
     private final SQLiteDatabase db;
     private final String mCacheName;
     private final String mAppId;
 
+    // Writer currently open on this cache, which cache() calls from its
+    // thread are routed through
+    private volatile BatchWriter openWriter;
+    // Entity keys, by cache key, that priming read from the db and found no
+    // value for, so that looking them up again can skip the query
+    private final Map<String, Set<String>> knownMisses = new HashMap<>();
+
     public CommCareEntityStorageCache(String cacheName) {
         this(cacheName, CommCareApplication.instance().getUserDbHandle(), AppUtils.getCurrentAppId());
     }
@@ -74,8 +113,11 @@ public class CommCareEntityStorageCache implements EntityStorageCache {
     }
 
     public Closeable lockCache() {
-        //Get a db handle so we can get an outer lock
-        SQLiteDatabase db = CommCareApplication.instance().getUserDbHandle();
+        if (isWriterOpenOnThisThread()) {
+            // already inside the writer's transaction
+            return () -> {
+            };
+        }
         //get the db lock
         db.beginTransaction();
         return () -> {
@@ -88,22 +130,120 @@ public class CommCareEntityStorageCache implements EntityStorageCache {
     //an object for the same cache at once
 
     public void cache(String entityKey, String cacheKey, String value) {
+        forgetMiss(entityKey, cacheKey);
+        if (isWriterOpenOnThisThread()) {
+            openWriter.write(entityKey, cacheKey, value);
+            return;
+        }
+
+        long timestamp = System.currentTimeMillis();
+        if (SqlStorage.STORAGE_OPTIMIZATIONS_ACTIVE) {
+            SqlQueryCache.forTable(TABLE_NAME).executeInsert(db, INSERT_STATEMENT,
+                    mCacheName, mAppId, entityKey, cacheKey, value, timestamp);
+        } else {
+            insertWithContentValues(entityKey, cacheKey, value, timestamp);
+        }
+
+        if (SqlStorage.STORAGE_OUTPUT_DEBUG) {
+            Log.d(TAG, "Cached value|" + entityKey + "|" + cacheKey);
+        }
+    }
 
+    private void insertWithContentValues(String entityKey, String cacheKey, String value, long timestamp) {
         ContentValues cv = new ContentValues();
         cv.put(COL_CACHE_NAME, mCacheName);
         cv.put(COL_APP_ID, mAppId);
         cv.put(COL_ENTITY_KEY, entityKey);
         cv.put(COL_CACHE_KEY, cacheKey);
         cv.put(COL_VALUE, value);
-        cv.put(COL_TIMESTAMP, System.currentTimeMillis());
+        cv.put(COL_TIMESTAMP, timestamp);
         db.insertWithOnConflict(TABLE_NAME, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+    }
 
-        if (SqlStorage.STORAGE_OUTPUT_DEBUG) {
-            Log.d(TAG, "Cached value|" + entityKey + "|" + cacheKey);
+    private boolean isWriterOpenOnThisThread() {
+        BatchWriter writer = openWriter;
+        return writer != null && writer.owner == Thread.currentThread();
+    }
+
+    /**
+     * Opens a writer which caches many values in a single transaction
+     * through one reused insert statement. Until it is closed, values cached
+     * through this cache on the calling thread go through the writer too. The
+     * values are committed when the writer is closed, unless one of the
+     * writes failed.
+     */
+    public BatchWriter openBatchWriter() {
+        BatchWriter writer = new BatchWriter();
+        openWriter = writer;
+        return writer;
+    }
+
+    public class BatchWriter implements Closeable {
+        private final Thread owner = Thread.currentThread();
+        private final SQLiteStatement insert;
+        private final long timestamp = System.currentTimeMillis();
+        private boolean failed = false;
+        private int written = 0;
+
+        private BatchWriter() {
+            db.beginTransaction();
+            if (SqlStorage.STORAGE_OPTIMIZATIONS_ACTIVE) {
+                insert = db.compileStatement(INSERT_STATEMENT);
+                insert.bindString(1, mCacheName);
+                insert.bindString(2, mAppId);
+                insert.bindLong(6, timestamp);
+            } else {
+                insert = null;
+            }
+        }
+
+        public void write(String entityKey, String cacheKey, String value) {
+            forgetMiss(entityKey, cacheKey);
+            try {
+                if (insert == null) {
+                    insertWithContentValues(entityKey, cacheKey, value, timestamp);
+                } else {
+                    insert.bindString(3, entityKey);
+                    insert.bindString(4, cacheKey);
+                    if (value == null) {
+                        insert.bindNull(5);
+                    } else {
+                        insert.bindString(5, value);
+                    }
+                    insert.executeInsert();
+                }
+                written++;
+            } catch (RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (openWriter == this) {
+                openWriter = null;
+            }
+            try {
+                if (insert != null) {
+                    insert.close();
+                }
+                if (!failed) {
+                    db.setTransactionSuccessful();
+                }
+            } finally {
+                db.endTransaction();
+            }
+            if (SqlStorage.STORAGE_OUTPUT_DEBUG) {
+                Log.d(TAG, "Batch cached " + written + " values" + (failed ? " (rolled back)" : ""));
+            }
         }
     }
 
     public String retrieveCacheValue(String entityKey, String cacheKey) {
+        if (isKnownMiss(entityKey, cacheKey)) {
+            return null;
+        }
         String whereClause = String.format("%s = ? AND %s = ? AND %s = ? AND %s = ?", COL_APP_ID, COL_CACHE_NAME, COL_ENTITY_KEY, COL_CACHE_KEY);
 
         Cursor c = db.query(TABLE_NAME, new String[]{COL_VALUE}, whereClause, new String[]{mAppId, mCacheName, entityKey, cacheKey}, null, null, null);
@@ -118,6 +258,53 @@ public class CommCareEntityStorageCache implements EntityStorageCache {
         }
     }
 
+    /**
+     * Bulk equivalent of retrieveCacheValue, which looks up the value for
+     * many entities with one query per TableBuilder.sqlList chunk.
+     *
+     * @return Mapping from entity key to cached value. Entities without a
+     * cached value are absent.
+     */
+    public HashMap<String, String> retrieveCacheValues(Collection<Integer> recordIds, String cacheKey) {
+        HashMap<String, String> values = new HashMap<>();
+        String selectPrefix = "SELECT " + COL_ENTITY_KEY + ", " + COL_VALUE + " FROM " + TABLE_NAME +
+                " WHERE " + COL_APP_ID + " = ? AND " + COL_CACHE_NAME + " = ? AND " +
+                COL_CACHE_KEY + " = ? AND " + COL_ENTITY_KEY + " IN ";
+        for (Pair<String, String[]> querySet : TableBuilder.sqlList(recordIds)) {
+            String[] args = new String[querySet.second.length + 3];
+            args[0] = mAppId;
+            args[1] = mCacheName;
+            args[2] = cacheKey;
+            System.arraycopy(querySet.second, 0, args, 3, querySet.second.length);
+
+            Cursor c = db.rawQuery(selectPrefix + querySet.first, args);
+            try {
+                while (c.moveToNext()) {
+                    values.put(c.getString(0), c.getString(1));
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return values;
+    }
+
+    private boolean isKnownMiss(String entityKey, String cacheKey) {
+        synchronized (knownMisses) {
+            Set<String> misses = knownMisses.get(cacheKey);
+            return misses != null && misses.contains(entityKey);
+        }
+    }
+
+    private void forgetMiss(String entityKey, String cacheKey) {
+        synchronized (knownMisses) {
+            Set<String> misses = knownMisses.get(cacheKey);
+            if (misses != null) {
+                misses.remove(entityKey);
+            }
+        }
+    }
+
     /**
      * Removes cache records associated with the provided ID
      */
@@ -171,6 +358,67 @@ public class CommCareEntityStorageCache implements EntityStorageCache {
         }
     }
 
+    /**
+     * Drops cached values for any app which are older than maxAgeMs, then
+     * trims each cache to its maxEntriesPerCache most recently written
+     * values. Both passes are driven by the (cache name, timestamp) index.
+     *
+     * @return The number of values removed
+     */
+    public static int evictStaleEntries(SQLiteDatabase userDb, long maxAgeMs, int maxEntriesPerCache) {
+        long cutoff = System.currentTimeMillis() - maxAgeMs;
+        int removed = 0;
+        userDb.beginTransaction();
+        try {
+            for (String cacheName : getCacheNames(userDb)) {
+                // timestamp has no column affinity, so the cutoff has to be
+                // bound as a number for the comparison to be numeric
+                removed += userDb.delete(TABLE_NAME,
+                        COL_CACHE_NAME + " = ? AND " + COL_TIMESTAMP + " < CAST(? AS INTEGER)",
+                        new String[]{cacheName, String.valueOf(cutoff)});
+
+                long remaining = countEntries(userDb, cacheName);
+                if (remaining > maxEntriesPerCache) {
+                    removed += userDb.delete(TABLE_NAME,
+                            DatabaseHelper.ID_COL + " IN (SELECT " + DatabaseHelper.ID_COL +
+                                    " FROM " + TABLE_NAME + " WHERE " + COL_CACHE_NAME + " = ?" +
+                                    " ORDER BY " + COL_TIMESTAMP + " ASC LIMIT CAST(? AS INTEGER))",
+                            new String[]{cacheName, String.valueOf(remaining - maxEntriesPerCache)});
+                }
+            }
+            userDb.setTransactionSuccessful();
+        } finally {
+            userDb.endTransaction();
+        }
+        if (SqlStorage.STORAGE_OUTPUT_DEBUG) {
+            Log.d(TAG, "Evicted " + removed + " stale entity cache values");
+        }
+        return removed;
+    }
+
+    private static long countEntries(SQLiteDatabase userDb, String cacheName) {
+        Cursor c = userDb.rawQuery("SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE " + COL_CACHE_NAME + " = ?",
+                new String[]{cacheName});
+        try {
+            return c.moveToFirst() ? c.getLong(0) : 0;
+        } finally {
+            c.close();
+        }
+    }
+
+    private static List<String> getCacheNames(SQLiteDatabase userDb) {
+        List<String> names = new ArrayList<>();
+        Cursor c = userDb.rawQuery("SELECT DISTINCT " + COL_CACHE_NAME + " FROM " + TABLE_NAME, null);
+        try {
+            while (c.moveToNext()) {
+                names.add(c.getString(0));
+            }
+        } finally {
+            c.close();
+        }
+        return names;
+    }
+
     public static void setEntityCacheWipedPref() {
         String uuid = CommCareApplication.instance().getSession().getLoggedInUser().getUniqueId();
         int versionNumber = CommCareApplication.instance().getCurrentApp().getAppRecord().getVersionNumber();
@@ -204,7 +452,7 @@ public class CommCareEntityStorageCache implements EntityStorageCache {
         String[] names = cachePrimeKeys[0];
         String whereClause = buildKeyNameWhereClause(names);
         long now = System.currentTimeMillis();
-        String sqlStatement = "SELECT entity_key, cache_key, value FROM entity_cache JOIN AndroidCase ON entity_cache.entity_key = AndroidCase.commcare_sql_id WHERE " +
+        String sqlStatement = "SELECT entity_cache." + DatabaseHelper.ID_COL + ", entity_key, cache_key, value FROM entity_cache JOIN AndroidCase ON entity_cache.entity_key = AndroidCase.commcare_sql_id WHERE " +
                 whereClause + " AND " + CommCareEntityStorageCache.COL_APP_ID + " = '" + AppUtils.getCurrentAppId() +
                 "' AND cache_key IN " + validKeys;
         SQLiteDatabase db = CommCareApplication.instance().getUserDbHandle();
@@ -212,11 +460,56 @@ public class CommCareEntityStorageCache implements EntityStorageCache {
             DbUtil.explainSql(db, sqlStatement, args);
         }
 
-        populateEntitySet(db, sqlStatement, args, entitySet);
+        HashMap<String, Set<String>> primed = populateEntitySet(db, sqlStatement, args, entitySet);
+        Set<String> toCompute = new HashSet<>();
+        for (int i = cachePrimeKeys[1].length; i < args.length; ++i) {
+            toCompute.addAll(primeRemainingByKey(entitySet, args[i], primed.get(args[i])));
+        }
+
+        Logger.log(LogTypes.TYPE_MAINTENANCE, "Entity cache primed " +
+                (entitySet.size() - toCompute.size()) + " of " + entitySet.size() + " entities, " +
+                toCompute.size() + " left to compute, in " + (System.currentTimeMillis() - now) + "ms");
+    }
 
-        if (SqlStorage.STORAGE_OUTPUT_DEBUG) {
-            Log.d(TAG, "Sequential Cache Load: " + (System.currentTimeMillis() - now) + "ms");
+    /**
+     * Looks up the value for cacheKey of the entities the primer's guess
+     * didn't cover, in bulk by record id. The entities which still have no
+     * value are remembered as misses, so computing them doesn't query for
+     * each one again.
+     *
+     * @return The keys of the entities with no cached value for cacheKey
+     */
+    private Set<String> primeRemainingByKey(Hashtable<String, AsyncEntity> entitySet, String cacheKey,
+            Set<String> primedForKey) {
+        List<Integer> remaining = new ArrayList<>();
+        for (String entityKey : entitySet.keySet()) {
+            if (primedForKey == null || !primedForKey.contains(entityKey)) {
+                try {
+                    remaining.add(Integer.valueOf(entityKey));
+                } catch (NumberFormatException e) {
+                    // not a record id, so it can't have been cached
+                }
+            }
+        }
+        Set<String> misses = new HashSet<>();
+        if (remaining.isEmpty()) {
+            return misses;
+        }
+
+        HashMap<String, String> values = retrieveCacheValues(remaining, cacheKey);
+        for (Integer recordId : remaining) {
+            String entityKey = String.valueOf(recordId);
+            String value = values.get(entityKey);
+            if (value == null) {
+                misses.add(entityKey);
+            } else {
+                entitySet.get(entityKey).setSortData(cacheKey, value);
+            }
+        }
+        synchronized (knownMisses) {
+            knownMisses.put(cacheKey, new HashSet<>(misses));
         }
+        return misses;
     }
 
     public String getCacheKey(String detailId, String mFieldId) {
@@ -252,20 +545,52 @@ public class CommCareEntityStorageCache implements EntityStorageCache {
         return whereClause;
     }
 
-    private static void populateEntitySet(SQLiteDatabase db, String sqlStatement, String[] args,
+    /**
+     * Walks the cache rows selected by sqlStatement in pages of
+     * PRIME_PAGE_SIZE, resuming each page after the last cache row id seen.
+     * A single cursor over the whole result would be cut off at one cursor
+     * window, about a megabyte or 10k single field rows.
+     *
+     * @param sqlStatement Query whose first column is the cache row id
+     * @return The keys of the entities in the set which received sort data,
+     * by cache key
+     */
+    private static HashMap<String, Set<String>> populateEntitySet(SQLiteDatabase db, String sqlStatement, String[] args,
             Hashtable<String, AsyncEntity> entitySet) {
-        //TODO: This will _only_ query up to about a meg of data, which is an un-great limitation.
-        //Should probably split this up SQL LIMIT based looped
-        //For reference the current limitation is about 10k rows with 1 field each.
-        Cursor walker = db.rawQuery(sqlStatement, args);
-        while (walker.moveToNext()) {
-            String entityId = walker.getString(walker.getColumnIndex("entity_key"));
-            String cacheId = walker.getString(walker.getColumnIndex("cache_key"));
-            String val = walker.getString(walker.getColumnIndex("value"));
-            if (entitySet.containsKey(entityId)) {
-                entitySet.get(entityId).setSortData(cacheId, val);
+        String pageStatement = sqlStatement + " AND entity_cache." + DatabaseHelper.ID_COL +
+                " > CAST(? AS INTEGER) ORDER BY entity_cache." + DatabaseHelper.ID_COL +
+                " LIMIT " + PRIME_PAGE_SIZE;
+        String[] pageArgs = new String[args.length + 1];
+        System.arraycopy(args, 0, pageArgs, 0, args.length);
+
+        HashMap<String, Set<String>> primed = new HashMap<>();
+        long lastRowId = -1;
+        int rowsInPage;
+        do {
+            pageArgs[args.length] = String.valueOf(lastRowId);
+            rowsInPage = 0;
+            Cursor walker = db.rawQuery(pageStatement, pageArgs);
+            try {
+                while (walker.moveToNext()) {
+                    rowsInPage++;
+                    lastRowId = walker.getLong(0);
+                    String entityId = walker.getString(1);
+                    AsyncEntity entity = entitySet.get(entityId);
+                    if (entity != null) {
+                        String cacheKey = walker.getString(2);
+                        entity.setSortData(cacheKey, walker.getString(3));
+                        Set<String> primedForKey = primed.get(cacheKey);
+                        if (primedForKey == null) {
+                            primedForKey = new HashSet<>();
+                            primed.put(cacheKey, primedForKey);
+                        }
+                        primedForKey.add(entityId);
+                    }
+                }
+            } finally {
+                walker.close();
             }
-        }
-        walker.close();
+        } while (rowsInPage == PRIME_PAGE_SIZE);
+        return primed;
     }
 }
@@ -0,0 +1,183 @@
+package org.commcare.models.encryption;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * Random access reader for files in the chunked AES-GCM format described in
+ * ChunkedCipherFormat.
+ *
+ * Chunks are read with positional reads and decrypted independently, so
+ * decryptChunk may be called from several threads at once, and streams
+ * opened at an offset only decrypt the chunks from that offset on.
+ */
+public class ChunkedCipherFile implements Closeable {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final SecretKey key;
+    private final int chunkSize;
+    private final byte[] noncePrefix;
+    private final int chunkCount;
+    private final long plaintextLength;
+
+    public ChunkedCipherFile(File path, SecretKey key) throws IOException {
+        this.file = new RandomAccessFile(path, "r");
+        this.channel = file.getChannel();
+        this.key = key;
+        try {
+            byte[] header = new byte[ChunkedCipherFormat.HEADER_LENGTH];
+            file.readFully(header);
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+            byte[] magic = new byte[ChunkedCipherFormat.MAGIC.length];
+            headerBuffer.get(magic);
+            byte version = headerBuffer.get();
+            if (!Arrays.equals(magic, ChunkedCipherFormat.MAGIC) || version != ChunkedCipherFormat.VERSION) {
+                throw new IOException("Not a chunked encrypted file: " + path);
+            }
+            chunkSize = headerBuffer.getInt();
+            noncePrefix = new byte[ChunkedCipherFormat.NONCE_PREFIX_LENGTH];
+            headerBuffer.get(noncePrefix);
+
+            long body = file.length() - ChunkedCipherFormat.HEADER_LENGTH;
+            long storedChunkSize = (long)chunkSize + ChunkedCipherFormat.TAG_LENGTH;
+            if (chunkSize < 1 || body < ChunkedCipherFormat.TAG_LENGTH) {
+                throw new IOException("Corrupt chunked encrypted file: " + path);
+            }
+            long chunks = (body + storedChunkSize - 1) / storedChunkSize;
+            if (body - (chunks - 1) * storedChunkSize < ChunkedCipherFormat.TAG_LENGTH) {
+                // the last chunk is too short to even hold its tag
+                throw new IOException("Truncated chunked encrypted file: " + path);
+            }
+            chunkCount = (int)chunks;
+            plaintextLength = body - chunks * ChunkedCipherFormat.TAG_LENGTH;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public long getPlaintextLength() {
+        return plaintextLength;
+    }
+
+    /**
+     * Reads and authenticates a single chunk. Safe to call concurrently.
+     *
+     * @throws IOException if the chunk can't be read or fails authentication
+     */
+    public byte[] decryptChunk(int index) throws IOException {
+        if (index < 0 || index >= chunkCount) {
+            throw new IndexOutOfBoundsException("Chunk " + index + " of " + chunkCount);
+        }
+        boolean lastChunk = index == chunkCount - 1;
+        long storedChunkSize = (long)chunkSize + ChunkedCipherFormat.TAG_LENGTH;
+        long position = ChunkedCipherFormat.HEADER_LENGTH + index * storedChunkSize;
+        int length = (int)(lastChunk
+                ? file.length() - position
+                : storedChunkSize);
+
+        ByteBuffer stored = ByteBuffer.allocate(length);
+        while (stored.hasRemaining()) {
+            if (channel.read(stored, position + stored.position()) < 0) {
+                throw new EOFException("Unexpected end of chunk " + index);
+            }
+        }
+        try {
+            return ChunkedCipherFormat.processChunk(Cipher.DECRYPT_MODE, key, noncePrefix,
+                    index, lastChunk, stored.array(), 0, length);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk " + index + " failed authentication", e);
+        }
+    }
+
+    /**
+     * @return A stream over the plaintext starting at the given offset.
+     * Closing the stream closes this file.
+     */
+    public InputStream openStream(long offset) {
+        ChunkedInputStream stream = new ChunkedInputStream();
+        stream.position = Math.min(Math.max(offset, 0), plaintextLength);
+        return stream;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private class ChunkedInputStream extends InputStream {
+        private long position;
+        private byte[] chunk;
+        private int chunkIndex = -1;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= plaintextLength) {
+                return -1;
+            }
+            int index = (int)(position / chunkSize);
+            if (index != chunkIndex) {
+                chunk = decryptChunk(index);
+                chunkIndex = index;
+            }
+            int offsetInChunk = (int)(position - (long)index * chunkSize);
+            int count = Math.min(len, chunk.length - offsetInChunk);
+            System.arraycopy(chunk, offsetInChunk, b, off, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * Moves forward without decrypting the chunks skipped over
+         */
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, plaintextLength - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            if (chunk == null || position >= plaintextLength) {
+                return 0;
+            }
+            long chunkEnd = (long)chunkIndex * chunkSize + chunk.length;
+            return (int)Math.max(0, chunkEnd - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            ChunkedCipherFile.this.close();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.commcare.models.encryption;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Layout and crypto shared by ChunkedCipherOutputStream and ChunkedCipherFile.
+ *
+ * A chunked file is a header followed by the plaintext split into chunks of
+ * chunkSize bytes, each sealed separately with AES-GCM:
+ *
+ * <pre>
+ * header: magic "CCEF" | version (1 byte) | chunkSize (int) | nonce prefix (8 bytes)
+ * chunk:  ciphertext (chunkSize bytes, or fewer for the last) | GCM tag (16 bytes)
+ * </pre>
+ *
+ * Every chunk but the last is exactly chunkSize + 16 bytes on disk, so any
+ * chunk can be located from its index and decrypted on its own. The IV of a
+ * chunk is the file's random nonce prefix followed by the chunk index, and
+ * the index and a last-chunk flag are authenticated with it, so chunks
+ * can't be reordered and the file can't be truncated at a chunk boundary
+ * without decryption failing.
+ */
+public final class ChunkedCipherFormat {
+
+    static final byte[] MAGIC = {'C', 'C', 'E', 'F'};
+    static final byte VERSION = 1;
+
+    static final int NONCE_PREFIX_LENGTH = 8;
+    static final int HEADER_LENGTH = MAGIC.length + 1 + 4 + NONCE_PREFIX_LENGTH;
+    static final int TAG_LENGTH = 16;
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    /**
+     * Ciphers are only used for the duration of a single chunk operation, so
+     * each thread can keep reusing one instead of looking a new one up from
+     * the provider on every file open
+     */
+    private static final ThreadLocal<Cipher> CIPHERS = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException("AES-GCM is unavailable on this device", e);
+            }
+        }
+    };
+
+    private ChunkedCipherFormat() {
+    }
+
+    /**
+     * @return True if the file starts with a chunked file header of a
+     * version this build can read. Files written by the legacy single stream
+     * format never do, short of a 1 in 2^40 coincidence.
+     */
+    public static boolean isChunkedFile(File file) throws IOException {
+        if (file.length() < HEADER_LENGTH + TAG_LENGTH) {
+            return false;
+        }
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] prefix = new byte[MAGIC.length + 1];
+            new DataInputStream(is).readFully(prefix);
+            return Arrays.equals(Arrays.copyOf(prefix, MAGIC.length), MAGIC)
+                    && prefix[MAGIC.length] == VERSION;
+        } finally {
+            is.close();
+        }
+    }
+
+    static byte[] buildHeader(int chunkSize, byte[] noncePrefix) {
+        return ByteBuffer.allocate(HEADER_LENGTH)
+                .put(MAGIC)
+                .put(VERSION)
+                .putInt(chunkSize)
+                .put(noncePrefix)
+                .array();
+    }
+
+    /**
+     * Encrypts or decrypts the chunk in input[offset, offset + length)
+     *
+     * @return The processed chunk, in a new array
+     */
+    static byte[] processChunk(int mode, SecretKey key, byte[] noncePrefix, long chunkIndex,
+                               boolean lastChunk, byte[] input, int offset, int length)
+            throws GeneralSecurityException {
+        byte[] iv = ByteBuffer.allocate(NONCE_PREFIX_LENGTH + 4)
+                .put(noncePrefix)
+                .putInt((int)chunkIndex)
+                .array();
+        byte[] associatedData = ByteBuffer.allocate(9)
+                .putLong(chunkIndex)
+                .put((byte)(lastChunk ? 1 : 0))
+                .array();
+
+        Cipher cipher = CIPHERS.get();
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+        cipher.updateAAD(associatedData);
+        return cipher.doFinal(input, offset, length);
+    }
+}
@@ -0,0 +1,100 @@
+package org.commcare.models.encryption;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * Writes the chunked AES-GCM format described in ChunkedCipherFormat.
+ *
+ * A full chunk is only sealed once more data arrives after it, since the
+ * last chunk has to be marked as such; close() seals whatever is left,
+ * which may be an empty chunk.
+ */
+public class ChunkedCipherOutputStream extends OutputStream {
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final OutputStream out;
+    private final SecretKey key;
+    private final byte[] noncePrefix = new byte[ChunkedCipherFormat.NONCE_PREFIX_LENGTH];
+    private final byte[] buffer;
+    private int buffered = 0;
+    private long chunkIndex = 0;
+    private boolean closed = false;
+
+    public ChunkedCipherOutputStream(OutputStream out, SecretKey key) throws IOException {
+        this(out, key, ChunkedCipherFormat.DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedCipherOutputStream(OutputStream out, SecretKey key, int chunkSize) throws IOException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive, was " + chunkSize);
+        }
+        this.out = out;
+        this.key = key;
+        this.buffer = new byte[chunkSize];
+        random.nextBytes(noncePrefix);
+        out.write(ChunkedCipherFormat.buildHeader(chunkSize, noncePrefix));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (len > 0) {
+            if (buffered == buffer.length) {
+                sealChunk(false);
+            }
+            int toCopy = Math.min(len, buffer.length - buffered);
+            System.arraycopy(b, off, buffer, buffered, toCopy);
+            buffered += toCopy;
+            off += toCopy;
+            len -= toCopy;
+        }
+    }
+
+    private void sealChunk(boolean lastChunk) throws IOException {
+        try {
+            out.write(ChunkedCipherFormat.processChunk(Cipher.ENCRYPT_MODE, key, noncePrefix,
+                    chunkIndex, lastChunk, buffer, 0, buffered));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to encrypt chunk " + chunkIndex, e);
+        }
+        chunkIndex++;
+        buffered = 0;
+    }
+
+    /**
+     * Flushes the sealed chunks. Data in the current, unsealed chunk is only
+     * written out once the chunk fills up or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            sealChunk(true);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -1,59 +1,171 @@
 package org.commcare.models.encryption;
 
-import android.util.Log;
-
-import java.util.HashSet;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.crypto.Cipher;
 
 /**
+ * Pool of initialized ciphers shared by every thread that decrypts records.
+ *
+ * Free ciphers are kept in per-thread stripes, so a thread normally gets
+ * back the cipher it last returned without touching any shared state, with
+ * a bounded overflow queue behind them. Borrowing and returning only share
+ * the read side of a lock, so concurrent readers don't serialize on the
+ * pool; expire() takes the write side so nothing is put back mid-clear.
+ *
  * @author ctsims
  */
 public abstract class CipherPool {
-    private static final String TAG = CipherPool.class.getSimpleName();
+    private static final int INITIAL_SIZE = 5;
+
+    /**
+     * Free ciphers beyond this are dropped on return rather than pooled
+     */
+    private static final int MAX_OVERFLOW = 32;
+
+    private final AtomicReferenceArray<Cipher> stripes;
+    private final int stripeMask;
+    private final ConcurrentLinkedQueue<Cipher> overflow = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger overflowSize = new AtomicInteger();
 
-    private static final int GROWTH_FACTOR = 5;
+    /**
+     * Ciphers currently lent out, mapped to the generation they were created
+     * in. Ciphers from before the last expire() aren't taken back.
+     */
+    private final ConcurrentHashMap<Cipher, Integer> issued = new ConcurrentHashMap<>();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final ReentrantReadWriteLock expiryLock = new ReentrantReadWriteLock();
 
-    private final HashSet<Cipher> issued = new HashSet<>();
-    private final Stack<Cipher> free = new Stack<>();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong remitCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong borrowWaitNanos = new AtomicLong();
 
     //TODO: Pass in factory and finalize all API's rather than
     //leaving the class to be anonymous?
     public CipherPool() {
-
+        int stripeCount = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+        stripes = new AtomicReferenceArray<>(stripeCount);
+        stripeMask = stripeCount - 1;
     }
 
-    public synchronized final void init() {
-        grow();
+    public final void init() {
+        for (int i = 0; i < INITIAL_SIZE; ++i) {
+            offerToOverflow(createCipher());
+        }
     }
 
-    public synchronized final Cipher borrow() {
-        if (free.isEmpty()) {
-            grow();
-            Log.d(TAG, "Growing cipher pool. Current size is: " + free.size() + issued.size());
+    public final Cipher borrow() {
+        long start = System.nanoTime();
+        Cipher toLend;
+        expiryLock.readLock().lock();
+        try {
+            toLend = stripes.getAndSet(currentStripe(), null);
+            if (toLend == null) {
+                toLend = overflow.poll();
+                if (toLend != null) {
+                    overflowSize.decrementAndGet();
+                }
+            }
+            if (toLend == null) {
+                toLend = createCipher();
+            }
+            if (toLend != null) {
+                issued.put(toLend, generation.get());
+            }
+        } finally {
+            expiryLock.readLock().unlock();
         }
-        Cipher toLend = free.pop();
-        issued.add(toLend);
+        borrowCount.incrementAndGet();
+        borrowWaitNanos.addAndGet(System.nanoTime() - start);
         return toLend;
     }
 
-    public synchronized final void remit(Cipher cipher) {
-        issued.remove(cipher);
-        free.push(cipher);
+    public final void remit(Cipher cipher) {
+        if (cipher == null) {
+            return;
+        }
+        remitCount.incrementAndGet();
+        expiryLock.readLock().lock();
+        try {
+            Integer cipherGeneration = issued.remove(cipher);
+            if (cipherGeneration == null || cipherGeneration != generation.get()) {
+                // lent out before the pool was expired; its key may be stale
+                return;
+            }
+            if (!stripes.compareAndSet(currentStripe(), null, cipher)) {
+                offerToOverflow(cipher);
+            }
+        } finally {
+            expiryLock.readLock().unlock();
+        }
     }
 
-    private synchronized void grow() {
-        for (int i = 0; i < GROWTH_FACTOR; ++i) {
-            free.push(generateNewCipher());
+    private void offerToOverflow(Cipher cipher) {
+        if (cipher == null) {
+            return;
+        }
+        if (overflowSize.incrementAndGet() <= MAX_OVERFLOW) {
+            overflow.offer(cipher);
+        } else {
+            overflowSize.decrementAndGet();
         }
     }
 
+    private int currentStripe() {
+        long id = Thread.currentThread().getId();
+        return (int)(id ^ (id >>> 32)) & stripeMask;
+    }
+
+    private Cipher createCipher() {
+        createdCount.incrementAndGet();
+        return generateNewCipher();
+    }
+
     protected abstract Cipher generateNewCipher();
 
-    public synchronized final void expire() {
+    public final void expire() {
         //do we want to try to destroy the final object here?
-        issued.clear();
-        free.clear();
+        expiryLock.writeLock().lock();
+        try {
+            generation.incrementAndGet();
+            issued.clear();
+            for (int i = 0; i < stripes.length(); ++i) {
+                stripes.set(i, null);
+            }
+            overflow.clear();
+            overflowSize.set(0);
+        } finally {
+            expiryLock.writeLock().unlock();
+        }
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getRemitCount() {
+        return remitCount.get();
+    }
+
+    /**
+     * @return How many ciphers have been initialized, i.e. pool misses plus
+     * the initial fill
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return Total time spent inside borrow(), including creating ciphers
+     * on pool misses
+     */
+    public long getBorrowWaitNanos() {
+        return borrowWaitNanos.get();
     }
 }
@@ -10,6 +10,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.InvalidKeyException;
@@ -68,11 +69,47 @@ public class EncryptionIO {
         }
     }
 
+    /**
+     * Creates a file in the chunked AES-GCM format of ChunkedCipherFormat,
+     * which supports random access and authenticates its contents.
+     *
+     * Only for files that are read back through getFileInputStream or
+     * openChunkedFile; readers which set up their own AES cipher can only
+     * handle the format written by createFileOutputStream.
+     */
+    public static OutputStream createChunkedFileOutputStream(String filename,
+                                                             SecretKeySpec symetricKey)
+            throws IOException {
+        FileOutputStream fos = new FileOutputStream(new File(filename));
+        if (symetricKey == null) {
+            return fos;
+        }
+        return new BufferedOutputStream(new ChunkedCipherOutputStream(fos, symetricKey));
+    }
+
+    /**
+     * Opens a file written by createChunkedFileOutputStream for random access
+     */
+    public static ChunkedCipherFile openChunkedFile(String filepath,
+                                                    SecretKeySpec symetricKey) throws IOException {
+        return new ChunkedCipherFile(new File(filepath), symetricKey);
+    }
+
+    /**
+     * Reads files in either format: chunked files are recognized by their
+     * header, anything else is read as the legacy single AES stream.
+     */
     public static InputStream getFileInputStream(String filepath,
                                                  SecretKeySpec symetricKey) throws FileNotFoundException {
         final File file = new File(filepath);
         InputStream is;
         try {
+            if (symetricKey != null) {
+                InputStream chunked = openIfChunked(file, symetricKey);
+                if (chunked != null) {
+                    return chunked;
+                }
+            }
             is = new FileInputStream(file);
             if (symetricKey != null) {
                 Cipher cipher = Cipher.getInstance("AES");
@@ -96,4 +133,24 @@ public class EncryptionIO {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * @return A stream over the file's plaintext if it is in the chunked
+     * format, null otherwise
+     */
+    private static InputStream openIfChunked(File file, SecretKeySpec symetricKey)
+            throws FileNotFoundException {
+        try {
+            if (!ChunkedCipherFormat.isChunkedFile(file)) {
+                return null;
+            }
+            return new BufferedInputStream(new ChunkedCipherFile(file, symetricKey).openStream(0));
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            FileNotFoundException notReadable = new FileNotFoundException("Unable to read " + file);
+            notReadable.initCause(e);
+            throw notReadable;
+        }
+    }
 }
@@ -16,6 +16,7 @@ import org.commcare.engine.cases.CaseUtils;
 import org.commcare.interfaces.CommcareRequestEndpoints;
 import org.commcare.models.database.SqlStorage;
 import org.commcare.provider.DebugControlsReceiver;
+import org.commcare.tasks.RestoreCheckpointer;
 import org.commcare.utils.SyncDetailCalculations;
 import org.javarosa.core.model.User;
 import org.javarosa.core.model.utils.DateUtils;
@@ -112,8 +113,16 @@ public class CommcareRequestGenerator implements CommcareRequestEndpoints {
 
         String syncToken = null;
         if (includeStateFlags) {
-            syncToken = getSyncToken(username);
-            String digest = getDigest();
+            SqlStorage<User> userStorage =
+                    CommCareApplication.instance().getUserStorage(User.STORAGE_KEY, User.class);
+            // a partially committed restore asks for the same payload again, so that the
+            // elements it already committed can be skipped
+            syncToken = RestoreCheckpointer.getTokenToRequest(userStorage, username,
+                    getSyncToken(username));
+            // a partially committed restore knowingly leaves the case db out of step
+            // with the token, so don't ask the server to check it against the digest
+            String digest = RestoreCheckpointer.hasPendingCheckpoint(userStorage, username)
+                    ? null : getDigest();
 
             if (syncToken != null) {
                 params.put("since", syncToken);
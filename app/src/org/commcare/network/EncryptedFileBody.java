@@ -7,6 +7,7 @@ import org.javarosa.core.io.StreamsUtil.OutputIOException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.annotation.Nullable;
 import javax.crypto.Cipher;
@@ -39,7 +40,7 @@ public class EncryptedFileBody extends RequestBody {
     public void writeTo(BufferedSink sink) throws IOException {
         //The only time this can cause issues is if the body has disappeared since construction. Don't worry about that, since
         //it'll get caught when we initialize.
-        CipherInputStream cis = new CipherInputStream(new FileInputStream(file), cipher);
+        InputStream cis = openInputStream();
         try {
             StreamsUtil.writeFromInputToOutputUnmanaged(cis, sink.outputStream());
         } catch (InputIOException iioe) {
@@ -54,6 +55,10 @@ public class EncryptedFileBody extends RequestBody {
         }
     }
 
+    protected InputStream openInputStream() throws IOException {
+        return new CipherInputStream(new FileInputStream(file), cipher);
+    }
+
     @Nullable
     @Override
     public MediaType contentType() {
@@ -0,0 +1,32 @@
+package org.commcare.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import javax.crypto.Cipher;
+
+import okhttp3.MediaType;
+
+/**
+ * Sends an encrypted file holding gzip compressed content, inflating it on the way out for
+ * servers that expect the content uncompressed
+ */
+public class InflatingEncryptedFileBody extends EncryptedFileBody {
+
+    public InflatingEncryptedFileBody(MediaType contentType, File file, Cipher cipher) {
+        super(contentType, file, cipher);
+    }
+
+    @Override
+    protected InputStream openInputStream() throws IOException {
+        InputStream compressed = super.openInputStream();
+        try {
+            return new GZIPInputStream(compressed);
+        } catch (IOException e) {
+            compressed.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.commcare.network;
+
+import android.util.Log;
+
+import org.javarosa.core.io.StreamsUtil;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+/**
+ * Stream over a data pull response that is still being downloaded.
+ *
+ * A background thread reads the network stream into a bounded pipe which
+ * this stream reads from, so the restore payload can be parsed while the
+ * rest of it downloads. The network can run ahead of the parser by at most
+ * PIPE_SIZE bytes. Unlike the non-pipelined path, the payload is never
+ * written to disk.
+ *
+ * Download failures are rethrown from read() rather than showing up as a
+ * truncated payload.
+ */
+public class PipelinedDataPullStream extends InputStream {
+    private static final String TAG = PipelinedDataPullStream.class.getSimpleName();
+
+    private static final int PIPE_SIZE = 1024 * 1024;
+
+    private final PipedInputStream pipe;
+
+    private volatile IOException downloadFailure;
+
+    PipelinedDataPullStream(final InputStream networkStream,
+                            final StreamsUtil.StreamReadObserver observer) throws IOException {
+        final PipedOutputStream pipeOut = new PipedOutputStream();
+        this.pipe = new PipedInputStream(pipeOut, PIPE_SIZE);
+
+        Thread downloader = new Thread(() -> {
+            try {
+                StreamsUtil.writeFromInputToOutputNew(new BufferedInputStream(networkStream), pipeOut, observer);
+            } catch (IOException e) {
+                // record the failure before the pipe closes so the reader
+                // never mistakes it for the end of the payload
+                downloadFailure = e;
+                Log.w(TAG, "Restore download failed: " + e.getMessage());
+            } finally {
+                closeQuietly(networkStream);
+                closeQuietly(pipeOut);
+            }
+        }, "pipelined-restore-download");
+        downloader.setDaemon(true);
+        downloader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read;
+        try {
+            read = pipe.read(b, off, len);
+        } catch (IOException e) {
+            throw downloadFailure != null ? downloadFailure : e;
+        }
+        if (read == -1 && downloadFailure != null) {
+            throw downloadFailure;
+        }
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return pipe.available();
+    }
+
+    /**
+     * Stops the download if it is still running
+     */
+    @Override
+    public void close() throws IOException {
+        pipe.close();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Error closing restore stream: " + e.getMessage());
+        }
+    }
+}
@@ -62,43 +62,7 @@ public class RemoteDataPullResponse {
 
             Log.i("commcare-network", "Starting network read, expected content size: " + dataSizeGuess + "b");
             StreamsUtil.writeFromInputToOutputNew(new BufferedInputStream(input),
-                    cacheOut,
-                    new StreamsUtil.StreamReadObserver() {
-                        long lastOutput = 0;
-
-                        /** The notification threshold. **/
-                        static final int PERCENT_INCREASE_THRESHOLD = 4;
-
-                        @Override
-                        public void notifyCurrentCount(long bytesRead) {
-                            boolean notify;
-
-                            //We always wanna notify when we get our first bytes
-                            if (lastOutput == 0) {
-                                Log.i("commcare-network", "First" + bytesRead + " bytes received from network: ");
-                            }
-                            //After, if we don't know how much data to expect, we can't do
-                            //anything useful
-                            if (dataSizeGuess == -1) {
-                                //set this so the first notification up there doesn't keep firing
-                                lastOutput = bytesRead;
-                                return;
-                            }
-
-                            int percentIncrease = (int)(((bytesRead - lastOutput) * 100) / dataSizeGuess);
-
-                            //Now see if we're over the reporting threshold
-                            //TODO: Is this actually necessary? In theory this shouldn't
-                            //matter due to android task polling magic?
-                            notify = percentIncrease > PERCENT_INCREASE_THRESHOLD;
-
-                            if (notify && task != null) {
-                                lastOutput = bytesRead;
-                                int totalRead = (int)(((bytesRead) * 100) / dataSizeGuess);
-                                task.reportDownloadProgress(totalRead);
-                            }
-                        }
-                    });
+                    cacheOut, buildProgressObserver(dataSizeGuess));
 
             return cache;
 
@@ -110,6 +74,66 @@ public class RemoteDataPullResponse {
         }
     }
 
+    /**
+     * Retrieves the HttpResponse stream into a stream that can be parsed
+     * while the rest of the response is still downloading
+     *
+     * @throws IOException If the response can't be opened
+     */
+    public PipelinedDataPullStream openPipelinedStream() throws IOException {
+        final long dataSizeGuess = ModernHttpRequester.getContentLength(response);
+        InputStream input = getInputStream();
+        try {
+            Log.i("commcare-network", "Starting pipelined network read, expected content size: " + dataSizeGuess + "b");
+            return new PipelinedDataPullStream(input, buildProgressObserver(dataSizeGuess));
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Notifies listeners of progress through the download if its size is available.
+     */
+    private StreamsUtil.StreamReadObserver buildProgressObserver(final long dataSizeGuess) {
+        return new StreamsUtil.StreamReadObserver() {
+            long lastOutput = 0;
+
+            /** The notification threshold. **/
+            static final int PERCENT_INCREASE_THRESHOLD = 4;
+
+            @Override
+            public void notifyCurrentCount(long bytesRead) {
+                boolean notify;
+
+                //We always wanna notify when we get our first bytes
+                if (lastOutput == 0) {
+                    Log.i("commcare-network", "First" + bytesRead + " bytes received from network: ");
+                }
+                //After, if we don't know how much data to expect, we can't do
+                //anything useful
+                if (dataSizeGuess == -1) {
+                    //set this so the first notification up there doesn't keep firing
+                    lastOutput = bytesRead;
+                    return;
+                }
+
+                int percentIncrease = (int)(((bytesRead - lastOutput) * 100) / dataSizeGuess);
+
+                //Now see if we're over the reporting threshold
+                //TODO: Is this actually necessary? In theory this shouldn't
+                //matter due to android task polling magic?
+                notify = percentIncrease > PERCENT_INCREASE_THRESHOLD;
+
+                if (notify && task != null) {
+                    lastOutput = bytesRead;
+                    int totalRead = (int)(((bytesRead) * 100) / dataSizeGuess);
+                    task.reportDownloadProgress(totalRead);
+                }
+            }
+        };
+    }
+
     protected InputStream getInputStream() throws IOException {
         return response.body().byteStream();
     }
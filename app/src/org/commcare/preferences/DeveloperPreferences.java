@@ -60,6 +60,15 @@ public class DeveloperPreferences extends CommCarePreferenceFragment {
     private final static String ENFORCE_SECURE_ENDPOINT = "cc-enforce-secure-endpoint";
     private final static String ALLOW_SPACE_IN_SELECT_CHOICES = "cc-allow-space-in-select-choices";
     private final static String USE_EXPRESSION_CACHING_IN_FORMS = "use-expression-caching-in-forms";
+    private final static String ENABLE_PARALLEL_ENTITY_LOADING = "cc-enable-parallel-entity-loading";
+    private final static String ENABLE_PIPELINED_RESTORE = "cc-enable-pipelined-restore";
+    private final static String ENABLE_CHECKPOINTED_RESTORE = "cc-enable-checkpointed-restore";
+    private final static String ENABLE_FORM_DEF_PREWARM = "cc-enable-form-def-prewarm";
+    private final static String ENABLE_FORM_DEF_MEMORY_CACHE = "cc-enable-form-def-memory-cache";
+    private final static String ENABLE_SEGMENTED_LOG_REPORTS = "cc-enable-segmented-log-reports";
+    private final static String SEND_COMPRESSED_LOG_REPORTS = "cc-send-compressed-log-reports";
+    private final static String ENABLE_STREAMING_FORM_SAVE = "cc-enable-streaming-form-save";
+    private final static String ENABLE_STREAMED_WIFI_DIRECT_TRANSFER = "cc-enable-streamed-wifi-direct-transfer";
 
     public final static String PROJECT_SET_ACCESS_CODE = "cc-dev-prefs-access-code";
     public final static String USER_ENTERED_ACCESS_CODE = "cc-dev-prefs-user-entered-code";
@@ -428,6 +437,61 @@ public class DeveloperPreferences extends CommCarePreferenceFragment {
         return doesPropertyMatch(USE_EXPRESSION_CACHING_IN_FORMS, PrefValues.NO, PrefValues.YES);
     }
 
+    public static boolean isParallelEntityLoadingEnabled() {
+        return doesPropertyMatch(ENABLE_PARALLEL_ENTITY_LOADING, PrefValues.NO, PrefValues.YES);
+    }
+
+    public static boolean isPipelinedRestoreEnabled() {
+        return doesPropertyMatch(ENABLE_PIPELINED_RESTORE, PrefValues.NO, PrefValues.YES);
+    }
+
+    public static boolean isCheckpointedRestoreEnabled() {
+        return doesPropertyMatch(ENABLE_CHECKPOINTED_RESTORE, PrefValues.NO, PrefValues.YES);
+    }
+
+    public static boolean isFormDefPrewarmEnabled() {
+        return doesPropertyMatch(ENABLE_FORM_DEF_PREWARM, PrefValues.NO, PrefValues.YES);
+    }
+
+    public static boolean isFormDefMemoryCacheEnabled() {
+        return doesPropertyMatch(ENABLE_FORM_DEF_MEMORY_CACHE, PrefValues.NO, PrefValues.YES);
+    }
+
+    public static boolean isSegmentedLogReportsEnabled() {
+        return doesPropertyMatch(ENABLE_SEGMENTED_LOG_REPORTS, PrefValues.NO, PrefValues.YES);
+    }
+
+    /**
+     * Whether compressed log reports are sent as is, with a gzip Content-Encoding, rather than
+     * inflated on the way out. On by default, and turned off for the app the first time the
+     * server rejects a compressed report, after which reports upload at their full size.
+     */
+    public static boolean shouldSendCompressedLogReports() {
+        return doesPropertyMatch(SEND_COMPRESSED_LOG_REPORTS, PrefValues.YES, PrefValues.YES);
+    }
+
+    public static void disableCompressedLogReports() {
+        CommCareApplication.instance().getCurrentApp().getAppPreferences()
+                .edit()
+                .putString(DeveloperPreferences.SEND_COMPRESSED_LOG_REPORTS, PrefValues.NO)
+                .apply();
+    }
+
+    public static boolean isStreamingFormSaveEnabled() {
+        return doesPropertyMatch(ENABLE_STREAMING_FORM_SAVE, PrefValues.NO, PrefValues.YES);
+    }
+
+    /**
+     * Whether Wi-Fi Direct transfers stream forms straight into the connection. Receivers on this
+     * version accept both kinds of transfer whatever this is set to, but receivers on older
+     * versions only accept zip files: sending them a streamed transfer leaves the sender waiting
+     * for an answer until the socket times out, 50 seconds later, and the receiver holding a zip
+     * it can't read. Only turn this on when every receiving device has been updated.
+     */
+    public static boolean isStreamedWifiDirectTransferEnabled() {
+        return doesPropertyMatch(ENABLE_STREAMED_WIFI_DIRECT_TRANSFER, PrefValues.NO, PrefValues.YES);
+    }
+
     private void  hideOrShowDangerousSettings() {
         Preference[] onScreenPrefs = getOnScreenPrefs();
         if (!GlobalPrivilegesManager.isAdvancedSettingsAccessEnabled() && !BuildConfig.DEBUG) {
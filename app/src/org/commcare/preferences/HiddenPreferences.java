@@ -62,6 +62,7 @@ public class HiddenPreferences {
     public final static String BRAND_BANNER_HOME = "brand-banner-home";
     public final static String BRAND_BANNER_HOME_DEMO = "brand-banner-home-demo";
     private final static String LOGIN_DURATION = "cc-login-duration-seconds";
+    private final static String FORM_SUBMISSION_CONCURRENCY = "cc-form-submission-concurrency";
     private final static String GPS_AUTO_CAPTURE_ACCURACY = "cc-gps-auto-capture-accuracy";
     private final static String GPS_AUTO_CAPTURE_TIMEOUT_MINS = "cc-gps-auto-capture-timeout";
     private final static String GPS_WIDGET_GOOD_ACCURACY = "cc-gps-widget-good-accuracy";
@@ -113,6 +114,8 @@ public class HiddenPreferences {
      */
     public static final String USER_DOMAIN_SERVER_URL_SUFFIX = ".commcarehq.org";
 
+    public static final int MAX_FORM_SUBMISSION_CONCURRENCY = 4;
+
     /**
      * @return How many seconds should a user session remain open before expiring?
      */
@@ -228,6 +231,20 @@ public class HiddenPreferences {
         return Integer.parseInt(properties.getString(KEY_TARGET_DENSITY, PrefValues.DEFAULT_TARGET_DENSITY));
     }
 
+    /**
+     * @return How many form submissions may be uploaded at once, between 1 and
+     * MAX_FORM_SUBMISSION_CONCURRENCY
+     */
+    public static int getFormSubmissionConcurrency() {
+        SharedPreferences properties = CommCareApplication.instance().getCurrentApp().getAppPreferences();
+        try {
+            int concurrency = Integer.parseInt(properties.getString(FORM_SUBMISSION_CONCURRENCY, "1"));
+            return Math.max(1, Math.min(concurrency, MAX_FORM_SUBMISSION_CONCURRENCY));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
     public static boolean isEntityDetailLoggingEnabled() {
         SharedPreferences properties = CommCareApplication.instance().getCurrentApp().getAppPreferences();
         return properties.getString(LOG_ENTITY_DETAIL, PrefValues.FALSE).equals(PrefValues.TRUE);
@@ -44,7 +44,9 @@ class CaseDataAPI {
      * Can be queried for an individual case (NOTE: by case ID not by content provider ID)
      * or for all cases.
      *
-     * Projections and Filtering are unsupported for this type
+     * Supports projections, filtering with "column = value" clauses joined by AND, and ordering
+     * on the indexed columns: _id, case id, case type, owner id and status. Results can be paged
+     * with the {@link #QUERY_LIMIT} and {@link #QUERY_OFFSET} uri query parameters.
      *
      * @author ctsims
      */
@@ -64,6 +66,9 @@ class CaseDataAPI {
         public static final String DATE_OPENED = "date_opened";
         public static final String LAST_MODIFIED = "last_modified";
 
+        public static final String QUERY_LIMIT = "limit";
+        public static final String QUERY_OFFSET = "offset";
+
 
         public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/casedb/case");
 
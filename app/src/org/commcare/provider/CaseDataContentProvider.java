@@ -5,16 +5,21 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.text.TextUtils;
+
 import androidx.annotation.NonNull;
 
 import org.commcare.CommCareApplication;
 import org.commcare.cases.model.Case;
 import org.commcare.models.database.SqlStorage;
+import org.commcare.modern.database.DatabaseHelper;
+import org.commcare.modern.database.TableBuilder;
 import org.commcare.android.database.user.models.ACase;
 import org.commcare.utils.SessionUnavailableException;
 import org.javarosa.core.reference.InvalidReferenceException;
 import org.javarosa.core.reference.ReferenceManager;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.NoSuchElementException;
@@ -38,12 +43,19 @@ import java.util.Vector;
  */
 public class CaseDataContentProvider extends ContentProvider {
     
-    //Valid sql selectors
+    private static final String[] ALL_METADATA_COLUMNS = new String[]{CaseDataAPI.MetadataColumns._ID,
+            CaseDataAPI.MetadataColumns.CASE_ID,
+            CaseDataAPI.MetadataColumns.CASE_NAME,
+            CaseDataAPI.MetadataColumns.CASE_TYPE,
+            CaseDataAPI.MetadataColumns.DATE_OPENED,
+            CaseDataAPI.MetadataColumns.LAST_MODIFIED,
+            CaseDataAPI.MetadataColumns.OWNER_ID,
+            CaseDataAPI.MetadataColumns.STATUS};
+
+    //Valid sql selectors, from lower cased column name to the indexed column
     private final HashMap<String, String> caseMetaIndexTable = new HashMap<>();
     
     
-    //TODO: Caching - Use a cache table here or use an LRU or other system provided cache?
-    
     @Override
     public String getType(@NonNull Uri uri) {
         int match = CaseDataAPI.UriMatch(uri);
@@ -67,10 +79,11 @@ public class CaseDataContentProvider extends ContentProvider {
 
     @Override
     public boolean onCreate() {
-        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns.CASE_ID, Case.INDEX_CASE_ID);
-        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns.CASE_TYPE, Case.INDEX_CASE_TYPE);
-        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns.STATUS, Case.INDEX_CASE_STATUS);
-        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns.OWNER_ID, Case.INDEX_OWNER_ID);
+        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns._ID, DatabaseHelper.ID_COL);
+        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns.CASE_ID, TableBuilder.scrubName(Case.INDEX_CASE_ID));
+        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns.CASE_TYPE, TableBuilder.scrubName(Case.INDEX_CASE_TYPE));
+        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns.STATUS, TableBuilder.scrubName(Case.INDEX_CASE_STATUS));
+        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns.OWNER_ID.toLowerCase(), TableBuilder.scrubName(Case.INDEX_OWNER_ID));
         return true;
     }
 
@@ -91,7 +104,7 @@ public class CaseDataContentProvider extends ContentProvider {
         switch(match) {
         case CaseDataAPI.MetadataColumns.MATCH_CASES:
         case CaseDataAPI.MetadataColumns.MATCH_CASE:
-            return queryCaseList(uri, selection, selectionArgs);
+            return queryCaseList(uri, projection, selection, selectionArgs, sortOrder);
         case CaseDataAPI.DataColumns.MATCH_DATA:
             return queryCaseData(uri.getLastPathSegment());
         case CaseDataAPI.AttachmentColumns.MATCH_ATTACHMENTS:
@@ -106,29 +119,25 @@ public class CaseDataContentProvider extends ContentProvider {
 
 
 
-    //this is the complex case. Querying the full case database for metadata.
-    private Cursor queryCaseList(Uri uri, String selection, String[] selectionArgs) {
-
-        //Not cached yet. Long term this should be a priority.
+    /**
+     * Query case metadata. Selection, ordering and the limit and offset are all answered from the
+     * indexed case columns, and rows are streamed from the database as the cursor is read, so only
+     * the cases whose name or dates are actually read get deserialized.
+     */
+    private Cursor queryCaseList(Uri uri, String[] projection, String selection,
+                                 String[] selectionArgs, String sortOrder) {
         SqlStorage<ACase> storage = CommCareApplication.instance().getUserStorage(ACase.STORAGE_KEY, ACase.class);
-        
-        //What we'd really like to do here is raw DB queries, but sadly it looks like we don't actually index 
-        //enough of the right fields for that, so we're going to deserialize the models. We'll consider 
-        //revising this API
-        
-        MatrixCursor retCursor = new MatrixCursor(new String[] {CaseDataAPI.MetadataColumns._ID,
-                                                                CaseDataAPI.MetadataColumns.CASE_ID, 
-                                                                CaseDataAPI.MetadataColumns.CASE_NAME,
-                                                                CaseDataAPI.MetadataColumns.CASE_TYPE,
-                                                                CaseDataAPI.MetadataColumns.DATE_OPENED,
-                                                                CaseDataAPI.MetadataColumns.LAST_MODIFIED,
-                                                                CaseDataAPI.MetadataColumns.OWNER_ID,
-                                                                CaseDataAPI.MetadataColumns.STATUS});
-        
+
+        String[] columns = projection == null ? ALL_METADATA_COLUMNS : projection;
+        for (String column : columns) {
+            if (!Arrays.asList(ALL_METADATA_COLUMNS).contains(column)) {
+                throw new IllegalArgumentException("Invalid column for case metadata: " + column);
+            }
+        }
+
         //Allow for some selection processing, basically very simple AND filtering on indexes
-        
-        Vector<String> keys = new Vector<>();
-        Vector<String> values = new Vector<>();
+        Vector<String> whereClauses = new Vector<>();
+        Vector<String> whereArgs = new Vector<>();
 
         //If we don't have any selection args, skip all of this
         if(selection != null) {
@@ -143,7 +152,7 @@ public class CaseDataContentProvider extends ContentProvider {
                     throw new RuntimeException("Invalid selection key for case metadata: " + key);
                 }
                 
-                String indexName = caseMetaIndexTable.get(key);
+                String columnName = caseMetaIndexTable.get(key);
                 
                 //remove any quotation marks and trim
                 String value = parts[1].replace("\"","").replace("'", "").trim();
@@ -156,45 +165,69 @@ public class CaseDataContentProvider extends ContentProvider {
                     currentArgVal++;
                 }
                 
-                keys.add(indexName);
-                values.add(value);
+                whereClauses.add(columnName + " = ?");
+                whereArgs.add(value);
             }
-        
-            //If we're matching a specific case (or trying to), add that as well)
-            if(CaseDataAPI.UriMatch(uri) != CaseDataAPI.MetadataColumns.MATCH_CASES)  {
-                keys.add(ACase.INDEX_CASE_ID);
-                values.add(uri.getLastPathSegment());
-            }
-            
-            //Do the db records fetch (one at a time, so as to not overload our working memory)
-            Vector<Integer> recordIds = storage.getIDsForValues(keys.toArray(new String[keys.size()]), values.toArray(new String[values.size()]));
-            for(int i : recordIds) {
-                Case c = storage.read(i);
-                retCursor.addRow(new Object[] {c.getID(), c.getCaseId(), c.getName(), c.getTypeId(), c.getDateOpened(), c.getLastModified(), c.getUserId(), c.isClosed() ? "closed" : "open"});
-            }
-            return retCursor;
-            
         }
-        
-        //Otherwise we either need to iterate over all cases, or just get back the one (these are actually both generalizations of the above
-        //that should get centralized)
 
-        //No Case
-        if(CaseDataAPI.UriMatch(uri) == CaseDataAPI.MetadataColumns.MATCH_CASES)  {
-            for(Case c: storage) {
-                retCursor.addRow(new Object[] {c.getID(), c.getCaseId(), c.getName(), c.getTypeId(), c.getDateOpened(), c.getLastModified(), c.getUserId(), c.isClosed() ? "closed" : "open"});
+        //If we're matching a specific case (or trying to), add that as well
+        if(CaseDataAPI.UriMatch(uri) != CaseDataAPI.MetadataColumns.MATCH_CASES)  {
+            whereClauses.add(caseMetaIndexTable.get(CaseDataAPI.MetadataColumns.CASE_ID) + " = ?");
+            whereArgs.add(uri.getLastPathSegment());
+        }
+
+        String[] indexedProjection = new String[]{
+                DatabaseHelper.ID_COL + " AS " + CaseDataAPI.MetadataColumns._ID,
+                caseMetaIndexTable.get(CaseDataAPI.MetadataColumns.CASE_ID) + " AS " + CaseDataAPI.MetadataColumns.CASE_ID,
+                caseMetaIndexTable.get(CaseDataAPI.MetadataColumns.CASE_TYPE) + " AS " + CaseDataAPI.MetadataColumns.CASE_TYPE,
+                caseMetaIndexTable.get(CaseDataAPI.MetadataColumns.OWNER_ID.toLowerCase()) + " AS " + CaseDataAPI.MetadataColumns.OWNER_ID,
+                caseMetaIndexTable.get(CaseDataAPI.MetadataColumns.STATUS) + " AS " + CaseDataAPI.MetadataColumns.STATUS};
+
+        Cursor indexedColumns = storage.getAccessLock().query(ACase.STORAGE_KEY, indexedProjection,
+                whereClauses.isEmpty() ? null : TextUtils.join(" AND ", whereClauses),
+                whereArgs.toArray(new String[whereArgs.size()]), null, null,
+                getOrderBy(sortOrder), getLimit(uri));
+        return new CaseMetadataCursor(indexedColumns, storage, columns);
+    }
+
+    /**
+     * Only ordering by indexed columns is supported, as in "case_type, _id DESC"
+     */
+    private String getOrderBy(String sortOrder) {
+        if (sortOrder == null || sortOrder.trim().isEmpty()) {
+            return DatabaseHelper.ID_COL;
+        }
+        Vector<String> terms = new Vector<>();
+        for (String term : sortOrder.trim().split("\\s*,\\s*")) {
+            String[] parts = term.trim().split("\\s+");
+            String columnName = caseMetaIndexTable.get(parts[0].toLowerCase());
+            if (columnName == null || parts.length > 2 ||
+                    (parts.length == 2 && !parts[1].equalsIgnoreCase("asc") && !parts[1].equalsIgnoreCase("desc"))) {
+                throw new IllegalArgumentException("Invalid sort order for case metadata: " + sortOrder);
             }
-        } else {
-            //Case defined.
-            try {
-                Case c = storage.getRecordForValue(ACase.INDEX_CASE_ID, uri.getLastPathSegment());
-                retCursor.addRow(new Object[] {c.getID(), c.getCaseId(), c.getName(), c.getTypeId(), c.getDateOpened(), c.getLastModified(), c.getUserId(), c.isClosed() ? "closed" : "open"});
-            } catch(NoSuchElementException nsee) {
-                //No cases with a matching index.
-                return retCursor;
+            terms.add(parts.length == 2 ? columnName + " " + parts[1].toUpperCase() : columnName);
+        }
+        return TextUtils.join(", ", terms);
+    }
+
+    /**
+     * @return the limit clause for the uri's limit and offset parameters, or null for all rows
+     */
+    private static String getLimit(Uri uri) {
+        String limit = uri.getQueryParameter(CaseDataAPI.MetadataColumns.QUERY_LIMIT);
+        String offset = uri.getQueryParameter(CaseDataAPI.MetadataColumns.QUERY_OFFSET);
+        if (limit == null && offset == null) {
+            return null;
+        }
+        try {
+            String limitClause = limit == null ? "-1" : String.valueOf(Integer.parseInt(limit));
+            if (offset != null) {
+                limitClause += " OFFSET " + Integer.parseInt(offset);
             }
+            return limitClause;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit or offset for case metadata: " + uri);
         }
-        return retCursor;
     }
 
     /**
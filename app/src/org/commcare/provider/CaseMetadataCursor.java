@@ -0,0 +1,151 @@
+package org.commcare.provider;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.cases.model.Case;
+import org.commcare.models.database.SqlStorage;
+
+/**
+ * Case metadata rows streamed from a query over the indexed case columns.
+ *
+ * Columns that aren't indexed (name, date opened and last modified) are read from the case record
+ * itself, one row at a time and only when one of them is asked for, so the caseload is never
+ * deserialized up front.
+ */
+class CaseMetadataCursor extends AbstractCursor {
+    private final Cursor indexedColumns;
+    private final SqlStorage<ACase> storage;
+    private final String[] columnNames;
+
+    // For each column, its index in the indexed column cursor, or -1 if it's read from the record
+    private final int[] indexedColumnPositions;
+    private final int recordIdColumn;
+
+    private Case currentCase;
+    private int currentCasePosition = -1;
+
+    /**
+     * @param indexedColumns cursor over the indexed columns, which must include the record id
+     *                       as {@link CaseDataAPI.MetadataColumns#_ID}
+     */
+    CaseMetadataCursor(Cursor indexedColumns, SqlStorage<ACase> storage, String[] columnNames) {
+        this.indexedColumns = indexedColumns;
+        this.storage = storage;
+        this.columnNames = columnNames;
+        this.recordIdColumn = indexedColumns.getColumnIndexOrThrow(CaseDataAPI.MetadataColumns._ID);
+        this.indexedColumnPositions = new int[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            indexedColumnPositions[i] = indexedColumns.getColumnIndex(columnNames[i]);
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return indexedColumns.getCount();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        return indexedColumns.moveToPosition(newPosition);
+    }
+
+    @Override
+    public String getString(int column) {
+        int indexedColumn = indexedColumnPositions[column];
+        if (indexedColumn != -1) {
+            return indexedColumns.getString(indexedColumn);
+        }
+        Object value = getRecordValue(columnNames[column]);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public short getShort(int column) {
+        int indexedColumn = indexedColumnPositions[column];
+        if (indexedColumn != -1) {
+            return indexedColumns.getShort(indexedColumn);
+        }
+        return Short.parseShort(getString(column));
+    }
+
+    @Override
+    public int getInt(int column) {
+        int indexedColumn = indexedColumnPositions[column];
+        if (indexedColumn != -1) {
+            return indexedColumns.getInt(indexedColumn);
+        }
+        return Integer.parseInt(getString(column));
+    }
+
+    @Override
+    public long getLong(int column) {
+        int indexedColumn = indexedColumnPositions[column];
+        if (indexedColumn != -1) {
+            return indexedColumns.getLong(indexedColumn);
+        }
+        return Long.parseLong(getString(column));
+    }
+
+    @Override
+    public float getFloat(int column) {
+        int indexedColumn = indexedColumnPositions[column];
+        if (indexedColumn != -1) {
+            return indexedColumns.getFloat(indexedColumn);
+        }
+        return Float.parseFloat(getString(column));
+    }
+
+    @Override
+    public double getDouble(int column) {
+        int indexedColumn = indexedColumnPositions[column];
+        if (indexedColumn != -1) {
+            return indexedColumns.getDouble(indexedColumn);
+        }
+        return Double.parseDouble(getString(column));
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        int indexedColumn = indexedColumnPositions[column];
+        if (indexedColumn != -1) {
+            return indexedColumns.isNull(indexedColumn);
+        }
+        return getRecordValue(columnNames[column]) == null;
+    }
+
+    private Object getRecordValue(String columnName) {
+        if (currentCasePosition != getPosition()) {
+            currentCase = storage.read(indexedColumns.getInt(recordIdColumn));
+            currentCasePosition = getPosition();
+        }
+        switch (columnName) {
+            case CaseDataAPI.MetadataColumns.CASE_NAME:
+                return currentCase.getName();
+            case CaseDataAPI.MetadataColumns.DATE_OPENED:
+                return currentCase.getDateOpened();
+            case CaseDataAPI.MetadataColumns.LAST_MODIFIED:
+                return currentCase.getLastModified();
+            default:
+                throw new IllegalArgumentException("Unknown case metadata column: " + columnName);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        indexedColumns.close();
+    }
+
+    @Override
+    public void deactivate() {
+        super.deactivate();
+        indexedColumns.deactivate();
+    }
+}
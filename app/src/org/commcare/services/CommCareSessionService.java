@@ -25,6 +25,7 @@ import org.commcare.core.encryption.CryptUtil;
 import org.commcare.dalvik.R;
 import org.commcare.heartbeat.HeartbeatLifecycleManager;
 import org.commcare.interfaces.FormSaveCallback;
+import org.commcare.models.database.SqlQueryCache;
 import org.commcare.models.database.user.DatabaseUserOpenHelper;
 import org.commcare.models.database.user.UserSandboxUtils;
 import org.commcare.models.encryption.CipherPool;
@@ -288,6 +289,7 @@ public class CommCareSessionService extends Service {
             this.key = symetricKey;
             pool.init();
             if (userDatabase != null && userDatabase.isOpen()) {
+                SqlQueryCache.release(userDatabase);
                 userDatabase.close();
             }
 
@@ -471,6 +473,7 @@ public class CommCareSessionService extends Service {
 
             if (userDatabase != null) {
                 if (userDatabase.isOpen()) {
+                    SqlQueryCache.release(userDatabase);
                     userDatabase.close();
                 }
                 userDatabase = null;
@@ -7,6 +7,7 @@ import android.content.Context;
 import android.content.Intent;
 
 import org.commcare.CommCareApplication;
+import org.commcare.utils.BadgeEvaluationService;
 
 import java.util.ArrayList;
 
@@ -17,12 +18,15 @@ public class ExternalDataUpdateHelper {
     public static final String COMMCARE_DATA_UPDATE_ACTION = "org.commcare.dalvik.api.action.data.update";
 
     /**
-     * Broadcasts data update to external apps
+     * Broadcasts data update to external apps, and drops cached menu badges
      * @param c context to send the broadcast with
      * @param updatedCases list of cases updated or created in the update
      */
     public static void broadcastDataUpdate(Context c,
                                            @Nullable ArrayList<String> updatedCases) {
+        // menu badges count the data that just changed
+        BadgeEvaluationService.instance().invalidate();
+
         Intent i = new Intent(COMMCARE_DATA_UPDATE_ACTION);
         if (updatedCases != null) {
             i.putStringArrayListExtra("cases", updatedCases);
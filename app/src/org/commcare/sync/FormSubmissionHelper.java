@@ -12,13 +12,16 @@ import org.commcare.cases.util.InvalidCaseGraphException;
 import org.commcare.dalvik.R;
 import org.commcare.google.services.analytics.FirebaseAnalyticsUtil;
 import org.commcare.models.FormRecordProcessor;
+import org.commcare.preferences.HiddenPreferences;
 import org.commcare.preferences.ServerUrls;
 import org.commcare.suite.model.Profile;
 import org.commcare.tasks.DataSubmissionListener;
 import org.commcare.tasks.FormRecordCleanupTask;
+import org.commcare.tasks.ResultAndError;
 import org.commcare.util.LogTypes;
 import org.commcare.utils.FormUploadResult;
 import org.commcare.utils.FormUploadUtil;
+import org.commcare.utils.PreparedFormSubmission;
 import org.commcare.utils.QuarantineUtil;
 import org.commcare.utils.SessionUnavailableException;
 import org.commcare.utils.StorageUtils;
@@ -36,9 +39,19 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.crypto.spec.SecretKeySpec;
 
@@ -57,6 +70,7 @@ public class FormSubmissionHelper implements DataSubmissionListener {
     private final FormSubmissionProgressListener mFormSubmissionProgressListener;
     private String mUrl;
     private FormUploadResult[] mResults;
+    private String actionableFailureMessage;
     private static final Queue<FormSubmissionHelper> processTasks = new LinkedList<>();
 
 
@@ -268,152 +282,285 @@ public class FormSubmissionHelper implements DataSubmissionListener {
         return needToRefresh;
     }
 
+    /**
+     * Uploads the records in submission order. Multipart bodies are prepared
+     * on a background thread at most maxInFlight + 1 records ahead of the
+     * uploads, and each is dropped as soon as it is sent or fails. Up to
+     * HiddenPreferences.getFormSubmissionConcurrency() uploads are in flight
+     * at once. A record is only sent alongside the records before it if none
+     * of them touch the same cases, so the server still processes forms that
+     * depend on each other in SUBMISSION_ORDERING_NUMBER order.
+     */
     private void sendForms(FormRecord[] records) throws TaskCancelledException {
-        for (int i = 0; i < records.length; ++i) {
+        int maxInFlight = HiddenPreferences.getFormSubmissionConcurrency();
+        ExecutorService preparer = Executors.newSingleThreadExecutor();
+        ExecutorService uploader = Executors.newFixedThreadPool(maxInFlight);
+        CompletionService<Integer> completions = new ExecutorCompletionService<>(uploader);
+        // bodies being prepared or waiting to be sent, by record index
+        Map<Integer, Future<PreparedFormSubmission>> prepared = new HashMap<>();
+        int preparedUpTo = 0;
+        Map<Integer, PreparedFormSubmission> inFlight = new HashMap<>();
+        Exception[] uploadErrors = new Exception[records.length];
+        String[] errorMessages = new String[records.length];
 
-            if (previousFailurePredictsFutureFailures(mResults, i)) {
-                Logger.log(LogTypes.TYPE_WARNING_NETWORK,
-                        "Cancelling submission due to network errors. " + (i - 1) + " forms successfully sent.");
-                break;
-            }
+        try {
+            int next = 0;
+            boolean stopSending = false;
+            while (next < records.length || !inFlight.isEmpty()) {
+                if (isCancelled()) {
+                    Logger.log(LogTypes.TYPE_USER, "Cancelling submission due to a manual stop. "
+                            + getSuccessfulSends() + " forms succesfully sent.");
+                    throw new TaskCancelledException();
+                }
 
-            if (isCancelled()) {
-                Logger.log(LogTypes.TYPE_USER, "Cancelling submission due to a manual stop. " + (i - 1) + " forms succesfully sent.");
-                throw new TaskCancelledException();
-            }
+                // keep the preparation of the next few bodies ahead of the uploads
+                while (preparedUpTo < Math.min(records.length, next + maxInFlight + 1)) {
+                    prepared.put(preparedUpTo, preparer.submit(prepareTask(records[preparedUpTo])));
+                    preparedUpTo++;
+                }
 
-            FormRecord record = records[i];
-            try {
-                if (FormRecord.STATUS_UNSENT.equals(record.getStatus())) {
-                    File folder;
+                if (!stopSending && next < records.length && inFlight.size() < maxInFlight) {
+                    FormRecord record = records[next];
+                    if (!FormRecord.STATUS_UNSENT.equals(record.getStatus())) {
+                        mResults[next] = FormRecord.STATUS_QUARANTINED.equals(record.getStatus()) ||
+                                FormRecord.STATUS_JUST_DELETED.equals(record.getStatus()) ?
+                                // This record was either quarantined or deleted due to an error
+                                // during the pre-processing phase
+                                FormUploadResult.RECORD_FAILURE : FormUploadResult.FULL_SUCCESS;
+                        prepared.remove(next);
+                        next++;
+                        continue;
+                    }
 
-                    //Good!
-                    //Time to Send!
+                    PreparedFormSubmission submission;
                     try {
-                        try {
-                            if (StringUtils.isEmpty(record.getFilePath())) {
-                                throw new FileNotFoundException("File path empty for formrecord " +
-                                        record.getID() + " with xmlns " + record.getFormNamespace());
-                            }
-                            folder = new File(record.getFilePath()).getCanonicalFile().getParentFile();
-                        } catch (FileNotFoundException e) {
-                            //This will put us in the same "Missing Form" handling path as below
-                            throw e;
-                        } catch (IOException e) {
-                            // Unexpected/Unknown IO Error path from cannonical file
-                            Logger.log(LogTypes.TYPE_ERROR_WORKFLOW, "Bizarre. Exception just getting the file reference. Not removing." + getExceptionText(e));
-                            continue;
-                        }
-
-                        User user = CommCareApplication.instance().getSession().getLoggedInUser();
-                        int attemptsMade = 0;
-                        logSubmissionAttempt(record);
-                        while (attemptsMade < SUBMISSION_ATTEMPTS) {
-
-                            if (isCancelled()) {
-                                Logger.log(LogTypes.TYPE_USER, "Cancelling submission due to a manual stop. " + (i - 1) + " forms succesfully sent.");
-                                throw new TaskCancelledException();
-                            }
-
-                            mResults[i] = FormUploadUtil.sendInstance(i, folder,
-                                    new SecretKeySpec(record.getAesKey(), "AES"), mUrl, this, user);
-                            if (mResults[i] == FormUploadResult.FULL_SUCCESS) {
-                                logSubmissionSuccess(record);
-                                break;
-                            } else if (mResults[i] == FormUploadResult.PROCESSING_FAILURE) {
-                                // A processing failure indicates that there there is no point in
-                                // trying that submission again immediately
-                                break;
-                            } else if (mResults[i] == FormUploadResult.RATE_LIMITED) {
-                                // Don't keep retrying, the server is rate limiting submissions
-                                break;
-                            } else if (mResults[i] == FormUploadResult.CAPTIVE_PORTAL) {
-                                // User is behind a captive portal, no need to re-try.
-                                break;
-                            } else {
-                                attemptsMade++;
-                            }
-                        }
-                        if (mResults[i] == FormUploadResult.RECORD_FAILURE ||
-                                mResults[i] == FormUploadResult.PROCESSING_FAILURE) {
-                            quarantineRecord(record, mResults[i]);
-                        }
+                        submission = awaitPrepared(prepared.get(next));
                     } catch (FileNotFoundException e) {
-                        if (CommCareApplication.instance().isStorageAvailable()) {
-                            // If storage is available generally, this is a bug in the app design
-                            // Log with multiple tags so we can track more easily
-                            Logger.log(LogTypes.SOFT_ASSERT, String.format(
-                                    "Removed form record with id %s because file was missing| %s",
-                                    record.getInstanceID(), getExceptionText(e)));
-                            Logger.log(LogTypes.TYPE_FORM_SUBMISSION, String.format(
-                                    "Removed form record with id %s because file was missing| %s",
-                                    record.getInstanceID(), getExceptionText(e)));
-                            record.logPendingDeletion(TAG,
-                                    "the xml submission file associated with the record was missing");
-                            quarantineRecord(record,
-                                    FormRecord.QuarantineReason_FILE_NOT_FOUND);
-                            mResults[i] = FormUploadResult.RECORD_FAILURE;
-                        } else {
-                            // Otherwise, the SD card just got removed, and we need to bail anyway.
-                            CommCareApplication.notificationManager().reportNotificationMessage(
-                                    NotificationMessageFactory.message(ProcessIssues.StorageRemoved), true);
-                            break;
+                        prepared.remove(next);
+                        if (!handleMissingSubmissionFile(record, next, e)) {
+                            // the SD card just got removed, and we need to bail
+                            stopSending = true;
                         }
+                        next++;
+                        continue;
+                    } catch (IOException e) {
+                        prepared.remove(next);
+                        // Unexpected/Unknown IO Error path from cannonical file
+                        Logger.log(LogTypes.TYPE_ERROR_WORKFLOW, "Bizarre. Exception just getting the file reference. Not removing." + getExceptionText(e));
+                        next++;
+                        continue;
+                    } catch (SessionUnavailableException sue) {
+                        throw sue;
+                    } catch (RuntimeException e) {
+                        prepared.remove(next);
+                        //Just try to skip for now. Hopefully this doesn't wreck the model :/
+                        Logger.exception("Totally Unexpected Error during form submission: " + getExceptionText(e), e);
+                        next++;
                         continue;
                     }
 
-                    Profile p = CommCareApplication.instance().getCommCarePlatform().getCurrentProfile();
-                    // Check for success
-                    if (mResults[i] == FormUploadResult.FULL_SUCCESS) {
-                        // Only delete if this device isn't set up to review.
-                        if (p == null || !p.isFeatureActive(Profile.FEATURE_REVIEW)) {
-                            FormRecordCleanupTask.wipeRecord(record);
-                        } else {
-                            // Otherwise save and move appropriately
-                            mProcessor.updateRecordStatus(record, FormRecord.STATUS_SAVED);
-                        }
+                    if (isIndependentOfInFlight(submission, inFlight)) {
+                        // the upload holds the body from here until it completes
+                        prepared.remove(next);
+                        inFlight.put(next, submission);
+                        completions.submit(uploadTask(next, record, submission, uploadErrors, errorMessages));
+                        next++;
+                        continue;
+                    }
+                }
+
+                if (inFlight.isEmpty()) {
+                    // nothing left to wait on and nothing more will be sent
+                    break;
+                }
+
+                Future<Integer> done = completions.poll(500, TimeUnit.MILLISECONDS);
+                if (done != null) {
+                    int i = done.get();
+                    inFlight.remove(i);
+                    if (!handleUploadResult(records[i], i, uploadErrors[i], errorMessages[i]) && !stopSending) {
+                        Logger.log(LogTypes.TYPE_WARNING_NETWORK,
+                                "Cancelling submission due to network errors. " + getSuccessfulSends() + " forms successfully sent.");
+                        stopSending = true;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new TaskCancelledException();
+        } catch (ExecutionException e) {
+            // upload tasks catch everything they throw themselves
+            Logger.exception("Totally Unexpected Error during form submission: " + getExceptionText(e), e);
+        } finally {
+            preparer.shutdownNow();
+            uploader.shutdownNow();
+        }
+    }
+
+    private static Callable<PreparedFormSubmission> prepareTask(final FormRecord record) {
+        return () -> {
+            if (!FormRecord.STATUS_UNSENT.equals(record.getStatus())) {
+                // won't be sent
+                return null;
+            }
+            if (StringUtils.isEmpty(record.getFilePath())) {
+                throw new FileNotFoundException("File path empty for formrecord " +
+                        record.getID() + " with xmlns " + record.getFormNamespace());
+            }
+            File folder = new File(record.getFilePath()).getCanonicalFile().getParentFile();
+            return FormUploadUtil.prepareSubmission(folder, new SecretKeySpec(record.getAesKey(), "AES"));
+        };
+    }
+
+    private static PreparedFormSubmission awaitPrepared(Future<PreparedFormSubmission> prepared)
+            throws IOException, InterruptedException {
+        try {
+            return prepared.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static boolean isIndependentOfInFlight(PreparedFormSubmission submission,
+                                                   Map<Integer, PreparedFormSubmission> inFlight) {
+        for (PreparedFormSubmission other : inFlight.values()) {
+            if (!submission.isIndependentOf(other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends a single submission, retrying up to SUBMISSION_ATTEMPTS times.
+     * Only touches the network; the outcome is handled back on the calling
+     * thread by handleUploadResult.
+     */
+    private Callable<Integer> uploadTask(final int i, final FormRecord record,
+                                         final PreparedFormSubmission submission,
+                                         final Exception[] uploadErrors,
+                                         final String[] errorMessages) {
+        return () -> {
+            try {
+                User user = CommCareApplication.instance().getSession().getLoggedInUser();
+                int attemptsMade = 0;
+                logSubmissionAttempt(record);
+                while (attemptsMade < SUBMISSION_ATTEMPTS && !isCancelled()) {
+                    ResultAndError<FormUploadResult> resultAndError =
+                            FormUploadUtil.sendPreparedSubmission(i, submission, mUrl, this, user);
+                    FormUploadResult result = resultAndError.data;
+                    errorMessages[i] = resultAndError.errorMessage;
+                    mResults[i] = result;
+                    if (result == FormUploadResult.FULL_SUCCESS) {
+                        logSubmissionSuccess(record);
+                        break;
+                    } else if (result == FormUploadResult.PROCESSING_FAILURE) {
+                        // A processing failure indicates that there there is no point in
+                        // trying that submission again immediately
+                        break;
+                    } else if (result == FormUploadResult.RATE_LIMITED) {
+                        // Don't keep retrying, the server is rate limiting submissions
+                        break;
+                    } else if (result == FormUploadResult.CAPTIVE_PORTAL) {
+                        // User is behind a captive portal, no need to re-try.
+                        break;
+                    } else {
+                        attemptsMade++;
                     }
-                } else if (FormRecord.STATUS_QUARANTINED.equals(record.getStatus()) ||
-                        FormRecord.STATUS_JUST_DELETED.equals(record.getStatus())) {
-                    // This record was either quarantined or deleted due to an error during the
-                    // pre-processing phase
-                    mResults[i] = FormUploadResult.RECORD_FAILURE;
-                } else {
-                    mResults[i] = FormUploadResult.FULL_SUCCESS;
                 }
-            } catch (SessionUnavailableException sue) {
-                throw sue;
             } catch (Exception e) {
-                //Just try to skip for now. Hopefully this doesn't wreck the model :/
-                Logger.exception("Totally Unexpected Error during form submission: " + getExceptionText(e), e);
+                uploadErrors[i] = e;
             }
+            return i;
+        };
+    }
+
+    /**
+     * Quarantines or cleans up a record once its upload has finished
+     *
+     * @return false if the result indicates that further submissions will
+     * also fail. (We permit proceeding if there was a local problem with a
+     * specific record, or a processing error with a specific record, since
+     * that is unrelated to how future submissions will fair).
+     */
+    private boolean handleUploadResult(FormRecord record, int i, Exception uploadError, String errorMessage) {
+        if (uploadError instanceof SessionUnavailableException) {
+            throw (SessionUnavailableException)uploadError;
+        } else if (uploadError != null) {
+            //Just try to skip for now. Hopefully this doesn't wreck the model :/
+            Logger.exception("Totally Unexpected Error during form submission: " + getExceptionText(uploadError), uploadError);
+            return true;
+        }
+
+        try {
+            if (mResults[i] == FormUploadResult.RECORD_FAILURE ||
+                    mResults[i] == FormUploadResult.PROCESSING_FAILURE) {
+                quarantineRecord(record, mResults[i], errorMessage);
+            } else if (mResults[i] == FormUploadResult.ACTIONABLE_FAILURE) {
+                actionableFailureMessage = errorMessage;
+            }
+
+            Profile p = CommCareApplication.instance().getCommCarePlatform().getCurrentProfile();
+            // Check for success
+            if (mResults[i] == FormUploadResult.FULL_SUCCESS) {
+                // Only delete if this device isn't set up to review.
+                if (p == null || !p.isFeatureActive(Profile.FEATURE_REVIEW)) {
+                    FormRecordCleanupTask.wipeRecord(record);
+                } else {
+                    // Otherwise save and move appropriately
+                    mProcessor.updateRecordStatus(record, FormRecord.STATUS_SAVED);
+                }
+            }
+        } catch (SessionUnavailableException sue) {
+            throw sue;
+        } catch (Exception e) {
+            //Just try to skip for now. Hopefully this doesn't wreck the model :/
+            Logger.exception("Totally Unexpected Error during form submission: " + getExceptionText(e), e);
         }
+
+        return mResults[i] == FormUploadResult.FULL_SUCCESS ||
+                mResults[i] == FormUploadResult.RECORD_FAILURE ||
+                mResults[i] == FormUploadResult.PROCESSING_FAILURE;
     }
 
     /**
-     * @param mResults     the array of submission mResults
-     * @param currentIndex - the index of the submission we are about to attempt
-     * @return true if there was a failure in submitting the previous form that indicates future
-     * submission attempts will also fail. (We permit proceeding if there was a local problem with
-     * a specific record, or a processing error with a specific record, since that is unrelated to
-     * how future submissions will fair).
+     * @return false if the file is missing because storage was removed
      */
-    private boolean previousFailurePredictsFutureFailures(FormUploadResult[] mResults, int currentIndex) {
-        if (currentIndex > 0) {
-            FormUploadResult lastResult = mResults[currentIndex - 1];
-            return !(lastResult == FormUploadResult.FULL_SUCCESS ||
-                    lastResult == FormUploadResult.RECORD_FAILURE ||
-                    lastResult == FormUploadResult.PROCESSING_FAILURE);
+    private boolean handleMissingSubmissionFile(FormRecord record, int i, FileNotFoundException e) {
+        if (CommCareApplication.instance().isStorageAvailable()) {
+            // If storage is available generally, this is a bug in the app design
+            // Log with multiple tags so we can track more easily
+            Logger.log(LogTypes.SOFT_ASSERT, String.format(
+                    "Removed form record with id %s because file was missing| %s",
+                    record.getInstanceID(), getExceptionText(e)));
+            Logger.log(LogTypes.TYPE_FORM_SUBMISSION, String.format(
+                    "Removed form record with id %s because file was missing| %s",
+                    record.getInstanceID(), getExceptionText(e)));
+            record.logPendingDeletion(TAG,
+                    "the xml submission file associated with the record was missing");
+            quarantineRecord(record,
+                    FormRecord.QuarantineReason_FILE_NOT_FOUND);
+            mResults[i] = FormUploadResult.RECORD_FAILURE;
+            return true;
+        } else {
+            // Otherwise, the SD card just got removed, and we need to bail anyway.
+            CommCareApplication.notificationManager().reportNotificationMessage(
+                    NotificationMessageFactory.message(ProcessIssues.StorageRemoved), true);
+            return false;
         }
-        return false;
     }
 
-    private FormRecord quarantineRecord(FormRecord record, FormUploadResult uploadResult) {
+    private FormRecord quarantineRecord(FormRecord record, FormUploadResult uploadResult, String errorMessage) {
         String reasonType =
                 (uploadResult == FormUploadResult.RECORD_FAILURE) ?
                         FormRecord.QuarantineReason_RECORD_ERROR :
                         FormRecord.QuarantineReason_SERVER_PROCESSING_ERROR;
-        record = mProcessor.quarantineRecord(record, reasonType, uploadResult.getErrorMessage());
+        record = mProcessor.quarantineRecord(record, reasonType, errorMessage);
         return record;
     }
 
@@ -469,19 +616,29 @@ public class FormSubmissionHelper implements DataSubmissionListener {
     }
 
 
+    /**
+     * @return The server's explanation of the last actionable failure, to be
+     * shown to the user
+     */
+    String getActionableFailureMessage() {
+        return actionableFailureMessage;
+    }
+
     //Wrappers for the internal stuff
     @Override
     public void beginSubmissionProcess(int totalItems) {
         publishProgress(SUBMISSION_BEGIN, (long)totalItems);
     }
 
+    // Uploads run concurrently, so their progress is serialized here before
+    // it reaches listeners that expect one submission's updates at a time
     @Override
-    public void startSubmission(int itemNumber, long sizeOfItem) {
+    public synchronized void startSubmission(int itemNumber, long sizeOfItem) {
         publishProgress(SUBMISSION_START, (long)itemNumber, sizeOfItem);
     }
 
     @Override
-    public void notifyProgress(int itemNumber, long progress) {
+    public synchronized void notifyProgress(int itemNumber, long progress) {
         publishProgress(SUBMISSION_NOTIFY, (long)itemNumber, progress);
     }
 
@@ -525,6 +682,7 @@ public class FormSubmissionHelper implements DataSubmissionListener {
     void cleanUp() {
         mUrl = null;
         mResults = null;
+        actionableFailureMessage = null;
     }
 
     private static String getFormPostURL(final Context context) {
@@ -149,6 +149,10 @@ public abstract class ProcessAndSendTask<R> extends CommCareTask<Void, Long, For
         return label;
     }
 
+    protected String getActionableFailureMessage() {
+        return mFormSubmissionHelper.getActionableFailureMessage();
+    }
+
 
     @Override
     protected void onCancelled() {
@@ -28,6 +28,7 @@ import org.commcare.modern.models.RecordTooLargeException;
 import org.commcare.network.DataPullRequester;
 import org.commcare.network.HttpUtils;
 import org.commcare.network.RemoteDataPullResponse;
+import org.commcare.preferences.DeveloperPreferences;
 import org.commcare.preferences.HiddenPreferences;
 import org.commcare.preferences.ServerUrls;
 import org.commcare.resources.model.CommCareOTARestoreListener;
@@ -72,6 +73,8 @@ public abstract class DataPullTask<R>
     protected final Context context;
 
     private int mCurrentProgress;
+    private RestoreCheckpointer checkpointer;
+    private AndroidTransactionParserFactory checkpointedFactory;
     private int mTotalItems;
     private long mSyncStartTime;
 
@@ -367,8 +370,16 @@ public abstract class DataPullTask<R>
         Logger.log(LogTypes.TYPE_USER, "Remote Auth Successful|" + username);
 
         try {
-            BitCache cache = pullResponse.writeResponseToCache(context);
-            String syncToken = readInput(cache.retrieveCache(), factory);
+            String syncToken;
+            if (DeveloperPreferences.isPipelinedRestoreEnabled()) {
+                // parse the payload as it arrives instead of waiting for the whole download
+                try (InputStream stream = pullResponse.openPipelinedStream()) {
+                    syncToken = readInput(stream, factory);
+                }
+            } else {
+                BitCache cache = pullResponse.writeResponseToCache(context);
+                syncToken = readInput(cache.retrieveCache(), factory);
+            }
             updateUserSyncToken(syncToken);
 
             onSuccessfulSync();
@@ -552,6 +563,10 @@ public abstract class DataPullTask<R>
         //CTS: We're not doing this in a super good way right now, need to be way more fault tolerant.
         //this is the temporary implementation of everything past this point
 
+        if (DeveloperPreferences.isCheckpointedRestoreEnabled()) {
+            return recoverWithCheckpoints(cache, factory);
+        }
+
         //Wipe storage
         SQLiteDatabase userDb = CommCareApplication.instance().getUserDbHandle();
         userDb.beginTransaction();
@@ -575,6 +590,28 @@ public abstract class DataPullTask<R>
         }
     }
 
+    /**
+     * Recovery that commits the wipe and the restore in batches, so that an
+     * interrupted recovery is continued by the next sync rather than redone.
+     */
+    private Pair<Integer, String> recoverWithCheckpoints(BitCache cache,
+                                                         AndroidTransactionParserFactory factory) {
+        try {
+            String syncToken = readInputWithCheckpoints(cache.retrieveCache(), factory, true);
+            updateUserSyncToken(syncToken);
+            Logger.log(LogTypes.TYPE_USER, "Sync Recovery Successful");
+            return new Pair<>(PROGRESS_DONE, "");
+        } catch (InvalidStructureException | XmlPullParserException
+                | UnfullfilledRequirementsException | SessionUnavailableException
+                | IOException e) {
+            Logger.exception("Sync recovery failed|" + e.getLocalizedMessage(), e);
+            return new Pair<>(PROGRESS_RECOVERY_FAIL_BAD, e.getLocalizedMessage());
+        } finally {
+            //destroy temp file
+            cache.release();
+        }
+    }
+
     private void wipeStorageForFourTwelveSync(SQLiteDatabase userDb) {
         SqlStorage.wipeTableWithoutCommit(userDb, ACase.STORAGE_KEY);
         SqlStorage.wipeTableWithoutCommit(userDb, Ledger.STORAGE_KEY);
@@ -626,6 +663,10 @@ public abstract class DataPullTask<R>
     private String readInput(InputStream stream, AndroidTransactionParserFactory factory)
             throws InvalidStructureException, IOException, XmlPullParserException,
             UnfullfilledRequirementsException {
+        if (DeveloperPreferences.isCheckpointedRestoreEnabled()) {
+            return readInputWithCheckpoints(stream, factory, false);
+        }
+
         initParsers(factory);
         //this is _really_ coupled, but we'll tolerate it for now because of the absurd performance gains
         SQLiteDatabase db = CommCareApplication.instance().getUserDbHandle();
@@ -641,12 +682,51 @@ public abstract class DataPullTask<R>
         return factory.getSyncToken();
     }
 
+    /**
+     * Parses the payload committing every RestoreCheckpointer.DEFAULT_BATCH_SIZE
+     * elements, picking up from a previous interrupted restore if there is one.
+     *
+     * @param recovery Whether to wipe storage before restoring, as a 412 recovery does
+     */
+    private String readInputWithCheckpoints(InputStream stream, AndroidTransactionParserFactory factory,
+                                            boolean recovery)
+            throws InvalidStructureException, IOException, XmlPullParserException,
+            UnfullfilledRequirementsException {
+        initParsers(factory);
+        SQLiteDatabase db = CommCareApplication.instance().getUserDbHandle();
+        checkpointer = new RestoreCheckpointer(db,
+                CommCareApplication.instance().getUserStorage(User.STORAGE_KEY, User.class),
+                username, recovery, RestoreCheckpointer.DEFAULT_BATCH_SIZE);
+        checkpointedFactory = factory;
+        checkpointer.begin();
+        try {
+            if (recovery && !checkpointer.isResumingRecovery()) {
+                // committed along with the first batch
+                wipeStorageForFourTwelveSync(db);
+            } else {
+                factory.skipRestoredElements(checkpointer.getCommittedElements(),
+                        checkpointer.getResumedRestoreId());
+            }
+            parseStream(stream, factory);
+            checkpointer.complete();
+        } finally {
+            checkpointer.end();
+            checkpointer = null;
+            checkpointedFactory = null;
+        }
+
+        return factory.getSyncToken();
+    }
+
     //BEGIN - OTA Listener methods below - Note that most of the methods
     //below weren't really implemented
 
     @Override
     public void onUpdate(int numberCompleted) {
         mCurrentProgress = numberCompleted;
+        if (checkpointer != null) {
+            checkpointer.onElementsParsed(numberCompleted, checkpointedFactory.getSyncToken());
+        }
         int millisecondsElapsed = (int)(System.currentTimeMillis() - mSyncStartTime);
 
         this.publishProgress(PROGRESS_PROCESSING, mCurrentProgress, mTotalItems, millisecondsElapsed);
@@ -12,5 +12,15 @@ public interface EntityLoaderListener {
     void deliverLoadResult(List<Entity<TreeReference>> entities, List<TreeReference> references,
                            NodeEntityFactory factory, int focusTargetIndex);
 
+    /**
+     * Receives the first EntityLoaderTask.FIRST_PAGE_SIZE entities of a
+     * large list without a default sort while the rest are still loading,
+     * on the main thread. deliverLoadResult always
+     * follows with the complete list, which includes these entities.
+     */
+    default void deliverFirstPage(List<Entity<TreeReference>> entities, List<TreeReference> references,
+                                  NodeEntityFactory factory) {
+    }
+
     void deliverLoadError(Exception e);
 }
@@ -6,12 +6,12 @@ import org.commcare.activities.EntitySelectActivity;
 import org.commcare.android.logging.ForceCloseLogger;
 import org.commcare.cases.entity.AsyncNodeEntityFactory;
 import org.commcare.cases.entity.Entity;
-import org.commcare.cases.entity.EntityStorageCache;
 import org.commcare.cases.entity.NodeEntityFactory;
 import org.commcare.logging.XPathErrorLogger;
 import org.commcare.models.database.user.models.CommCareEntityStorageCache;
 import org.commcare.preferences.DeveloperPreferences;
 import org.commcare.suite.model.Detail;
+import org.commcare.suite.model.DetailField;
 import org.commcare.tasks.templates.ManagedAsyncTask;
 import org.javarosa.core.model.condition.EvaluationContext;
 import org.javarosa.core.model.instance.TreeReference;
@@ -20,6 +20,16 @@ import org.javarosa.xpath.XPathException;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import androidx.annotation.VisibleForTesting;
 
 /**
  * @author ctsims
@@ -30,17 +40,74 @@ public class EntityLoaderTask
     private final static Object lock = new Object();
     private static EntityLoaderTask pendingTask = null;
 
+    /**
+     * Lists shorter than this aren't worth the cost of spinning up workers
+     */
+    private static final int MIN_REFERENCES_FOR_PARALLEL_LOAD = 200;
+    private static final int MAX_LOADER_THREADS = 8;
+    private static final int LOADER_THREADS =
+            Math.min(MAX_LOADER_THREADS, Runtime.getRuntime().availableProcessors());
+    /**
+     * Rough upper bound on the heap taken by one worker's evaluation
+     * context and the instances it loads, used to keep the number of
+     * workers within the free heap
+     */
+    private static final long WORKER_MEMORY_ESTIMATE = 16 * 1024 * 1024;
+
+    private static ExecutorService loaderPool;
+
+    /**
+     * Number of entities handed to the listener ahead of the full result, so
+     * the list can show rows while the rest are built
+     */
+    public static final int FIRST_PAGE_SIZE = 50;
+
     private final NodeEntityFactory factory;
+    @Nullable
+    private final CommCareEntityStorageCache entityStorageCache;
+    private final Detail detail;
+    private final EvaluationContext evalCtx;
+    private final WorkerContextFactory workerContextFactory;
+    private final boolean loadInParallel;
+    private int forcedWorkerCount = 0;
+    private final boolean deliverFirstPage;
+    private volatile List<Entity<TreeReference>> firstPage;
+    private volatile List<TreeReference> firstPageReferences;
     private EntityLoaderListener listener;
     private Exception mException = null;
     private int focusTargetIndex;
 
     public EntityLoaderTask(Detail detail, EvaluationContext evalCtx) {
+        this(detail, evalCtx, null);
+    }
+
+    /**
+     * @param workerContextFactory builds the evaluation contexts for parallel
+     *                             workers, or null to always load serially
+     */
+    public EntityLoaderTask(Detail detail, EvaluationContext evalCtx,
+                            @Nullable WorkerContextFactory workerContextFactory) {
         evalCtx.addFunctionHandler(EntitySelectActivity.getHereFunctionHandler());
+        this.detail = detail;
+        this.evalCtx = evalCtx;
+        this.workerContextFactory = workerContextFactory;
+        // the async factory defers its work to the entity cache and trace
+        // collection isn't thread safe, so both stay on the serial path
+        this.loadInParallel = workerContextFactory != null
+                && DeveloperPreferences.isParallelEntityLoadingEnabled()
+                && !detail.useAsyncStrategy()
+                && !DeveloperPreferences.collectAndDisplayEntityTraces();
+        // async entities are only usable after prepareEntities, so there's
+        // nothing to show until the whole list is loaded. A list with a
+        // default sort can't show its first rows before every entity is
+        // built either, since any of them might sort to the top.
+        this.deliverFirstPage = !detail.useAsyncStrategy()
+                && detail.getOrderedFieldIndicesForSorting().length == 0;
         if (detail.useAsyncStrategy()) {
-            EntityStorageCache entityStorageCache = new CommCareEntityStorageCache("case");
+            this.entityStorageCache = new CommCareEntityStorageCache("case");
             this.factory = new AsyncNodeEntityFactory(detail, evalCtx, entityStorageCache);
         } else {
+            this.entityStorageCache = null;
             this.factory = new NodeEntityFactory(detail, evalCtx);
             if (DeveloperPreferences.collectAndDisplayEntityTraces()) {
                 this.factory.activateDebugTraceOutput();
@@ -53,25 +120,29 @@ public class EntityLoaderTask
         try {
             List<TreeReference> references = factory.expandReferenceList(nodeset[0]);
 
-            List<Entity<TreeReference>> full = new ArrayList<>();
-            focusTargetIndex = -1;
-            int indexInFullList = 0;
-            for (TreeReference ref : references) {
-                if (this.isCancelled()) {
-                    return null;
-                }
+            List<Entity<TreeReference>> full;
+            int workers = forcedWorkerCount > 0 ? forcedWorkerCount :
+                    loadInParallel ? getWorkerCount(references.size()) : 1;
+            if (workers > 1 && workerContextFactory != null) {
+                full = loadEntitiesInParallel(references, workers);
+            } else {
+                full = loadEntities(factory, references, 0, references.size(), true);
+            }
+            if (full == null) {
+                return null;
+            }
 
-                Entity<TreeReference> e = factory.getEntity(ref);
-                if (e != null) {
-                    full.add(e);
-                    if (e.shouldReceiveFocus()) {
-                        focusTargetIndex = indexInFullList;
-                    }
-                    indexInFullList++;
+            focusTargetIndex = -1;
+            for (int i = 0; i < full.size(); ++i) {
+                if (full.get(i).shouldReceiveFocus()) {
+                    focusTargetIndex = i;
                 }
             }
 
             factory.prepareEntities(full);
+            if (!computeSortFields(full)) {
+                return null;
+            }
             factory.printAndClearTraces("build");
             return new Pair<>(full, references);
         } catch (XPathException xe) {
@@ -83,6 +154,199 @@ public class EntityLoaderTask
         }
     }
 
+    /**
+     * In blocking async mode the list is sorted as soon as it is delivered,
+     * which evaluates and caches every sort field the primer didn't find.
+     * Doing that here instead writes all the new values in one transaction
+     * and keeps the evaluation off the main thread.
+     *
+     * @return false if the task was cancelled
+     */
+    private boolean computeSortFields(List<Entity<TreeReference>> entities) {
+        if (entityStorageCache == null || !((AsyncNodeEntityFactory)factory).isBlockingAsyncMode()) {
+            return true;
+        }
+        while (!factory.isEntitySetReady()) {
+            if (this.isCancelled()) {
+                return false;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+
+        DetailField[] fields = detail.getFields();
+        try (CommCareEntityStorageCache.BatchWriter ignored = entityStorageCache.openBatchWriter()) {
+            for (Entity<TreeReference> entity : entities) {
+                if (this.isCancelled()) {
+                    return false;
+                }
+                for (int i = 0; i < fields.length; ++i) {
+                    if (fields[i].getSort() != null) {
+                        entity.getSortField(i);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the entities for references[start, end), skipping references
+     * which don't produce one.
+     *
+     * @param publishFirstPage Whether to publish the first page once it is
+     *                         built, which may only be done from the task's
+     *                         own thread
+     * @return null if the task was cancelled
+     */
+    private List<Entity<TreeReference>> loadEntities(NodeEntityFactory entityFactory,
+                                                     List<TreeReference> references,
+                                                     int start, int end,
+                                                     boolean publishFirstPage) {
+        List<Entity<TreeReference>> entities = new ArrayList<>(end - start);
+        for (int i = start; i < end; ++i) {
+            if (this.isCancelled()) {
+                return null;
+            }
+
+            Entity<TreeReference> e = entityFactory.getEntity(references.get(i));
+            if (e != null) {
+                entities.add(e);
+                if (publishFirstPage && entities.size() == FIRST_PAGE_SIZE && i < end - 1) {
+                    publishFirstPage(entities, references);
+                }
+            }
+        }
+        return entities;
+    }
+
+    private void publishFirstPage(List<Entity<TreeReference>> entities, List<TreeReference> references) {
+        if (!deliverFirstPage) {
+            return;
+        }
+        firstPageReferences = references;
+        firstPage = new ArrayList<>(entities);
+        publishProgress(firstPage.size());
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        super.onProgressUpdate(values);
+        synchronized (lock) {
+            if (listener != null && firstPage != null) {
+                listener.deliverFirstPage(firstPage, firstPageReferences, factory);
+            }
+            firstPage = null;
+        }
+    }
+
+    /**
+     * Each worker holds its own copy of the instances it reads, so the
+     * number of workers is capped by how many of those fit in half of the
+     * heap that is still free.
+     *
+     * @return How many workers to load the list with, 1 for a serial load
+     */
+    private static int getWorkerCount(int referenceCount) {
+        if (referenceCount < MIN_REFERENCES_FOR_PARALLEL_LOAD) {
+            return 1;
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return (int)Math.max(1, Math.min(LOADER_THREADS, freeHeap / 2 / WORKER_MEMORY_ESTIMATE));
+    }
+
+    /**
+     * Loads the list with the given number of workers regardless of its
+     * size, the developer preference or the free heap, as long as the task
+     * was given a worker context factory
+     */
+    @VisibleForTesting
+    void forceParallelLoad(int workers) {
+        this.forcedWorkerCount = workers;
+    }
+
+    /**
+     * Splits the references into contiguous partitions which are built
+     * concurrently and then concatenated, so the result has the same order
+     * as a serial load.
+     *
+     * Each worker gets its own factory over an evaluation context with its
+     * own instance initializer, since the tree elements an initializer hands
+     * out aren't safe to evaluate against from several threads. Storage reads
+     * go through the database handle, which serializes concurrent access
+     * itself. Since those contexts each hold their own instances, the number
+     * of workers is capped by the free heap, see {@link #getWorkerCount}.
+     *
+     * @return null if the task was cancelled
+     */
+    private List<Entity<TreeReference>> loadEntitiesInParallel(final List<TreeReference> references,
+                                                               int workers) {
+        int partitionSize = (references.size() + workers - 1) / workers;
+
+        ExecutorService pool = getLoaderPool();
+        List<Future<List<Entity<TreeReference>>>> partitions = new ArrayList<>(workers);
+        try {
+            for (int start = 0; start < references.size(); start += partitionSize) {
+                final int partitionStart = start;
+                final int partitionEnd = Math.min(start + partitionSize, references.size());
+                EvaluationContext workerContext = workerContextFactory.createEvaluationContext();
+                workerContext.addFunctionHandler(EntitySelectActivity.getHereFunctionHandler());
+                final NodeEntityFactory workerFactory = new NodeEntityFactory(detail, workerContext);
+                partitions.add(pool.submit(new Callable<List<Entity<TreeReference>>>() {
+                    @Override
+                    public List<Entity<TreeReference>> call() {
+                        return loadEntities(workerFactory, references, partitionStart, partitionEnd, false);
+                    }
+                }));
+            }
+
+            List<Entity<TreeReference>> full = new ArrayList<>(references.size());
+            for (Future<List<Entity<TreeReference>>> partition : partitions) {
+                List<Entity<TreeReference>> entities = partition.get();
+                if (entities == null) {
+                    return null;
+                }
+                full.addAll(entities);
+                if (full.size() >= FIRST_PAGE_SIZE && full.size() - entities.size() < FIRST_PAGE_SIZE
+                        && partition != partitions.get(partitions.size() - 1)) {
+                    // published from here rather than from the workers
+                    publishFirstPage(full.subList(0, FIRST_PAGE_SIZE), references);
+                }
+            }
+            return full;
+        } catch (InterruptedException e) {
+            // the task itself was cancelled
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            // stops the remaining workers if the load was cancelled or failed
+            for (Future<List<Entity<TreeReference>>> partition : partitions) {
+                partition.cancel(true);
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getLoaderPool() {
+        if (loaderPool == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            loaderPool = Executors.newFixedThreadPool(MAX_LOADER_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "entity-loader-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return loaderPool;
+    }
+
     @Override
     protected void onPostExecute(Pair<List<Entity<TreeReference>>, List<TreeReference>> result) {
         super.onPostExecute(result);
@@ -142,4 +406,12 @@ public class EntityLoaderTask
         this.listener = listener;
         listener.attachLoader(this);
     }
+
+    /**
+     * Builds a fresh evaluation context, with its own instance initializer,
+     * for each parallel worker
+     */
+    public interface WorkerContextFactory {
+        EvaluationContext createEvaluationContext();
+    }
 }
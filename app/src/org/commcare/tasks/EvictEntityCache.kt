@@ -0,0 +1,25 @@
+package org.commcare.tasks
+
+import android.content.Context
+import androidx.work.Worker
+import androidx.work.WorkerParameters
+import org.commcare.CommCareApplication
+import org.commcare.models.database.user.models.CommCareEntityStorageCache
+import org.commcare.utils.SessionUnavailableException
+
+
+// A Worker class used for trimming old and excess values out of the entity cache after login
+class EvictEntityCache(appContext: Context, workerParams: WorkerParameters)
+    : Worker(appContext, workerParams) {
+
+    override fun doWork(): Result {
+        try {
+            CommCareEntityStorageCache.evictStaleEntries(CommCareApplication.instance().userDbHandle,
+                    CommCareEntityStorageCache.MAX_ENTRY_AGE_MS,
+                    CommCareEntityStorageCache.MAX_ENTRIES_PER_CACHE)
+        } catch (e: SessionUnavailableException) {
+            // The user logged out first, eviction will run again at the next login
+        }
+        return Result.success()
+    }
+}
@@ -5,7 +5,9 @@ import android.util.Log;
 import org.commcare.activities.CommCareWiFiDirectActivity;
 import org.commcare.tasks.templates.CommCareTask;
 import org.commcare.util.LogTypes;
+import org.commcare.utils.StreamedFormTransfer;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -22,12 +24,22 @@ public abstract class FormTransferTask extends CommCareTask<String, String, Bool
     private final String host;
     private final String filepath;
     private final int port;
+    private final boolean streamed;
 
     public FormTransferTask(String host, String filepath, int port) {
+        this(host, filepath, port, false);
+    }
+
+    /**
+     * @param streamed whether filepath is a directory of form folders to stream with
+     *                 {@link StreamedFormTransfer}, rather than a zip file to send as is
+     */
+    public FormTransferTask(String host, String filepath, int port, boolean streamed) {
         this.taskId = BULK_TRANSFER_ID;
         this.host = host;
         this.filepath = filepath;
         this.port = port;
+        this.streamed = streamed;
         TAG = LogTypes.TYPE_FORM_DUMP;
     }
 
@@ -56,6 +68,13 @@ public abstract class FormTransferTask extends CommCareTask<String, String, Bool
             Log.d(TAG, "Client socket - " + socket.isConnected());
             OutputStream stream = socket.getOutputStream();
 
+            if (streamed) {
+                socket.setSoTimeout(SOCKET_TIMEOUT);
+                int sent = StreamedFormTransfer.send(new File(filepath), socket.getInputStream(), stream);
+                Log.d(TAG, "Streamed " + sent + " form files");
+                return true;
+            }
+
             is = getFormInputStream(filepath);
             CommCareWiFiDirectActivity.copyFile(is, stream);
             is.close();
@@ -10,10 +10,13 @@ import org.commcare.android.logging.ForceCloseLogEntry;
 import org.commcare.android.logging.ForceCloseLogSerializer;
 import org.commcare.logging.AndroidLogSerializer;
 import org.commcare.logging.DeviceReportWriter;
+import org.commcare.logging.SegmentCursor;
+import org.commcare.logging.WriteBehindLogWriter;
 import org.commcare.logging.XPathErrorEntry;
 import org.commcare.logging.XPathErrorSerializer;
 import org.commcare.models.database.SqlStorage;
 import org.commcare.network.CommcareRequestGenerator;
+import org.commcare.preferences.DeveloperPreferences;
 import org.commcare.preferences.HiddenPreferences;
 import org.commcare.preferences.ServerUrls;
 import org.commcare.tasks.LogSubmissionTask.LogSubmitOutcomes;
@@ -177,6 +180,13 @@ public class LogSubmissionTask extends AsyncTask<Void, Long, LogSubmitOutcomes>
         //update the last recorded record
         settings.edit().putLong(HiddenPreferences.LOG_LAST_DAILY_SUBMIT, new Date().getTime()).commit();
 
+        // Make sure queued log entries are in storage before they're serialized
+        WriteBehindLogWriter.flushAll();
+
+        if (DeveloperPreferences.isSegmentedLogReportsEnabled()) {
+            return serializeLogSegments(storage);
+        }
+
         DeviceReportRecord record = DeviceReportRecord.generateNewRecordStub();
 
         //Ok, so first, we're going to write the logs to disk in an encrypted file
@@ -200,22 +210,7 @@ public class LogSubmissionTask extends AsyncTask<Void, Long, LogSubmitOutcomes>
                     CommCareApplication.instance().getUserStorage(XPathErrorEntry.STORAGE_KEY, XPathErrorEntry.class));
             reporter.addReportElement(xpathErrorSerializer);
 
-            // Serialize all force close logs -- these can exist in both user and global storage
-            ForceCloseLogSerializer globalForceCloseSerializer = new ForceCloseLogSerializer(
-                    CommCareApplication.instance().getGlobalStorage(ForceCloseLogEntry.STORAGE_KEY, ForceCloseLogEntry.class));
-            reporter.addReportElement(globalForceCloseSerializer);
-            ForceCloseLogSerializer userForceCloseSerializer = new ForceCloseLogSerializer(
-                    CommCareApplication.instance().getUserStorage(ForceCloseLogEntry.STORAGE_KEY, ForceCloseLogEntry.class));
-            reporter.addReportElement(userForceCloseSerializer);
-
-            // TEMPORARILY ONLY - serialize all force close logs in the old format, so that HQ
-            // still picks them up, until we start processing the new format
-            AndroidLogSerializer<ForceCloseLogEntry> globalForceCloseSerializer_oldFormat = new AndroidLogSerializer<>(
-                    CommCareApplication.instance().getGlobalStorage(ForceCloseLogEntry.STORAGE_KEY, ForceCloseLogEntry.class));
-            reporter.addReportElement(globalForceCloseSerializer_oldFormat);
-            AndroidLogSerializer<ForceCloseLogEntry> userForceCloseSerializer_oldFormat = new AndroidLogSerializer<>(
-                    CommCareApplication.instance().getUserStorage(ForceCloseLogEntry.STORAGE_KEY, ForceCloseLogEntry.class));
-            reporter.addReportElement(userForceCloseSerializer_oldFormat);
+            List<ForceCloseLogSerializer> forceCloseSerializers = addForceCloseLogs(reporter);
 
             // Serialize all logs currently in global storage, since we have no way to determine
             // which app they truly belong to
@@ -233,8 +228,9 @@ public class LogSubmissionTask extends AsyncTask<Void, Long, LogSubmitOutcomes>
             userLogSerializer.purge();
             globalLogSerializer.purge();
             xpathErrorSerializer.purge();
-            globalForceCloseSerializer.purge();
-            userForceCloseSerializer.purge();
+            for (ForceCloseLogSerializer forceCloseSerializer : forceCloseSerializers) {
+                forceCloseSerializer.purge();
+            }
         } catch (Exception e) {
             //Bad times!
             e.printStackTrace();
@@ -243,6 +239,94 @@ public class LogSubmissionTask extends AsyncTask<Void, Long, LogSubmitOutcomes>
         return true;
     }
 
+    /**
+     * Serialize the logs into as many gzip compressed report segments as it takes to hold them,
+     * each a complete device report in its own DeviceReportRecord. The logs in a segment are
+     * purged as soon as it is saved, so a failure part way through neither loses nor repeats
+     * entries, and segments that have been saved are submitted independently of the rest.
+     */
+    private static boolean serializeLogSegments(SqlStorage<DeviceReportRecord> storage) {
+        SqlStorage<AndroidLogEntry> userLogStorage =
+                CommCareApplication.instance().getUserStorage(AndroidLogEntry.STORAGE_KEY, AndroidLogEntry.class);
+        SqlStorage<XPathErrorEntry> xpathErrorStorage =
+                CommCareApplication.instance().getUserStorage(XPathErrorEntry.STORAGE_KEY, XPathErrorEntry.class);
+        SqlStorage<AndroidLogEntry> globalLogStorage =
+                CommCareApplication.instance().getGlobalStorage(AndroidLogEntry.STORAGE_KEY, AndroidLogEntry.class);
+
+        SegmentCursor userLogCursor = new SegmentCursor();
+        SegmentCursor xpathErrorCursor = new SegmentCursor();
+        SegmentCursor globalLogCursor = new SegmentCursor();
+        Date reportDate = new Date();
+        try {
+            for (int segment = 0;
+                 userLogCursor.hasMoreEntries() || xpathErrorCursor.hasMoreEntries() || globalLogCursor.hasMoreEntries();
+                 segment++) {
+                DeviceReportRecord record = DeviceReportRecord.generateNewSegmentStub(reportDate, segment);
+                DeviceReportWriter reporter = DeviceReportWriter.forCompressedSegment(record);
+
+                AndroidLogSerializer<AndroidLogEntry> userLogSerializer = new AndroidLogSerializer<>(userLogStorage);
+                userLogCursor.moveTo(reporter);
+                userLogSerializer.setSegmentCursor(userLogCursor);
+                reporter.addReportElement(userLogSerializer);
+
+                XPathErrorSerializer xpathErrorSerializer = new XPathErrorSerializer(xpathErrorStorage);
+                xpathErrorCursor.moveTo(reporter);
+                xpathErrorSerializer.setSegmentCursor(xpathErrorCursor);
+                reporter.addReportElement(xpathErrorSerializer);
+
+                // Force close logs are rare, so they all go in the first segment
+                List<ForceCloseLogSerializer> forceCloseSerializers =
+                        segment == 0 ? addForceCloseLogs(reporter) : new ArrayList<>();
+
+                AndroidLogSerializer<AndroidLogEntry> globalLogSerializer = new AndroidLogSerializer<>(globalLogStorage);
+                globalLogCursor.moveTo(reporter);
+                globalLogSerializer.setSegmentCursor(globalLogCursor);
+                reporter.addReportElement(globalLogSerializer);
+
+                reporter.write();
+                storage.write(record);
+
+                userLogSerializer.purge();
+                xpathErrorSerializer.purge();
+                globalLogSerializer.purge();
+                for (ForceCloseLogSerializer forceCloseSerializer : forceCloseSerializers) {
+                    forceCloseSerializer.purge();
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds all force close logs to the report -- these can exist in both user and global storage
+     *
+     * @return the serializers to purge once the report is saved
+     */
+    private static List<ForceCloseLogSerializer> addForceCloseLogs(DeviceReportWriter reporter) {
+        List<ForceCloseLogSerializer> forceCloseSerializers = new ArrayList<>();
+        ForceCloseLogSerializer globalForceCloseSerializer = new ForceCloseLogSerializer(
+                CommCareApplication.instance().getGlobalStorage(ForceCloseLogEntry.STORAGE_KEY, ForceCloseLogEntry.class));
+        reporter.addReportElement(globalForceCloseSerializer);
+        forceCloseSerializers.add(globalForceCloseSerializer);
+        ForceCloseLogSerializer userForceCloseSerializer = new ForceCloseLogSerializer(
+                CommCareApplication.instance().getUserStorage(ForceCloseLogEntry.STORAGE_KEY, ForceCloseLogEntry.class));
+        reporter.addReportElement(userForceCloseSerializer);
+        forceCloseSerializers.add(userForceCloseSerializer);
+
+        // TEMPORARILY ONLY - serialize all force close logs in the old format, so that HQ
+        // still picks them up, until we start processing the new format
+        AndroidLogSerializer<ForceCloseLogEntry> globalForceCloseSerializer_oldFormat = new AndroidLogSerializer<>(
+                CommCareApplication.instance().getGlobalStorage(ForceCloseLogEntry.STORAGE_KEY, ForceCloseLogEntry.class));
+        reporter.addReportElement(globalForceCloseSerializer_oldFormat);
+        AndroidLogSerializer<ForceCloseLogEntry> userForceCloseSerializer_oldFormat = new AndroidLogSerializer<>(
+                CommCareApplication.instance().getUserStorage(ForceCloseLogEntry.STORAGE_KEY, ForceCloseLogEntry.class));
+        reporter.addReportElement(userForceCloseSerializer_oldFormat);
+        return forceCloseSerializers;
+    }
+
     private void submitReports(SqlStorage<DeviceReportRecord> storage,
                                ArrayList<Integer> submittedSuccesfullyIds,
                                ArrayList<DeviceReportRecord> submittedSuccesfully) {
@@ -289,13 +373,47 @@ public class LogSubmissionTask extends AsyncTask<Void, Long, LogSubmitOutcomes>
 
         generator = new CommcareRequestGenerator(user);
 
+        boolean sendCompressed = slr.isCompressed() && DeveloperPreferences.shouldSendCompressedLogReports();
+        int responseCode = postReport(generator, slr, f, submissionUrl, forceLogs, sendCompressed);
+        if (sendCompressed && (responseCode == 400 || responseCode == 415)) {
+            // the server doesn't take compressed parts, so stop sending them
+            Logger.log(LogTypes.TYPE_MAINTENANCE,
+                    "Server rejected a compressed device report, sending reports uncompressed");
+            DeveloperPreferences.disableCompressedLogReports();
+            responseCode = postReport(generator, slr, f, submissionUrl, forceLogs, false);
+        }
+
+        if (responseCode >= 200 && responseCode < 300) {
+            return LogSubmitOutcomes.SUBMITTED;
+        } else if (responseCode == 503 || responseCode == 429) {
+            return LogSubmitOutcomes.RATE_LIMITED;
+        } else {
+            return LogSubmitOutcomes.ERROR;
+        }
+    }
+
+    /**
+     * @return The response code, or -1 if the report couldn't be sent
+     */
+    private static int postReport(CommcareRequestGenerator generator, DeviceReportRecord slr, File f,
+                                  String submissionUrl, boolean forceLogs, boolean sendCompressed) {
         List<MultipartBody.Part> parts = new ArrayList<>();
 
-        parts.add(FormUploadUtil.createEncryptedFilePart(
-                "xml_submission_file",
-                f,
-                "text/xml",
-                new SecretKeySpec(slr.getKey(), "AES")));
+        SecretKeySpec key = new SecretKeySpec(slr.getKey(), "AES");
+        if (slr.isCompressed()) {
+            parts.add(FormUploadUtil.createEncryptedGzipFilePart(
+                    "xml_submission_file",
+                    f,
+                    "text/xml",
+                    key,
+                    sendCompressed));
+        } else {
+            parts.add(FormUploadUtil.createEncryptedFilePart(
+                    "xml_submission_file",
+                    f,
+                    "text/xml",
+                    key));
+        }
 
 
         Response<ResponseBody> response = null;
@@ -303,24 +421,16 @@ public class LogSubmissionTask extends AsyncTask<Void, Long, LogSubmitOutcomes>
             response = generator.postLogs(submissionUrl, parts, forceLogs);
         } catch (IOException e) {
             e.printStackTrace();
-            return LogSubmitOutcomes.ERROR;
+            return -1;
         } catch (IllegalStateException e) {
             e.printStackTrace();
-            return LogSubmitOutcomes.ERROR;
+            return -1;
         } finally {
             if (response != null && response.body() != null) {
                 response.body().close();
             }
         }
-
-        int responseCode = response.code();
-        if (responseCode >= 200 && responseCode < 300) {
-            return LogSubmitOutcomes.SUBMITTED;
-        } else if (responseCode == 503 || responseCode == 429) {
-            return LogSubmitOutcomes.RATE_LIMITED;
-        } else {
-            return LogSubmitOutcomes.ERROR;
-        }
+        return response.code();
     }
 
     private static boolean removeLocalReports(SqlStorage<DeviceReportRecord> storage,
@@ -0,0 +1,241 @@
+package org.commcare.tasks;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.models.database.SqlStorage;
+import org.commcare.util.LogTypes;
+import org.javarosa.core.model.User;
+import org.javarosa.core.services.Logger;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Commits a restore in batches instead of a single transaction, so a
+ * restore that fails late doesn't throw away everything before it and the
+ * journal stays bounded by the batch size.
+ *
+ * Each batch commit also records a resume marker on the user record, in
+ * the same transaction as the batch. The marker holds the sync token the
+ * restore was requested against, the restore id of the payload being
+ * parsed and how many of its elements have been committed. An interrupted
+ * restore is continued by requesting the payload for the same token again
+ * and skipping the committed elements, rather than by wiping and starting
+ * over. Elements are only skipped if the server hands back the same
+ * payload, identified by its restore id; any other payload is replayed in
+ * full on top of what was committed, which is safe since restore elements
+ * overwrite the records they describe.
+ *
+ * A checkpointed recovery clears the user's sync token in its first batch,
+ * together with the storage wipe, so that if it is interrupted the next
+ * sync is a full restore that replays onto the partially recovered data.
+ */
+public class RestoreCheckpointer {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final String CHECKPOINT_PROPERTY = "restore-checkpoint";
+    private static final String SEPARATOR = ":";
+
+    private final SQLiteDatabase db;
+    private final SqlStorage<User> userStorage;
+    private final String username;
+    private final boolean recovery;
+    private final int batchSize;
+    private final Checkpoint resumedFrom;
+
+    private String syncToken;
+    private int lastCommitted = 0;
+
+    public RestoreCheckpointer(SQLiteDatabase db, SqlStorage<User> userStorage, String username,
+                               boolean recovery, int batchSize) {
+        this.db = db;
+        this.userStorage = userStorage;
+        this.username = username;
+        this.recovery = recovery;
+        this.batchSize = batchSize;
+        this.resumedFrom = readCheckpoint(userStorage, username);
+    }
+
+    /**
+     * @return true if the checkpoint being resumed is from a recovery that
+     * has already wiped storage
+     */
+    public boolean isResumingRecovery() {
+        return resumedFrom != null && resumedFrom.recovery;
+    }
+
+    /**
+     * @return How many elements of the payload identified by
+     * getResumedRestoreId() were committed by the restore being resumed, and
+     * so can be skipped
+     */
+    public int getCommittedElements() {
+        if (resumedFrom == null || (recovery && !isResumingRecovery())) {
+            // a recovery that hasn't wiped storage yet starts from scratch
+            return 0;
+        }
+        return resumedFrom.committed;
+    }
+
+    /**
+     * @return The restore id of the payload the resumed restore was parsing,
+     * or null if it is unknown
+     */
+    public String getResumedRestoreId() {
+        return resumedFrom == null ? null : resumedFrom.restoreId;
+    }
+
+    public void begin() {
+        User user = getUser();
+        syncToken = user == null ? null : user.getLastSyncToken();
+        if (resumedFrom != null) {
+            Logger.log(LogTypes.TYPE_USER, "Resuming restore from checkpoint after "
+                    + resumedFrom.committed + " elements");
+        }
+        db.beginTransaction();
+    }
+
+    /**
+     * Commits the current batch if enough elements have been parsed since
+     * the last one. Must be called between elements.
+     *
+     * @param restoreId The restore id of the payload being parsed, if it has
+     *                  been read yet
+     */
+    public void onElementsParsed(int parsedCount, String restoreId) {
+        if (parsedCount - lastCommitted < batchSize) {
+            return;
+        }
+        writeMarker(new Checkpoint(recovery || isResumingRecovery(), parsedCount, syncToken, restoreId));
+        db.setTransactionSuccessful();
+        db.endTransaction();
+        lastCommitted = parsedCount;
+        db.beginTransaction();
+    }
+
+    /**
+     * Marks the restore as complete, clearing the marker in the final batch
+     */
+    public void complete() {
+        writeMarker(null);
+        db.setTransactionSuccessful();
+    }
+
+    /**
+     * Ends the current batch, rolling it back unless complete() was called
+     */
+    public void end() {
+        db.endTransaction();
+    }
+
+    private void writeMarker(Checkpoint checkpoint) {
+        User user = getUser();
+        if (user == null) {
+            return;
+        }
+        if (checkpoint == null) {
+            user.setProperty(CHECKPOINT_PROPERTY, "");
+        } else {
+            user.setProperty(CHECKPOINT_PROPERTY, checkpoint.serialize());
+            if (checkpoint.recovery) {
+                // storage was wiped in this batch, so the old token no longer
+                // describes what is on the device
+                user.setLastSyncToken(null);
+            }
+        }
+        userStorage.write(user);
+    }
+
+    private User getUser() {
+        return getUser(userStorage, username);
+    }
+
+    private static User getUser(SqlStorage<User> userStorage, String username) {
+        try {
+            return userStorage.getRecordForValue(User.META_USERNAME, username);
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the user has a partially committed restore that applies
+     * to their current sync token
+     */
+    public static boolean hasPendingCheckpoint(SqlStorage<User> userStorage, String username) {
+        return readCheckpoint(userStorage, username) != null;
+    }
+
+    /**
+     * @param currentToken The token a restore would otherwise be requested against
+     * @return The token the partially committed restore was requested
+     * against, so that requesting it again gets back the same payload, or
+     * currentToken if there is no such restore
+     */
+    public static String getTokenToRequest(SqlStorage<User> userStorage, String username,
+                                           String currentToken) {
+        Checkpoint checkpoint = readCheckpoint(userStorage, username);
+        return checkpoint == null ? currentToken : checkpoint.syncToken;
+    }
+
+    private static Checkpoint readCheckpoint(SqlStorage<User> userStorage, String username) {
+        if (username == null) {
+            return null;
+        }
+        User user = getUser(userStorage, username);
+        if (user == null) {
+            return null;
+        }
+        Checkpoint checkpoint = Checkpoint.parse(user.getProperty(CHECKPOINT_PROPERTY));
+        if (checkpoint == null || !tokensMatch(checkpoint.syncToken, user.getLastSyncToken())) {
+            // left over from a restore against a token we've since moved past
+            return null;
+        }
+        return checkpoint;
+    }
+
+    private static boolean tokensMatch(String first, String second) {
+        return (first == null ? "" : first).equals(second == null ? "" : second);
+    }
+
+    private static class Checkpoint {
+        final boolean recovery;
+        final int committed;
+        final String syncToken;
+        final String restoreId;
+
+        Checkpoint(boolean recovery, int committed, String syncToken, String restoreId) {
+            this.recovery = recovery;
+            this.committed = committed;
+            // a recovery clears the token along with its first batch
+            this.syncToken = recovery ? null : syncToken;
+            this.restoreId = restoreId;
+        }
+
+        String serialize() {
+            return (recovery ? "1" : "0") + SEPARATOR + committed + SEPARATOR
+                    + emptyIfNull(restoreId) + SEPARATOR + emptyIfNull(syncToken);
+        }
+
+        private static String emptyIfNull(String value) {
+            return value == null ? "" : value;
+        }
+
+        static Checkpoint parse(String value) {
+            if (value == null || value.isEmpty()) {
+                return null;
+            }
+            String[] parts = value.split(SEPARATOR, 4);
+            if (parts.length != 4) {
+                return null;
+            }
+            try {
+                return new Checkpoint("1".equals(parts[0]), Integer.parseInt(parts[1]),
+                        parts[3].isEmpty() ? null : parts[3],
+                        parts[2].isEmpty() ? null : parts[2]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
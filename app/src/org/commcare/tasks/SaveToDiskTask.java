@@ -12,14 +12,17 @@ import org.commcare.interfaces.FormSavedListener;
 import org.commcare.logging.XPathErrorLogger;
 import org.commcare.models.database.SqlStorage;
 import org.commcare.models.encryption.EncryptionIO;
+import org.commcare.preferences.DeveloperPreferences;
 import org.commcare.tasks.templates.CommCareTask;
 import org.commcare.util.FormMetaIndicatorUtil;
 import org.commcare.util.LogTypes;
 import org.commcare.utils.FileUtil;
+import org.commcare.xml.FormInstanceStreamWriter;
 import org.javarosa.core.io.StreamsUtil;
 import org.javarosa.core.model.FormDef;
 import org.javarosa.core.model.FormIndex;
 import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.model.instance.TreeElement;
 import org.javarosa.core.model.instance.TreeReference;
 import org.javarosa.core.services.Logger;
 import org.javarosa.core.services.locale.Localization;
@@ -107,6 +110,7 @@ public class SaveToDiskTask extends
 
         FormEntryActivity.mFormController.postProcessInstance();
 
+        long saveStart = System.currentTimeMillis();
         try {
             exportData(mMarkCompleted);
         } catch (FileNotFoundException e) {
@@ -135,7 +139,7 @@ public class SaveToDiskTask extends
             FormEntryActivity.mFormController.markCompleteFormAsSaved();
         }
 
-        logFormSave(exitAfterSave);
+        logFormSave(exitAfterSave, System.currentTimeMillis() - saveStart);
         if (exitAfterSave) {
             return new ResultAndError<>(SaveStatus.SAVED_AND_EXIT);
         } else if (mMarkCompleted) {
@@ -145,9 +149,10 @@ public class SaveToDiskTask extends
         }
     }
 
-    private void logFormSave(boolean exit) {
+    private void logFormSave(boolean exit, long saveMillis) {
         FormRecord saved = CommCareApplication.instance().getCurrentSessionWrapper().getFormRecord();
-        String log = String.format("Form Entry Completed: Record with id %s was saved as %s", saved.getInstanceID(), mMarkCompleted ? "complete" : "incomplete");
+        String log = String.format("Form Entry Completed: Record with id %s was saved as %s in %sms",
+                saved.getInstanceID(), mMarkCompleted ? "complete" : "incomplete", saveMillis);
         if(exit){
             log += " with user exiting";
         }
@@ -215,22 +220,43 @@ public class SaveToDiskTask extends
             throws IOException, FormInstanceTransactionException {
 
         FormInstance dataModel = FormEntryActivity.mFormController.getInstance();
-        XFormSerializingVisitor serializer = new XFormSerializingVisitor(markCompleted);
-        ByteArrayPayload payload = (ByteArrayPayload)serializer.createSerializedPayload(dataModel);
-
-        writeXmlToStream(payload,
-                EncryptionIO.createFileOutputStream(mFormRecordPath, symetricKey));
+        boolean streaming = DeveloperPreferences.isStreamingFormSaveEnabled();
+        if (streaming) {
+            writeXmlToFile(new FormInstanceStreamWriter(dataModel, markCompleted), dataModel.getRoot(),
+                    new File(mFormRecordPath));
+        } else {
+            XFormSerializingVisitor serializer = new XFormSerializingVisitor(markCompleted);
+            ByteArrayPayload payload = (ByteArrayPayload)serializer.createSerializedPayload(dataModel);
+            writeXmlToStream(payload,
+                    EncryptionIO.createFileOutputStream(mFormRecordPath, symetricKey));
+        }
 
         SqlStorage<FormRecord> formRecordStorage = CommCareApplication.instance().getUserStorage(FormRecord.class);
         updateFormRecord(formRecordStorage, true);
 
         if (markCompleted) {
-            payload = FormEntryActivity.mFormController.getSubmissionXml();
             File instanceXml = new File(mFormRecordPath);
+            TreeElement submissionRoot = null;
+            if (streaming) {
+                submissionRoot = dataModel.resolveReference(FormInstance.unpackReference(
+                        FormEntryActivity.mFormController.getSubmissionDataReference()));
+                if (submissionRoot == null || submissionRoot == dataModel.getRoot()) {
+                    // The instance was just written without its non-relevant nodes, which is
+                    // exactly what gets submitted, so there's nothing more to write
+                    updateFormRecord(formRecordStorage, false);
+                    deleteRawImages(instanceXml);
+                    return;
+                }
+            }
+
             File submissionXml = new File(instanceXml.getParentFile(), "submission.xml");
             // write out submission.xml -- the data to actually submit to aggregate
-            writeXmlToStream(payload,
-                    EncryptionIO.createFileOutputStream(submissionXml.getAbsolutePath(), symetricKey));
+            if (streaming) {
+                writeXmlToFile(new FormInstanceStreamWriter(dataModel, true), submissionRoot, submissionXml);
+            } else {
+                writeXmlToStream(FormEntryActivity.mFormController.getSubmissionXml(),
+                        EncryptionIO.createFileOutputStream(submissionXml.getAbsolutePath(), symetricKey));
+            }
 
             // Set this record's status to COMPLETE
             updateFormRecord(formRecordStorage, false);
@@ -249,10 +275,14 @@ public class SaveToDiskTask extends
                         "Error renaming submission.xml to " + instanceXml.getAbsolutePath());
             }
 
-            String rawDirPath = ImageCaptureProcessing.getRawDirectoryPath(instanceXml.getParent());
-            if(!FileUtil.deleteFileOrDir(rawDirPath)){
-                Logger.log(LogTypes.TYPE_MAINTENANCE, "Error deleting raw dir at path " + rawDirPath);
-            }
+            deleteRawImages(instanceXml);
+        }
+    }
+
+    private static void deleteRawImages(File instanceXml) {
+        String rawDirPath = ImageCaptureProcessing.getRawDirectoryPath(instanceXml.getParent());
+        if(!FileUtil.deleteFileOrDir(rawDirPath)){
+            Logger.log(LogTypes.TYPE_MAINTENANCE, "Error deleting raw dir at path " + rawDirPath);
         }
     }
 
@@ -265,6 +295,33 @@ public class SaveToDiskTask extends
         }
     }
 
+    /**
+     * Streams the subtree into a temporary file next to the target, which only replaces the
+     * target once it is completely written, so a failure partway through leaves any previously
+     * saved instance intact
+     */
+    private void writeXmlToFile(FormInstanceStreamWriter writer, TreeElement top,
+                                File target) throws IOException {
+        File tempFile = new File(target.getParentFile(), target.getName() + ".tmp");
+        boolean written = false;
+        try {
+            OutputStream output = EncryptionIO.createFileOutputStream(tempFile.getAbsolutePath(), symetricKey);
+            try {
+                writer.write(top, output);
+            } finally {
+                output.close();
+            }
+            if (!tempFile.renameTo(target)) {
+                throw new IOException("Couldn't move saved form instance to " + target.getAbsolutePath());
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                tempFile.delete();
+            }
+        }
+    }
+
     @Override
     protected void onPostExecute(ResultAndError<SaveStatus> result) {
         super.onPostExecute(result);
@@ -0,0 +1,222 @@
+package org.commcare.utils;
+
+import org.commcare.CommCareApplication;
+import org.commcare.models.AndroidSessionWrapper;
+import org.commcare.suite.model.MenuDisplayable;
+import org.commcare.suite.model.Text;
+import org.javarosa.core.model.condition.EvaluationContext;
+import org.javarosa.core.model.instance.DataInstance;
+import org.javarosa.core.model.instance.ExternalDataInstance;
+import org.javarosa.core.util.externalizable.ExtUtil;
+import org.javarosa.xpath.analysis.InstanceNameAccumulatingAnalyzer;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Evaluates menu badges off the main thread and keeps the results until the data they count
+ * changes.
+ *
+ * Badges are evaluated on a small pool of threads rather than one at a time. Each badge gets its
+ * own instance initializer, since the tree elements an initializer hands out aren't safe to
+ * evaluate against from several threads. The evaluation context is built on the calling thread,
+ * since the session it is built from isn't thread safe; the pool threads only evaluate against it.
+ *
+ * A badge's result depends on its expression, the session frame and the sources of the instances
+ * it reads, so badges that match on all three are evaluated once and share the result, even
+ * across different menu entries. Results outlive the menu adapter and are dropped by
+ * {@link #invalidate()} whenever a sync or a processed form changes user data, or when the
+ * logged in user changes.
+ */
+public class BadgeEvaluationService {
+
+    private static final int MAX_POOL_SIZE = 4;
+
+    private static final BadgeEvaluationService instance = new BadgeEvaluationService();
+
+    private final Scheduler scheduler;
+
+    // Evaluations keyed by what they are computed from, shared by badges that match
+    private final Map<String, Single<String>> evaluationsByContent = new HashMap<>();
+    // Lookup from a menu entry's badge to its evaluation, to avoid rebuilding the entry's
+    // evaluation context on every menu rebuild
+    private final Map<String, Single<String>> evaluationsByCommand = new HashMap<>();
+    private String cacheOwner;
+
+    private BadgeEvaluationService() {
+        int poolSize = Math.max(2, Math.min(MAX_POOL_SIZE, Runtime.getRuntime().availableProcessors()));
+        final AtomicInteger threadCount = new AtomicInteger();
+        scheduler = Schedulers.from(Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "menu-badge-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    BadgeEvaluationService(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public static BadgeEvaluationService instance() {
+        return instance;
+    }
+
+    /**
+     * @return the badge text for the given menu entry, evaluated in the background and shared
+     * with any identical badge, or null if the entry has no badge
+     */
+    @Nullable
+    public synchronized Single<String> getBadgeText(MenuDisplayable menuDisplayable,
+                                                    AndroidSessionWrapper asw) {
+        Text badgeText = menuDisplayable.getRawBadgeTextObject();
+        if (badgeText == null) {
+            return null;
+        }
+        checkCacheOwner();
+
+        String frame = asw.getSession().getFrame().toString();
+        String serializedBadge = serialize(badgeText);
+        Set<String> instancesNeededByBadgeCalculation =
+                (new InstanceNameAccumulatingAnalyzer()).accumulate(badgeText);
+        BadgeContextFactory contextFactory = () -> {
+            EvaluationContext ec = asw.getSession().getEvaluationContext(
+                    new AndroidInstanceInitializer(asw.getSession()),
+                    menuDisplayable.getCommandID(), instancesNeededByBadgeCalculation);
+            return new BadgeContext(frame + "|" + serializedBadge
+                    + getInstanceSources(ec, instancesNeededByBadgeCalculation),
+                    () -> menuDisplayable.getTextForBadge(ec));
+        };
+        if (serializedBadge == null) {
+            // can't tell this badge apart from others, so it isn't cached
+            BadgeContext context = contextFactory.create();
+            return Single.defer(context::evaluate).subscribeOn(scheduler);
+        }
+
+        return getEvaluation(menuDisplayable.getCommandID() + "|" + frame + "|" + serializedBadge,
+                contextFactory);
+    }
+
+    /**
+     * Builds the command's badge context on the calling thread if the command hasn't been seen
+     * yet, and evaluates it on the pool.
+     *
+     * @param commandKey identifies the badge of a menu entry in a session frame
+     * @return the evaluation for the command, shared with any command whose badge context has
+     * the same content key
+     */
+    synchronized Single<String> getEvaluation(String commandKey, BadgeContextFactory contextFactory) {
+        Single<String> evaluation = evaluationsByCommand.get(commandKey);
+        if (evaluation != null) {
+            return evaluation;
+        }
+
+        BadgeContext context = contextFactory.create();
+        evaluation = evaluationsByContent.get(context.contentKey);
+        if (evaluation == null) {
+            evaluation = Single.defer(context::evaluate).subscribeOn(scheduler).cache();
+            evaluationsByContent.put(context.contentKey, evaluation);
+            // start evaluating now, and drop failures so that they are retried next time
+            final Single<String> started = evaluation;
+            evaluation.subscribe(badge -> {
+            }, throwable -> forget(started));
+        }
+        evaluationsByCommand.put(commandKey, evaluation);
+        return evaluation;
+    }
+
+    /**
+     * Drop all badge results, to be called when the case or fixture data they count changes
+     */
+    public synchronized void invalidate() {
+        evaluationsByContent.clear();
+        evaluationsByCommand.clear();
+    }
+
+    synchronized int getCachedEvaluationCount() {
+        return evaluationsByContent.size();
+    }
+
+    private synchronized void forget(Single<String> evaluation) {
+        removeValue(evaluationsByContent, evaluation);
+        removeValue(evaluationsByCommand, evaluation);
+    }
+
+    private static void removeValue(Map<String, Single<String>> evaluations, Single<String> evaluation) {
+        for (Iterator<Single<String>> it = evaluations.values().iterator(); it.hasNext(); ) {
+            if (it.next() == evaluation) {
+                it.remove();
+            }
+        }
+    }
+
+    private void checkCacheOwner() {
+        String owner = CommCareApplication.instance().getCurrentApp().getUniqueId() + "|"
+                + CommCareApplication.instance().getCurrentUserId();
+        if (!owner.equals(cacheOwner)) {
+            invalidate();
+            cacheOwner = owner;
+        }
+    }
+
+    private static String getInstanceSources(EvaluationContext ec, Set<String> instanceIds) {
+        StringBuilder sources = new StringBuilder();
+        for (String instanceId : new TreeSet<>(instanceIds)) {
+            sources.append('|').append(instanceId).append('=');
+            DataInstance instance = ec.getInstance(instanceId);
+            if (instance instanceof ExternalDataInstance) {
+                sources.append(((ExternalDataInstance)instance).getReference());
+            } else if (instance != null) {
+                sources.append(instance.getClass().getName());
+            }
+        }
+        return sources.toString();
+    }
+
+    /**
+     * Builds what a badge is evaluated from, on the thread that asks for the badge
+     */
+    interface BadgeContextFactory {
+        BadgeContext create();
+    }
+
+    interface BadgeEvaluator {
+        Single<String> evaluate();
+    }
+
+    static class BadgeContext {
+        // Identifies the result: the frame, the badge and the sources of the instances it reads
+        final String contentKey;
+        private final BadgeEvaluator evaluator;
+
+        BadgeContext(String contentKey, BadgeEvaluator evaluator) {
+            this.contentKey = contentKey;
+            this.evaluator = evaluator;
+        }
+
+        Single<String> evaluate() {
+            return evaluator.evaluate();
+        }
+    }
+
+    @Nullable
+    private static String serialize(Text badgeText) {
+        try {
+            return new String(ExtUtil.serialize(badgeText), "ISO-8859-1");
+        } catch (UnsupportedEncodingException | RuntimeException e) {
+            // can't tell this badge apart from others, so it won't be cached
+            return null;
+        }
+    }
+}
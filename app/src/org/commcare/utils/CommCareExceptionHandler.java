@@ -6,6 +6,7 @@ import android.content.Intent;
 import org.commcare.CommCareApplication;
 import org.commcare.activities.CrashWarningActivity;
 import org.commcare.android.logging.ForceCloseLogger;
+import org.commcare.logging.WriteBehindLogWriter;
 import org.commcare.recovery.measures.ExecuteRecoveryMeasuresActivity;
 import org.commcare.recovery.measures.RecoveryMeasuresHelper;
 import org.javarosa.core.util.NoLocalizedTextException;
@@ -36,6 +37,8 @@ public class CommCareExceptionHandler implements UncaughtExceptionHandler {
 
     @Override
     public void uncaughtException(Thread thread, Throwable ex) {
+        flushQueuedLogs();
+
         // Always report to HQ device logs
         ForceCloseLogger.reportExceptionInBg(ex);
 
@@ -56,6 +59,19 @@ public class CommCareExceptionHandler implements UncaughtExceptionHandler {
         }
     }
 
+    /**
+     * Log entries are written in the background, so the ones leading up to the crash would
+     * otherwise be lost when the process dies
+     */
+    private static void flushQueuedLogs() {
+        try {
+            WriteBehindLogWriter.flushAll();
+        } catch (Throwable t) {
+            // Reporting the crash matters more than its logs
+            t.printStackTrace();
+        }
+    }
+
     private void startRecoveryMeasureActivity() {
         System.out.println("Executing recovery measures for app " +
                 CommCareApplication.instance().getCurrentApp().getAppRecord().getDisplayName());
@@ -6,11 +6,11 @@ import android.widget.Toast;
 
 import org.commcare.CommCareApplication;
 import org.commcare.dalvik.R;
+import org.commcare.models.database.HybridFileBackedSqlStorage;
+import org.commcare.models.database.RecordIdSet;
 import org.commcare.tasks.LogSubmissionTask;
 import org.javarosa.core.model.instance.FormInstance;
 import org.javarosa.core.model.instance.TreeReference;
-import org.javarosa.core.services.storage.IStorageUtilityIndexed;
-import org.javarosa.core.util.ArrayUtilities;
 import org.javarosa.xpath.expr.XPathExpression;
 
 import java.util.Vector;
@@ -22,39 +22,36 @@ import java.util.Vector;
  */
 public class CommCareUtil {
     public static FormInstance loadFixture(String refId, String userId) {
-        IStorageUtilityIndexed<FormInstance> userFixtureStorage = CommCareApplication.instance().getFileBackedUserStorage("fixture", FormInstance.class);
-        IStorageUtilityIndexed<FormInstance> appFixtureStorage = CommCareApplication.instance().getFileBackedAppStorage("fixture", FormInstance.class);
+        HybridFileBackedSqlStorage<FormInstance> userFixtureStorage = CommCareApplication.instance().getFileBackedUserStorage("fixture", FormInstance.class);
+        HybridFileBackedSqlStorage<FormInstance> appFixtureStorage = CommCareApplication.instance().getFileBackedAppStorage("fixture", FormInstance.class);
 
-        Vector<Integer> userFixtures = userFixtureStorage.getIDsForValue(FormInstance.META_ID, refId);
+        RecordIdSet userFixtures = userFixtureStorage.getIdSetForValue(FormInstance.META_ID, refId);
         ///... Nooooot so clean.
         if (userFixtures.size() == 1) {
             //easy case, one fixture, use it
-            return userFixtureStorage.read(userFixtures.elementAt(0));
+            return userFixtureStorage.read(userFixtures.first());
             //TODO: Userid check anyway?
         } else if (userFixtures.size() > 1) {
             //intersect userid and fixtureid set.
             //TODO: Replace context call here with something from the session, need to stop relying on that coupling
 
-            Vector<Integer> relevantUserFixtures = userFixtureStorage.getIDsForValue(FormInstance.META_XMLNS, userId);
-
-            if (relevantUserFixtures.size() != 0) {
-                Integer userFixture = ArrayUtilities.intersectSingle(userFixtures, relevantUserFixtures);
-                if (userFixture != null) {
-                    return userFixtureStorage.read(userFixture);
-                }
+            RecordIdSet relevantUserFixtures =
+                    userFixtures.intersect(userFixtureStorage.getIdSetForValue(FormInstance.META_XMLNS, userId));
+            if (!relevantUserFixtures.isEmpty()) {
+                return userFixtureStorage.read(relevantUserFixtures.first());
             }
         }
 
         //ok, so if we've gotten here there were no fixtures for the user, let's try the app fixtures.
-        Vector<Integer> appFixtures = appFixtureStorage.getIDsForValue(FormInstance.META_ID, refId);
-        Integer globalFixture = ArrayUtilities.intersectSingle(appFixtureStorage.getIDsForValue(FormInstance.META_XMLNS, ""), appFixtures);
-        if (globalFixture != null) {
-            return appFixtureStorage.read(globalFixture);
+        RecordIdSet appFixtures = appFixtureStorage.getIdSetForValue(FormInstance.META_ID, refId);
+        RecordIdSet globalFixtures = appFixtures.intersect(appFixtureStorage.getIdSetForValue(FormInstance.META_XMLNS, ""));
+        if (!globalFixtures.isEmpty()) {
+            return appFixtureStorage.read(globalFixtures.first());
         } else {
             //See if we have one manually placed in the suite
-            Integer userFixture = ArrayUtilities.intersectSingle(appFixtureStorage.getIDsForValue(FormInstance.META_XMLNS, userId), appFixtures);
-            if (userFixture != null) {
-                return appFixtureStorage.read(userFixture);
+            RecordIdSet userAppFixtures = appFixtures.intersect(appFixtureStorage.getIdSetForValue(FormInstance.META_XMLNS, userId));
+            if (!userAppFixtures.isEmpty()) {
+                return appFixtureStorage.read(userAppFixtures.first());
             }
             //Otherwise, nothing
             return null;
@@ -89,7 +89,6 @@ public enum FormUploadResult implements MessageTag {
     ;
 
     private final int orderVal;
-    private String errorMessage;
     private final String root;
 
     FormUploadResult(int orderVal, String root) {
@@ -106,14 +105,6 @@ public enum FormUploadResult implements MessageTag {
         return "form_upload";
     }
 
-    public String getErrorMessage() {
-        return errorMessage;
-    }
-
-    public void setErrorMessage(String errorMessage) {
-        this.errorMessage = errorMessage;
-    }
-
     public static FormUploadResult getWorstResult(FormUploadResult[] results) {
         FormUploadResult worstResult = FULL_SUCCESS;
         for (FormUploadResult result : results) {
@@ -9,7 +9,9 @@ import org.commcare.core.network.AuthenticationInterceptor;
 import org.commcare.core.network.CaptivePortalRedirectException;
 import org.commcare.network.CommcareRequestGenerator;
 import org.commcare.network.EncryptedFileBody;
+import org.commcare.network.InflatingEncryptedFileBody;
 import org.commcare.tasks.DataSubmissionListener;
+import org.commcare.tasks.ResultAndError;
 import org.commcare.util.LogTypes;
 import org.commcare.views.widgets.MediaWidget;
 import org.javarosa.core.io.StreamsUtil;
@@ -20,10 +22,13 @@ import org.javarosa.xml.ElementParser;
 import org.javarosa.xml.util.InvalidStructureException;
 import org.javarosa.xml.util.UnfullfilledRequirementsException;
 import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,15 +37,19 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.SecretKeySpec;
 import javax.net.ssl.SSLException;
 
+import okhttp3.Headers;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
@@ -118,19 +127,7 @@ public class FormUploadUtil {
                                                 @Nullable DataSubmissionListener listener, User user)
             throws FileNotFoundException {
 
-        File[] files = folder.listFiles();
-
-        if (files == null) {
-            // make sure external storage is available to begin with.
-            String state = Environment.getExternalStorageState();
-            if (!Environment.MEDIA_MOUNTED.equals(state)) {
-                // If so, just bail as if the user had logged out.
-                throw new SessionUnavailableException("External Storage Removed");
-            } else {
-                throw new FileNotFoundException("No directory found at: " +
-                        folder.getAbsoluteFile());
-            }
-        }
+        File[] files = listSubmissionFiles(folder);
 
         // If we're listening, figure out how much (roughly) we have to send
         long bytes = estimateUploadBytes(files);
@@ -146,22 +143,163 @@ public class FormUploadUtil {
 
         List<MultipartBody.Part> parts = new ArrayList<>();
 
-        if (!buildMultipartEntity(parts, key, files)) {
+        if (!buildMultipartEntity(parts, key, files, null)) {
             return FormUploadResult.RECORD_FAILURE;
         }
 
         CommcareRequestGenerator generator = new CommcareRequestGenerator(user);
-        return submitEntity(parts, url, generator);
+        return submitEntity(parts, url, generator).data;
     }
 
     /**
-     * Submit multipart entity with plenty of logging
+     * Builds the multipart body for a submission without sending it. The xml
+     * submission file is decrypted into memory, both so that sending it
+     * doesn't have to decrypt it again and to read which cases it touches.
+     * Attachments are still decrypted as they are sent.
      *
-     * @return submission status of multipart entity post
+     * @param folder All supported files in this folder will be attached to the submission
+     * @param key    For decrypting the xml file and encrypted attachments
+     * @throws FileNotFoundException Is raised if xml file isn't found on the
+     *                               file-system
+     */
+    public static PreparedFormSubmission prepareSubmission(File folder, @Nullable SecretKeySpec key)
+            throws FileNotFoundException {
+        File[] files = listSubmissionFiles(folder);
+        long bytes = estimateUploadBytes(files);
+
+        if (files.length == 0) {
+            throw new FileNotFoundException("Folder at path " + folder.getAbsolutePath() + " had no files.");
+        }
+
+        byte[] xml = null;
+        for (File f : files) {
+            if (f.getName().endsWith(".xml") && key != null) {
+                if (!validateSubmissionFile(f)) {
+                    return new PreparedFormSubmission(null, bytes, null);
+                }
+                xml = readDecrypted(f, key);
+                break;
+            }
+        }
+
+        List<MultipartBody.Part> parts = new ArrayList<>();
+        if (!buildMultipartEntity(parts, key, files, xml)) {
+            return new PreparedFormSubmission(null, bytes, null);
+        }
+        return new PreparedFormSubmission(parts, bytes, xml == null ? null : readTouchedCaseIds(xml));
+    }
+
+    /**
+     * Send a submission built by prepareSubmission, reporting progress along the way.
+     *
+     * @param submissionNumber For progress reporting
+     * @param url              Submission server url
+     * @param listener         Used to report progress to the calling task
+     * @param user             Used to build the http post
+     * @return Submission status code, along with the server's explanation
+     * for actionable and processing failures
+     */
+    public static ResultAndError<FormUploadResult> sendPreparedSubmission(int submissionNumber,
+                                                          PreparedFormSubmission submission,
+                                                          String url,
+                                                          @Nullable DataSubmissionListener listener,
+                                                          User user) {
+        if (listener != null) {
+            listener.startSubmission(submissionNumber, submission.getBytes());
+        }
+        if (!submission.isValid()) {
+            return new ResultAndError<>(FormUploadResult.RECORD_FAILURE, null);
+        }
+        return submitEntity(submission.getParts(), url, new CommcareRequestGenerator(user));
+    }
+
+    private static File[] listSubmissionFiles(File folder) throws FileNotFoundException {
+        File[] files = folder.listFiles();
+
+        if (files == null) {
+            // make sure external storage is available to begin with.
+            String state = Environment.getExternalStorageState();
+            if (!Environment.MEDIA_MOUNTED.equals(state)) {
+                // If so, just bail as if the user had logged out.
+                throw new SessionUnavailableException("External Storage Removed");
+            } else {
+                throw new FileNotFoundException("No directory found at: " +
+                        folder.getAbsoluteFile());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return The decrypted contents of the file, or null if it couldn't be read,
+     * in which case it is left to be decrypted as it is sent
      */
+    @Nullable
+    private static byte[] readDecrypted(File f, SecretKeySpec key) throws FileNotFoundException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream((int)Math.min(f.length(), MAX_BYTES));
+        try (InputStream is = new CipherInputStream(new FileInputStream(f), getDecryptCipher(key))) {
+            StreamsUtil.writeFromInputToOutputNew(is, bos);
+            return bos.toByteArray();
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            Logger.log(LogTypes.TYPE_ERROR_STORAGE,
+                    "Couldn't read submission file ahead of upload: " + e.getMessage());
+            return null;
+        }
+    }
 
-    private static FormUploadResult submitEntity(List<MultipartBody.Part> parts, String url,
-                                                 CommcareRequestGenerator generator) {
+    /**
+     * @return The ids of the cases and ledger entities the submission creates,
+     * updates or indexes, or null if they couldn't be read
+     */
+    @Nullable
+    private static Set<String> readTouchedCaseIds(byte[] xml) {
+        Set<String> caseIds = new HashSet<>();
+        try {
+            KXmlParser parser = ElementParser.instantiateParser(new ByteArrayInputStream(xml));
+            boolean inIndex = false;
+            int event;
+            while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.END_TAG && "index".equals(parser.getName())) {
+                    inIndex = false;
+                } else if (event == XmlPullParser.START_TAG) {
+                    String name = parser.getName();
+                    if ("case".equals(name)) {
+                        addIfPresent(caseIds, parser.getAttributeValue(null, "case_id"));
+                    } else if ("index".equals(name)) {
+                        inIndex = true;
+                    } else if (inIndex || "case_id".equals(name)) {
+                        // v1 case ids and index targets are element text
+                        addIfPresent(caseIds, parser.nextText());
+                    } else if ("balance".equals(name) || "transfer".equals(name)) {
+                        addIfPresent(caseIds, parser.getAttributeValue(null, "entity-id"));
+                        addIfPresent(caseIds, parser.getAttributeValue(null, "src"));
+                        addIfPresent(caseIds, parser.getAttributeValue(null, "dest"));
+                    }
+                }
+            }
+            return caseIds;
+        } catch (IOException | XmlPullParserException e) {
+            return null;
+        }
+    }
+
+    private static void addIfPresent(Set<String> ids, String id) {
+        if (id != null && !id.trim().isEmpty()) {
+            ids.add(id.trim());
+        }
+    }
+
+    /**
+     * Submit multipart entity with plenty of logging
+     *
+     * @return submission status of multipart entity post, along with the
+     * server's explanation when it gives one
+     */
+    private static ResultAndError<FormUploadResult> submitEntity(List<MultipartBody.Part> parts,
+                                                                 String url,
+                                                                 CommcareRequestGenerator generator) {
         Response<ResponseBody> response;
 
         try {
@@ -172,28 +310,28 @@ public class FormUploadUtil {
             Logger.log(LogTypes.TYPE_ERROR_STORAGE,
                     "Internal error reading form record during submission: " +
                             ioe.getWrapped().getMessage());
-            return FormUploadResult.RECORD_FAILURE;
+            return new ResultAndError<>(FormUploadResult.RECORD_FAILURE, null);
         } catch (UnknownHostException e) {
             e.printStackTrace();
             Logger.log(LogTypes.TYPE_WARNING_NETWORK,
                     "Client network issues during submission: " + e.getMessage());
-            return FormUploadResult.TRANSPORT_FAILURE;
+            return new ResultAndError<>(FormUploadResult.TRANSPORT_FAILURE, null);
         } catch (AuthenticationInterceptor.PlainTextPasswordException e) {
             e.printStackTrace();
             Logger.log(LogTypes.TYPE_ERROR_CONFIG_STRUCTURE,
                     "Encountered PlainTextPasswordException while submission: Sending password over HTTP");
-            return FormUploadResult.AUTH_OVER_HTTP;
+            return new ResultAndError<>(FormUploadResult.AUTH_OVER_HTTP, null);
         } catch (CaptivePortalRedirectException e) {
             e.printStackTrace();
             Logger.log(LogTypes.TYPE_WARNING_NETWORK, "Captive portal detected while form submission");
-            return FormUploadResult.CAPTIVE_PORTAL;
+            return new ResultAndError<>(FormUploadResult.CAPTIVE_PORTAL, null);
         } catch (SSLException e) {
             e.printStackTrace();
             Logger.log(LogTypes.TYPE_WARNING_NETWORK, "SSL error during form submission");
-            return FormUploadResult.BAD_CERTIFICATE;
+            return new ResultAndError<>(FormUploadResult.BAD_CERTIFICATE, null);
         } catch (IOException | IllegalStateException e) {
             Logger.exception("Error reading form during submission: " + e.getMessage(), e);
-            return FormUploadResult.TRANSPORT_FAILURE;
+            return new ResultAndError<>(FormUploadResult.TRANSPORT_FAILURE, null);
         }
 
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -211,40 +349,37 @@ public class FormUploadUtil {
         logResponse(responseCode, responseString);
 
         if (responseCode >= 200 && responseCode < 300) {
-            return FormUploadResult.FULL_SUCCESS;
+            return new ResultAndError<>(FormUploadResult.FULL_SUCCESS, null);
         } else if (responseCode == 401) {
-            return FormUploadResult.AUTH_FAILURE;
+            return new ResultAndError<>(FormUploadResult.AUTH_FAILURE, null);
         } else if (responseCode == 406) {
             return processActionableFaiure(response);
         } else if (responseCode == 422) {
             return handleProcessingFailure(response.errorBody().byteStream());
         } else if (responseCode == 503 || responseCode == 429) {
-            return FormUploadResult.RATE_LIMITED;
+            return new ResultAndError<>(FormUploadResult.RATE_LIMITED, null);
         } else {
-            return FormUploadResult.FAILURE;
+            return new ResultAndError<>(FormUploadResult.FAILURE, null);
         }
     }
 
-    private static FormUploadResult processActionableFaiure(Response<ResponseBody> response) {
+    private static ResultAndError<FormUploadResult> processActionableFaiure(Response<ResponseBody> response) {
         String message = parseUserVisibleError(response);
-        FormUploadResult result = FormUploadResult.ACTIONABLE_FAILURE;
-        result.setErrorMessage(message);
-        return result;
+        return new ResultAndError<>(FormUploadResult.ACTIONABLE_FAILURE, message);
     }
 
-    private static FormUploadResult handleProcessingFailure(InputStream responseStream) {
-        FormUploadResult result = FormUploadResult.PROCESSING_FAILURE;
+    private static ResultAndError<FormUploadResult> handleProcessingFailure(InputStream responseStream) {
         try {
-            result.setErrorMessage(parseProcessingFailureResponse(responseStream));
+            return new ResultAndError<>(FormUploadResult.PROCESSING_FAILURE,
+                    parseProcessingFailureResponse(responseStream));
         } catch (IOException | InvalidStructureException | XmlPullParserException |
                 UnfullfilledRequirementsException e) {
             // If we can't parse out the failure reason then we won't quarantine this form, because
             // we won't have any clear info about what happened
-            result = FormUploadResult.FAILURE;
             Logger.exception("Form processing failed", e);
             e.printStackTrace();
+            return new ResultAndError<>(FormUploadResult.FAILURE, null);
         }
-        return result;
     }
 
     private static void logResponse(int responseCode, String responseString) {
@@ -320,13 +455,15 @@ public class FormUploadUtil {
      * @param parts Add files to this
      * @param key   Used to encrypt xml files
      * @param files The files to be added to the entity,
+     * @param xml   Already decrypted contents of the xml file, if available
      * @return false if invalid xml files are found; otherwise true.
      * @throws FileNotFoundException Is raised when an xml doesn't exist on the
      *                               file-system
      */
     private static boolean buildMultipartEntity(List<MultipartBody.Part> parts,
                                                 @Nullable SecretKeySpec key,
-                                                File[] files)
+                                                File[] files,
+                                                @Nullable byte[] xml)
             throws FileNotFoundException {
 
         int numAttachmentsInInstanceFolder = 0;
@@ -334,7 +471,10 @@ public class FormUploadUtil {
 
         for (File f : files) {
             if (f.getName().endsWith(".xml")) {
-                if (key != null) {
+                if (xml != null) {
+                    parts.add(MultipartBody.Part.createFormData("xml_submission_file", f.getName(),
+                            RequestBody.create(MediaType.parse("text/xml"), xml)));
+                } else if (key != null) {
                     if (!validateSubmissionFile(f)) {
                         return false;
                     }
@@ -423,6 +563,34 @@ public class FormUploadUtil {
         return MultipartBody.Part.createFormData(partName, file.getName(), requestFile);
     }
 
+    /**
+     * Creates a part for an encrypted file holding gzip compressed content. The content is
+     * inflated as it is sent unless the server accepts it compressed, in which case it goes out
+     * as is with a gzip Content-Encoding.
+     */
+    public static MultipartBody.Part createEncryptedGzipFilePart(String partName, File file, String contentType,
+                                                                 SecretKeySpec key, boolean sendCompressed) {
+        // The part is named after the content, not the compressed file
+        String fileName = file.getName().replaceFirst("\\.gz$", "");
+        if (!sendCompressed) {
+            RequestBody inflatedFile = new InflatingEncryptedFileBody(
+                    MediaType.parse(contentType),
+                    file,
+                    FormUploadUtil.getDecryptCipher(key));
+            return MultipartBody.Part.createFormData(partName, fileName, inflatedFile);
+        }
+
+        RequestBody compressedFile = new EncryptedFileBody(
+                MediaType.parse(contentType),
+                file,
+                FormUploadUtil.getDecryptCipher(key));
+        Headers headers = new Headers.Builder()
+                .add("Content-Disposition", "form-data; name=\"" + partName + "\"; filename=\"" + fileName + "\"")
+                .add("Content-Encoding", "gzip")
+                .build();
+        return MultipartBody.Part.create(headers, compressedFile);
+    }
+
     /**
      * @return Is the filename's extension in the hard-coded list of supported
      * files or have a media mimetype?
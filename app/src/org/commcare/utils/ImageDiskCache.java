@@ -0,0 +1,114 @@
+package org.commcare.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Disk tier of the image pipeline: scaled copies of display images, capped in total size.
+ *
+ * Entries are touched whenever they are read, and once a write takes the cache over its cap the
+ * least recently used entries are removed until it is comfortably under again.
+ */
+public class ImageDiskCache {
+    private static final String TAG = ImageDiskCache.class.getSimpleName();
+
+    private static final String CACHE_DIR_NAME = "scaled-images";
+    private static final long MAX_CACHE_BYTES = 50 * 1024 * 1024;
+    // evict down to this fraction of the cap, so that every write doesn't trigger an eviction
+    private static final double TRIM_TARGET = 0.8;
+
+    // entries written straight into the cache dir by older versions, which were never evicted
+    private static final Pattern LEGACY_ENTRY = Pattern.compile("[0-9a-f]{32}_-?\\d+_(density|container)_.*");
+
+    private static long cacheBytes = -1;
+
+    /**
+     * @return the directory entries are stored in, or null if it isn't available
+     */
+    @Nullable
+    public static File getCacheDirectory(Context context) {
+        File cacheDir = context.getCacheDir();
+        if (cacheDir == null || !cacheDir.exists()) {
+            return null;
+        }
+        File imageCacheDir = new File(cacheDir, CACHE_DIR_NAME);
+        if (!imageCacheDir.exists() && !imageCacheDir.mkdirs()) {
+            return null;
+        }
+        return imageCacheDir;
+    }
+
+    /**
+     * Marks an entry as recently used
+     */
+    public static void onEntryRead(File entry) {
+        entry.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Accounts for a newly written entry, evicting old entries if the cache is over its cap
+     */
+    public static synchronized void onEntryWritten(Context context, File entry) {
+        File cacheDir = entry.getParentFile();
+        if (cacheBytes < 0) {
+            removeLegacyEntries(context.getCacheDir());
+            cacheBytes = getDirectorySize(cacheDir);
+        } else {
+            cacheBytes += entry.length();
+        }
+        if (cacheBytes > MAX_CACHE_BYTES) {
+            trim(cacheDir, (long)(MAX_CACHE_BYTES * TRIM_TARGET));
+        }
+    }
+
+    static void trim(File cacheDir, long targetBytes) {
+        File[] entries = cacheDir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        Arrays.sort(entries, (first, second) -> Long.compare(first.lastModified(), second.lastModified()));
+        long remaining = getDirectorySize(cacheDir);
+        int evicted = 0;
+        for (File entry : entries) {
+            if (remaining <= targetBytes) {
+                break;
+            }
+            long length = entry.length();
+            if (entry.delete()) {
+                remaining -= length;
+                evicted++;
+            }
+        }
+        cacheBytes = remaining;
+        Log.d(TAG, "Evicted " + evicted + " scaled images, cache is now " + remaining + " bytes");
+    }
+
+    private static long getDirectorySize(File dir) {
+        long size = 0;
+        File[] entries = dir.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                size += entry.length();
+            }
+        }
+        return size;
+    }
+
+    private static void removeLegacyEntries(File cacheDir) {
+        File[] entries = cacheDir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            if (entry.isFile() && LEGACY_ENTRY.matcher(entry.getName()).matches()) {
+                entry.delete();
+            }
+        }
+    }
+}
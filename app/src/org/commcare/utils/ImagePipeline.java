@@ -0,0 +1,286 @@
+package org.commcare.utils;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import org.commcare.CommCareApplication;
+import org.javarosa.core.reference.InvalidReferenceException;
+import org.javarosa.core.reference.ReferenceManager;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Single loading path for display images, shared by menus, case tiles and form media.
+ *
+ * Decoded bitmaps are kept in a memory LRU bounded by their size in bytes, in front of the
+ * size-capped disk cache of scaled images that MediaUtil maintains. Requests for the same image
+ * at the same size share a single decode, and asynchronous decodes run on a small bounded
+ * executor rather than the shared AsyncTask pool.
+ *
+ * Bitmaps handed out are shared with the cache, so callers must not recycle them.
+ */
+public class ImagePipeline implements ComponentCallbacks2 {
+
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+    private static final int DECODE_THREADS = 2;
+
+    private static ImagePipeline instance;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final Executor decodeExecutor;
+    private final ImageDecoder decoder;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Decodes underway, keyed like the memory cache
+    private final Map<String, ImageRequest> inFlight = new HashMap<>();
+    // Views waiting on a decode. Only touched on the main thread
+    private final WeakHashMap<ImageView, PendingImage> pendingViews = new WeakHashMap<>();
+
+    public interface ImageCallback {
+        /**
+         * Called on the main thread once the image has loaded, unless the view has been given
+         * another image in the meantime
+         *
+         * @param bitmap the image, or null if none could be loaded
+         */
+        void onImageLoaded(@Nullable Bitmap bitmap);
+    }
+
+    interface ImageDecoder {
+        @Nullable
+        Bitmap decode(Context context, String jrUri, int boundingWidth, int boundingHeight,
+                      boolean respectBoundsExactly);
+    }
+
+    ImagePipeline(int cacheBytes, Executor decodeExecutor, ImageDecoder decoder) {
+        memoryCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        this.decodeExecutor = decodeExecutor;
+        this.decoder = decoder;
+    }
+
+    private static Executor createDecodeExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(DECODE_THREADS, runnable -> {
+            Thread thread = new Thread(() -> {
+                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "image-decode-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized ImagePipeline instance() {
+        if (instance == null) {
+            Context context = CommCareApplication.instance().getApplicationContext();
+            ActivityManager am = (ActivityManager)context.getSystemService(Context.ACTIVITY_SERVICE);
+            int cacheBytes = am.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_DIVISOR;
+            instance = new ImagePipeline(cacheBytes, createDecodeExecutor(),
+                    MediaUtil::inflateDisplayImage);
+            context.registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Loads an image on the calling thread, from memory if possible. See
+     * {@link MediaUtil#inflateDisplayImage(Context, String, int, int, boolean)} for the arguments.
+     */
+    @Nullable
+    public Bitmap loadImage(Context context, String jrUri, int boundingWidth, int boundingHeight,
+                            boolean respectBoundsExactly) {
+        if (jrUri == null || jrUri.equals("")) {
+            return null;
+        }
+        String key = getKey(jrUri, boundingWidth, boundingHeight, respectBoundsExactly);
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        ImageRequest request = getOrCreateRequest(context, key, jrUri, boundingWidth,
+                boundingHeight, respectBoundsExactly);
+        // runs the decode here unless another thread has already started it
+        request.run();
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Shows the default resource in the image view and replaces it with the image once loaded
+     */
+    public void display(Context context, String jrUri, final ImageView imageView,
+                        int defaultResource, int boundingWidth, int boundingHeight,
+                        boolean respectBoundsExactly) {
+        imageView.setImageResource(defaultResource);
+        display(context, jrUri, imageView, boundingWidth, boundingHeight, respectBoundsExactly,
+                bitmap -> {
+                    if (bitmap != null) {
+                        imageView.setImageBitmap(bitmap);
+                    }
+                });
+    }
+
+    /**
+     * Loads an image for the given view in the background, or straight away if it is in memory.
+     * Must be called on the main thread.
+     */
+    public void display(Context context, String jrUri, ImageView imageView,
+                        int boundingWidth, int boundingHeight, boolean respectBoundsExactly,
+                        ImageCallback callback) {
+        pendingViews.remove(imageView);
+        if (jrUri == null || jrUri.equals("")) {
+            callback.onImageLoaded(null);
+            return;
+        }
+        String key = getKey(jrUri, boundingWidth, boundingHeight, respectBoundsExactly);
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            callback.onImageLoaded(bitmap);
+            return;
+        }
+        pendingViews.put(imageView, new PendingImage(key, callback));
+        ImageRequest request = getOrCreateRequest(context, key, jrUri, boundingWidth,
+                boundingHeight, respectBoundsExactly);
+        if (request.submit()) {
+            decodeExecutor.execute(request);
+        }
+    }
+
+    private ImageRequest getOrCreateRequest(Context context, String key, final String jrUri,
+                                            final int boundingWidth, final int boundingHeight,
+                                            final boolean respectBoundsExactly) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (inFlight) {
+            ImageRequest request = inFlight.get(key);
+            if (request == null) {
+                request = new ImageRequest(key, () -> decoder.decode(appContext,
+                        jrUri, boundingWidth, boundingHeight, respectBoundsExactly));
+                inFlight.put(key, request);
+            }
+            return request;
+        }
+    }
+
+    private void deliver(String key, Bitmap bitmap) {
+        for (Iterator<Map.Entry<ImageView, PendingImage>> it = pendingViews.entrySet().iterator(); it.hasNext(); ) {
+            PendingImage pending = it.next().getValue();
+            if (pending.key.equals(key)) {
+                it.remove();
+                pending.callback.onImageLoaded(bitmap);
+            }
+        }
+    }
+
+    /**
+     * Memory cache key. Uses the resolved file and its modification time where there is one,
+     * so that the same reference in a different app, or an updated file, isn't served stale.
+     */
+    private static String getKey(String jrUri, int boundingWidth, int boundingHeight,
+                                 boolean respectBoundsExactly) {
+        String source = jrUri;
+        try {
+            String localUri = ReferenceManager.instance().DeriveReference(jrUri).getLocalURI();
+            if (localUri != null) {
+                source = localUri + "@" + new File(localUri).lastModified();
+            }
+        } catch (InvalidReferenceException e) {
+            // fall back to the reference itself
+        }
+        return source + "|" + boundingWidth + "x" + boundingHeight + "|" + respectBoundsExactly;
+    }
+
+    private class ImageRequest extends FutureTask<Bitmap> {
+        private final String key;
+        private boolean submitted;
+
+        ImageRequest(String key, Callable<Bitmap> decode) {
+            super(decode);
+            this.key = key;
+        }
+
+        /**
+         * @return true the first time it is called, when the request should be queued
+         */
+        synchronized boolean submit() {
+            boolean first = !submitted;
+            submitted = true;
+            return first;
+        }
+
+        @Override
+        protected void done() {
+            Bitmap bitmap = null;
+            try {
+                bitmap = get();
+            } catch (InterruptedException | ExecutionException e) {
+                // delivered as a missing image
+            }
+            if (bitmap != null) {
+                memoryCache.put(key, bitmap);
+            }
+            synchronized (inFlight) {
+                inFlight.remove(key);
+            }
+            final Bitmap result = bitmap;
+            mainHandler.post(() -> deliver(key, result));
+        }
+    }
+
+    private static class PendingImage {
+        private final String key;
+        private final ImageCallback callback;
+
+        private PendingImage(String key, ImageCallback callback) {
+            this.key = key;
+            this.callback = callback;
+        }
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    @Override
+    public void onLowMemory() {
+        memoryCache.evictAll();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            memoryCache.evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND) {
+            memoryCache.trimToSize(memoryCache.maxSize() / 2);
+        }
+    }
+}
@@ -175,10 +175,14 @@ public class MediaUtil {
     }
 
     private static void attemptWriteCacheToLocation(Bitmap toReturn, File cacheLocation) {
+        if (toReturn == null) {
+            return;
+        }
         try {
             FileUtil.writeBitmapToDiskAndCleanupHandles(toReturn,
                     ImageType.fromExtension(FileUtil.getExtension(cacheLocation.getPath())),
                     cacheLocation);
+            ImageDiskCache.onEntryWritten(CommCareApplication.instance(), cacheLocation);
         } catch (IOException e) {
             e.printStackTrace();
             Log.d(TAG, "Failed to write bitmap to cache for " + cacheLocation);
@@ -205,6 +209,7 @@ public class MediaUtil {
         if (cacheKey.exists()) {
             try {
                 b = inflateImageSafe(cacheKey.getPath()).first;
+                ImageDiskCache.onEntryRead(cacheKey);
             } catch (RuntimeException e) {
                 try {
                     cacheKey.delete();
@@ -219,9 +224,9 @@ public class MediaUtil {
 
     private static File getCacheFileLocation(String imageFilepath, String tag) {
         Context c = CommCareApplication.instance().getApplicationContext();
-        File cacheDirectory = c.getCacheDir();
+        File cacheDirectory = ImageDiskCache.getCacheDirectory(c);
 
-        if (!cacheDirectory.exists()) {
+        if (cacheDirectory == null) {
             return null;
         }
 
@@ -0,0 +1,60 @@
+package org.commcare.utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import okhttp3.MultipartBody;
+
+/**
+ * A form submission's multipart body, built ahead of the upload so that
+ * reading and decrypting it can overlap with other submissions in flight.
+ *
+ * Also carries the ids of the cases the submission touches, which decide
+ * whether it may be uploaded alongside other submissions.
+ */
+public class PreparedFormSubmission {
+
+    @Nullable
+    private final List<MultipartBody.Part> parts;
+    private final long bytes;
+    @Nullable
+    private final Set<String> touchedCaseIds;
+
+    PreparedFormSubmission(@Nullable List<MultipartBody.Part> parts, long bytes,
+                           @Nullable Set<String> touchedCaseIds) {
+        this.parts = parts;
+        this.bytes = bytes;
+        this.touchedCaseIds = touchedCaseIds;
+    }
+
+    /**
+     * @return false if the submission's files failed validation, in which
+     * case it can't be sent
+     */
+    public boolean isValid() {
+        return parts != null;
+    }
+
+    List<MultipartBody.Part> getParts() {
+        return parts;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return true if this and the other submission may be processed by the
+     * server in either order. Submissions whose cases couldn't be read are
+     * assumed to conflict with everything.
+     */
+    public boolean isIndependentOf(PreparedFormSubmission other) {
+        if (touchedCaseIds == null || other.touchedCaseIds == null) {
+            return false;
+        }
+        return Collections.disjoint(touchedCaseIds, other.touchedCaseIds);
+    }
+}
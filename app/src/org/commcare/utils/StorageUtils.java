@@ -84,7 +84,8 @@ public class StorageUtils {
         String currentAppId =
                 CommCareApplication.instance().getCurrentApp().getAppRecord().getApplicationId();
 
-        return formsStorage.getIDsForValues(
+        // only the count is needed, so skip boxing every id
+        return formsStorage.getIdSetForValues(
                 new String[]{FormRecord.META_STATUS, FormRecord.META_APP_ID},
                 new String[]{status, currentAppId}).size();
     }
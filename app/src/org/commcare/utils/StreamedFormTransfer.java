@@ -0,0 +1,416 @@
+package org.commcare.utils;
+
+import org.javarosa.core.services.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Transfers a directory of form instance folders over a socket, compressing each file straight
+ * into the connection rather than through a temporary zip archive on either end.
+ *
+ * The sender first announces every file it has, by name, size and the CRC32 of its contents. The
+ * receiver answers with the ones it already holds intact from an interrupted attempt, and the
+ * sender sends only the rest, each as its name and its deflated contents in length prefixed
+ * chunks. Each file is checked against its announced CRC as it is unpacked and only then kept, so
+ * a transfer that breaks off resumes from the first file that didn't make it. Received files are
+ * staged until every file of their form has arrived, so a partly received form is never
+ * submitted.
+ *
+ * Transfers start with {@link #MAGIC}, which lets a receiver tell them apart from the plain zip
+ * files older senders send.
+ */
+public class StreamedFormTransfer {
+    private static final String TAG = StreamedFormTransfer.class.getSimpleName();
+
+    // "CCWD"
+    private static final int MAGIC = 0x43435744;
+    private static final int VERSION = 2;
+
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * @param in a stream that supports mark, which is left where it was
+     * @return whether the stream holds a streamed transfer rather than a zip file
+     */
+    public static boolean isStreamedTransfer(InputStream in) throws IOException {
+        in.mark(4);
+        try {
+            int magic = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = in.read();
+                if (b == -1) {
+                    return false;
+                }
+                magic = (magic << 8) | b;
+            }
+            return magic == MAGIC;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Sends the files in each form folder under formsDirectory, skipping the ones the receiver
+     * already has
+     *
+     * @return the number of files sent
+     * @throws IOException if the transfer breaks off or the receiver doesn't store every file
+     */
+    public static int send(File formsDirectory, InputStream in, OutputStream out) throws IOException {
+        Map<String, File> entries = new LinkedHashMap<>();
+        File[] formFolders = formsDirectory.listFiles();
+        if (formFolders != null) {
+            for (File formFolder : formFolders) {
+                File[] formFiles = formFolder.listFiles();
+                if (formFiles == null) {
+                    continue;
+                }
+                for (File formFile : formFiles) {
+                    entries.put(formFolder.getName() + "/" + formFile.getName(), formFile);
+                }
+            }
+        }
+
+        DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+        DataInputStream dataIn = new DataInputStream(in);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(VERSION);
+        dataOut.writeInt(entries.size());
+        for (Map.Entry<String, File> entry : entries.entrySet()) {
+            dataOut.writeUTF(entry.getKey());
+            dataOut.writeLong(entry.getValue().length());
+            dataOut.writeLong(getCrc(entry.getValue()));
+        }
+        dataOut.flush();
+
+        int alreadyReceived = dataIn.readInt();
+        for (int i = 0; i < alreadyReceived; i++) {
+            entries.remove(dataIn.readUTF());
+        }
+        Logger.log(TAG, "Streaming " + entries.size() + " form files, receiver already had " + alreadyReceived);
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (Map.Entry<String, File> entry : entries.entrySet()) {
+                dataOut.writeUTF(entry.getKey());
+                sendFile(entry.getValue(), deflater, dataOut);
+            }
+        } finally {
+            deflater.end();
+        }
+        dataOut.flush();
+
+        int stored = dataIn.readInt();
+        if (stored != entries.size()) {
+            throw new IOException("Receiver stored " + stored + " of " + entries.size() + " form files");
+        }
+        return entries.size();
+    }
+
+    private static void sendFile(File file, Deflater deflater, DataOutputStream out) throws IOException {
+        deflater.reset();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        byte[] deflated = new byte[CHUNK_SIZE];
+        InputStream fileIn = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = fileIn.read(buffer)) != -1) {
+                deflater.setInput(buffer, 0, read);
+                while (!deflater.needsInput()) {
+                    writeChunk(out, deflated, deflater.deflate(deflated));
+                }
+            }
+        } finally {
+            fileIn.close();
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            writeChunk(out, deflated, deflater.deflate(deflated));
+        }
+        // An empty chunk ends the file
+        out.writeInt(0);
+    }
+
+    private static long getCrc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        InputStream fileIn = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = fileIn.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        } finally {
+            fileIn.close();
+        }
+        return crc.getValue();
+    }
+
+    private static void writeChunk(DataOutputStream out, byte[] chunk, int length) throws IOException {
+        if (length > 0) {
+            out.writeInt(length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Unpacks streamed transfers into a directory of form instance folders
+     */
+    public static class Receiver {
+        private final File formsDirectory;
+        private final File stagingDirectory;
+
+        /**
+         * @param stagingDirectory where files wait until their whole form has arrived. Must be
+         *                         on the same file system as formsDirectory, and outside it.
+         */
+        public Receiver(File formsDirectory, File stagingDirectory) {
+            this.formsDirectory = formsDirectory;
+            this.stagingDirectory = stagingDirectory;
+        }
+
+        /**
+         * Receives one transfer, answering the sender with what is already here and, at the
+         * end, with how many files were stored
+         *
+         * @return the number of files received in this attempt
+         */
+        public int receive(InputStream in, OutputStream out) throws IOException {
+            DataInputStream dataIn = new DataInputStream(in);
+            DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+            if (dataIn.readInt() != MAGIC) {
+                throw new IOException("Not a streamed form transfer");
+            }
+            int version = dataIn.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported streamed form transfer version " + version);
+            }
+
+            Map<String, ManifestEntry> manifest = new LinkedHashMap<>();
+            int entryCount = dataIn.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String name = dataIn.readUTF();
+                manifest.put(name, new ManifestEntry(dataIn.readLong(), dataIn.readLong()));
+            }
+
+            Set<String> formFolders = new LinkedHashSet<>();
+            for (String name : manifest.keySet()) {
+                formFolders.add(getFormFolder(name));
+            }
+            pruneStaging(manifest);
+
+            Set<String> alreadyReceived = new LinkedHashSet<>();
+            for (Map.Entry<String, ManifestEntry> entry : manifest.entrySet()) {
+                if (isReceived(entry.getKey(), entry.getValue())) {
+                    alreadyReceived.add(entry.getKey());
+                }
+            }
+            // Every file in here holds what the sender announced
+            Set<String> received = new LinkedHashSet<>(alreadyReceived);
+            dataOut.writeInt(alreadyReceived.size());
+            for (String name : alreadyReceived) {
+                dataOut.writeUTF(name);
+            }
+            dataOut.flush();
+
+            // Forms can be complete already if the last attempt broke off just before moving them
+            for (String formFolder : formFolders) {
+                moveIfComplete(formFolder, manifest.keySet(), received);
+            }
+
+            if (alreadyReceived.size() == manifest.size()) {
+                // The sender doesn't wait for an answer when there's nothing left to send
+                return 0;
+            }
+
+            Inflater inflater = new Inflater();
+            try {
+                for (int i = alreadyReceived.size(); i < manifest.size(); i++) {
+                    String name = dataIn.readUTF();
+                    if (!manifest.containsKey(name) || received.contains(name)) {
+                        throw new IOException("Unexpected file in streamed form transfer: " + name);
+                    }
+                    File staged = getContainedFile(stagingDirectory, name);
+                    File partial = new File(staged.getPath() + PARTIAL_SUFFIX);
+                    staged.getParentFile().mkdirs();
+                    boolean stored = false;
+                    try {
+                        receiveFile(dataIn, inflater, partial, name, manifest.get(name).crc);
+                        stored = partial.renameTo(staged);
+                    } finally {
+                        if (!stored) {
+                            partial.delete();
+                        }
+                    }
+                    if (!stored) {
+                        throw new IOException("Couldn't store received form file " + name);
+                    }
+                    received.add(name);
+                    moveIfComplete(getFormFolder(name), manifest.keySet(), received);
+                }
+            } finally {
+                inflater.end();
+            }
+
+            int receivedNow = received.size() - alreadyReceived.size();
+            dataOut.writeInt(receivedNow);
+            dataOut.flush();
+            Logger.log(TAG, "Received " + receivedNow + " streamed form files, " + alreadyReceived.size()
+                    + " were already here");
+            return receivedNow;
+        }
+
+        private static void receiveFile(DataInputStream in, Inflater inflater, File target,
+                                        String name, long expectedCrc) throws IOException {
+            inflater.reset();
+            CRC32 crc = new CRC32();
+            byte[] chunk = new byte[CHUNK_SIZE];
+            byte[] buffer = new byte[CHUNK_SIZE];
+            OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(target));
+            try {
+                int length;
+                while ((length = in.readInt()) != 0) {
+                    if (length < 0 || length > CHUNK_SIZE) {
+                        throw new IOException("Bad chunk in streamed form file " + name);
+                    }
+                    in.readFully(chunk, 0, length);
+                    inflater.setInput(chunk, 0, length);
+                    while (!inflater.needsInput() && !inflater.finished()) {
+                        int inflated = inflater.inflate(buffer);
+                        if (inflated == 0 && inflater.needsDictionary()) {
+                            throw new IOException("Bad compressed data in streamed form file " + name);
+                        }
+                        crc.update(buffer, 0, inflated);
+                        fileOut.write(buffer, 0, inflated);
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Bad compressed data in streamed form file " + name, e);
+            } finally {
+                fileOut.close();
+            }
+            if (!inflater.finished() || crc.getValue() != expectedCrc) {
+                throw new IOException("Streamed form file " + name + " didn't arrive intact");
+            }
+        }
+
+        /**
+         * Removes staged files that the sender no longer has, or whose contents differ from
+         * what it has now, along with partly received files, so that they are sent again
+         */
+        private void pruneStaging(Map<String, ManifestEntry> manifest) throws IOException {
+            File[] stagedFolders = stagingDirectory.listFiles();
+            if (stagedFolders == null) {
+                return;
+            }
+            for (File stagedFolder : stagedFolders) {
+                File[] stagedFiles = stagedFolder.listFiles();
+                if (stagedFiles == null) {
+                    FileUtil.deleteFileOrDir(stagedFolder);
+                    continue;
+                }
+                for (File stagedFile : stagedFiles) {
+                    ManifestEntry entry =
+                            manifest.get(stagedFolder.getName() + "/" + stagedFile.getName());
+                    if (entry == null || !entry.matches(stagedFile)) {
+                        FileUtil.deleteFileOrDir(stagedFile);
+                    }
+                }
+                String[] remaining = stagedFolder.list();
+                if (remaining == null || remaining.length == 0) {
+                    FileUtil.deleteFileOrDir(stagedFolder);
+                }
+            }
+        }
+
+        private boolean isReceived(String name, ManifestEntry entry) throws IOException {
+            return entry.matches(getContainedFile(stagingDirectory, name))
+                    || entry.matches(getContainedFile(formsDirectory, name));
+        }
+
+        /**
+         * Moves a form's staged files into the forms directory once all of them have arrived
+         */
+        private void moveIfComplete(String formFolder, Set<String> manifestNames,
+                                    Set<String> received) throws IOException {
+            String prefix = formFolder + "/";
+            for (String name : manifestNames) {
+                if (name.startsWith(prefix) && !received.contains(name)) {
+                    return;
+                }
+            }
+
+            for (String name : manifestNames) {
+                if (!name.startsWith(prefix)) {
+                    continue;
+                }
+                File staged = getContainedFile(stagingDirectory, name);
+                if (!staged.exists()) {
+                    continue;
+                }
+                File stored = getContainedFile(formsDirectory, name);
+                stored.getParentFile().mkdirs();
+                if ((stored.exists() && !stored.delete()) || !staged.renameTo(stored)) {
+                    throw new IOException("Couldn't move received form file " + name);
+                }
+            }
+            FileUtil.deleteFileOrDir(getContainedFile(stagingDirectory, formFolder));
+        }
+
+        private static String getFormFolder(String name) throws IOException {
+            int separator = name.indexOf('/');
+            if (separator <= 0 || separator != name.lastIndexOf('/') || separator == name.length() - 1) {
+                throw new IOException("Streamed form file isn't in a form folder: " + name);
+            }
+            return name.substring(0, separator);
+        }
+
+        /**
+         * Resolves an entry name under a directory, rejecting names that would escape it
+         */
+        private static File getContainedFile(File directory, String name) throws IOException {
+            File file = new File(directory, name);
+            if (!file.getCanonicalPath().startsWith(directory.getCanonicalPath() + File.separator)) {
+                throw new IOException("Streamed form file outside of its directory: " + name);
+            }
+            return file;
+        }
+    }
+
+    private static class ManifestEntry {
+        final long size;
+        final long crc;
+
+        ManifestEntry(long size, long crc) {
+            this.size = size;
+            this.crc = crc;
+        }
+
+        /**
+         * @return whether the file exists and holds what the sender announced
+         */
+        boolean matches(File file) throws IOException {
+            return file.isFile() && file.length() == size && getCrc(file) == crc;
+        }
+    }
+}
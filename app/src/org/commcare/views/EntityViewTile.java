@@ -2,7 +2,6 @@ package org.commcare.views;
 
 import android.content.Context;
 import android.content.res.Configuration;
-import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.Point;
 import android.text.Spannable;
@@ -27,9 +26,8 @@ import org.commcare.suite.model.Detail;
 import org.commcare.util.GridCoordinate;
 import org.commcare.util.GridStyle;
 import org.commcare.util.LogTypes;
-import org.commcare.utils.CachingAsyncImageLoader;
 import org.commcare.utils.MarkupUtil;
-import org.commcare.utils.MediaUtil;
+import org.commcare.utils.ImagePipeline;
 import org.commcare.views.media.AudioPlaybackButton;
 import org.commcare.views.media.ViewId;
 import org.javarosa.core.services.Logger;
@@ -84,33 +82,28 @@ public class EntityViewTile extends GridLayout {
     private double cellWidth;
     private double cellHeight;
 
-    private final CachingAsyncImageLoader mImageLoader;
     private final boolean beingDisplayedInAwesomeMode;
 
 
     public static EntityViewTile createTileForIndividualDisplay(Context context, Detail detail,
                                                                 Entity entity) {
-        return new EntityViewTile(context, detail, entity, new String[0],
-                new CachingAsyncImageLoader(context), false, false);
+        return new EntityViewTile(context, detail, entity, new String[0], false, false);
     }
 
     public static EntityViewTile createTileForEntitySelectDisplay(Context context, Detail detail,
                                                                   Entity entity,
                                                                   String[] searchTerms,
-                                                                  CachingAsyncImageLoader loader,
                                                                   boolean fuzzySearchEnabled,
                                                                   boolean inAwesomeMode) {
-        return new EntityViewTile(context, detail, entity, searchTerms, loader,
+        return new EntityViewTile(context, detail, entity, searchTerms,
                 fuzzySearchEnabled, inAwesomeMode);
     }
 
     private EntityViewTile(Context context, Detail detail, Entity entity, String[] searchTerms,
-                           CachingAsyncImageLoader loader, boolean fuzzySearchEnabled,
-                           boolean inAwesomeMode) {
+                           boolean fuzzySearchEnabled, boolean inAwesomeMode) {
         super(context);
         this.searchTerms = searchTerms;
         this.mIsAsynchronous = entity instanceof AsyncEntity;
-        this.mImageLoader = loader;
         this.mFuzzySearchEnabled = fuzzySearchEnabled;
         this.numRowsPerTile = getMaxRows(detail);
         this.numTilesPerRow = detail.getNumEntitiesToDisplayPerRow();
@@ -353,14 +346,8 @@ public class EntityViewTile extends GridLayout {
                 // make the image's padding proportional to its size
                 retVal.setPadding(maxWidth / 6, maxHeight / 6, maxWidth / 6, maxHeight / 6);
                 if (rowData != null && !rowData.equals("")) {
-                    if (mImageLoader != null) {
-                        mImageLoader.display(rowData, ((ImageView)retVal), R.drawable.info_bubble,
-                                maxWidth, maxHeight);
-                    } else {
-                        Bitmap b = MediaUtil.inflateDisplayImage(getContext(), rowData,
-                                maxWidth, maxHeight, true);
-                        ((ImageView)retVal).setImageBitmap(b);
-                    }
+                    ImagePipeline.instance().display(context, rowData, ((ImageView)retVal),
+                            R.drawable.info_bubble, maxWidth, maxHeight, true);
                 }
                 break;
             case EntityView.FORM_AUDIO:
@@ -35,7 +35,7 @@ import org.commcare.preferences.HiddenPreferences;
 import org.commcare.tts.TextToSpeechConverter;
 import org.commcare.utils.AndroidUtil;
 import org.commcare.utils.FileUtil;
-import org.commcare.utils.MediaUtil;
+import org.commcare.utils.ImagePipeline;
 import org.commcare.utils.QRCodeEncoder;
 import org.commcare.utils.StringUtils;
 import org.commcare.views.ResizingImageView;
@@ -259,7 +259,8 @@ public class MediaLayout extends RelativeLayout {
             if (imageFile.exists()) {
                 DisplayMetrics metrics = this.getContext().getResources().getDisplayMetrics();
                 int[] maxBounds = new int[] { metrics.widthPixels, metrics.heightPixels };
-                Bitmap b = MediaUtil.inflateDisplayImage(getContext(), imageURI, maxBounds[0], maxBounds[1]);
+                Bitmap b = ImagePipeline.instance().loadImage(getContext(), imageURI,
+                        maxBounds[0], maxBounds[1], false);
                 if (b != null) {
                     ImageView mImageView;
                     if (useResizingImageView()) {
@@ -273,7 +274,6 @@ public class MediaLayout extends RelativeLayout {
                                 .override(b.getWidth(), b.getHeight())
                                 .load(imageFilename)
                                 .into(mImageView);
-                        b.recycle();
                     } else {
                         mImageView.setImageBitmap(b);
                     }
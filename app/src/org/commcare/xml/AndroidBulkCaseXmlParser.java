@@ -86,11 +86,7 @@ public class AndroidBulkCaseXmlParser extends BulkProcessingCaseXmlParser {
                 mEntityCache.invalidateCaches(recordIdsToWipe);
             }
             mCaseIndexTable.clearCaseIndices(recordIdsToWipe);
-
-            for (String cid : writeLog.keySet()) {
-                Case c = writeLog.get(cid);
-                mCaseIndexTable.indexCase(c);
-            }
+            mCaseIndexTable.indexCases(writeLog.values());
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
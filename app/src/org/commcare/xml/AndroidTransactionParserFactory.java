@@ -13,7 +13,9 @@ import org.commcare.models.database.SqlStorage;
 import org.commcare.preferences.DeveloperPreferences;
 import org.commcare.utils.GlobalConstants;
 import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Hashtable;
@@ -43,6 +45,9 @@ public class AndroidTransactionParserFactory extends CommCareTransactionParserFa
     private TransactionParserFactory formInstanceParser;
     private boolean caseIndexesWereDisrupted = false;
 
+    private int elementsToSkip = 0;
+    private String skipInRestoreId;
+
     /**
      * A mapping from an installed form's namespace its install path.
      */
@@ -56,12 +61,39 @@ public class AndroidTransactionParserFactory extends CommCareTransactionParserFa
 
     @Override
     public TransactionParser getParser(KXmlParser parser) {
+        TransactionParser transaction;
         String namespace = parser.getNamespace();
         if (namespace != null && formInstanceNamespaces != null && formInstanceNamespaces.containsKey(namespace)) {
             req();
-            return formInstanceParser.getParser(parser);
+            transaction = formInstanceParser.getParser(parser);
+        } else {
+            transaction = super.getParser(parser);
+        }
+        if (transaction == null || elementsToSkip == 0) {
+            return transaction;
         }
-        return super.getParser(parser);
+
+        elementsToSkip--;
+        String restoreId = getSyncToken();
+        if ("sync".equalsIgnoreCase(parser.getName()) || restoreId == null) {
+            // the payload's restore id is needed to tell whether to skip
+            return transaction;
+        } else if (!restoreId.equals(skipInRestoreId)) {
+            // not the payload that was committed, so replay all of it
+            elementsToSkip = 0;
+            return transaction;
+        }
+        return new SkippedElementParser(parser);
+    }
+
+    /**
+     * Skips over the first elements of a restore payload instead of parsing
+     * them, as long as the payload's restore id matches. Used to pick up a
+     * restore whose first elements were already committed.
+     */
+    public void skipRestoredElements(int count, String restoreId) {
+        this.elementsToSkip = restoreId == null ? 0 : count;
+        this.skipInRestoreId = restoreId;
     }
 
     /*
@@ -168,4 +200,29 @@ public class AndroidTransactionParserFactory extends CommCareTransactionParserFa
             }
         };
     }
+
+    /**
+     * Consumes an element without acting on it
+     */
+    private static class SkippedElementParser extends TransactionParser<Object> {
+
+        SkippedElementParser(KXmlParser parser) {
+            super(parser);
+        }
+
+        @Override
+        public Object parse() throws IOException, XmlPullParserException {
+            int depth = parser.getDepth();
+            int eventType = parser.next();
+            while (eventType != KXmlParser.END_DOCUMENT
+                    && !(eventType == KXmlParser.END_TAG && parser.getDepth() == depth)) {
+                eventType = parser.next();
+            }
+            return null;
+        }
+
+        @Override
+        protected void commit(Object parsed) {
+        }
+    }
 }
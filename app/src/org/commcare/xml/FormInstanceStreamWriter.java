@@ -0,0 +1,122 @@
+package org.commcare.xml;
+
+import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.model.xform.XFormSerializingVisitor;
+import org.javarosa.xform.util.XFormAnswerDataSerializer;
+import org.javarosa.xform.util.XFormSerializer;
+import org.kxml2.io.KXmlSerializer;
+import org.kxml2.kdom.Element;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Writes a form instance as xml straight into an output stream.
+ *
+ * XFormSerializingVisitor builds the whole instance as an xml document, and then as a byte
+ * array, before any of it can be written out. This writes the same xml one child of the root at
+ * a time, using the visitor to build each child, so only one child's subtree is held in memory
+ * at once. That only helps when the instance's bulk is spread across the root's children, such
+ * as repeats directly under the root. Repeats inside a group are built together with the group.
+ */
+public class FormInstanceStreamWriter {
+
+    private final FormInstance instance;
+    private final XFormSerializingVisitor visitor;
+
+    /**
+     * @param respectRelevance whether non-relevant nodes are left out, as they are when the form
+     *                         is completed
+     */
+    public FormInstanceStreamWriter(FormInstance instance, boolean respectRelevance) {
+        this.instance = instance;
+        this.visitor = new XFormSerializingVisitor(respectRelevance);
+        this.visitor.setAnswerDataSerializer(new XFormAnswerDataSerializer());
+    }
+
+    /**
+     * Writes the subtree under the given element, which is the whole instance for its root.
+     * The output stream is left open.
+     *
+     * @throws XFormSerializer.UnsupportedUnicodeSurrogatesException if the instance holds text
+     *                                                               that can't be encoded
+     */
+    public void write(TreeElement top, OutputStream output) throws IOException {
+        XmlSerializer serializer = new SurrogateCheckingSerializer();
+        serializer.setOutput(output, "UTF-8");
+        serializer.startDocument(null, null);
+
+        // Namespaces are declared on the top element, as the visitor does
+        for (String prefix : instance.getNamespacePrefixes()) {
+            serializer.setPrefix(prefix, instance.getNamespaceURI(prefix));
+        }
+        String namespace = top.getNamespace();
+        if (instance.schema != null) {
+            namespace = instance.schema;
+            serializer.setPrefix("", instance.schema);
+        }
+
+        serializer.startTag(namespace, top.getName());
+        for (int i = 0; i < top.getAttributeCount(); i++) {
+            String value = top.getAttributeValue(i);
+            serializer.attribute(top.getAttributeNamespace(i), top.getAttributeName(i),
+                    value == null ? "" : value);
+        }
+
+        // Children that share a name are written together, in the order the names first appear
+        Set<String> childNames = new LinkedHashSet<>();
+        for (int i = 0; i < top.getNumChildren(); i++) {
+            childNames.add(top.getChildAt(i).getName());
+        }
+        for (String childName : childNames) {
+            int multiplicity = top.getChildMultiplicity(childName);
+            for (int i = 0; i < multiplicity; i++) {
+                Element child = visitor.serializeNode(top.getChild(childName, i));
+                if (child != null) {
+                    child.write(serializer);
+                }
+            }
+        }
+
+        serializer.endTag(namespace, top.getName());
+        serializer.endDocument();
+        serializer.flush();
+    }
+
+    /**
+     * Rejects unpaired surrogates as they are written, since they would otherwise be silently
+     * replaced in the encoded output
+     */
+    private static class SurrogateCheckingSerializer extends KXmlSerializer {
+        @Override
+        public XmlSerializer text(String text) throws IOException {
+            checkSurrogates(text);
+            return super.text(text);
+        }
+
+        @Override
+        public XmlSerializer attribute(String namespace, String name, String value) throws IOException {
+            checkSurrogates(value);
+            return super.attribute(namespace, name, value);
+        }
+
+        private static void checkSurrogates(String text) {
+            if (text == null) {
+                return;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isHighSurrogate(c)
+                        && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    throw new XFormSerializer.UnsupportedUnicodeSurrogatesException(text);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.commcare.adapters;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.util.ActivityLaunchUtils;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.android.util.TestUtils;
+import org.commcare.cases.entity.Entity;
+import org.commcare.cases.entity.NodeEntityFactory;
+import org.commcare.models.AndroidSessionWrapper;
+import org.commcare.modern.util.Pair;
+import org.commcare.session.CommCareSession;
+import org.commcare.suite.model.Detail;
+import org.commcare.suite.model.EntityDatum;
+import org.commcare.util.EntitySortUtil;
+import org.javarosa.core.model.instance.TreeReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that searching through the index matches what EntitySortUtil finds
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class EntitySearchIndexTest {
+    private List<Entity<TreeReference>> entities;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/case_list_lookup/profile.ccpr", "test", "123");
+        TestUtils.processResourceTransactionIntoAppDb("/commcare-apps/case_list_lookup/restore.xml");
+        ActivityLaunchUtils.addCommandToSession("m1-f0");
+
+        AndroidSessionWrapper asw = CommCareApplication.instance().getCurrentSessionWrapper();
+        CommCareSession session = asw.getSession();
+        EntityDatum datum = (EntityDatum)session.getNeededDatum();
+        Detail detail = session.getDetail(datum.getShortDetail());
+        NodeEntityFactory factory = new NodeEntityFactory(detail, asw.getEvaluationContext());
+
+        entities = new ArrayList<>();
+        for (TreeReference ref : factory.expandReferenceList(datum.getNodeset())) {
+            entities.add(factory.getEntity(ref));
+        }
+        assertEquals(8, entities.size());
+    }
+
+    @Test
+    public void testExactSearchMatchesSortUtil() {
+        EntitySearchIndex index = buildIndex();
+        // each search after the first refines the one before it, so only rechecks its matches
+        assertSameMatches(index, new String[]{"a"}, false);
+        assertSameMatches(index, new String[]{"an"}, false);
+        assertSameMatches(index, new String[]{"and"}, false);
+        assertSameMatches(index, new String[]{"a", "r"}, false);
+        assertSameMatches(index, new String[]{"ellen"}, false);
+        assertSameMatches(index, new String[]{"nobody"}, false);
+    }
+
+    @Test
+    public void testFuzzySearchMatchesSortUtil() {
+        EntitySearchIndex index = buildIndex();
+        assertSameMatches(index, new String[]{"philip"}, true);
+        assertSameMatches(index, new String[]{"gilbret"}, true);
+        assertSameMatches(index, new String[]{"andria", "arya"}, true);
+        assertSameMatches(index, new String[]{"st"}, true);
+    }
+
+    @Test
+    public void testCancelledSearch() {
+        EntityFiltererBase cancelled = new TestFilterer(true);
+        EntitySearchIndex index = new EntitySearchIndex(Locale.getDefault());
+        assertFalse(index.build(entities, cancelled));
+        assertNull(buildIndex().search(entities, new String[]{"a"}, false, cancelled));
+    }
+
+    /**
+     * A build cancelled part way through picks up the remaining entities even if the list was
+     * re-sorted in between
+     */
+    @Test
+    public void testBuildResumesAfterResort() {
+        EntitySearchIndex index = new EntitySearchIndex(Locale.getDefault());
+        assertFalse(index.build(entities, new TestFilterer(3)));
+
+        Collections.reverse(entities);
+        assertTrue(index.build(entities, new TestFilterer(false)));
+        assertSameMatches(index, new String[]{"a"}, false);
+        assertSameMatches(index, new String[]{"st"}, true);
+    }
+
+    private EntitySearchIndex buildIndex() {
+        EntitySearchIndex index = new EntitySearchIndex(Locale.getDefault());
+        index.build(entities, new TestFilterer(false));
+        return index;
+    }
+
+    private void assertSameMatches(EntitySearchIndex index, String[] searchTerms, boolean isFuzzySearchEnabled) {
+        List<Entity<TreeReference>> expected = new ArrayList<>();
+        EntitySortUtil.sortEntities(entities, searchTerms, Locale.getDefault(), isFuzzySearchEnabled,
+                new ArrayList<Pair<Integer, Integer>>(), expected, entities::get);
+
+        assertEquals(expected,
+                index.search(entities, searchTerms, isFuzzySearchEnabled, new TestFilterer(false)));
+    }
+
+    private class TestFilterer extends EntityFiltererBase {
+        private int checksBeforeCancel;
+
+        TestFilterer(boolean cancelled) {
+            this(cancelled ? 0 : Integer.MAX_VALUE);
+        }
+
+        /**
+         * @param checksBeforeCancel how many isCancelled() calls return false before it is cancelled
+         */
+        TestFilterer(int checksBeforeCancel) {
+            super(null, null, null, entities);
+            this.checksBeforeCancel = checksBeforeCancel;
+        }
+
+        @Override
+        protected boolean isCancelled() {
+            if (checksBeforeCancel == 0) {
+                return true;
+            }
+            checksBeforeCancel--;
+            return false;
+        }
+
+        @Override
+        protected void filter() {
+        }
+    }
+}
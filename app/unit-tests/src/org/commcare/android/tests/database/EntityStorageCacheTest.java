@@ -0,0 +1,85 @@
+package org.commcare.android.tests.database;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.util.TestUtils;
+import org.commcare.models.database.user.models.CommCareEntityStorageCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class EntityStorageCacheTest {
+
+    private SQLiteDatabase db;
+    private CommCareEntityStorageCache cache;
+
+    @Before
+    public void setup() {
+        TestUtils.initializeStaticTestStorage();
+        db = TestUtils.getTestDb();
+        cache = new CommCareEntityStorageCache("case", db, "test_app");
+
+        CommCareEntityStorageCache.BatchWriter writer = cache.openBatchWriter();
+        try {
+            for (int i = 1; i <= 10; ++i) {
+                writer.write(String.valueOf(i), "detail_0", "value " + i);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testBulkRetrieve() {
+        HashMap<String, String> values = cache.retrieveCacheValues(Arrays.asList(2, 5, 42), "detail_0");
+        assertEquals(2, values.size());
+        assertEquals("value 5", values.get("5"));
+        assertFalse(values.containsKey("42"));
+        assertEquals("value 2", cache.retrieveCacheValue("2", "detail_0"));
+    }
+
+    /**
+     * Values cached while a writer is open on the same thread go through the writer
+     */
+    @Test
+    public void testCacheRoutedThroughOpenWriter() {
+        try (CommCareEntityStorageCache.BatchWriter writer = cache.openBatchWriter()) {
+            cache.cache("11", "detail_0", "value 11");
+            writer.write("12", "detail_0", "value 12");
+        }
+        assertEquals("value 11", cache.retrieveCacheValue("11", "detail_0"));
+        assertEquals("value 12", cache.retrieveCacheValue("12", "detail_0"));
+    }
+
+    @Test
+    public void testEvictionBySize() {
+        int removed = CommCareEntityStorageCache.evictStaleEntries(db,
+                CommCareEntityStorageCache.MAX_ENTRY_AGE_MS, 4);
+        assertEquals(6, removed);
+        assertEquals(4, cache.retrieveCacheValues(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), "detail_0").size());
+    }
+
+    @Test
+    public void testEvictionByAge() {
+        assertEquals(0, CommCareEntityStorageCache.evictStaleEntries(db,
+                CommCareEntityStorageCache.MAX_ENTRY_AGE_MS, CommCareEntityStorageCache.MAX_ENTRIES_PER_CACHE));
+
+        // a negative age puts the cutoff after every existing write
+        assertEquals(10, CommCareEntityStorageCache.evictStaleEntries(db, -1000,
+                CommCareEntityStorageCache.MAX_ENTRIES_PER_CACHE));
+        assertNull(cache.retrieveCacheValue("2", "detail_0"));
+    }
+}
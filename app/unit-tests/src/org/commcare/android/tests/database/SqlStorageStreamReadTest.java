@@ -0,0 +1,103 @@
+package org.commcare.android.tests.database;
+
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.android.util.TestUtils;
+import org.commcare.models.database.SqlStorage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class SqlStorageStreamReadTest {
+
+    private SqlStorage<ACase> storage;
+    private LinkedHashSet<Integer> ids;
+
+    @Before
+    public void setup() {
+        TestUtils.initializeStaticTestStorage();
+        storage = TestUtils.getStorage("StreamReadCases", ACase.class);
+
+        ids = new LinkedHashSet<>();
+        // lead with enough missing ids to fill whole sqlList chunks, which
+        // used to end the read before any of the stored records were reached
+        for (int i = 100000; i < 102000; ++i) {
+            ids.add(i);
+        }
+        for (int i = 0; i < 25; ++i) {
+            ACase c = new ACase("case " + i, "stream_test");
+            c.setCaseId("case_id_" + i);
+            storage.write(c);
+            ids.add(c.getID());
+        }
+    }
+
+    @Test
+    public void testBulkReadSkipsEmptyChunks() {
+        HashMap<Integer, ACase> records = new HashMap<>();
+        storage.bulkRead(ids, records);
+        assertEquals(25, records.size());
+
+        HashMap<Integer, String[]> metadata = new HashMap<>();
+        storage.bulkReadMetadata(ids, new String[]{ACase.INDEX_CASE_ID}, metadata);
+        assertEquals(25, metadata.size());
+    }
+
+    @Test
+    public void testStreamReadBatchesAndStops() {
+        final List<Integer> batchSizes = new ArrayList<>();
+        storage.streamRead(ids, 10, new SqlStorage.RecordBatchConsumer<ACase>() {
+            @Override
+            public boolean consume(LinkedHashMap<Integer, ACase> batch) {
+                batchSizes.add(batch.size());
+                return true;
+            }
+        });
+        assertEquals(3, batchSizes.size());
+        assertEquals(Integer.valueOf(10), batchSizes.get(0));
+        assertEquals(Integer.valueOf(5), batchSizes.get(2));
+
+        final List<Integer> stoppedBatchSizes = new ArrayList<>();
+        storage.streamRead(ids, 10, new SqlStorage.RecordBatchConsumer<ACase>() {
+            @Override
+            public boolean consume(LinkedHashMap<Integer, ACase> batch) {
+                stoppedBatchSizes.add(batch.size());
+                return false;
+            }
+        });
+        assertEquals(1, stoppedBatchSizes.size());
+    }
+
+    @Test
+    public void testStreamReadMetadataKeepsFieldOrder() {
+        final HashMap<Integer, String[]> metadata = new HashMap<>();
+        storage.streamReadMetadata(ids, new String[]{ACase.INDEX_CASE_ID, ACase.INDEX_CASE_TYPE}, 7,
+                new SqlStorage.RecordBatchConsumer<String[]>() {
+                    @Override
+                    public boolean consume(LinkedHashMap<Integer, String[]> batch) {
+                        assertTrue(batch.size() <= 7);
+                        metadata.putAll(batch);
+                        return true;
+                    }
+                });
+        assertEquals(25, metadata.size());
+        for (String[] fields : metadata.values()) {
+            assertTrue(fields[0].startsWith("case_id_"));
+            assertEquals("stream_test", fields[1]);
+        }
+    }
+}
@@ -355,6 +355,9 @@ public class FormStorageTest {
             , "org.commcare.suite.model.EndpointArgument"
             , "org.commcare.suite.model.EndpointAction"
             , "org.commcare.suite.model.QueryGroup"
+
+            // Added in 2.55
+            , "org.commcare.android.database.app.models.FormDefRecordV13"
     );
 
 
@@ -210,7 +210,7 @@ public class TestUtils {
     /**
      * @return The hook for the test user-db
      */
-    private static SQLiteDatabase getTestDb() {
+    public static SQLiteDatabase getTestDb() {
         DatabaseUserOpenHelper helper = new DatabaseUserOpenHelper(ApplicationProvider.getApplicationContext(), "Test");
         return helper.getWritableDatabase("Test");
     }
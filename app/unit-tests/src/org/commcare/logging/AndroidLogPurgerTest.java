@@ -0,0 +1,61 @@
+package org.commcare.logging;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.javarosa.core.util.SortedIntSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class AndroidLogPurgerTest {
+
+    private SqlStorage<XPathErrorEntry> storage;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/archive_form_tests/profile.ccpr",
+                "test", "123");
+        storage = CommCareApplication.instance().getUserStorage(XPathErrorEntry.STORAGE_KEY, XPathErrorEntry.class);
+        storage.removeAll();
+    }
+
+    /**
+     * Only the purged ids should be removed, even when they don't form one contiguous range
+     */
+    @Test
+    public void testPurgeRemovesOnlyPurgedIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            XPathErrorEntry entry = new XPathErrorEntry(null, "error " + i);
+            storage.write(entry);
+            ids.add(entry.getID());
+        }
+
+        SortedIntSet toPurge = new SortedIntSet();
+        for (int id : ids) {
+            if (id != ids.get(2)) {
+                toPurge.add(id);
+            }
+        }
+        assertEquals(2, AndroidLogPurger.getIdRanges(toPurge).size());
+
+        new AndroidLogPurger<>(storage).purge(toPurge);
+
+        assertEquals(1, storage.getNumRecords());
+        assertTrue(storage.exists(ids.get(2)));
+    }
+}
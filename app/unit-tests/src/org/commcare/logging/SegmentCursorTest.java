@@ -0,0 +1,102 @@
+package org.commcare.logging;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.javarosa.DeviceReportRecord;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.models.encryption.EncryptionIO;
+import org.javarosa.core.io.StreamsUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.zip.GZIPInputStream;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class SegmentCursorTest {
+
+    private SqlStorage<XPathErrorEntry> storage;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/archive_form_tests/profile.ccpr",
+                "test", "123");
+        storage = CommCareApplication.instance().getUserStorage(XPathErrorEntry.STORAGE_KEY, XPathErrorEntry.class);
+        storage.removeAll();
+    }
+
+    /**
+     * Logs too large for one segment should be split across compressed segments, with every
+     * entry in exactly one of them and purged once its segment is written
+     */
+    @Test
+    public void testLogsAreSplitAcrossSegments() throws Exception {
+        int entries = 300;
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            message.append((char)('a' + i % 26));
+        }
+        for (int i = 0; i < entries; i++) {
+            storage.write(new XPathErrorEntry(null, message.toString()));
+        }
+
+        SegmentCursor cursor = new SegmentCursor();
+        Date reportDate = new Date();
+        int segments = 0;
+        int serializedEntries = 0;
+        while (cursor.hasMoreEntries()) {
+            DeviceReportRecord record = DeviceReportRecord.generateNewSegmentStub(reportDate, segments);
+            assertTrue(record.isCompressed());
+            DeviceReportWriter writer = DeviceReportWriter.forCompressedSegment(record);
+            XPathErrorSerializer serializer = new XPathErrorSerializer(storage);
+            cursor.moveTo(writer);
+            serializer.setSegmentCursor(cursor);
+            writer.addReportElement(serializer);
+            writer.write();
+            serializer.purge();
+
+            String report = readReport(record);
+            assertTrue(report.contains("</device_report>"));
+            serializedEntries += countOccurrences(report, "<user_error ");
+            segments++;
+        }
+
+        assertTrue(segments > 1);
+        assertEquals(entries, serializedEntries);
+        assertEquals(0, storage.getNumRecords());
+    }
+
+    private static String readReport(DeviceReportRecord record) throws Exception {
+        InputStream is = new GZIPInputStream(EncryptionIO.getFileInputStream(record.getFilePath(),
+                new SecretKeySpec(record.getKey(), "AES")));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            StreamsUtil.writeFromInputToOutput(is, bos);
+        } finally {
+            is.close();
+        }
+        return new String(bos.toByteArray(), "UTF-8");
+    }
+
+    private static int countOccurrences(String text, String token) {
+        int count = 0;
+        for (int i = text.indexOf(token); i != -1; i = text.indexOf(token, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
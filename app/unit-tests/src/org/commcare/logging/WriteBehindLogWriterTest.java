@@ -0,0 +1,59 @@
+package org.commcare.logging;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class WriteBehindLogWriterTest {
+
+    private SqlStorage<XPathErrorEntry> storage;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/archive_form_tests/profile.ccpr",
+                "test", "123");
+        WriteBehindLogWriter.retireAll();
+        storage = CommCareApplication.instance().getUserStorage(XPathErrorEntry.STORAGE_KEY, XPathErrorEntry.class);
+        storage.removeAll();
+    }
+
+    @Test
+    public void testFlushWritesQueuedEntries() {
+        WriteBehindLogWriter<XPathErrorEntry> writer = new WriteBehindLogWriter<>(storage, null);
+        for (int i = 0; i < 5; i++) {
+            writer.write(new XPathErrorEntry(null, "entry " + i));
+        }
+        WriteBehindLogWriter.flushAll();
+        assertEquals(5, storage.getNumRecords());
+        assertEquals(0, writer.getDroppedCount());
+    }
+
+    @Test
+    public void testRetiredWriterWritesStraightAway() {
+        WriteBehindLogWriter<XPathErrorEntry> writer = new WriteBehindLogWriter<>(storage, null);
+        WriteBehindLogWriter.retireAll();
+        writer.write(new XPathErrorEntry(null, "after retiring"));
+        assertEquals(1, storage.getNumRecords());
+    }
+
+    @Test
+    public void testClearedEntriesAreNotWritten() {
+        WriteBehindLogWriter<XPathErrorEntry> writer = new WriteBehindLogWriter<>(storage, null);
+        writer.write(new XPathErrorEntry(null, "cleared"));
+        writer.clear();
+        writer.flush();
+        assertEquals(0, storage.getNumRecords());
+    }
+}
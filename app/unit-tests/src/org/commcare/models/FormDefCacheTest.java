@@ -0,0 +1,99 @@
+package org.commcare.models;
+
+import org.commcare.CommCareApp;
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.database.app.models.FormDefRecord;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.utils.FileUtil;
+import org.commcare.utils.GlobalConstants;
+import org.javarosa.core.model.FormDef;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class FormDefCacheTest {
+
+    private CommCareApp app;
+    private SqlStorage<FormDefRecord> formDefStorage;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installApp("jr://resource/commcare-apps/archive_form_tests/profile.ccpr");
+        app = CommCareApplication.instance().getCurrentApp();
+        formDefStorage = app.getCommCarePlatform().getFormDefStorage();
+    }
+
+    private File getCachedForm(String hash) {
+        return new File(app.fsPath(GlobalConstants.FILE_CC_CACHE) + "/" + hash + ".formdef");
+    }
+
+    private FormDefRecord getInstalledForm() {
+        String namespace = app.getCommCarePlatform().getInstalledForms().iterator().next();
+        return formDefStorage.read(app.getCommCarePlatform().getFormDefId(namespace));
+    }
+
+    @Test
+    public void testFormsAreHashedAtInstall() {
+        for (FormDefRecord record : formDefStorage) {
+            assertNotNull(record.getFormHash());
+            assertEquals(FileUtil.getMd5Hash(new File(record.getFilePath())), record.getFormHash());
+        }
+    }
+
+    @Test
+    public void testLoadWritesCacheEntryThatLaterLoadsUse() {
+        FormDefRecord record = getInstalledForm();
+        String hash = FormDefCache.getFormHash(formDefStorage, record);
+        File formBin = getCachedForm(hash);
+        formBin.delete();
+
+        File formXml = new File(record.getFilePath());
+        FormDef fromXml = FormDefCache.loadFormDef(CommCareApplication.instance(), hash, formXml);
+        assertTrue(formBin.exists());
+
+        FormDef fromCache = FormDefCache.loadFormDef(CommCareApplication.instance(), hash, formXml);
+        assertEquals(fromXml.getTitle(), fromCache.getTitle());
+        assertEquals(fromXml.getMainInstance().schema, fromCache.getMainInstance().schema);
+    }
+
+    @Test
+    public void testChangingFilePathClearsHash() {
+        FormDefRecord record = getInstalledForm();
+        String hash = record.getFormHash();
+        FormDefRecord.updateFilePath(formDefStorage, record.getID(), record.getFilePath());
+
+        FormDefRecord updated = formDefStorage.read(record.getID());
+        assertNull(updated.getFormHash());
+        assertEquals(hash, FormDefCache.getFormHash(formDefStorage, updated));
+        assertEquals(hash, formDefStorage.read(record.getID()).getFormHash());
+    }
+
+    @Test
+    public void testPrewarmCachesInstalledForms() {
+        for (FormDefRecord record : formDefStorage) {
+            getCachedForm(record.getFormHash()).delete();
+        }
+
+        FormDefCache.prewarm(app);
+
+        FormDefRecord record = getInstalledForm();
+        assertTrue(getCachedForm(record.getFormHash()).exists());
+        assertFalse(new File(getCachedForm(record.getFormHash()).getPath() + ".tmp-"
+                + Thread.currentThread().getId()).exists());
+    }
+}
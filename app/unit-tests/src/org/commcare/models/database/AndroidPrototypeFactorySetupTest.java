@@ -0,0 +1,37 @@
+package org.commcare.models.database;
+
+import org.commcare.CommCareTestApplication;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class AndroidPrototypeFactorySetupTest {
+
+    /**
+     * The registry generated by the build should list every class that scanning the compiled
+     * classes finds
+     */
+    @Test
+    public void testPrototypeRegistryMatchesCompiledClasses() throws Exception {
+        List<String> registered =
+                AndroidPrototypeFactorySetup.readPrototypeRegistry(ApplicationProvider.getApplicationContext());
+        assertNotNull("The build should generate a prototype registry asset", registered);
+
+        Set<String> registeredSet = new HashSet<>(registered);
+        for (String className : CommCareTestApplication.getTestPrototypeFactoryClasses()) {
+            assertTrue("Missing from prototype registry: " + className, registeredSet.contains(className));
+        }
+    }
+}
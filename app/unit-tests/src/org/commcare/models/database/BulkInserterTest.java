@@ -0,0 +1,71 @@
+package org.commcare.models.database;
+
+import android.database.Cursor;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.util.TestAppInstaller;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class BulkInserterTest {
+
+    private static final String TABLE = "bulk_insert_test";
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/archive_form_tests/profile.ccpr",
+                "test", "123");
+        db = CommCareApplication.instance().getUserDbHandle();
+        db.execSQL("CREATE TABLE " + TABLE + " (record_id INTEGER, name, target)");
+    }
+
+    /**
+     * Rows spanning several full statements and a partial one should all be written, with
+     * numbers and nulls bound as such
+     */
+    @Test
+    public void testRowsAcrossStatementsAreWritten() {
+        int rows = 250;
+        BulkInserter inserter = new BulkInserter(db, TABLE, new String[]{"record_id", "name", "target"});
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < rows; i++) {
+                inserter.addRow(i, "parent", i % 2 == 0 ? null : "case-" + i);
+            }
+            inserter.flush();
+            db.setTransactionSuccessful();
+        } finally {
+            inserter.close();
+            db.endTransaction();
+        }
+        assertEquals(rows, inserter.getRowsWritten());
+
+        Cursor c = db.rawQuery("SELECT record_id, name, target FROM " + TABLE + " ORDER BY record_id", null);
+        try {
+            assertEquals(rows, c.getCount());
+            assertTrue(c.moveToPosition(201));
+            assertEquals(201, c.getInt(0));
+            assertEquals("parent", c.getString(1));
+            assertEquals("case-201", c.getString(2));
+            assertTrue(c.moveToPosition(200));
+            assertTrue(c.isNull(2));
+        } finally {
+            c.close();
+        }
+    }
+}
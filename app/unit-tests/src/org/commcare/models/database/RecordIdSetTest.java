@@ -0,0 +1,61 @@
+package org.commcare.models.database;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordIdSetTest {
+
+    private static RecordIdSet range(int from, int to) {
+        RecordIdSet.Builder builder = new RecordIdSet.Builder();
+        for (int i = from; i < to; ++i) {
+            builder.add(i);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testBuilderSortsAndDeduplicates() {
+        RecordIdSet set = RecordIdSet.of(9000, 3, 7000, 3, 1);
+        assertArrayEquals(new int[]{1, 3, 7000, 9000}, set.toArray());
+        assertEquals(4, set.size());
+        assertTrue(set.contains(7000));
+        assertFalse(set.contains(2));
+        assertEquals(1, set.first());
+    }
+
+    @Test
+    public void testRepresentationChoice() {
+        assertTrue(range(1, 5000).isBitmapBacked());
+        assertFalse(RecordIdSet.of(1, 100000, 200000).isBitmapBacked());
+    }
+
+    @Test
+    public void testSetOperationsAcrossRepresentations() {
+        RecordIdSet denseA = range(1, 1000);
+        RecordIdSet denseB = range(500, 1500);
+        RecordIdSet sparse = RecordIdSet.of(2, 600, 1200, 100000);
+
+        assertEquals(range(500, 1000), denseA.intersect(denseB));
+        assertEquals(range(1, 1500), denseA.union(denseB));
+        assertEquals(range(1, 500), denseA.difference(denseB));
+
+        assertArrayEquals(new int[]{2, 600}, denseA.intersect(sparse).toArray());
+        assertArrayEquals(new int[]{2, 600}, sparse.intersect(denseA).toArray());
+        assertArrayEquals(new int[]{1200, 100000}, sparse.difference(denseA).toArray());
+        assertEquals(1001, denseA.union(sparse).size());
+
+        assertTrue(denseA.intersect(RecordIdSet.EMPTY).isEmpty());
+        assertEquals(denseA, denseA.union(RecordIdSet.EMPTY));
+    }
+
+    @Test
+    public void testBoxedConversionsKeepOrder() {
+        RecordIdSet set = RecordIdSet.of(5, 1, 3);
+        assertEquals("[1, 3, 5]", set.toVector().toString());
+        assertEquals("[1, 3, 5]", set.toLinkedHashSet().toString());
+    }
+}
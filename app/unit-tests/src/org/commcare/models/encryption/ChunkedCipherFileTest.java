@@ -0,0 +1,129 @@
+package org.commcare.models.encryption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkedCipherFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SecretKeySpec key = new SecretKeySpec(new byte[32], "AES");
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private File writeChunked(byte[] plaintext, int chunkSize) throws IOException {
+        File file = folder.newFile();
+        OutputStream os = new ChunkedCipherOutputStream(new FileOutputStream(file), key, chunkSize);
+        os.write(plaintext);
+        os.close();
+        return file;
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            bos.write(buffer, 0, read);
+        }
+        is.close();
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testRoundTripAtChunkBoundaries() throws IOException {
+        for (int length : new int[]{0, 1, 4095, 4096, 4097, 3 * 4096, 50000}) {
+            byte[] plaintext = randomBytes(length);
+            File file = writeChunked(plaintext, 4096);
+            ChunkedCipherFile chunked = new ChunkedCipherFile(file, key);
+            assertEquals(length, chunked.getPlaintextLength());
+            assertArrayEquals(plaintext, readFully(chunked.openStream(0)));
+        }
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        byte[] plaintext = randomBytes(50000);
+        File file = writeChunked(plaintext, 4096);
+
+        ChunkedCipherFile chunked = new ChunkedCipherFile(file, key);
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 4096 * 5, 4096 * 6), chunked.decryptChunk(5));
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 30001, 50000), readFully(chunked.openStream(30001)));
+
+        InputStream is = new ChunkedCipherFile(file, key).openStream(0);
+        assertEquals(20000, is.skip(20000));
+        assertEquals(plaintext[20000] & 0xff, is.read());
+        is.close();
+    }
+
+    @Test
+    public void testTamperingAndTruncationAreDetected() throws IOException {
+        File file = writeChunked(randomBytes(3 * 4096 + 10), 4096);
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.seek(ChunkedCipherFormat.HEADER_LENGTH + 5000);
+        raw.write(raw.read() ^ 1);
+        raw.close();
+        try {
+            new ChunkedCipherFile(file, key).decryptChunk(1);
+            fail("Modified chunk should fail authentication");
+        } catch (IOException expected) {
+        }
+
+        File truncated = writeChunked(randomBytes(3 * 4096 + 10), 4096);
+        raw = new RandomAccessFile(truncated, "rw");
+        raw.setLength(ChunkedCipherFormat.HEADER_LENGTH + 2 * (4096 + ChunkedCipherFormat.TAG_LENGTH));
+        raw.close();
+        try {
+            readFully(new ChunkedCipherFile(truncated, key).openStream(0));
+            fail("A file cut at a chunk boundary should not read as complete");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testLegacyFilesStillRead() throws Exception {
+        byte[] plaintext = randomBytes(10000);
+        File legacy = folder.newFile();
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        OutputStream os = new CipherOutputStream(new FileOutputStream(legacy), cipher);
+        os.write(plaintext);
+        os.close();
+
+        assertFalse(ChunkedCipherFormat.isChunkedFile(legacy));
+        assertArrayEquals(plaintext, readFully(EncryptionIO.getFileInputStream(legacy.getPath(), key)));
+
+        File chunked = folder.newFile();
+        os = EncryptionIO.createChunkedFileOutputStream(chunked.getPath(), key);
+        os.write(plaintext);
+        os.close();
+        assertTrue(ChunkedCipherFormat.isChunkedFile(chunked));
+        assertArrayEquals(plaintext, readFully(EncryptionIO.getFileInputStream(chunked.getPath(), key)));
+    }
+}
@@ -0,0 +1,115 @@
+package org.commcare.models.encryption;
+
+import org.commcare.CommCareTestApplication;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class CipherPoolTest {
+
+    private static CipherPool buildPool() {
+        return new CipherPool() {
+            @Override
+            protected Cipher generateNewCipher() {
+                try {
+                    Cipher cipher = Cipher.getInstance("AES");
+                    cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(new byte[16], "AES"));
+                    return cipher;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    @Test
+    public void testThreadGetsBackItsCipher() {
+        CipherPool pool = buildPool();
+        pool.init();
+        Cipher first = pool.borrow();
+        pool.remit(first);
+        assertSame(first, pool.borrow());
+
+        assertEquals(2, pool.getBorrowCount());
+        assertEquals(1, pool.getRemitCount());
+        assertEquals(5, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testExpiredCiphersAreNotReissued() {
+        CipherPool pool = buildPool();
+        pool.init();
+        Cipher lent = pool.borrow();
+        pool.expire();
+        pool.remit(lent);
+        assertNotSame(lent, pool.borrow());
+    }
+
+    @Test
+    public void testConcurrentBorrowers() throws InterruptedException {
+        final CipherPool pool = buildPool();
+        pool.init();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 500; ++j) {
+                    pool.remit(pool.borrow());
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, pool.getBorrowCount());
+        assertEquals(4000, pool.getRemitCount());
+    }
+
+    /**
+     * Ciphers put back while the pool is being expired must not survive the
+     * expiry
+     */
+    @Test
+    public void testExpireDuringRemits() throws InterruptedException {
+        final CipherPool pool = buildPool();
+        pool.init();
+        final Set<Cipher> lent = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 500; ++j) {
+                    Cipher cipher = pool.borrow();
+                    lent.add(cipher);
+                    pool.remit(cipher);
+                }
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < 50; ++i) {
+            pool.expire();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        pool.expire();
+        for (int i = 0; i < 10; ++i) {
+            assertFalse(lent.contains(pool.borrow()));
+        }
+    }
+}
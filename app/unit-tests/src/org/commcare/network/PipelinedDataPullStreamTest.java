@@ -0,0 +1,91 @@
+package org.commcare.network;
+
+import org.commcare.CommCareTestApplication;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class PipelinedDataPullStreamTest {
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            bos.write(buffer, 0, read);
+        }
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testPayloadLargerThanPipeIsRead() throws IOException, InterruptedException {
+        byte[] payload = new byte[3 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(payload);
+        ClosingStream network = new ClosingStream(payload);
+
+        PipelinedDataPullStream stream = new PipelinedDataPullStream(network, bytesRead -> {
+        });
+        assertArrayEquals(payload, readFully(stream));
+        stream.close();
+
+        // the download thread closes the network stream once it is done with it
+        for (int i = 0; i < 100 && !network.closed; ++i) {
+            Thread.sleep(10);
+        }
+        assertTrue(network.closed);
+    }
+
+    private static class ClosingStream extends ByteArrayInputStream {
+        volatile boolean closed = false;
+
+        ClosingStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    @Test
+    public void testDownloadFailureIsRethrown() throws IOException {
+        InputStream failing = new InputStream() {
+            int remaining = 10000;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining-- == 0) {
+                    throw new IOException("connection reset");
+                }
+                return 'a';
+            }
+        };
+
+        PipelinedDataPullStream stream =
+                new PipelinedDataPullStream(failing, bytesRead -> {
+                });
+        try {
+            readFully(stream);
+            fail("A failed download should not read as a complete payload");
+        } catch (IOException expected) {
+        } finally {
+            stream.close();
+        }
+    }
+}
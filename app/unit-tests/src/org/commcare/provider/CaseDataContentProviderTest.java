@@ -0,0 +1,105 @@
+package org.commcare.provider;
+
+import android.database.Cursor;
+import android.net.Uri;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class CaseDataContentProviderTest {
+
+    private CaseDataContentProvider provider;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/archive_form_tests/profile.ccpr",
+                "test", "123");
+
+        SqlStorage<ACase> storage =
+                CommCareApplication.instance().getUserStorage(ACase.STORAGE_KEY, ACase.class);
+        writeCase(storage, "case-a", "Amy", "mother", "owner-1", false);
+        writeCase(storage, "case-b", "Bob", "child", "owner-1", false);
+        writeCase(storage, "case-c", "Cat", "mother", "owner-2", true);
+
+        provider = new CaseDataContentProvider();
+        provider.onCreate();
+    }
+
+    private static void writeCase(SqlStorage<ACase> storage, String caseId, String name,
+                                  String type, String ownerId, boolean closed) {
+        ACase c = new ACase(name, type);
+        c.setCaseId(caseId);
+        c.setUserId(ownerId);
+        c.setClosed(closed);
+        storage.write(c);
+    }
+
+    @Test
+    public void testSelectionAndOrderingOnIndexedColumns() {
+        Cursor c = provider.query(CaseDataAPI.MetadataColumns.CONTENT_URI, null,
+                "case_type = ? AND status = 'open'", new String[]{"mother"}, null);
+        assertEquals(1, c.getCount());
+        assertTrue(c.moveToFirst());
+        assertEquals("case-a", c.getString(c.getColumnIndexOrThrow(CaseDataAPI.MetadataColumns.CASE_ID)));
+        assertEquals("Amy", c.getString(c.getColumnIndexOrThrow(CaseDataAPI.MetadataColumns.CASE_NAME)));
+        assertEquals("owner-1", c.getString(c.getColumnIndexOrThrow(CaseDataAPI.MetadataColumns.OWNER_ID)));
+        c.close();
+
+        c = provider.query(CaseDataAPI.MetadataColumns.CONTENT_URI,
+                new String[]{CaseDataAPI.MetadataColumns.CASE_ID},
+                "owner_id = ?", new String[]{"owner-1"}, "case_id DESC");
+        assertEquals(1, c.getColumnCount());
+        assertTrue(c.moveToFirst());
+        assertEquals("case-b", c.getString(0));
+        assertTrue(c.moveToNext());
+        assertEquals("case-a", c.getString(0));
+        assertFalse(c.moveToNext());
+        c.close();
+    }
+
+    @Test
+    public void testLimitAndOffset() {
+        Uri page = CaseDataAPI.MetadataColumns.CONTENT_URI.buildUpon()
+                .appendQueryParameter(CaseDataAPI.MetadataColumns.QUERY_LIMIT, "1")
+                .appendQueryParameter(CaseDataAPI.MetadataColumns.QUERY_OFFSET, "1")
+                .build();
+        Cursor c = provider.query(page, null, null, null, CaseDataAPI.MetadataColumns.CASE_ID);
+        assertEquals(1, c.getCount());
+        assertTrue(c.moveToFirst());
+        assertEquals("case-b", c.getString(c.getColumnIndexOrThrow(CaseDataAPI.MetadataColumns.CASE_ID)));
+        c.close();
+    }
+
+    @Test
+    public void testSingleCaseLookup() {
+        Uri caseUri = Uri.withAppendedPath(CaseDataAPI.MetadataColumns.CONTENT_URI, "case-c");
+        Cursor c = provider.query(caseUri, null, null, null, null);
+        assertEquals(1, c.getCount());
+        assertTrue(c.moveToFirst());
+        assertEquals("closed", c.getString(c.getColumnIndexOrThrow(CaseDataAPI.MetadataColumns.STATUS)));
+        assertEquals("Cat", c.getString(c.getColumnIndexOrThrow(CaseDataAPI.MetadataColumns.CASE_NAME)));
+        c.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOrderingByUnindexedColumnIsRejected() {
+        provider.query(CaseDataAPI.MetadataColumns.CONTENT_URI, null, null, null,
+                CaseDataAPI.MetadataColumns.CASE_NAME);
+    }
+}
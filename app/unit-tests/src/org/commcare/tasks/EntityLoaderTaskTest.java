@@ -0,0 +1,75 @@
+package org.commcare.tasks;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.util.ActivityLaunchUtils;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.android.util.TestUtils;
+import org.commcare.cases.entity.Entity;
+import org.commcare.models.AndroidSessionWrapper;
+import org.commcare.suite.model.Detail;
+import org.commcare.suite.model.EntityDatum;
+import org.javarosa.core.model.instance.TreeReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that loading a case list across several workers gives the same list as a serial load
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class EntityLoaderTaskTest {
+    private AndroidSessionWrapper asw;
+    private EntityDatum datum;
+    private Detail detail;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/case_list_lookup/profile.ccpr", "test", "123");
+        TestUtils.processResourceTransactionIntoAppDb("/commcare-apps/case_list_lookup/restore.xml");
+        ActivityLaunchUtils.addCommandToSession("m1-f0");
+
+        asw = CommCareApplication.instance().getCurrentSessionWrapper();
+        datum = (EntityDatum)asw.getSession().getNeededDatum();
+        detail = asw.getSession().getDetail(datum.getShortDetail());
+    }
+
+    @Test
+    public void testParallelLoadMatchesSerialLoad() {
+        List<Entity<TreeReference>> serial = load(1);
+        assertEquals(8, serial.size());
+
+        // uneven partitions of 3, 3 and 2 entities
+        assertSameEntities(serial, load(3));
+        // more workers than entities
+        assertSameEntities(serial, load(12));
+    }
+
+    private List<Entity<TreeReference>> load(int workers) {
+        EntityLoaderTask task = new EntityLoaderTask(detail, asw.getEvaluationContext(),
+                asw::getEvaluationContext);
+        task.forceParallelLoad(workers);
+        return task.doInBackground(datum.getNodeset()).first;
+    }
+
+    private static void assertSameEntities(List<Entity<TreeReference>> expected,
+                                           List<Entity<TreeReference>> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getElement(), actual.get(i).getElement());
+            assertEquals(expected.get(i).getNumFields(), actual.get(i).getNumFields());
+            for (int field = 0; field < expected.get(i).getNumFields(); field++) {
+                assertEquals(expected.get(i).getFieldString(field), actual.get(i).getFieldString(field));
+            }
+        }
+    }
+}
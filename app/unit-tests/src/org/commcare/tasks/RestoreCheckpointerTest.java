@@ -0,0 +1,107 @@
+package org.commcare.tasks;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.javarosa.core.model.User;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class RestoreCheckpointerTest {
+
+    private SQLiteDatabase db;
+    private SqlStorage<User> userStorage;
+    private String username;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/archive_form_tests/profile.ccpr",
+                "test", "123");
+        db = CommCareApplication.instance().getUserDbHandle();
+        userStorage = CommCareApplication.instance().getUserStorage(User.STORAGE_KEY, User.class);
+        username = CommCareApplication.instance().getSession().getLoggedInUser().getUsername();
+        setSyncToken("token-1");
+    }
+
+    private void setSyncToken(String token) {
+        User user = userStorage.getRecordForValue(User.META_USERNAME, username);
+        user.setLastSyncToken(token);
+        userStorage.write(user);
+    }
+
+    private String getSyncToken() {
+        return userStorage.getRecordForValue(User.META_USERNAME, username).getLastSyncToken();
+    }
+
+    private RestoreCheckpointer interruptAfter(int parsed, boolean recovery) {
+        RestoreCheckpointer checkpointer = new RestoreCheckpointer(db, userStorage, username, recovery, 10);
+        checkpointer.begin();
+        for (int i = 1; i <= parsed; ++i) {
+            checkpointer.onElementsParsed(i, "restore-1");
+        }
+        // fails before complete(), rolling back the open batch
+        checkpointer.end();
+        return checkpointer;
+    }
+
+    @Test
+    public void testInterruptedRestoreLeavesMarker() {
+        interruptAfter(5, false);
+        assertFalse(RestoreCheckpointer.hasPendingCheckpoint(userStorage, username));
+
+        interruptAfter(25, false);
+        assertTrue(RestoreCheckpointer.hasPendingCheckpoint(userStorage, username));
+        assertEquals("token-1", getSyncToken());
+
+        RestoreCheckpointer resumed = new RestoreCheckpointer(db, userStorage, username, false, 10);
+        assertFalse(resumed.isResumingRecovery());
+        // the last batch was rolled back
+        assertEquals(20, resumed.getCommittedElements());
+        assertEquals("restore-1", resumed.getResumedRestoreId());
+        assertEquals("token-1", RestoreCheckpointer.getTokenToRequest(userStorage, username, "token-1"));
+        resumed.begin();
+        resumed.complete();
+        resumed.end();
+        assertFalse(RestoreCheckpointer.hasPendingCheckpoint(userStorage, username));
+    }
+
+    @Test
+    public void testMarkerForOldTokenIsIgnored() {
+        interruptAfter(25, false);
+        setSyncToken("token-2");
+        assertFalse(RestoreCheckpointer.hasPendingCheckpoint(userStorage, username));
+    }
+
+    @Test
+    public void testInterruptedRecoveryIsResumedWithoutToken() {
+        interruptAfter(15, true);
+        assertNull(getSyncToken());
+        assertTrue(RestoreCheckpointer.hasPendingCheckpoint(userStorage, username));
+        RestoreCheckpointer resumed = new RestoreCheckpointer(db, userStorage, username, false, 10);
+        assertTrue(resumed.isResumingRecovery());
+        assertEquals(10, resumed.getCommittedElements());
+        assertNull(RestoreCheckpointer.getTokenToRequest(userStorage, username, null));
+    }
+
+    @Test
+    public void testNewRecoveryDoesNotSkipElements() {
+        interruptAfter(25, false);
+        // a recovery wipes storage before restoring, so nothing committed survives it
+        assertEquals(0, new RestoreCheckpointer(db, userStorage, username, true, 10).getCommittedElements());
+    }
+}
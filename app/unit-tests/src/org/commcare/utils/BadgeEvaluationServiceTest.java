@@ -0,0 +1,156 @@
+package org.commcare.utils;
+
+import org.commcare.CommCareTestApplication;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class BadgeEvaluationServiceTest {
+
+    private ExecutorService executor;
+    private BadgeEvaluationService service;
+    private AtomicInteger contextsBuilt;
+    private AtomicInteger evaluations;
+
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool(4);
+        service = new BadgeEvaluationService(Schedulers.from(executor));
+        contextsBuilt = new AtomicInteger();
+        evaluations = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Looking a command's badge up again should reuse its evaluation without building its
+     * context again
+     */
+    @Test
+    public void testCacheHit() {
+        Single<String> first = service.getEvaluation("m0|frame|badge", countingFactory("frame|badge", "3"));
+        assertEquals("3", first.blockingGet());
+
+        Single<String> second = service.getEvaluation("m0|frame|badge", countingFactory("frame|badge", "3"));
+        assertSame(first, second);
+        assertEquals("3", second.blockingGet());
+        assertEquals(1, contextsBuilt.get());
+        assertEquals(1, evaluations.get());
+    }
+
+    /**
+     * The context is built from the session, which isn't thread safe, so it has to be built on
+     * the thread asking for the badge rather than on the pool
+     */
+    @Test
+    public void testContextBuiltOnCallingThread() {
+        AtomicReference<Thread> builtOn = new AtomicReference<>();
+        AtomicReference<Thread> evaluatedOn = new AtomicReference<>();
+        Single<String> badge = service.getEvaluation("m0|frame|badge", () -> {
+            builtOn.set(Thread.currentThread());
+            return new BadgeEvaluationService.BadgeContext("frame|badge",
+                    () -> Single.fromCallable(() -> {
+                        evaluatedOn.set(Thread.currentThread());
+                        return "3";
+                    }));
+        });
+        assertSame(Thread.currentThread(), builtOn.get());
+        assertEquals("3", badge.blockingGet());
+        assertNotSame(Thread.currentThread(), evaluatedOn.get());
+    }
+
+    /**
+     * Badges should be evaluated again once the data they count changes
+     */
+    @Test
+    public void testInvalidationOnDataChange() {
+        assertEquals("3", service.getEvaluation("m0|frame|badge", countingFactory("frame|badge", "3")).blockingGet());
+
+        service.invalidate();
+        assertEquals(0, service.getCachedEvaluationCount());
+
+        assertEquals("4", service.getEvaluation("m0|frame|badge", countingFactory("frame|badge", "4")).blockingGet());
+        assertEquals(2, evaluations.get());
+    }
+
+    /**
+     * Entries whose badges are computed from the same thing should share a single evaluation,
+     * even while it is still in flight
+     */
+    @Test
+    public void testConcurrentIdenticalBadgesAreMerged() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        BadgeEvaluationService.BadgeContextFactory blockingFactory = () -> {
+            contextsBuilt.incrementAndGet();
+            return new BadgeEvaluationService.BadgeContext("frame|badge",
+                    () -> Single.fromCallable(() -> {
+                        evaluations.incrementAndGet();
+                        release.await(5, TimeUnit.SECONDS);
+                        return "7";
+                    }));
+        };
+
+        Single<String> first = service.getEvaluation("m0|frame|badge", blockingFactory);
+        Single<String> second = service.getEvaluation("m1|frame|badge", blockingFactory);
+        release.countDown();
+
+        assertEquals("7", first.blockingGet());
+        assertEquals("7", second.blockingGet());
+        assertEquals(2, contextsBuilt.get());
+        assertEquals(1, evaluations.get());
+        assertEquals(1, service.getCachedEvaluationCount());
+    }
+
+    /**
+     * A failed evaluation shouldn't be cached, so that it is retried
+     */
+    @Test
+    public void testFailuresAreRetried() {
+        Single<String> failing = service.getEvaluation("m0|frame|badge", () ->
+                new BadgeEvaluationService.BadgeContext("frame|badge",
+                        () -> Single.error(new RuntimeException("bad badge"))));
+        try {
+            failing.blockingGet();
+            fail("The badge evaluation should have failed");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("bad badge"));
+        }
+
+        assertEquals("3", service.getEvaluation("m0|frame|badge", countingFactory("frame|badge", "3")).blockingGet());
+    }
+
+    private BadgeEvaluationService.BadgeContextFactory countingFactory(String contentKey, String result) {
+        return () -> {
+            contextsBuilt.incrementAndGet();
+            return new BadgeEvaluationService.BadgeContext(contentKey,
+                    () -> Single.fromCallable(() -> {
+                        evaluations.incrementAndGet();
+                        return result;
+                    }));
+        };
+    }
+}
@@ -0,0 +1,50 @@
+package org.commcare.utils;
+
+import org.commcare.CommCareTestApplication;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class ImageDiskCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static File writeEntry(File dir, String name, long lastUsed) throws IOException {
+        File entry = new File(dir, name);
+        try (FileOutputStream out = new FileOutputStream(entry)) {
+            out.write(new byte[100]);
+        }
+        entry.setLastModified(lastUsed);
+        return entry;
+    }
+
+    @Test
+    public void testTrimEvictsLeastRecentlyUsedEntries() throws IOException {
+        File dir = folder.newFolder();
+        File oldest = writeEntry(dir, "a.png", 1000000L);
+        File middle = writeEntry(dir, "b.png", 2000000L);
+        File newest = writeEntry(dir, "c.png", 3000000L);
+
+        // reading the oldest entry makes it the most recently used
+        ImageDiskCache.onEntryRead(oldest);
+        ImageDiskCache.trim(dir, 200);
+
+        assertTrue(oldest.exists());
+        assertFalse(middle.exists());
+        assertTrue(newest.exists());
+    }
+}
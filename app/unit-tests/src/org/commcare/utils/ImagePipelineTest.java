@@ -0,0 +1,194 @@
+package org.commcare.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import org.commcare.CommCareTestApplication;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class ImagePipelineTest {
+
+    private Context context;
+    private List<Runnable> queuedDecodes;
+    private Map<String, AtomicInteger> decodeCounts;
+    private ImagePipeline pipeline;
+
+    @Before
+    public void setup() {
+        context = ApplicationProvider.getApplicationContext();
+        queuedDecodes = new ArrayList<>();
+        decodeCounts = new HashMap<>();
+        // decodes only run when the test runs them
+        Executor queueingExecutor = queuedDecodes::add;
+        pipeline = new ImagePipeline(1024 * 1024, queueingExecutor, this::decode);
+    }
+
+    private Bitmap decode(Context decodeContext, String jrUri, int boundingWidth,
+                          int boundingHeight, boolean respectBoundsExactly) {
+        synchronized (decodeCounts) {
+            if (!decodeCounts.containsKey(jrUri)) {
+                decodeCounts.put(jrUri, new AtomicInteger());
+            }
+            decodeCounts.get(jrUri).incrementAndGet();
+        }
+        if (jrUri.contains("missing")) {
+            return null;
+        }
+        return Bitmap.createBitmap(boundingWidth, boundingHeight, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Views waiting on the same image at the same size should share one decode and all be given
+     * its result
+     */
+    @Test
+    public void testRequestsForTheSameImageAreCoalesced() {
+        List<Bitmap> delivered = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            pipeline.display(context, "jr://file/a.png", new ImageView(context), 10, 10, false,
+                    delivered::add);
+        }
+        assertEquals(1, queuedDecodes.size());
+        assertTrue(delivered.isEmpty());
+
+        runQueuedDecodes();
+
+        assertEquals(1, decodeCounts.get("jr://file/a.png").get());
+        assertEquals(3, delivered.size());
+        assertSame(delivered.get(0), delivered.get(1));
+        assertSame(delivered.get(0), delivered.get(2));
+    }
+
+    /**
+     * The same image at a different size is a separate decode
+     */
+    @Test
+    public void testDifferentSizesAreDecodedSeparately() {
+        List<Bitmap> delivered = new ArrayList<>();
+        pipeline.display(context, "jr://file/a.png", new ImageView(context), 10, 10, false,
+                delivered::add);
+        pipeline.display(context, "jr://file/a.png", new ImageView(context), 20, 20, false,
+                delivered::add);
+        runQueuedDecodes();
+
+        assertEquals(2, decodeCounts.get("jr://file/a.png").get());
+        assertEquals(2, delivered.size());
+        assertEquals(10, delivered.get(0).getWidth());
+        assertEquals(20, delivered.get(1).getWidth());
+    }
+
+    /**
+     * Once loaded, an image should be served from memory straight away
+     */
+    @Test
+    public void testLoadedImagesAreServedFromMemory() {
+        AtomicReference<Bitmap> first = new AtomicReference<>();
+        pipeline.display(context, "jr://file/a.png", new ImageView(context), 10, 10, false,
+                first::set);
+        runQueuedDecodes();
+
+        AtomicReference<Bitmap> second = new AtomicReference<>();
+        pipeline.display(context, "jr://file/a.png", new ImageView(context), 10, 10, false,
+                second::set);
+        assertTrue(queuedDecodes.isEmpty());
+        assertSame(first.get(), second.get());
+        assertSame(first.get(), pipeline.loadImage(context, "jr://file/a.png", 10, 10, false));
+        assertEquals(1, decodeCounts.get("jr://file/a.png").get());
+    }
+
+    /**
+     * A view given another image while the first is decoding should only receive the second
+     */
+    @Test
+    public void testRecycledViewOnlyGetsItsLatestImage() {
+        ImageView view = new ImageView(context);
+        List<String> delivered = new ArrayList<>();
+        pipeline.display(context, "jr://file/a.png", view, 10, 10, false,
+                bitmap -> delivered.add("a"));
+        pipeline.display(context, "jr://file/b.png", view, 10, 10, false,
+                bitmap -> delivered.add("b"));
+        runQueuedDecodes();
+
+        assertEquals(1, delivered.size());
+        assertEquals("b", delivered.get(0));
+    }
+
+    /**
+     * Images that can't be loaded are delivered as null and aren't cached, so they are tried
+     * again next time
+     */
+    @Test
+    public void testMissingImagesAreDeliveredAndRetried() {
+        AtomicReference<Bitmap> delivered = new AtomicReference<>();
+        AtomicInteger deliveries = new AtomicInteger();
+        pipeline.display(context, "jr://file/missing.png", new ImageView(context), 10, 10, false,
+                bitmap -> {
+                    delivered.set(bitmap);
+                    deliveries.incrementAndGet();
+                });
+        runQueuedDecodes();
+        assertEquals(1, deliveries.get());
+        assertNull(delivered.get());
+
+        assertNull(pipeline.loadImage(context, "jr://file/missing.png", 10, 10, false));
+        assertEquals(2, decodeCounts.get("jr://file/missing.png").get());
+    }
+
+    /**
+     * A synchronous load of an image that is queued for a view should decode it once, and
+     * still deliver it to the view
+     */
+    @Test
+    public void testSynchronousLoadJoinsQueuedDecode() throws InterruptedException {
+        AtomicReference<Bitmap> delivered = new AtomicReference<>();
+        pipeline.display(context, "jr://file/a.png", new ImageView(context), 10, 10, false,
+                delivered::set);
+
+        AtomicReference<Bitmap> loaded = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        new Thread(() -> {
+            loaded.set(pipeline.loadImage(context, "jr://file/a.png", 10, 10, false));
+            done.countDown();
+        }).start();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        // the queued decode finds the work already done
+        runQueuedDecodes();
+        assertEquals(1, decodeCounts.get("jr://file/a.png").get());
+        assertSame(loaded.get(), delivered.get());
+    }
+
+    private void runQueuedDecodes() {
+        List<Runnable> decodes = new ArrayList<>(queuedDecodes);
+        queuedDecodes.clear();
+        for (Runnable decode : decodes) {
+            decode.run();
+        }
+        ShadowLooper.idleMainLooper();
+    }
+}
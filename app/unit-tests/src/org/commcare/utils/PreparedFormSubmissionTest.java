@@ -0,0 +1,70 @@
+package org.commcare.utils;
+
+import org.commcare.CommCareTestApplication;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.SecretKeySpec;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class PreparedFormSubmissionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SecretKeySpec key = new SecretKeySpec(new byte[16], "AES");
+
+    private PreparedFormSubmission prepare(String body) throws Exception {
+        File instanceFolder = folder.newFolder();
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        OutputStream os = new CipherOutputStream(
+                new FileOutputStream(new File(instanceFolder, "form.xml")), cipher);
+        os.write(("<data xmlns=\"http://example.org/form\">" + body + "</data>").getBytes("UTF-8"));
+        os.close();
+        return FormUploadUtil.prepareSubmission(instanceFolder, key);
+    }
+
+    private static String caseBlock(String caseId, String parentId) {
+        String index = parentId == null ? "" :
+                "<index><parent case_type=\"mother\">" + parentId + "</parent></index>";
+        return "<case xmlns=\"http://commcarehq.org/case/transaction/v2\" case_id=\"" + caseId + "\">"
+                + "<update><name>x</name></update>" + index + "</case>";
+    }
+
+    @Test
+    public void testSubmissionsTouchingDifferentCasesAreIndependent() throws Exception {
+        PreparedFormSubmission first = prepare(caseBlock("a", null));
+        PreparedFormSubmission second = prepare(caseBlock("b", null));
+        assertTrue(first.isValid());
+        assertTrue(first.isIndependentOf(second));
+    }
+
+    @Test
+    public void testSharedCasesAndIndexTargetsConflict() throws Exception {
+        PreparedFormSubmission mother = prepare(caseBlock("a", null));
+        assertFalse(mother.isIndependentOf(prepare(caseBlock("a", null))));
+        assertFalse(mother.isIndependentOf(prepare(caseBlock("child", "a"))));
+    }
+
+    @Test
+    public void testUnreadableSubmissionConflictsWithEverything() throws Exception {
+        PreparedFormSubmission unreadable = prepare("<broken>");
+        assertFalse(unreadable.isIndependentOf(prepare(caseBlock("a", null))));
+    }
+}
@@ -0,0 +1,114 @@
+package org.commcare.utils;
+
+import org.commcare.CommCareTestApplication;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class StreamedFormTransferTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * Every file should arrive in its form folder, with nothing left in staging
+     */
+    @Test
+    public void testFormsAreUnpackedAsTheyArrive() throws Exception {
+        File toSend = temp.newFolder("transfer");
+        writeForm(toSend, "form-a", "<data>a</data>");
+        writeForm(toSend, "form-b", "<data>b</data>");
+        File received = temp.newFolder("submit");
+        File staging = temp.newFolder("staging");
+
+        assertEquals(4, transfer(toSend, new StreamedFormTransfer.Receiver(received, staging)));
+
+        assertTrue(new File(received, "form-a/form.xml").exists());
+        assertTrue(new File(received, "form-b/form.properties").exists());
+        assertEquals(0, staging.listFiles().length);
+    }
+
+    /**
+     * Files that made it before a transfer broke off shouldn't be sent again, and the form they
+     * belong to should only be moved into place once the rest of it arrives
+     */
+    @Test
+    public void testInterruptedTransferResumes() throws Exception {
+        File toSend = temp.newFolder("transfer");
+        writeForm(toSend, "form-a", "<data>a</data>");
+        writeForm(toSend, "form-b", "<data>b</data>");
+        File received = temp.newFolder("submit");
+        File staging = temp.newFolder("staging");
+        writeFile(new File(staging, "form-a/form.xml"), "<data>a</data>");
+
+        assertEquals(3, transfer(toSend, new StreamedFormTransfer.Receiver(received, staging)));
+        assertTrue(new File(received, "form-a/form.xml").exists());
+        assertTrue(new File(received, "form-a/form.properties").exists());
+        assertFalse(new File(staging, "form-a").exists());
+
+        // Everything is here now, so nothing should be sent at all
+        assertEquals(0, transfer(toSend, new StreamedFormTransfer.Receiver(received, staging)));
+    }
+
+    private static int transfer(File toSend, StreamedFormTransfer.Receiver receiver) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        try {
+            Future<Integer> receivedFiles = executor.submit(() -> {
+                Socket client = serverSocket.accept();
+                try {
+                    return receiver.receive(client.getInputStream(), client.getOutputStream());
+                } finally {
+                    client.close();
+                }
+            });
+            Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+            int sentFiles;
+            try {
+                sentFiles = StreamedFormTransfer.send(toSend, socket.getInputStream(), socket.getOutputStream());
+            } finally {
+                socket.close();
+            }
+            assertEquals(sentFiles, (int)receivedFiles.get());
+            return sentFiles;
+        } finally {
+            serverSocket.close();
+            executor.shutdown();
+        }
+    }
+
+    private static void writeForm(File directory, String name, String xml) throws IOException {
+        writeFile(new File(directory, name + "/form.xml"), xml);
+        writeFile(new File(directory, name + "/form.properties"), "PostURL=http://localhost");
+    }
+
+    private static void writeFile(File file, String contents) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.commcare.xml;
+
+import org.commcare.CommCareTestApplication;
+import org.javarosa.core.model.data.StringData;
+import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.model.xform.XFormSerializingVisitor;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(AndroidJUnit4.class)
+public class FormInstanceStreamWriterTest {
+
+    /**
+     * The streamed instance should match the visitor's serialization, with repeats that are
+     * interleaved with other nodes still written together
+     */
+    @Test
+    public void testMatchesVisitorSerialization() throws Exception {
+        TreeElement root = new TreeElement("data");
+        root.setAttribute(null, "version", "3");
+        root.addChild(leaf("name", "first", 0));
+        for (int i = 0; i < 3; i++) {
+            TreeElement visit = new TreeElement("visit", i);
+            visit.addChild(leaf("note", "note " + i + " & <more>", 0));
+            root.addChild(visit);
+        }
+        root.addChild(leaf("status", "done", 0));
+        FormInstance instance = new FormInstance(root);
+        instance.schema = "http://openrosa.org/formdesigner/stream-test";
+
+        String expected = new String(new XFormSerializingVisitor(true).serializeInstance(instance), "UTF-8");
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        new FormInstanceStreamWriter(instance, true).write(instance.getRoot(), streamed);
+
+        assertEquals(withoutDeclaration(expected), withoutDeclaration(streamed.toString("UTF-8")));
+    }
+
+    private static TreeElement leaf(String name, String value, int multiplicity) {
+        TreeElement element = new TreeElement(name, multiplicity);
+        element.setValue(new StringData(value));
+        return element;
+    }
+
+    private static String withoutDeclaration(String xml) {
+        return xml.startsWith("<?xml") ? xml.substring(xml.indexOf("?>") + 2).trim() : xml.trim();
+    }
+}
@@ -0,0 +1,57 @@
+package android.content;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JVM stand-in for the framework ContentValues, covering the put overloads
+ * that the storage layer uses.
+ */
+public final class ContentValues {
+    private final LinkedHashMap<String, Object> values = new LinkedHashMap<>();
+
+    public void put(String key, String value) {
+        values.put(key, value);
+    }
+
+    public void put(String key, Integer value) {
+        values.put(key, value);
+    }
+
+    public void put(String key, Long value) {
+        values.put(key, value);
+    }
+
+    public void put(String key, Boolean value) {
+        values.put(key, value == null ? null : (value ? 1 : 0));
+    }
+
+    public void put(String key, byte[] value) {
+        values.put(key, value);
+    }
+
+    public void putNull(String key) {
+        values.put(key, null);
+    }
+
+    public Object get(String key) {
+        return values.get(key);
+    }
+
+    public boolean containsKey(String key) {
+        return values.containsKey(key);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public Set<Map.Entry<String, Object>> valueSet() {
+        return values.entrySet();
+    }
+
+    public Set<String> keySet() {
+        return values.keySet();
+    }
+}
@@ -0,0 +1,8 @@
+package android.content;
+
+/**
+ * JVM stand-in so that db helpers can be constructed without a framework
+ * context. Benchmarks always pass null.
+ */
+public abstract class Context {
+}
@@ -0,0 +1,65 @@
+package android.database;
+
+import java.io.Closeable;
+
+/**
+ * JVM stand-in for the framework Cursor interface, restricted to the
+ * navigation and accessor methods the storage layer calls.
+ */
+public interface Cursor extends Closeable {
+
+    int getCount();
+
+    int getPosition();
+
+    boolean move(int offset);
+
+    boolean moveToPosition(int position);
+
+    boolean moveToFirst();
+
+    boolean moveToLast();
+
+    boolean moveToNext();
+
+    boolean moveToPrevious();
+
+    boolean isFirst();
+
+    boolean isLast();
+
+    boolean isBeforeFirst();
+
+    boolean isAfterLast();
+
+    int getColumnIndex(String columnName);
+
+    int getColumnIndexOrThrow(String columnName) throws IllegalArgumentException;
+
+    String getColumnName(int columnIndex);
+
+    String[] getColumnNames();
+
+    int getColumnCount();
+
+    byte[] getBlob(int columnIndex);
+
+    String getString(int columnIndex);
+
+    short getShort(int columnIndex);
+
+    int getInt(int columnIndex);
+
+    long getLong(int columnIndex);
+
+    float getFloat(int columnIndex);
+
+    double getDouble(int columnIndex);
+
+    boolean isNull(int columnIndex);
+
+    @Override
+    void close();
+
+    boolean isClosed();
+}
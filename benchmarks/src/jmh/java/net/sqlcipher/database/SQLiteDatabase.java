@@ -0,0 +1,305 @@
+package net.sqlcipher.database;
+
+import android.content.ContentValues;
+
+import net.sqlcipher.Cursor;
+
+import org.commcare.benchmarks.db.JdbcCursor;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JVM stand-in for the SQLCipher database handle, backed by an in-process
+ * SQLite connection through sqlite-jdbc. Data is stored unencrypted.
+ *
+ * Transactions follow the framework semantics: they nest, and the outermost
+ * endTransaction() commits only if every nested level was marked successful.
+ */
+public class SQLiteDatabase {
+    public static final int CONFLICT_NONE = 0;
+    public static final int CONFLICT_ROLLBACK = 1;
+    public static final int CONFLICT_ABORT = 2;
+    public static final int CONFLICT_FAIL = 3;
+    public static final int CONFLICT_IGNORE = 4;
+    public static final int CONFLICT_REPLACE = 5;
+
+    private static final String[] CONFLICT_VALUES =
+            new String[]{"", " OR ROLLBACK ", " OR ABORT ", " OR FAIL ", " OR IGNORE ", " OR REPLACE "};
+
+    private final Connection connection;
+    private int transactionDepth = 0;
+    private boolean currentLevelSuccessful;
+    private boolean anyLevelFailed;
+
+    private SQLiteDatabase(Connection connection) {
+        this.connection = connection;
+    }
+
+    public static SQLiteDatabase openInMemory() {
+        return open("jdbc:sqlite::memory:");
+    }
+
+    public static SQLiteDatabase openFile(File file) {
+        return open("jdbc:sqlite:" + file.getAbsolutePath());
+    }
+
+    private static SQLiteDatabase open(String url) {
+        try {
+            return new SQLiteDatabase(DriverManager.getConnection(url));
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public void beginTransaction() {
+        try {
+            if (transactionDepth == 0) {
+                connection.setAutoCommit(false);
+                anyLevelFailed = false;
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+        transactionDepth++;
+        currentLevelSuccessful = false;
+    }
+
+    public void setTransactionSuccessful() {
+        if (transactionDepth == 0) {
+            throw new IllegalStateException("no transaction pending");
+        }
+        currentLevelSuccessful = true;
+    }
+
+    public void endTransaction() {
+        if (transactionDepth == 0) {
+            throw new IllegalStateException("no transaction pending");
+        }
+        if (!currentLevelSuccessful) {
+            anyLevelFailed = true;
+        }
+        // the enclosing level still has to mark itself successful
+        currentLevelSuccessful = false;
+        transactionDepth--;
+        if (transactionDepth == 0) {
+            try {
+                if (anyLevelFailed) {
+                    connection.rollback();
+                } else {
+                    connection.commit();
+                }
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                throw new SQLiteException(e);
+            }
+        }
+    }
+
+    public boolean inTransaction() {
+        return transactionDepth > 0;
+    }
+
+    public boolean isOpen() {
+        try {
+            return !connection.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    public void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public void execSQL(String sql) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public void execSQL(String sql, Object[] bindArgs) {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            bind(statement, bindArgs);
+            statement.execute();
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public SQLiteStatement compileStatement(String sql) {
+        try {
+            return new SQLiteStatement(connection.prepareStatement(sql));
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            bind(statement, selectionArgs);
+            ResultSet rs = statement.executeQuery();
+            return new JdbcCursor(rs);
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy) {
+        return query(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, null);
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy, String limit) {
+        return query(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+    }
+
+    public Cursor query(boolean distinct, String table, String[] columns, String selection,
+                        String[] selectionArgs, String groupBy, String having, String orderBy,
+                        String limit) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (distinct) {
+            sql.append("DISTINCT ");
+        }
+        if (columns == null || columns.length == 0) {
+            sql.append("*");
+        } else {
+            sql.append(String.join(", ", columns));
+        }
+        sql.append(" FROM ").append(table);
+        appendClause(sql, " WHERE ", selection);
+        appendClause(sql, " GROUP BY ", groupBy);
+        appendClause(sql, " HAVING ", having);
+        appendClause(sql, " ORDER BY ", orderBy);
+        appendClause(sql, " LIMIT ", limit);
+        return rawQuery(sql.toString(), selectionArgs);
+    }
+
+    private static void appendClause(StringBuilder sql, String name, String clause) {
+        if (clause != null && clause.length() > 0) {
+            sql.append(name).append(clause);
+        }
+    }
+
+    public long insert(String table, String nullColumnHack, ContentValues values) {
+        try {
+            return insertWithOnConflict(table, nullColumnHack, values, CONFLICT_NONE);
+        } catch (SQLiteException e) {
+            return -1;
+        }
+    }
+
+    public long insertOrThrow(String table, String nullColumnHack, ContentValues values) {
+        return insertWithOnConflict(table, nullColumnHack, values, CONFLICT_NONE);
+    }
+
+    public long insertWithOnConflict(String table, String nullColumnHack,
+                                     ContentValues values, int conflictAlgorithm) {
+        StringBuilder sql = new StringBuilder("INSERT");
+        sql.append(CONFLICT_VALUES[conflictAlgorithm]).append(" INTO ").append(table).append('(');
+        List<Object> args = new ArrayList<>();
+        if (values == null || values.size() == 0) {
+            sql.append(nullColumnHack).append(") VALUES (NULL)");
+        } else {
+            StringBuilder placeholders = new StringBuilder();
+            for (Map.Entry<String, Object> entry : values.valueSet()) {
+                if (args.size() > 0) {
+                    sql.append(',');
+                    placeholders.append(',');
+                }
+                sql.append(entry.getKey());
+                placeholders.append('?');
+                args.add(entry.getValue());
+            }
+            sql.append(") VALUES (").append(placeholders).append(')');
+        }
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            bind(statement, args.toArray());
+            statement.executeUpdate();
+            return lastInsertRowId();
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        List<Object> args = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            if (args.size() > 0) {
+                sql.append(',');
+            }
+            sql.append(entry.getKey()).append("=?");
+            args.add(entry.getValue());
+        }
+        appendClause(sql, " WHERE ", whereClause);
+        if (whereArgs != null) {
+            for (String arg : whereArgs) {
+                args.add(arg);
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            bind(statement, args.toArray());
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        StringBuilder sql = new StringBuilder("DELETE FROM ").append(table);
+        appendClause(sql, " WHERE ", whereClause);
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            bind(statement, whereArgs);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    private long lastInsertRowId() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT last_insert_rowid()")) {
+            return rs.next() ? rs.getLong(1) : -1;
+        }
+    }
+
+    static void bind(PreparedStatement statement, Object[] args) throws SQLException {
+        if (args == null) {
+            return;
+        }
+        for (int i = 0; i < args.length; ++i) {
+            Object arg = args[i];
+            if (arg == null) {
+                statement.setNull(i + 1, java.sql.Types.NULL);
+            } else if (arg instanceof byte[]) {
+                statement.setBytes(i + 1, (byte[])arg);
+            } else if (arg instanceof Long || arg instanceof Integer) {
+                statement.setLong(i + 1, ((Number)arg).longValue());
+            } else if (arg instanceof Double || arg instanceof Float) {
+                statement.setDouble(i + 1, ((Number)arg).doubleValue());
+            } else {
+                statement.setString(i + 1, arg.toString());
+            }
+        }
+    }
+}
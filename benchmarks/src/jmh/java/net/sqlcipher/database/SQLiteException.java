@@ -0,0 +1,15 @@
+package net.sqlcipher.database;
+
+/**
+ * JVM stand-in for the SQLCipher exception type.
+ */
+public class SQLiteException extends RuntimeException {
+
+    public SQLiteException(String message) {
+        super(message);
+    }
+
+    public SQLiteException(Throwable cause) {
+        super(cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,126 @@
+package net.sqlcipher.database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * JVM stand-in for a compiled SQLCipher statement, wrapping a JDBC prepared
+ * statement. Bind indices are 1-based, as in the framework API.
+ */
+public class SQLiteStatement {
+    private final PreparedStatement statement;
+
+    SQLiteStatement(PreparedStatement statement) {
+        this.statement = statement;
+    }
+
+    public void bindNull(int index) {
+        try {
+            statement.setNull(index, java.sql.Types.NULL);
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public void bindLong(int index, long value) {
+        try {
+            statement.setLong(index, value);
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public void bindDouble(int index, double value) {
+        try {
+            statement.setDouble(index, value);
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public void bindString(int index, String value) {
+        try {
+            statement.setString(index, value);
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public void bindBlob(int index, byte[] value) {
+        try {
+            statement.setBytes(index, value);
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public void bindAllArgsAsStrings(String[] args) {
+        if (args == null) {
+            return;
+        }
+        for (int i = args.length; i != 0; i--) {
+            bindString(i, args[i - 1]);
+        }
+    }
+
+    public void clearBindings() {
+        try {
+            statement.clearParameters();
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public void execute() {
+        try {
+            statement.execute();
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public int executeUpdateDelete() {
+        try {
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public long executeInsert() {
+        try {
+            statement.executeUpdate();
+            try (ResultSet rs = statement.getConnection().createStatement()
+                    .executeQuery("SELECT last_insert_rowid()")) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public long simpleQueryForLong() {
+        try (ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public String simpleQueryForString() {
+        try (ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+
+    public void close() {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            throw new SQLiteException(e);
+        }
+    }
+}
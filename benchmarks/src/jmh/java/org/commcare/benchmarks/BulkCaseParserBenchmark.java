@@ -0,0 +1,103 @@
+package org.commcare.benchmarks;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.benchmarks.db.BenchmarkDbHelper;
+import org.commcare.data.xml.DataModelPullParser;
+import org.commcare.data.xml.TransactionParserFactory;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.models.database.user.models.AndroidCaseIndexTable;
+import org.commcare.models.database.user.models.CommCareEntityStorageCache;
+import org.commcare.xml.AndroidBulkCaseXmlParser;
+import org.commcare.xml.CaseXmlParserUtil;
+import org.kxml2.io.KXmlParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end processing of synthetic case restores through
+ * AndroidBulkCaseXmlParser into a fresh user db, the same way
+ * AndroidTransactionParserFactory wires it up during sync.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class BulkCaseParserBenchmark {
+
+    @Param({"10000", "50000", "200000"})
+    public int caseCount;
+
+    private byte[] restore;
+    private BenchmarkDbHelper helper;
+
+    @Setup(Level.Trial)
+    public void buildRestore() {
+        restore = SyntheticCases.buildRestore(caseCount, 42);
+    }
+
+    @Setup(Level.Invocation)
+    public void freshDb() {
+        helper = BenchmarkDbHelper.inMemory();
+        helper.createCaseTables();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeDb() {
+        helper.close();
+    }
+
+    @Benchmark
+    public int parseRestore() throws Exception {
+        final SQLiteDatabase db = helper.getHandle();
+        final SqlStorage<ACase> storage = new SqlStorage<>(ACase.STORAGE_KEY, ACase.class, helper);
+        final CommCareEntityStorageCache entityCache =
+                new CommCareEntityStorageCache("case", db, "benchmark-app");
+        final AndroidCaseIndexTable indexTable = new AndroidCaseIndexTable(db);
+
+        TransactionParserFactory factory = new TransactionParserFactory() {
+            AndroidBulkCaseXmlParser created = null;
+
+            @Override
+            public AndroidBulkCaseXmlParser getParser(KXmlParser parser) {
+                if (!CaseXmlParserUtil.CASE_XML_NAMESPACE.equals(parser.getNamespace()) ||
+                        !"case".equalsIgnoreCase(parser.getName())) {
+                    return null;
+                }
+                if (created == null) {
+                    created = new AndroidBulkCaseXmlParser(parser, storage, entityCache, indexTable) {
+                        @Override
+                        protected SQLiteDatabase getDbHandle() {
+                            return db;
+                        }
+                    };
+                }
+                return created;
+            }
+        };
+
+        db.beginTransaction();
+        try {
+            new DataModelPullParser(new ByteArrayInputStream(restore), factory, true, true).parse();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return storage.getNumRecords();
+    }
+}
@@ -0,0 +1,124 @@
+package org.commcare.benchmarks;
+
+import android.content.ContentValues;
+
+import org.commcare.benchmarks.db.BenchmarkDbHelper;
+import org.commcare.benchmarks.db.BlobRecord;
+import org.commcare.models.database.HybridFileBackedSqlStorage;
+import org.commcare.modern.database.DatabaseHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+
+/**
+ * Writes and reads of HybridFileBackedSqlStorage for payloads just under
+ * and just over ONE_MB_DB_SIZE_LIMIT, so both the in-db and the encrypted
+ * file-backed paths are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HybridFileBackedSqlStorageBenchmark {
+    private static final String TABLE_NAME = "benchmark_fixture";
+
+    /**
+     * Payload size in bytes: 1kb either side of the 1,000,000 byte
+     * ONE_MB_DB_SIZE_LIMIT, and a 4mb payload well into the file-backed
+     * path. Serialization adds a few bytes of length prefix so the 'under'
+     * case stays clear of the limit.
+     */
+    @Param({"998976", "1001024", "4000000"})
+    public int payloadSize;
+
+    private BenchmarkDbHelper helper;
+    private HybridFileBackedSqlStorage<BlobRecord> storage;
+    private File storageRoot;
+    private byte[] payload;
+    private int existingId;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        helper = BenchmarkDbHelper.inMemory();
+        helper.createFileBackedTable(TABLE_NAME);
+        storageRoot = Files.createTempDirectory("hybrid-benchmark").toFile();
+        String root = storageRoot.getAbsolutePath();
+        storage = new HybridFileBackedSqlStorage<BlobRecord>(TABLE_NAME, BlobRecord.class, helper,
+                "benchmark", subDir -> root + "/" + subDir) {
+            private final KeyGenerator keyGenerator = buildKeyGenerator();
+
+            @Override
+            protected byte[] generateKeyAndAdd(ContentValues contentValues) {
+                byte[] key = keyGenerator.generateKey().getEncoded();
+                contentValues.put(DatabaseHelper.AES_COL, key);
+                return key;
+            }
+        };
+
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+
+        BlobRecord record = new BlobRecord(payload);
+        storage.write(record);
+        existingId = record.getID();
+    }
+
+    private static KeyGenerator buildKeyGenerator() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256);
+            return generator;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        helper.close();
+        Files.walk(storageRoot.toPath())
+                .sorted(Comparator.reverseOrder())
+                .map(java.nio.file.Path::toFile)
+                .forEach(File::delete);
+    }
+
+    @Benchmark
+    public int write() {
+        BlobRecord record = new BlobRecord(payload);
+        storage.write(record);
+        // keep the table and the storage dir from growing across invocations
+        storage.remove(record.getID());
+        return record.getID();
+    }
+
+    @Benchmark
+    public void update() {
+        storage.update(existingId, new BlobRecord(payload));
+    }
+
+    @Benchmark
+    public byte[] readBytes() {
+        return storage.readBytes(existingId);
+    }
+
+    @Benchmark
+    public BlobRecord read() {
+        return storage.read(existingId);
+    }
+}
@@ -0,0 +1,121 @@
+package org.commcare.benchmarks;
+
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.benchmarks.db.BenchmarkDbHelper;
+import org.commcare.cases.model.Case;
+import org.commcare.models.database.SqlStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read paths of SqlStorage over a populated case table: single record
+ * reads, id-keyed bulk reads and index-keyed bulk reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SqlStorageBenchmark {
+
+    @Param({"10000", "50000"})
+    public int caseCount;
+
+    @Param({"500"})
+    public int batchSize;
+
+    private BenchmarkDbHelper helper;
+    private SqlStorage<ACase> storage;
+    private int[] recordIds;
+    private LinkedHashSet<Integer> bulkIds;
+    private List<String> bulkCaseIds;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        helper = BenchmarkDbHelper.inMemory();
+        helper.createCaseTables();
+        storage = new SqlStorage<>(ACase.STORAGE_KEY, ACase.class, helper);
+
+        Random dataRandom = new Random(42);
+        recordIds = new int[caseCount];
+        helper.getHandle().beginTransaction();
+        try {
+            for (int i = 0; i < caseCount; ++i) {
+                ACase c = SyntheticCases.buildCase(i, dataRandom);
+                storage.write(c);
+                recordIds[i] = c.getID();
+            }
+            helper.getHandle().setTransactionSuccessful();
+        } finally {
+            helper.getHandle().endTransaction();
+        }
+        random = new Random(7);
+    }
+
+    @Setup(Level.Iteration)
+    public void pickBatch() {
+        bulkIds = new LinkedHashSet<>();
+        bulkCaseIds = new ArrayList<>();
+        int start = random.nextInt(caseCount - batchSize);
+        for (int i = start; i < start + batchSize; ++i) {
+            bulkIds.add(recordIds[i]);
+            bulkCaseIds.add(SyntheticCases.caseId(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        helper.close();
+    }
+
+    @Benchmark
+    public ACase read() {
+        return storage.read(recordIds[random.nextInt(caseCount)]);
+    }
+
+    @Benchmark
+    public String[] readMetaData() {
+        return storage.getMetaDataForRecord(recordIds[random.nextInt(caseCount)],
+                new String[]{Case.INDEX_CASE_ID, Case.INDEX_CASE_TYPE, Case.INDEX_CASE_STATUS});
+    }
+
+    @Benchmark
+    public void bulkRead(Blackhole blackhole) {
+        HashMap<Integer, ACase> records = new HashMap<>();
+        storage.bulkRead(bulkIds, records);
+        blackhole.consume(records);
+    }
+
+    @Benchmark
+    public void bulkReadMetadata(Blackhole blackhole) {
+        HashMap<Integer, String[]> metadata = new HashMap<>();
+        storage.bulkReadMetadata(bulkIds,
+                new String[]{Case.INDEX_CASE_ID, Case.INDEX_CASE_TYPE}, metadata);
+        blackhole.consume(metadata);
+    }
+
+    @Benchmark
+    public List<ACase> getBulkRecordsForIndex() {
+        return storage.getBulkRecordsForIndex(Case.INDEX_CASE_ID, bulkCaseIds);
+    }
+
+    @Benchmark
+    public List<Integer> getIDsForValue() {
+        return storage.getIDsForValue(Case.INDEX_CASE_TYPE, "household");
+    }
+}
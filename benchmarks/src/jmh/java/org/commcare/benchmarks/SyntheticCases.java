@@ -0,0 +1,80 @@
+package org.commcare.benchmarks;
+
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.cases.model.CaseIndex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Deterministic generators for case models and restore payloads shaped like
+ * a typical household/patient caseload: one household parent per ten
+ * patients, a handful of string properties, and a child-to-parent index.
+ */
+public class SyntheticCases {
+    private static final String OWNER_ID = "a1b2c3d4-owner";
+    private static final String USER_ID = "a1b2c3d4-user";
+    private static final int PATIENTS_PER_HOUSEHOLD = 10;
+
+    public static String caseId(int i) {
+        return String.format("case-%08d", i);
+    }
+
+    private static String householdId(int i) {
+        return caseId((i / PATIENTS_PER_HOUSEHOLD) * PATIENTS_PER_HOUSEHOLD);
+    }
+
+    private static boolean isHousehold(int i) {
+        return i % PATIENTS_PER_HOUSEHOLD == 0;
+    }
+
+    public static ACase buildCase(int i, Random random) {
+        boolean household = isHousehold(i);
+        ACase c = new ACase("name " + i, household ? "household" : "patient");
+        c.setCaseId(caseId(i));
+        c.setUserId(USER_ID);
+        c.setProperty("owner_id", OWNER_ID);
+        c.setProperty("village", "village_" + random.nextInt(200));
+        c.setProperty("dob", "19" + (50 + random.nextInt(50)) + "-01-01");
+        c.setProperty("phone", String.valueOf(1000000000L + random.nextInt(Integer.MAX_VALUE)));
+        c.setProperty("status", random.nextBoolean() ? "active" : "followup");
+        if (!household) {
+            c.setIndex(new CaseIndex("parent", "household", householdId(i), CaseIndex.RELATIONSHIP_CHILD));
+        }
+        return c;
+    }
+
+    /**
+     * @return a restore payload with the given number of case create blocks
+     */
+    public static byte[] buildRestore(int caseCount, long seed) {
+        Random random = new Random(seed);
+        StringBuilder xml = new StringBuilder(caseCount * 600);
+        xml.append("<OpenRosaResponse xmlns=\"http://openrosa.org/http/response\">")
+                .append("<message nature=\"ota_restore_success\">Successfully restored account!</message>")
+                .append("<Sync xmlns=\"http://commcarehq.org/sync\"><restore_id>benchmark</restore_id></Sync>");
+        for (int i = 0; i < caseCount; ++i) {
+            boolean household = isHousehold(i);
+            xml.append("<case xmlns=\"http://commcarehq.org/case/transaction/v2\" case_id=\"")
+                    .append(caseId(i))
+                    .append("\" date_modified=\"2016-07-21T15:02:17.503000Z\" user_id=\"")
+                    .append(USER_ID).append("\">")
+                    .append("<create><case_type>").append(household ? "household" : "patient")
+                    .append("</case_type><case_name>name ").append(i)
+                    .append("</case_name><owner_id>").append(OWNER_ID).append("</owner_id></create>")
+                    .append("<update><village>village_").append(random.nextInt(200))
+                    .append("</village><dob>19").append(50 + random.nextInt(50))
+                    .append("-01-01</dob><phone>").append(1000000000L + random.nextInt(Integer.MAX_VALUE))
+                    .append("</phone><status>").append(random.nextBoolean() ? "active" : "followup")
+                    .append("</status></update>");
+            if (!household) {
+                xml.append("<index><parent case_type=\"household\">")
+                        .append(householdId(i))
+                        .append("</parent></index>");
+            }
+            xml.append("</case>");
+        }
+        xml.append("</OpenRosaResponse>");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
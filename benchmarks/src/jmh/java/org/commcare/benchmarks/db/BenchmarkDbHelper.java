@@ -0,0 +1,99 @@
+package org.commcare.benchmarks.db;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.cases.model.Case;
+import org.commcare.cases.model.CaseIndex;
+import org.commcare.models.database.AndroidDbHelper;
+import org.commcare.models.database.DbUtil;
+import org.commcare.models.database.user.models.AndroidCaseIndexTable;
+import org.commcare.models.database.user.models.CommCareEntityStorageCache;
+import org.commcare.modern.database.DatabaseHelper;
+import org.commcare.modern.database.DatabaseIndexingUtils;
+import org.commcare.modern.database.TableBuilder;
+import org.javarosa.core.util.externalizable.PrototypeFactory;
+
+/**
+ * Db helper over an in-process SQLite handle that doesn't need a running
+ * CommCareApplication, with the user-db tables the benchmarks touch.
+ */
+public class BenchmarkDbHelper extends AndroidDbHelper {
+    private final SQLiteDatabase db;
+    private final PrototypeFactory factory;
+
+    public BenchmarkDbHelper(SQLiteDatabase db) {
+        super(null);
+        this.db = db;
+        this.factory = new PrototypeFactory();
+        factory.addClass(ACase.class);
+        factory.addClass(Case.class);
+        factory.addClass(CaseIndex.class);
+    }
+
+    public static BenchmarkDbHelper inMemory() {
+        return new BenchmarkDbHelper(SQLiteDatabase.openInMemory());
+    }
+
+    @Override
+    public SQLiteDatabase getHandle() {
+        return db;
+    }
+
+    @Override
+    public PrototypeFactory getPrototypeFactory() {
+        return factory;
+    }
+
+    /**
+     * Mirrors the case related parts of DatabaseUserOpenHelper.onCreate
+     */
+    public void createCaseTables() {
+        db.beginTransaction();
+        try {
+            TableBuilder builder = new TableBuilder(ACase.STORAGE_KEY);
+            builder.addData(new ACase());
+            builder.setUnique(ACase.INDEX_CASE_ID);
+            db.execSQL(builder.getTableCreateString());
+
+            db.execSQL(DatabaseIndexingUtils.indexOnTableCommand(
+                    "case_id_index", ACase.STORAGE_KEY, TableBuilder.scrubName(Case.INDEX_CASE_ID)));
+            db.execSQL(DatabaseIndexingUtils.indexOnTableCommand(
+                    "case_type_index", ACase.STORAGE_KEY, TableBuilder.scrubName(Case.INDEX_CASE_TYPE)));
+            db.execSQL(DatabaseIndexingUtils.indexOnTableCommand(
+                    "case_status_index", ACase.STORAGE_KEY, TableBuilder.scrubName(Case.INDEX_CASE_STATUS)));
+            db.execSQL(DatabaseIndexingUtils.indexOnTableCommand(
+                    "case_owner_id_index", ACase.STORAGE_KEY, TableBuilder.scrubName(Case.INDEX_OWNER_ID)));
+
+            db.execSQL(CommCareEntityStorageCache.getTableDefinition());
+            CommCareEntityStorageCache.createIndexes(db);
+
+            db.execSQL(AndroidCaseIndexTable.getTableDefinition());
+            AndroidCaseIndexTable.createIndexes(db);
+
+            createOrphanedFileTable();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void createFileBackedTable(String tableName) {
+        TableBuilder builder = new TableBuilder(tableName);
+        builder.addFileBackedData(new BlobRecord());
+        db.execSQL(builder.getTableCreateString());
+        createOrphanedFileTable();
+    }
+
+    /**
+     * Same table as DbUtil.createOrphanedFileTable, without pulling in DbUtil's framework imports
+     */
+    private void createOrphanedFileTable() {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + DbUtil.orphanFileTableName +
+                " (" + DatabaseHelper.FILE_COL + ");");
+    }
+
+    public void close() {
+        db.close();
+    }
+}
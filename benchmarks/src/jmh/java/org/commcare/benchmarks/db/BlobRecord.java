@@ -0,0 +1,47 @@
+package org.commcare.benchmarks.db;
+
+import org.javarosa.core.services.storage.Persistable;
+import org.javarosa.core.util.externalizable.DeserializationException;
+import org.javarosa.core.util.externalizable.ExtUtil;
+import org.javarosa.core.util.externalizable.PrototypeFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Opaque payload of a fixed size, used to place records on either side of
+ * the hybrid storage db/filesystem cutoff.
+ */
+public class BlobRecord implements Persistable {
+    private int recordId = -1;
+    private byte[] payload;
+
+    public BlobRecord() {
+    }
+
+    public BlobRecord(byte[] payload) {
+        this.payload = payload;
+    }
+
+    @Override
+    public void readExternal(DataInputStream in, PrototypeFactory pf)
+            throws IOException, DeserializationException {
+        payload = ExtUtil.readBytes(in);
+    }
+
+    @Override
+    public void writeExternal(DataOutputStream out) throws IOException {
+        ExtUtil.writeBytes(out, payload);
+    }
+
+    @Override
+    public void setID(int ID) {
+        recordId = ID;
+    }
+
+    @Override
+    public int getID() {
+        return recordId;
+    }
+}
@@ -0,0 +1,248 @@
+package org.commcare.benchmarks.db;
+
+import net.sqlcipher.Cursor;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cursor over a fully materialized JDBC result set. Reading everything up
+ * front mirrors how a framework cursor fills its window on first access, so
+ * getCount() and random positioning behave the same way.
+ */
+public class JdbcCursor implements Cursor {
+    private final String[] columnNames;
+    private final List<Object[]> rows = new ArrayList<>();
+    private int position = -1;
+    private boolean closed;
+
+    public JdbcCursor(ResultSet resultSet) throws SQLException {
+        try {
+            ResultSetMetaData meta = resultSet.getMetaData();
+            columnNames = new String[meta.getColumnCount()];
+            for (int i = 0; i < columnNames.length; ++i) {
+                columnNames[i] = meta.getColumnLabel(i + 1);
+            }
+            while (resultSet.next()) {
+                Object[] row = new Object[columnNames.length];
+                for (int i = 0; i < row.length; ++i) {
+                    row[i] = resultSet.getObject(i + 1);
+                }
+                rows.add(row);
+            }
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(position + offset);
+    }
+
+    @Override
+    public boolean moveToPosition(int newPosition) {
+        if (newPosition >= rows.size()) {
+            position = rows.size();
+            return false;
+        }
+        if (newPosition < 0) {
+            position = -1;
+            return false;
+        }
+        position = newPosition;
+        return true;
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(rows.size() - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(position + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(position - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return position == 0 && rows.size() != 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        return position == rows.size() - 1 && rows.size() != 0;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return rows.size() == 0 || position == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return rows.size() == 0 || position == rows.size();
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        for (int i = 0; i < columnNames.length; ++i) {
+            if (columnNames[i].equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) {
+        int index = getColumnIndex(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("column '" + columnName + "' does not exist in " +
+                    Arrays.toString(columnNames));
+        }
+        return index;
+    }
+
+    @Override
+    public String getColumnName(int columnIndex) {
+        return columnNames[columnIndex];
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    private Object value(int columnIndex) {
+        if (position < 0 || position >= rows.size()) {
+            throw new IllegalStateException("Cursor index out of bounds: " + position);
+        }
+        return rows.get(position)[columnIndex];
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        Object v = value(columnIndex);
+        if (v == null || v instanceof byte[]) {
+            return (byte[])v;
+        }
+        return v.toString().getBytes();
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        Object v = value(columnIndex);
+        if (v == null) {
+            return null;
+        } else if (v instanceof byte[]) {
+            return new String((byte[])v);
+        }
+        return v.toString();
+    }
+
+    @Override
+    public short getShort(int columnIndex) {
+        return (short)getLong(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return (int)getLong(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        Object v = value(columnIndex);
+        if (v == null) {
+            return 0;
+        } else if (v instanceof Number) {
+            return ((Number)v).longValue();
+        }
+        try {
+            return Long.parseLong(v.toString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public float getFloat(int columnIndex) {
+        return (float)getDouble(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        Object v = value(columnIndex);
+        if (v == null) {
+            return 0;
+        } else if (v instanceof Number) {
+            return ((Number)v).doubleValue();
+        }
+        try {
+            return Double.parseDouble(v.toString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return value(columnIndex) == null;
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        Object v = value(columnIndex);
+        if (v == null) {
+            return FIELD_TYPE_NULL;
+        } else if (v instanceof byte[]) {
+            return FIELD_TYPE_BLOB;
+        } else if (v instanceof Double || v instanceof Float) {
+            return FIELD_TYPE_FLOAT;
+        } else if (v instanceof Number) {
+            return FIELD_TYPE_INTEGER;
+        }
+        return FIELD_TYPE_STRING;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        rows.clear();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+}